@@ -5,9 +5,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import clink.box.FileSendPacket;
+import clink.box.ResumableFile;
 import clink.core.Connector;
 import clink.core.IoContext;
 import clink.core.ScheduleJob;
@@ -26,6 +29,11 @@ import foo.handler.ConnectorHandler;
  */
 class Client {
 
+    /**
+     * 发送过的可续传文件，key 为文件的路径
+     */
+    private static final Map<String, ResumableFile> RESUMABLE_FILES = new HashMap<>();
+
     public static void main(String... args) throws IOException {
         //启动IoContext
         IoContext.setup()
@@ -105,6 +113,23 @@ class Client {
                 }
             }
 
+            //可续传的文件，同一个文件再次发送时从服务器已确认的位置继续
+            if (str.startsWith("--rf ")) {
+                String[] params = str.split(" ");
+                if (params.length >= 2) {
+                    File file = new File(params[1]);
+                    if (file.exists()) {
+                        ResumableFile resumableFile = RESUMABLE_FILES.computeIfAbsent(file.getAbsolutePath(), path -> new ResumableFile(file));
+                        if (!tcpClient.send(resumableFile)) {
+                            System.out.println(file.getAbsolutePath() + " has been received by server");
+                        }
+                        continue;
+                    } else {
+                        System.out.println(file.getAbsolutePath() + " not exist");
+                    }
+                }
+            }
+
             //字符串发送到服务器
             tcpClient.send(str);
 
@@ -23,6 +23,13 @@ public class BytesSendPacket extends SendPacket<ByteArrayInputStream> {
         return TYPE_MEMORY_BYTES;
     }
 
+    /**
+     * 获取实体数据，只能读取，用于发送前压缩
+     */
+    public byte[] getBytes() {
+        return mBytes;
+    }
+
     @Override
     protected ByteArrayInputStream createStream() {
         return new ByteArrayInputStream(mBytes);
@@ -20,6 +20,13 @@ public class FileReceivePacket extends ReceivePacket<FileOutputStream, File> {
         mFile = file;
     }
 
+    /**
+     * 接收的文件，内存映射接收时直接写入该文件
+     */
+    public File getFile() {
+        return mFile;
+    }
+
     /**
      * 从流转变为对应实体时直接返回创建时传入的File文件
      *
@@ -31,6 +38,14 @@ public class FileReceivePacket extends ReceivePacket<FileOutputStream, File> {
         return mFile;
     }
 
+    /**
+     * 内存映射接收时不会打开流，实体不经过 {@link #buildEntity(FileOutputStream)}，直接返回文件
+     */
+    @Override
+    public File getEntity() {
+        return mFile;
+    }
+
     @Override
     public byte getType() {
         return TYPE_STREAM_FILE;
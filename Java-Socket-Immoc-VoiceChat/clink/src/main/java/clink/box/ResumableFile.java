@@ -0,0 +1,133 @@
+package clink.box;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 可续传发送的文件，记录接收方已经确认的长度，连接断开之后在新的连接上通过 {@link #newPacket()} 从确认的位置继续发送。
+ * <p>
+ * 文件按固定大小分块，接收方每校验并持久化一个分块回送一次确认，{@link clink.core.Connector} 收到确认时更新这里的记录，
+ * 因此同一个文件需要在多次连接之间复用同一个实例。发送前计算整个文件的 SHA-256 作为内容摘要，接收方据此找到之前接收的数据，
+ * 全部接收之后再次校验。
+ */
+public class ResumableFile {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final File mFile;
+    private final int mChunkSize;
+    private final long mLength;
+
+    private byte[] mContentHash;
+
+    // 以下状态由 this 保护
+    private long mAcknowledgedLength;
+    private ResumableFileSendPacket mSendingPacket;
+
+    public ResumableFile(File file) {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ResumableFile(File file, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive.");
+        }
+        mFile = file;
+        mChunkSize = chunkSize;
+        mLength = file.length();
+    }
+
+    /**
+     * 从接收方已经确认的位置开始构建一个发送包，上一个包仍在发送时不会被取消，需要时由调用者取消
+     *
+     * @return 已经全部确认时返回 null
+     * @throws IOException 计算内容摘要时读取文件失败
+     */
+    public synchronized ResumableFileSendPacket newPacket() throws IOException {
+        if (mAcknowledgedLength >= mLength) {
+            return null;
+        }
+        ResumableFileHeader header = new ResumableFileHeader(getContentHash(), mChunkSize, mLength, mAcknowledgedLength);
+        mSendingPacket = new ResumableFileSendPacket(this, header);
+        return mSendingPacket;
+    }
+
+    /**
+     * 收到接收方的确认，接收方丢失了数据时确认的长度可能比之前小，总是以最新的确认为准
+     *
+     * @return 正在发送的包的起始位置超过了确认的长度时返回该包，接收方无法使用它的数据，需要取消并重新发送
+     */
+    public synchronized ResumableFileSendPacket onAcknowledged(long acknowledgedLength) {
+        mAcknowledgedLength = Math.max(0, Math.min(acknowledgedLength, mLength));
+        ResumableFileSendPacket packet = mSendingPacket;
+        if (packet != null && packet.getOffset() > mAcknowledgedLength) {
+            mSendingPacket = null;
+            return packet;
+        }
+        return null;
+    }
+
+    public synchronized long getAcknowledgedLength() {
+        return mAcknowledgedLength;
+    }
+
+    /**
+     * 接收方是否已经确认了整个文件
+     */
+    public synchronized boolean isAcknowledged() {
+        return mAcknowledgedLength >= mLength;
+    }
+
+    /**
+     * 整个文件的 SHA-256，第一次调用时计算
+     */
+    public synchronized byte[] getContentHash() throws IOException {
+        if (mContentHash == null) {
+            MessageDigest digest = newDigest();
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream inputStream = new FileInputStream(mFile)) {
+                int count;
+                while ((count = inputStream.read(buffer)) > 0) {
+                    digest.update(buffer, 0, count);
+                }
+            }
+            mContentHash = digest.digest();
+        }
+        return mContentHash;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // 所有的 Java 平台都必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public long getLength() {
+        return mLength;
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    @Override
+    public String toString() {
+        return "ResumableFile{" +
+                "file=" + mFile +
+                ", length=" + mLength +
+                ", acknowledged=" + getAcknowledgedLength() +
+                '}';
+    }
+
+}
@@ -0,0 +1,124 @@
+package clink.box;
+
+import java.util.Arrays;
+
+/**
+ * 可续传文件包的头部额外信息，通过 {@link clink.core.Packet#headerInfo()} 随头帧发送：
+ * <pre>
+ *     魔数：2 个字节，'R' 'F'
+ *     版本：1 个字节
+ *     分块大小：4 个字节
+ *     文件的总长度：5 个字节
+ *     本次发送的起始位置：5 个字节，总是分块大小的整数倍
+ *     内容摘要的长度：1 个字节
+ *     内容摘要：整个文件的 SHA-256
+ * </pre>
+ * 包的长度为文件的总长度减去起始位置，接收方据此把数据写入文件的对应位置。
+ */
+public class ResumableFileHeader {
+
+    private static final byte MAGIC_0 = 'R';
+    private static final byte MAGIC_1 = 'F';
+    private static final byte VERSION = 1;
+    private static final int FIXED_LENGTH = 18;
+
+    private final byte[] mContentHash;
+    private final int mChunkSize;
+    private final long mFileLength;
+    private final long mOffset;
+
+    public ResumableFileHeader(byte[] contentHash, int chunkSize, long fileLength, long offset) {
+        if (contentHash.length == 0 || contentHash.length > 255 - FIXED_LENGTH) {
+            throw new IllegalArgumentException("Illegal content hash length: " + contentHash.length);
+        }
+        mContentHash = contentHash;
+        mChunkSize = chunkSize;
+        mFileLength = fileLength;
+        mOffset = offset;
+    }
+
+    /**
+     * 解析头部额外信息
+     *
+     * @return 不是可续传文件的头部信息时返回 null
+     */
+    public static ResumableFileHeader parse(byte[] headerInfo) {
+        if (headerInfo == null || headerInfo.length <= FIXED_LENGTH
+                || headerInfo[0] != MAGIC_0 || headerInfo[1] != MAGIC_1 || headerInfo[2] != VERSION) {
+            return null;
+        }
+        int chunkSize = ((headerInfo[3] & 0xFF) << 24)
+                | ((headerInfo[4] & 0xFF) << 16)
+                | ((headerInfo[5] & 0xFF) << 8)
+                | (headerInfo[6] & 0xFF);
+        long fileLength = readLength(headerInfo, 7);
+        long offset = readLength(headerInfo, 12);
+        int hashLength = headerInfo[17] & 0xFF;
+        if (chunkSize <= 0 || offset > fileLength || hashLength == 0 || FIXED_LENGTH + hashLength != headerInfo.length) {
+            return null;
+        }
+        byte[] contentHash = Arrays.copyOfRange(headerInfo, FIXED_LENGTH, headerInfo.length);
+        return new ResumableFileHeader(contentHash, chunkSize, fileLength, offset);
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = new byte[FIXED_LENGTH + mContentHash.length];
+        bytes[0] = MAGIC_0;
+        bytes[1] = MAGIC_1;
+        bytes[2] = VERSION;
+        bytes[3] = (byte) (mChunkSize >> 24);
+        bytes[4] = (byte) (mChunkSize >> 16);
+        bytes[5] = (byte) (mChunkSize >> 8);
+        bytes[6] = (byte) (mChunkSize);
+        writeLength(bytes, 7, mFileLength);
+        writeLength(bytes, 12, mOffset);
+        bytes[17] = (byte) mContentHash.length;
+        System.arraycopy(mContentHash, 0, bytes, FIXED_LENGTH, mContentHash.length);
+        return bytes;
+    }
+
+    private static void writeLength(byte[] bytes, int offset, long length) {
+        bytes[offset] = (byte) (length >> 32);
+        bytes[offset + 1] = (byte) (length >> 24);
+        bytes[offset + 2] = (byte) (length >> 16);
+        bytes[offset + 3] = (byte) (length >> 8);
+        bytes[offset + 4] = (byte) (length);
+    }
+
+    private static long readLength(byte[] bytes, int offset) {
+        return ((((long) bytes[offset]) & 0xFFL) << 32)
+                | ((((long) bytes[offset + 1]) & 0xFFL) << 24)
+                | ((((long) bytes[offset + 2]) & 0xFFL) << 16)
+                | ((((long) bytes[offset + 3]) & 0xFFL) << 8)
+                | (((long) bytes[offset + 4]) & 0xFFL);
+    }
+
+    /**
+     * 内容摘要的十六进制表示，用于索引
+     */
+    public static String toHex(byte[] contentHash) {
+        StringBuilder builder = new StringBuilder(contentHash.length * 2);
+        for (byte b : contentHash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    public byte[] getContentHash() {
+        return mContentHash;
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    public long getFileLength() {
+        return mFileLength;
+    }
+
+    public long getOffset() {
+        return mOffset;
+    }
+
+}
@@ -0,0 +1,67 @@
+package clink.box;
+
+import java.io.File;
+import java.io.OutputStream;
+
+import clink.core.ReceivePacket;
+
+/**
+ * 可续传文件的接收包，数据通过 {@link ResumableFileStore.Session} 写入临时文件的对应位置。
+ * <p>
+ * 包结束时无论是否成功都会回调给连接，需要通过 {@link #isCompleted()} 判断整个文件是否已经完整接收并通过校验；
+ * 未完成时已确认的分块仍然保留，等待发送方在新的连接上继续发送。
+ */
+public class ResumableFileReceivePacket extends ReceivePacket<OutputStream, File> {
+
+    private final ResumableFileStore.Session mSession;
+
+    /**
+     * @param len     本次接收的长度，即文件的总长度减去发送的起始位置
+     * @param session 接收的会话，为 null 时（比如无法读写接收状态）丢弃所有的数据
+     */
+    public ResumableFileReceivePacket(long len, ResumableFileStore.Session session) {
+        super(len);
+        mSession = session;
+    }
+
+    /**
+     * 整个文件是否已经完整接收并通过内容摘要的校验
+     */
+    public boolean isCompleted() {
+        return mSession != null && mSession.isCompleted();
+    }
+
+    /**
+     * 本次接收的头部信息，会话创建失败时返回 null
+     */
+    public ResumableFileHeader getHeader() {
+        return mSession == null ? null : mSession.getHeader();
+    }
+
+    @Override
+    protected File buildEntity(OutputStream stream) {
+        return mSession == null ? null : mSession.getFile();
+    }
+
+    @Override
+    public byte getType() {
+        return TYPE_STREAM_FILE;
+    }
+
+    @Override
+    protected OutputStream createStream() {
+        if (mSession == null) {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+        }
+        return mSession;
+    }
+
+}
@@ -0,0 +1,72 @@
+package clink.box;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import clink.core.SendPacket;
+
+/**
+ * 可续传文件的发送包，从 {@link ResumableFile} 已确认的位置开始发送到文件的末尾，通过 {@link ResumableFile#newPacket()} 创建。
+ */
+public class ResumableFileSendPacket extends SendPacket<FileInputStream> {
+
+    private final ResumableFile mResumableFile;
+    private final ResumableFileHeader mHeader;
+    private final byte[] mHeaderInfo;
+
+    ResumableFileSendPacket(ResumableFile resumableFile, ResumableFileHeader header) {
+        mResumableFile = resumableFile;
+        mHeader = header;
+        mHeaderInfo = header.toBytes();
+        this.length = header.getFileLength() - header.getOffset();
+    }
+
+    public ResumableFile getResumableFile() {
+        return mResumableFile;
+    }
+
+    public byte[] getContentHash() {
+        return mHeader.getContentHash();
+    }
+
+    /**
+     * 本次发送在文件中的起始位置
+     */
+    public long getOffset() {
+        return mHeader.getOffset();
+    }
+
+    @Override
+    public byte[] headerInfo() {
+        return mHeaderInfo;
+    }
+
+    @Override
+    public byte getType() {
+        return TYPE_STREAM_FILE;
+    }
+
+    /**
+     * 流的位置移动到起始位置，按流读取与通过 FileChannel 直接发送都从这里开始
+     */
+    @Override
+    protected FileInputStream createStream() {
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(mResumableFile.getFile());
+            stream.getChannel().position(mHeader.getOffset());
+            return stream;
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            e.printStackTrace();
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+        return null;
+    }
+
+}
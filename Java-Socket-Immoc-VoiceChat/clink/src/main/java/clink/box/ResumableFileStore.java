@@ -0,0 +1,360 @@
+package clink.box;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * 可续传文件的接收状态，保存在接收文件所在的目录中。
+ * <p>
+ * 每个文件按内容摘要索引，对应目录中的一个 "摘要.chunks" 文件，记录文件的长度、分块大小、临时文件的路径，以及每个已接收分块的 CRC32。
+ * 一个分块写入临时文件并刷到磁盘之后才追加它的 CRC32，随后向发送方确认，因此已确认的数据在进程崩溃、连接断开之后仍然可用。
+ * <p>
+ * 重新连接后发送方从确认的位置继续发送，接收方重新读取已接收的分块，校验 CRC32 并计算内容摘要，校验失败的分块及之后的数据需要重新发送；
+ * 全部接收之后与头部中的内容摘要比较，一致才算接收完成。
+ * <p>
+ * 同一个目录使用同一个实例（{@link #of(File)}），同一个文件在新的连接上开始接收时，旧连接上尚未结束的接收立即作废。
+ */
+public class ResumableFileStore {
+
+    private static final Map<String, ResumableFileStore> STORES = new ConcurrentHashMap<>();
+
+    private static final int MAGIC = 0x52464353;// "RFCS"
+    private static final String SUFFIX = ".chunks";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File mDir;
+    // 正在接收的文件，由 this 保护
+    private final Map<String, Session> mSessions = new HashMap<>();
+
+    private ResumableFileStore(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * 获取目录对应的实例
+     *
+     * @param dir 接收文件所在的目录，与 {@link clink.core.Connector#createNewReceiveFile(long, byte[])} 创建文件的目录一致
+     */
+    public static ResumableFileStore of(File dir) {
+        return STORES.computeIfAbsent(dir.getAbsolutePath(), path -> new ResumableFileStore(new File(path)));
+    }
+
+    /**
+     * 开始接收一个可续传文件包
+     *
+     * @param header      包的头部信息
+     * @param fileFactory 没有之前接收的数据时用于创建新的临时文件
+     * @param listener    分块确认的回调，在接收线程中回调
+     * @return 接收的会话，作为包的输出流写入；发送的起始位置与已接收的数据不一致时，会话丢弃写入的数据并立即确认实际可用的长度
+     * @throws IOException 读写接收状态失败
+     */
+    public Session open(ResumableFileHeader header, Supplier<File> fileFactory, AcknowledgeListener listener) throws IOException {
+        String key = ResumableFileHeader.toHex(header.getContentHash());
+        Session old;
+        synchronized (this) {
+            old = mSessions.remove(key);
+        }
+        if (old != null) {
+            // 旧的连接还没有发现断开，它的数据不再写入
+            old.abandon();
+        }
+
+        Session session = new Session(key, header, listener);
+        try {
+            session.load(new File(mDir, key + SUFFIX), fileFactory);
+        } catch (IOException e) {
+            session.abandon();
+            throw e;
+        }
+
+        synchronized (this) {
+            old = mSessions.put(key, session);
+        }
+        if (old != null) {
+            old.abandon();
+        }
+        session.acknowledgeIfRejected();
+        return session;
+    }
+
+    private synchronized void remove(Session session) {
+        mSessions.remove(session.mKey, session);
+    }
+
+    /**
+     * 分块确认的回调
+     */
+    public interface AcknowledgeListener {
+
+        /**
+         * @param acknowledgedLength 已经校验并持久化的长度
+         */
+        void onAcknowledged(long acknowledgedLength);
+
+    }
+
+    /**
+     * 一次接收，写入的数据按位置写入临时文件，每写满一个分块确认一次
+     */
+    public class Session extends OutputStream {
+
+        private final String mKey;
+        private final ResumableFileHeader mHeader;
+        private final AcknowledgeListener mListener;
+
+        private final CRC32 mChunkCrc = new CRC32();
+        private final MessageDigest mDigest = ResumableFile.newDigest();
+
+        private File mFile;
+        private File mChunksFile;
+        private RandomAccessFile mData;
+        private RandomAccessFile mChunks;
+
+        private long mPosition;
+        private long mChunkEnd;
+        private long mAcknowledgedLength;
+        // 起始位置与已接收的数据不一致，丢弃写入的数据
+        private boolean mRejected;
+        private boolean mAbandoned;
+        private boolean mCompleted;
+        // 全部接收之后内容摘要不一致
+        private boolean mCorrupted;
+        private boolean mClosed;
+
+        private Session(String key, ResumableFileHeader header, AcknowledgeListener listener) {
+            mKey = key;
+            mHeader = header;
+            mListener = listener;
+        }
+
+        private synchronized void load(File chunksFile, Supplier<File> fileFactory) throws IOException {
+            mChunksFile = chunksFile;
+            mChunks = new RandomAccessFile(chunksFile, "rw");
+            int chunkSize = mHeader.getChunkSize();
+            long fileLength = mHeader.getFileLength();
+
+            // 读取之前的接收状态，与本次的文件不一致时重新开始
+            int storedChunks = 0;
+            long chunksHeaderLength = 0;
+            if (mChunks.length() > 0) {
+                try {
+                    if (mChunks.readInt() == MAGIC && mChunks.readLong() == fileLength && mChunks.readInt() == chunkSize) {
+                        File file = new File(mChunks.readUTF());
+                        if (file.isFile()) {
+                            mFile = file;
+                            chunksHeaderLength = mChunks.getFilePointer();
+                            storedChunks = (int) ((mChunks.length() - chunksHeaderLength) / 4);
+                        }
+                    }
+                } catch (IOException ignored) {
+                    // 状态文件不完整
+                }
+            }
+            if (mFile == null) {
+                mFile = fileFactory.get();
+                if (mFile == null) {
+                    throw new IOException("Can not create receive file.");
+                }
+                mChunks.setLength(0);
+                mChunks.writeInt(MAGIC);
+                mChunks.writeLong(fileLength);
+                mChunks.writeInt(chunkSize);
+                mChunks.writeUTF(mFile.getAbsolutePath());
+                chunksHeaderLength = mChunks.getFilePointer();
+            }
+            mData = new RandomAccessFile(mFile, "rw");
+
+            // 发送方之后的数据会覆盖已接收的分块，只保留起始位置之前的分块，逐个校验
+            int keptChunks = (int) Math.min(storedChunks, mHeader.getOffset() / chunkSize);
+            int verifiedChunks = verifyChunks(chunksHeaderLength, keptChunks);
+            if (verifiedChunks < keptChunks) {
+                // 摘要中包含了校验失败的分块，重新计算
+                mDigest.reset();
+                verifyChunks(chunksHeaderLength, verifiedChunks);
+            }
+            mChunks.setLength(chunksHeaderLength + verifiedChunks * 4L);
+            mChunks.seek(mChunks.length());
+
+            mAcknowledgedLength = Math.min((long) verifiedChunks * chunkSize, fileLength);
+            mPosition = mAcknowledgedLength;
+            mChunkEnd = Math.min(mPosition + chunkSize, fileLength);
+            mRejected = mAcknowledgedLength != mHeader.getOffset();
+            mData.seek(mPosition);
+        }
+
+        /**
+         * 校验前 count 个分块并计算它们的摘要
+         *
+         * @return 连续校验通过的分块数量
+         */
+        private int verifyChunks(long chunksHeaderLength, int count) throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            CRC32 crc = new CRC32();
+            mData.seek(0);
+            mChunks.seek(chunksHeaderLength);
+            for (int i = 0; i < count; i++) {
+                long remaining = Math.min(mHeader.getChunkSize(), mHeader.getFileLength() - (long) i * mHeader.getChunkSize());
+                crc.reset();
+                while (remaining > 0) {
+                    int read = mData.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        return i;
+                    }
+                    crc.update(buffer, 0, read);
+                    mDigest.update(buffer, 0, read);
+                    remaining -= read;
+                }
+                if ((int) crc.getValue() != mChunks.readInt()) {
+                    return i;
+                }
+            }
+            return count;
+        }
+
+        private void acknowledgeIfRejected() {
+            long acknowledgedLength;
+            synchronized (this) {
+                if (!mRejected || mAbandoned) {
+                    return;
+                }
+                acknowledgedLength = mAcknowledgedLength;
+            }
+            // 告知发送方实际可用的长度，发送方从这里重新发送
+            mListener.onAcknowledged(acknowledgedLength);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long acknowledgedLength = -1;
+            synchronized (this) {
+                if (mRejected || mAbandoned || mClosed) {
+                    return;
+                }
+                while (len > 0 && mPosition < mChunkEnd) {
+                    int count = (int) Math.min(len, mChunkEnd - mPosition);
+                    mData.write(b, off, count);
+                    mChunkCrc.update(b, off, count);
+                    mDigest.update(b, off, count);
+                    mPosition += count;
+                    off += count;
+                    len -= count;
+                    if (mPosition == mChunkEnd) {
+                        acknowledgedLength = completeChunk();
+                    }
+                }
+            }
+            if (acknowledgedLength >= 0) {
+                mListener.onAcknowledged(acknowledgedLength);
+            }
+        }
+
+        /**
+         * 一个分块写入完成，数据刷到磁盘后再记录 CRC32，最后一个分块还需要校验内容摘要
+         *
+         * @return 需要确认的长度
+         */
+        private long completeChunk() throws IOException {
+            mData.getChannel().force(false);
+            mChunks.writeInt((int) mChunkCrc.getValue());
+            mChunkCrc.reset();
+
+            if (mPosition == mHeader.getFileLength()) {
+                if (Arrays.equals(mDigest.digest(), mHeader.getContentHash())) {
+                    mCompleted = true;
+                } else {
+                    // 数据与发送方的文件不一致，丢弃已接收的状态，发送方从头发送
+                    mRejected = true;
+                    mCorrupted = true;
+                    mAcknowledgedLength = 0;
+                    return 0;
+                }
+            }
+            mAcknowledgedLength = mPosition;
+            mChunkEnd = Math.min(mPosition + mHeader.getChunkSize(), mHeader.getFileLength());
+            return mAcknowledgedLength;
+        }
+
+        /**
+         * 作废本次接收，之后写入的数据被丢弃，不删除接收状态
+         */
+        private void abandon() {
+            synchronized (this) {
+                mAbandoned = true;
+            }
+            closeFiles();
+        }
+
+        @Override
+        public void close() {
+            boolean finished;
+            synchronized (this) {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+                finished = mCompleted || mCorrupted;
+            }
+            closeFiles();
+            remove(this);
+            if (finished) {
+                // 接收完成或者数据已损坏，不再需要接收状态
+                if (mChunksFile != null && !mChunksFile.delete()) {
+                    mChunksFile.deleteOnExit();
+                }
+            }
+        }
+
+        private synchronized void closeFiles() {
+            try {
+                if (mData != null) {
+                    mData.close();
+                }
+            } catch (IOException ignored) {
+            }
+            try {
+                if (mChunks != null) {
+                    mChunks.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * 是否已经完整接收并通过了内容摘要的校验
+         */
+        public synchronized boolean isCompleted() {
+            return mCompleted;
+        }
+
+        /**
+         * 接收的临时文件
+         */
+        public File getFile() {
+            return mFile;
+        }
+
+        public ResumableFileHeader getHeader() {
+            return mHeader;
+        }
+
+        public synchronized long getAcknowledgedLength() {
+            return mAcknowledgedLength;
+        }
+
+    }
+
+}
@@ -0,0 +1,144 @@
+package clink.box;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import clink.core.SendPacket;
+
+/**
+ * 可共享的发送包，用于群发：同一份消息发送给多个连接时只编码一次，所有连接的发送调度者共享编码好的数据。
+ * <p>
+ * 普通的 SendPacket 持有发送时打开的流，只能交给一个发送调度者；共享包发送时不打开流，实体帧直接按偏移读取共享的字节数组，
+ * 包头帧的数据也只构建一次，每个连接只需要构建各自的 6 字节帧头（帧头中的包标识由每个连接各自分配）。
+ * 通过 {@link #open()} 读取时与 {@link BytesSendPacket} 一样返回实体数据的流。
+ * <p>
+ * 共享包是引用计数的：创建者持有一个引用，每交给一个发送调度者增加一个引用，发送完成、取消或者连接关闭时释放。
+ * 创建者分发完成后需要调用 {@link #release()} 释放自己的引用，引用计数归零后不能再发送。
+ */
+public class SharedSendPacket extends SendPacket<InputStream> {
+
+    private final byte type;
+    private final byte[] entity;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    /**
+     * 包头帧的数据，由第一次发送时构建，之后所有的连接共用
+     */
+    private volatile byte[] headerFrameBody;
+
+    /**
+     * 压缩后的实体数据与压缩算法，同样由第一次发送时构建；不需要压缩时 encodedEntity 为 entity 本身，encodedFlag 为 FLAG_NONE
+     */
+    private volatile byte[] encodedEntity;
+    private volatile byte encodedFlag;
+
+    /**
+     * @param message 字符串消息
+     */
+    public SharedSendPacket(String message) {
+        this(TYPE_MEMORY_STRING, message.getBytes());
+    }
+
+    /**
+     * @param type   包类型，只支持 {@link #TYPE_MEMORY_BYTES} 与 {@link #TYPE_MEMORY_STRING}
+     * @param entity 实体数据，交给当前包之后不能再修改
+     */
+    public SharedSendPacket(byte type, byte[] entity) {
+        if (type != TYPE_MEMORY_BYTES && type != TYPE_MEMORY_STRING) {
+            throw new IllegalArgumentException("SharedSendPacket only supports memory packet, but type is " + type);
+        }
+        this.type = type;
+        this.entity = entity;
+        this.length = entity.length;
+    }
+
+    @Override
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * 获取共享的实体数据，只能读取
+     */
+    public byte[] getEntity() {
+        return entity;
+    }
+
+    public byte[] getHeaderFrameBody() {
+        return headerFrameBody;
+    }
+
+    public void setHeaderFrameBody(byte[] headerFrameBody) {
+        this.headerFrameBody = headerFrameBody;
+    }
+
+    /**
+     * @return 还没有构建过时返回 null
+     */
+    public byte[] getEncodedEntity() {
+        return encodedEntity;
+    }
+
+    public byte getEncodedFlag() {
+        return encodedFlag;
+    }
+
+    public void setEncodedEntity(byte flag, byte[] encodedEntity) {
+        // 先写 flag，读取方看到 encodedEntity 时一定能看到对应的 flag
+        this.encodedFlag = flag;
+        this.encodedEntity = encodedEntity;
+    }
+
+    /**
+     * 增加一个引用，交给发送调度者之前调用
+     *
+     * @return 当前包
+     */
+    public SharedSendPacket retain() {
+        for (; ; ) {
+            int count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("SharedSendPacket has been released.");
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * 释放一个引用
+     *
+     * @return 引用计数是否已经归零
+     */
+    public boolean release() {
+        int count = refCount.decrementAndGet();
+        if (count < 0) {
+            throw new IllegalStateException("SharedSendPacket has been released.");
+        }
+        return count == 0;
+    }
+
+    public int refCount() {
+        return refCount.get();
+    }
+
+    /**
+     * 发送调度者不通过流读取数据，实体帧直接读取 {@link #getEntity()}；实体数据不会被修改，其他读取者可以通过流读取
+     */
+    @Override
+    protected InputStream createStream() {
+        return new ByteArrayInputStream(entity);
+    }
+
+    @Override
+    public String toString() {
+        return "SharedSendPacket{" +
+                "type=" + type +
+                ", length=" + length +
+                ", refCount=" + refCount.get() +
+                '}';
+    }
+
+}
@@ -0,0 +1,131 @@
+package clink.core;
+
+/**
+ * 自适应的 IoArgs 容量，根据最近几次实际读写的数据量放大或缩小下一次借出的 IoArgs 容量。
+ * <p>
+ * 思路与 Netty 的 AdaptiveRecvByteBufAllocator 一致：容量取自一张从最小值开始倍增到最大值的容量表，
+ * 一次读写就填满了当前容量时立即放大两级（4 倍），连续两次读写的数据量都不超过低一级的容量时才缩小一级。
+ * 这样大数据传输时能很快提升到较大的容量，减少 onConsumeCompleted 的往返次数；而空闲的聊天连接始终停留在最小容量，不占用多余的内存。
+ * <p>
+ * 每个连接的每个方向持有一份，读写是串行的，因此不需要同步；统计信息可以被其他线程读取。
+ */
+public class AdaptiveIoArgsSizer {
+
+    private static final int INDEX_INCREMENT = 2;
+    private static final int INDEX_DECREMENT = 1;
+
+    private final int[] sizeTable;
+
+    private int index;
+    private volatile int nextSize;
+    private boolean decreaseNow;
+
+    /*统计信息*/
+    private volatile long recordCount;
+    private volatile long recordBytes;
+    private volatile int growCount;
+    private volatile int shrinkCount;
+
+    /**
+     * @param minimum 最小容量
+     * @param initial 初始容量，将被调整为容量表中第一个不小于它的容量
+     * @param maximum 最大容量
+     */
+    public AdaptiveIoArgsSizer(int minimum, int initial, int maximum) {
+        if (minimum <= 0 || initial < minimum || maximum < initial) {
+            throw new IllegalArgumentException("Required 0 < minimum <= initial <= maximum.");
+        }
+
+        int count = 1;
+        for (long size = minimum; size < maximum; size <<= 1) {
+            count++;
+        }
+        sizeTable = new int[count];
+        for (int i = 0; i < count - 1; i++) {
+            sizeTable[i] = minimum << i;
+        }
+        sizeTable[count - 1] = maximum;
+
+        while (sizeTable[index] < initial) {
+            index++;
+        }
+        nextSize = sizeTable[index];
+    }
+
+    /**
+     * 下一次借出 IoArgs 时应当使用的容量
+     */
+    public int guess() {
+        return nextSize;
+    }
+
+    /**
+     * 记录一次实际读写的数据量，并据此调整下一次的容量
+     *
+     * @param actualBytes 实际读写的数据量
+     */
+    public void record(int actualBytes) {
+        recordCount++;
+        recordBytes += actualBytes;
+
+        if (index > 0 && actualBytes <= sizeTable[Math.max(0, index - INDEX_DECREMENT)]) {
+            if (decreaseNow) {
+                index = Math.max(index - INDEX_DECREMENT, 0);
+                nextSize = sizeTable[index];
+                shrinkCount++;
+                decreaseNow = false;
+            } else {
+                decreaseNow = true;
+            }
+        } else if (actualBytes >= nextSize) {
+            int newIndex = Math.min(index + INDEX_INCREMENT, sizeTable.length - 1);
+            if (newIndex != index) {
+                index = newIndex;
+                nextSize = sizeTable[index];
+                growCount++;
+            }
+            decreaseNow = false;
+        }
+    }
+
+    /**
+     * 记录的读写次数
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * 记录的读写数据总量
+     */
+    public long getRecordBytes() {
+        return recordBytes;
+    }
+
+    /**
+     * 容量被放大的次数
+     */
+    public int getGrowCount() {
+        return growCount;
+    }
+
+    /**
+     * 容量被缩小的次数
+     */
+    public int getShrinkCount() {
+        return shrinkCount;
+    }
+
+    @Override
+    public String toString() {
+        long count = recordCount;
+        return "AdaptiveIoArgsSizer{" +
+                "size=" + nextSize +
+                ", records=" + count +
+                ", avg=" + (count == 0 ? 0 : recordBytes / count) +
+                ", grow=" + growCount +
+                ", shrink=" + shrinkCount +
+                '}';
+    }
+
+}
@@ -7,12 +7,15 @@ import java.io.OutputStream;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import clink.box.*;
 import clink.impl.SocketChannelAdapter;
 import clink.impl.async.AsyncReceiveDispatcher;
 import clink.impl.async.AsyncSendDispatcher;
+import clink.impl.bridge.BridgeSendChannel;
 import clink.impl.bridge.BridgeSocketDispatcher;
 import clink.utils.CloseUtils;
 
@@ -51,11 +54,22 @@ public abstract class Connector implements Closeable {
      */
     private ReceiveDispatcher receiveDispatcher;
 
+    /**
+     * 作为桥接转发目标时的发送通道，按需创建
+     */
+    private BridgeSendChannel bridgeSendChannel;
+
     private final List<ScheduleJob> mScheduleJobs = new ArrayList<>(4);
 
+    /**
+     * 通过当前链接发送、还没有被对方全部确认的可续传文件，key 为内容摘要的十六进制表示
+     */
+    private final Map<String, ResumableFile> mResumableFiles = new ConcurrentHashMap<>();
+
     private final SocketChannelAdapter.OnChannelStatusChangedListener onChannelStatusChangedListener = new SocketChannelAdapter.OnChannelStatusChangedListener() {
         @Override
         public void onChannelClosed(SocketChannel channel) {
+            IoContext.get().metrics().onConnectionClosed();
             CloseUtils.close(Connector.this);
             processOnChannelClosed(channel);
         }
@@ -79,9 +93,11 @@ public abstract class Connector implements Closeable {
         this.sender = socketChannelAdapter;
         this.receiver = socketChannelAdapter;
 
-        sendDispatcher = new AsyncSendDispatcher(sender);
+        sendDispatcher = new AsyncSendDispatcher(sender, this::onWritabilityChanged);
         receiveDispatcher = new AsyncReceiveDispatcher(receiver, receivePacketCallback);
 
+        ioContext.metrics().onConnectionOpened();
+
         // 立即启动数据接收接收
         receiveDispatcher.start();
     }
@@ -94,9 +110,30 @@ public abstract class Connector implements Closeable {
     }
 
     public void send(SendPacket packet) {
+        if (packet instanceof ResumableFileSendPacket) {
+            // 记录下来，收到对方的确认时更新
+            ResumableFileSendPacket resumablePacket = (ResumableFileSendPacket) packet;
+            mResumableFiles.put(ResumableFileHeader.toHex(resumablePacket.getContentHash()), resumablePacket.getResumableFile());
+        }
         sendDispatcher.send(packet);
     }
 
+    /**
+     * 从对方已经确认的位置开始发送一个可续传的文件，连接断开后在新的连接上使用同一个 {@link ResumableFile} 再次调用即可续传
+     *
+     * @param resumableFile 可续传的文件
+     * @return 对方已经确认了整个文件时返回 false
+     * @throws IOException 计算文件的内容摘要失败
+     */
+    public boolean send(ResumableFile resumableFile) throws IOException {
+        ResumableFileSendPacket packet = resumableFile.newPacket();
+        if (packet == null) {
+            return false;
+        }
+        send(packet);
+        return true;
+    }
+
     /**
      * 改变当前调度器为桥接模式
      */
@@ -115,31 +152,98 @@ public abstract class Connector implements Closeable {
     }
 
     /**
-     * 将另外一个链接的发送者绑定到当前链接的桥接调度器上实现两个链接的桥接功能
+     * 将另外一个链接绑定到当前链接的桥接调度器上实现两个链接的桥接功能，替换之前所有的转发目标
      *
-     * @param sender 另外一个链接的发送者
+     * @param connector 另外一个链接
      */
-    public void bindToBridge(Sender sender) {
-        if (sender == this.sender) {
-            throw new UnsupportedOperationException("Can not set current connector sender to self bridge mode!");
-        }
+    public void bindToBridge(Connector connector) {
+        getBridgeSocketDispatcher().bindTarget(checkBridgeTarget(connector).getBridgeSendChannel());
+    }
 
-        if (!(receiveDispatcher instanceof BridgeSocketDispatcher)) {
-            throw new IllegalStateException("receiveDispatcher is not BridgeSocketDispatcher!");
-        }
+    /**
+     * 添加一个转发目标，当前链接接收到的数据将同时转发给所有的目标，用于多人的音频房间
+     *
+     * @param connector 另外一个链接
+     */
+    public void addToBridge(Connector connector) {
+        getBridgeSocketDispatcher().addTarget(checkBridgeTarget(connector).getBridgeSendChannel());
+    }
 
-        ((BridgeSocketDispatcher) receiveDispatcher).bindSender(sender);
+    /**
+     * 移除一个转发目标
+     *
+     * @param connector 另外一个链接
+     */
+    public void removeFromBridge(Connector connector) {
+        getBridgeSocketDispatcher().removeTarget(connector.getBridgeSendChannel());
     }
 
     /**
-     * 将之前链接的发送者解除绑定，解除桥接数据发送功能
+     * 解除所有的转发目标，解除桥接数据发送功能
      */
     public void unBindToBridge() {
+        getBridgeSocketDispatcher().bindTarget(null);
+    }
+
+    private BridgeSocketDispatcher getBridgeSocketDispatcher() {
+        ReceiveDispatcher receiveDispatcher = this.receiveDispatcher;
         if (!(receiveDispatcher instanceof BridgeSocketDispatcher)) {
             throw new IllegalStateException("receiveDispatcher is not BridgeSocketDispatcher!");
         }
+        return (BridgeSocketDispatcher) receiveDispatcher;
+    }
+
+    private Connector checkBridgeTarget(Connector connector) {
+        if (connector == this) {
+            throw new UnsupportedOperationException("Can not set current connector sender to self bridge mode!");
+        }
+        return connector;
+    }
+
+    /**
+     * 当前链接作为桥接的转发目标时，发送者将被桥接的发送通道接管，不再发送 Packet；多个桥接来源共享同一个发送通道。
+     *
+     * @return 当前链接的桥接发送通道
+     */
+    public synchronized BridgeSendChannel getBridgeSendChannel() {
+        if (bridgeSendChannel == null) {
+            bridgeSendChannel = new BridgeSendChannel(sender);
+        }
+        return bridgeSendChannel;
+    }
+
+    /**
+     * 当前是否可写，待发送的数据超过高水位时不可写，此时继续发送的包将按照溢出策略处理
+     */
+    public boolean isWritable() {
+        return sendDispatcher.isWritable();
+    }
+
+    /**
+     * 设置当前链接待发送数据的水位，默认使用 IoContext 中的设置
+     *
+     * @param low  低水位，待发送的数据量降到该值及以下时恢复可写
+     * @param high 高水位，待发送的数据量达到该值时变为不可写
+     */
+    public void setSendWatermark(long low, long high) {
+        ((AsyncSendDispatcher) sendDispatcher).setWatermark(low, high);
+    }
 
-        ((BridgeSocketDispatcher) receiveDispatcher).bindSender(null);
+    /**
+     * 设置当前链接不可写时新发送的包的处理策略，默认使用 IoContext 中的设置
+     * <p>
+     * {@link SendOverflowPolicy#BLOCK} 只在专门的生产者线程中发送时阻塞，在 IO 线程或者分发线程中发送时直接丢弃新的包。
+     */
+    public void setSendOverflowPolicy(SendOverflowPolicy policy) {
+        ((AsyncSendDispatcher) sendDispatcher).setOverflowPolicy(policy);
+    }
+
+    /**
+     * 可写状态发生变化时回调，子类可以据此暂停或者恢复数据的产生，比如暂停读取文件
+     *
+     * @param writable 是否可写
+     */
+    protected void onWritabilityChanged(boolean writable) {
     }
 
     /**
@@ -151,6 +255,18 @@ public abstract class Connector implements Closeable {
         return sender;
     }
 
+    /**
+     * 获取当前链接读写时 IoArgs 容量的统计信息，桥接模式下接收方向不再统计
+     *
+     * @return 统计信息
+     */
+    public String getIoArgsStatistics() {
+        SendDispatcher sendDispatcher = this.sendDispatcher;
+        ReceiveDispatcher receiveDispatcher = this.receiveDispatcher;
+        return "send=" + (sendDispatcher instanceof AsyncSendDispatcher ? ((AsyncSendDispatcher) sendDispatcher).getIoArgsSizer() : null)
+                + ", receive=" + (receiveDispatcher instanceof AsyncReceiveDispatcher ? ((AsyncReceiveDispatcher) receiveDispatcher).getIoArgsSizer() : null);
+    }
+
     public void schedule(ScheduleJob scheduleJob) {
         synchronized (mScheduleJobs) {
             if (mScheduleJobs.contains(scheduleJob)) {
@@ -197,6 +313,12 @@ public abstract class Connector implements Closeable {
         }
         receiveDispatcher.close();
         sendDispatcher.close();
+        mResumableFiles.clear();
+        synchronized (this) {
+            if (bridgeSendChannel != null) {
+                bridgeSendChannel.close();
+            }
+        }
         sender.close();
         receiver.close();
         channel.close();
@@ -217,6 +339,12 @@ public abstract class Connector implements Closeable {
                 case Packet.TYPE_MEMORY_STRING://字符串
                     return new StringReceivePacket(length);
                 case Packet.TYPE_STREAM_FILE://文件
+                    ResumableFileHeader header = ResumableFileHeader.parse(headerInfo);
+                    ResumableFileStore store = header == null ? null : getResumableFileStore();
+                    if (store != null) {
+                        return createResumableReceivePacket(store, header, length, headerInfo);
+                    }
+                    // 不支持续传时按普通文件接收，没有确认，对方总是从头发送
                     return new FileReceivePacket(length, createNewReceiveFile(length, headerInfo));
                 case Packet.TYPE_STREAM_DIRECT://直流
                     return new StreamDirectReceivePacket(createNewReceiveDirectOutputStream(length, headerInfo), length);
@@ -230,8 +358,55 @@ public abstract class Connector implements Closeable {
             System.out.println(key + ": [Heartbeat]");
         }
 
+        @Override
+        public void onReceivedAcknowledge(byte[] contentHash, long acknowledgedLength) {
+            String hashKey = ResumableFileHeader.toHex(contentHash);
+            ResumableFile resumableFile = mResumableFiles.get(hashKey);
+            if (resumableFile == null) {
+                return;
+            }
+            ResumableFileSendPacket unusablePacket = resumableFile.onAcknowledged(acknowledgedLength);
+            if (unusablePacket != null) {
+                // 对方丢失了部分数据，正在发送的包已经无法使用，从确认的位置重新发送
+                sendDispatcher.cancel(unusablePacket);
+                try {
+                    send(resumableFile);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            } else if (resumableFile.isAcknowledged()) {
+                mResumableFiles.remove(hashKey, resumableFile);
+            }
+        }
+
     };
 
+    private ReceivePacket<?, ?> createResumableReceivePacket(ResumableFileStore store, ResumableFileHeader header, long length, byte[] headerInfo) {
+        if (length != header.getFileLength() - header.getOffset()) {
+            // 头部信息与包的长度不一致，丢弃数据
+            return new ResumableFileReceivePacket(length, null);
+        }
+        try {
+            ResumableFileStore.Session session = store.open(
+                    header,
+                    () -> createNewReceiveFile(header.getFileLength(), headerInfo),
+                    acknowledgedLength -> sendDispatcher.sendAcknowledge(header.getContentHash(), acknowledgedLength));
+            return new ResumableFileReceivePacket(length, session);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ResumableFileReceivePacket(length, null);
+        }
+    }
+
+    /**
+     * 接收可续传文件时保存接收状态的位置，返回 null 时不支持续传，可续传的文件按普通文件接收。
+     *
+     * @return 默认不支持续传
+     */
+    protected ResumableFileStore getResumableFileStore() {
+        return null;
+    }
+
     /**
      * 当接收包是文件时，需要得到一份空的文件用以数据存储。
      *
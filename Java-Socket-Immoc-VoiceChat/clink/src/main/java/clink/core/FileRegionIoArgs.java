@@ -0,0 +1,92 @@
+package clink.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 文件区间发送参数：先写出帧头，再通过 {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} 把文件的一段直接发送到 SocketChannel，
+ * 文件数据不经过用户空间的拷贝。
+ * <p>
+ * 一份 FileRegionIoArgs 对应一个完整的帧，需要消费完全，不属于 {@link IoArgsPool}，也不能被 {@link GatheringIoArgs} 聚合。
+ */
+public class FileRegionIoArgs extends IoArgs {
+
+    private final ByteBuffer headerBuffer;
+    private final FileChannel fileChannel;
+
+    // 下一次发送的文件位置
+    private long position;
+    // 剩余待发送的文件数据量
+    private long count;
+
+    /**
+     * @param header      帧头
+     * @param fileChannel 文件通道
+     * @param position    帧体在文件中的位置
+     * @param count       帧体的长度
+     */
+    public FileRegionIoArgs(byte[] header, FileChannel fileChannel, long position, long count) {
+        super(0, true);
+        this.headerBuffer = ByteBuffer.wrap(header);
+        this.fileChannel = fileChannel;
+        this.position = position;
+        this.count = count;
+    }
+
+    @Override
+    public int writeTo(SocketChannel socketChannel) throws IOException {
+        int bytesProduced = 0;
+
+        if (headerBuffer.hasRemaining()) {
+            int writeLength = socketChannel.write(headerBuffer);
+            if (writeLength < 0) {
+                throw new EOFException("Current write any data with:" + socketChannel);
+            }
+            bytesProduced += writeLength;
+            if (headerBuffer.hasRemaining()) {
+                // 帧头都没有写完，说明通道现在不能写了
+                return bytesProduced;
+            }
+        }
+
+        long transferred;
+        do {
+            transferred = fileChannel.transferTo(position, count, socketChannel);
+            if (transferred < 0) {
+                throw new EOFException("Current write any data with:" + socketChannel);
+            }
+            position += transferred;
+            count -= transferred;
+            bytesProduced += transferred;
+        } while (count > 0 && transferred != 0/*说明该通道现在不能写了*/);
+
+        if (count > 0 && position >= fileChannel.size()) {
+            // 文件被截断，无法再提供数据，此时帧已无法完整发送
+            throw new EOFException("File is truncated while transferring.");
+        }
+
+        return bytesProduced;
+    }
+
+    @Override
+    public int readFrom(SocketChannel socketChannel) {
+        throw new UnsupportedOperationException("FileRegionIoArgs only supports writing.");
+    }
+
+    @Override
+    public boolean remained() {
+        return headerBuffer.hasRemaining() || count > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FileRegionIoArgs{" +
+                "position=" + position +
+                ", count=" + count +
+                '}';
+    }
+
+}
@@ -35,11 +35,16 @@ public abstract class Frame {
     public static final byte TYPE_COMMAND_SEND_CANCEL = 41;
     // 指令-接受拒绝
     public static final byte TYPE_COMMAND_RECEIVE_REJECT = 42;
+    // 指令-接收确认，可续传的文件每校验并持久化一个分块，接收方回送一次已确认的长度
+    public static final byte TYPE_COMMAND_RECEIVE_ACK = 43;
     //心跳
     public static final byte TYPE_COMMAND_HEARTBEAT = 81;
 
     // Flag标记
     public static final byte FLAG_NONE = 0;
+    // 包的实体数据经过了压缩，标记在头帧上，实体帧不标记
+    public static final byte FLAG_COMPRESS_DEFLATE = 1;
+    public static final byte FLAG_COMPRESS_LZF = 2;
 
     // 头部6字节固定
     protected final byte[] header = new byte[FRAME_HEADER_LENGTH];
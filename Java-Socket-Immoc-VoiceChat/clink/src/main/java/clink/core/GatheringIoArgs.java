@@ -0,0 +1,133 @@
+package clink.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 聚合多个 IoArgs 的发送参数，通过 {@link SocketChannel#write(ByteBuffer[], int, int)} 一次系统调用写出多帧数据。
+ * <p>
+ * 内部的 IoArgs 都借自 {@link IoArgsPool}，归还当前对象时会一并归还；当前对象本身不被缓存，由发送调度者持有并反复使用。
+ */
+public class GatheringIoArgs extends IoArgs {
+
+    private final IoArgs[] components;
+    private final ByteBuffer[] buffers;
+
+    // 已添加的数量
+    private int count;
+    // 第一个还有剩余数据的 buffer 的下标
+    private int offset;
+    // 已添加的数据总量
+    private int totalBytes;
+
+    /**
+     * @param maxCount 最多聚合的 IoArgs 数量
+     */
+    public GatheringIoArgs(int maxCount) {
+        super(0, true);
+        this.components = new IoArgs[maxCount];
+        this.buffers = new ByteBuffer[maxCount];
+    }
+
+    /**
+     * 添加一个已经填充好数据（处于读取模式）的 IoArgs
+     *
+     * @return 已满时返回 false
+     */
+    public boolean add(IoArgs args) {
+        if (count == components.length) {
+            return false;
+        }
+        components[count] = args;
+        buffers[count] = args.buffer();
+        totalBytes += args.buffer().remaining();
+        count++;
+        return true;
+    }
+
+    /**
+     * 已聚合的 IoArgs 数量
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean isFull() {
+        return count == components.length;
+    }
+
+    /**
+     * 已聚合的数据总量
+     */
+    public int totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 归还内部所有的 IoArgs 并清空
+     */
+    void releaseComponents(IoArgsPool pool) {
+        for (int i = 0; i < count; i++) {
+            pool.release(components[i]);
+        }
+        clear();
+    }
+
+    /**
+     * 清空，但不归还内部的 IoArgs，用于把唯一的一份 IoArgs 直接交给调用者
+     */
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            components[i] = null;
+            buffers[i] = null;
+        }
+        count = 0;
+        offset = 0;
+        totalBytes = 0;
+    }
+
+    @Override
+    public int writeTo(SocketChannel socketChannel) throws IOException {
+        long bytesProduced = 0;
+        long writeLength;
+        do {
+            writeLength = socketChannel.write(buffers, offset, count - offset);
+            if (writeLength < 0) {
+                throw new EOFException("Current write any data with:" + socketChannel);
+            }
+            bytesProduced += writeLength;
+            skipConsumed();
+        } while (offset < count && writeLength != 0/*说明该通道现在不能写了*/);
+
+        return (int) bytesProduced;
+    }
+
+    private void skipConsumed() {
+        while (offset < count && !buffers[offset].hasRemaining()) {
+            offset++;
+        }
+    }
+
+    @Override
+    public int readFrom(SocketChannel socketChannel) {
+        throw new UnsupportedOperationException("GatheringIoArgs only supports writing.");
+    }
+
+    @Override
+    public boolean remained() {
+        skipConsumed();
+        return offset < count;
+    }
+
+    @Override
+    public String toString() {
+        return "GatheringIoArgs{" +
+                "count=" + count +
+                ", offset=" + offset +
+                ", totalBytes=" + totalBytes +
+                '}';
+    }
+
+}
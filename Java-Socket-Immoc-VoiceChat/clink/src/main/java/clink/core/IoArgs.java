@@ -3,6 +3,7 @@ package clink.core;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
@@ -24,7 +25,22 @@ public class IoArgs {
     /**
      * 是否需要消费所有的区间（读取、写入），主要用于直流的不定长数据包。
      */
-    private final boolean isNeedConsumeRemaining;
+    private boolean isNeedConsumeRemaining;
+
+    /**
+     * 非 {@link IoArgsPool} 创建
+     */
+    static final int SIZE_CLASS_NONE = -2;
+
+    /**
+     * 在 {@link IoArgsPool} 中的容量级别，-1 表示超出缓存级别
+     */
+    int sizeClass = SIZE_CLASS_NONE;
+
+    /**
+     * 当前是否已归还到 {@link IoArgsPool} 中
+     */
+    volatile boolean pooled;
 
     public IoArgs() {
         this(256);
@@ -38,9 +54,34 @@ public class IoArgs {
      * @param isNeedConsumeRemaining 可以只接收部分数据就返回。
      */
     public IoArgs(int size, boolean isNeedConsumeRemaining) {
+        this(size, isNeedConsumeRemaining, false);
+    }
+
+    /**
+     * @param isDirect 是否使用直接内存，直接内存在 SocketChannel 读写时可以避免一次额外的拷贝
+     */
+    public IoArgs(int size, boolean isNeedConsumeRemaining, boolean isDirect) {
         this.limit = size;
         this.isNeedConsumeRemaining = isNeedConsumeRemaining;
-        this.buffer = ByteBuffer.allocate(size);
+        this.buffer = isDirect ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    /**
+     * 包装一个已有的 ByteBuffer，不属于 {@link IoArgsPool}
+     */
+    IoArgs(ByteBuffer buffer) {
+        this.limit = buffer.limit();
+        this.isNeedConsumeRemaining = true;
+        this.buffer = buffer;
+    }
+
+    /**
+     * 创建当前可读数据的视图，视图与当前 IoArgs 共享数据但拥有独立的读取位置，用于把同一份数据交给多个发送者而不拷贝。
+     * <p>
+     * 视图不属于 {@link IoArgsPool}，在所有视图都不再使用之后才能归还当前 IoArgs。
+     */
+    public IoArgs duplicate() {
+        return new IoArgs(buffer.duplicate());
     }
 
     /**
@@ -64,6 +105,21 @@ public class IoArgs {
         return size;
     }
 
+    /**
+     * 将 IoArgs 中的数据写入到 target 中，直到 target 写满或者数据写完。
+     */
+    public int writeTo(ByteBuffer target) {
+        int size = Math.min(target.remaining(), buffer.remaining());
+        if (size <= 0) {
+            return 0;
+        }
+        ByteBuffer source = buffer.duplicate();
+        source.limit(source.position() + size);
+        target.put(source);
+        buffer.position(buffer.position() + size);
+        return size;
+    }
+
     /**
      * 从 readableByteChannel 中读取数据。【保证 IoArgs 读满】
      */
@@ -94,6 +150,36 @@ public class IoArgs {
         return bytesProduced;
     }
 
+    /**
+     * 从文件的指定位置读取数据，不改变 fileChannel 自身的位置。【保证 IoArgs 读满】
+     */
+    public int readFrom(FileChannel fileChannel, long position) throws IOException {
+        int bytesProduced = 0;
+        while (buffer.hasRemaining()) {
+            int readLength = fileChannel.read(buffer, position + bytesProduced);
+            if (readLength < 0) {//无法读取到更多的数据
+                throw new EOFException();
+            }
+            bytesProduced += readLength;
+        }
+        return bytesProduced;
+    }
+
+    /**
+     * 把数据写入到文件的指定位置，不改变 fileChannel 自身的位置。【保证 IoArgs 中数据全部写完】
+     */
+    public int writeTo(FileChannel fileChannel, long position) throws IOException {
+        int bytesProduced = 0;
+        while (buffer.hasRemaining()) {
+            int writeLength = fileChannel.write(buffer, position + bytesProduced);
+            if (writeLength < 0) {
+                throw new EOFException();
+            }
+            bytesProduced += writeLength;
+        }
+        return bytesProduced;
+    }
+
     /**
      * 从 SocketChannel 读取数据，直到不可读为止。【用于 {@link clink.impl.SocketChannelAdapter} 中的非阻塞读】
      */
@@ -172,6 +258,13 @@ public class IoArgs {
         return buffer.getInt();
     }
 
+    /**
+     * 内部的 ByteBuffer，用于 {@link GatheringIoArgs} 聚合写出
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
     public int capacity() {
         return buffer.capacity();
     }
@@ -180,6 +273,13 @@ public class IoArgs {
         return buffer.remaining() > 0;
     }
 
+    /**
+     * 剩余可读写的数据量
+     */
+    public int remaining() {
+        return buffer.remaining();
+    }
+
     /**
      * 是否需要填满 或 完全消费所有数据。
      *
@@ -189,6 +289,10 @@ public class IoArgs {
         return isNeedConsumeRemaining;
     }
 
+    void setNeedConsumeRemaining(boolean isNeedConsumeRemaining) {
+        this.isNeedConsumeRemaining = isNeedConsumeRemaining;
+    }
+
     /**
      * 填充数据
      *
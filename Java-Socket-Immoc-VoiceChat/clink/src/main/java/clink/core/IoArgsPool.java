@@ -0,0 +1,176 @@
+package clink.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * IoArgs 缓存池，按容量分级缓存直接内存（Direct Memory）的 IoArgs。
+ * <p>
+ * 连接量较大时，每个连接的读写都持有自己的堆内 IoArgs，除了大量的小对象外，每次 SocketChannel 读写时 JDK 内部还会再拷贝一次到临时的直接内存中。
+ * 使用直接内存并复用，既减少了 GC 压力，也减少了一次内存拷贝。
+ * <p>
+ * 使用方式：在 provideIoArgs 时 {@link #acquire(int, boolean)}，在 onConsumeCompleted/onConsumeFailed 时 {@link #release(IoArgs)}。
+ */
+public class IoArgsPool {
+
+    /**
+     * 默认的 IoArgs 容量
+     */
+    public static final int DEFAULT_SIZE = 256;
+
+    /**
+     * 容量分级，申请时取第一个不小于所需容量的级别，按倍增分级以对齐 {@link AdaptiveIoArgsSizer} 的容量表
+     */
+    private static final int[] SIZE_CLASSES = {256, 512, 1024, 2 * 1024, 4 * 1024, 8 * 1024, 16 * 1024, 32 * 1024, 64 * 1024};
+
+    /**
+     * 每一级默认最多缓存的数量
+     */
+    private static final int DEFAULT_MAX_CACHED_PER_CLASS = 1024;
+
+    private final boolean isDirect;
+    private final int maxCachedPerClass;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Queue<IoArgs>[] caches = new Queue[SIZE_CLASSES.length];
+    private final AtomicInteger[] cachedCounts = new AtomicInteger[SIZE_CLASSES.length];
+
+    /*统计信息*/
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final AtomicInteger outstandingCount = new AtomicInteger();
+
+    public IoArgsPool() {
+        this(true, DEFAULT_MAX_CACHED_PER_CLASS);
+    }
+
+    /**
+     * @param isDirect          是否使用直接内存
+     * @param maxCachedPerClass 每一级容量最多缓存的数量，超过后归还的 IoArgs 将直接丢弃
+     */
+    public IoArgsPool(boolean isDirect, int maxCachedPerClass) {
+        this.isDirect = isDirect;
+        this.maxCachedPerClass = maxCachedPerClass;
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            caches[i] = new ConcurrentLinkedQueue<>();
+            cachedCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * 借出一个容量不小于 size 的 IoArgs，超过最大级别的容量将不进行缓存。
+     *
+     * @param size                   所需容量
+     * @param isNeedConsumeRemaining 参考 {@link IoArgs#isNeedConsumeRemaining()}
+     * @return IoArgs，limit 已被重置为容量，且没有可读数据
+     */
+    public IoArgs acquire(int size, boolean isNeedConsumeRemaining) {
+        int sizeClass = sizeClassOf(size);
+        IoArgs args = null;
+
+        if (sizeClass >= 0) {
+            args = caches[sizeClass].poll();
+            if (args != null) {
+                cachedCounts[sizeClass].decrementAndGet();
+                hitCount.increment();
+            }
+        }
+
+        if (args == null) {
+            missCount.increment();
+            int capacity = sizeClass >= 0 ? SIZE_CLASSES[sizeClass] : size;
+            args = new IoArgs(capacity, isNeedConsumeRemaining, isDirect);
+            args.sizeClass = sizeClass;
+        }
+
+        args.pooled = false;
+        args.setNeedConsumeRemaining(isNeedConsumeRemaining);
+        args.resetLimit();
+        // 借出时没有任何可读数据，防止未填充的 IoArgs 把上一次的数据发送出去
+        args.startWriting();
+        args.finishWriting();
+        outstandingCount.incrementAndGet();
+        return args;
+    }
+
+    /**
+     * 归还一个 IoArgs，非本池借出的 IoArgs 将被忽略；{@link GatheringIoArgs} 将归还其内部所有的 IoArgs。
+     */
+    public void release(IoArgs args) {
+        if (args instanceof GatheringIoArgs) {
+            ((GatheringIoArgs) args).releaseComponents(this);
+            return;
+        }
+        if (args == null || args.sizeClass == IoArgs.SIZE_CLASS_NONE || args.pooled) {
+            return;
+        }
+        args.pooled = true;
+        outstandingCount.decrementAndGet();
+
+        int sizeClass = args.sizeClass;
+        if (sizeClass < 0) {
+            // 超出最大级别，不缓存
+            return;
+        }
+        if (cachedCounts[sizeClass].incrementAndGet() > maxCachedPerClass) {
+            cachedCounts[sizeClass].decrementAndGet();
+            return;
+        }
+        caches[sizeClass].offer(args);
+    }
+
+    private static int sizeClassOf(int size) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (size <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 借出时命中缓存的次数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 借出时未命中缓存而新建的次数
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 已借出但尚未归还的数量
+     */
+    public int getOutstandingCount() {
+        return outstandingCount.get();
+    }
+
+    /**
+     * 当前缓存于池中的数量
+     */
+    public int getCachedCount() {
+        int count = 0;
+        for (AtomicInteger cachedCount : cachedCounts) {
+            count += cachedCount.get();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "IoArgsPool{" +
+                "direct=" + isDirect +
+                ", hit=" + getHitCount() +
+                ", miss=" + getMissCount() +
+                ", outstanding=" + getOutstandingCount() +
+                ", cached=" + getCachedCount() +
+                '}';
+    }
+
+}
@@ -1,6 +1,7 @@
 package clink.core;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 上下文，用于初始化框架。
@@ -14,10 +15,42 @@ public class IoContext {
     private static IoContext INSTANCE;
     private final IoProvider ioProvider;
     private final Scheduler scheduler;
+    private final IoArgsPool ioArgsPool;
+    private final IoMetrics metrics;
+    private final int sendBatchFrames;
+    private final int sendBatchBytes;
+    private final boolean zeroCopyFile;
+    private final int ioArgsMinSize;
+    private final int ioArgsInitialSize;
+    private final int ioArgsMaxSize;
+    private final long sendLowWatermark;
+    private final long sendHighWatermark;
+    private final SendOverflowPolicy sendOverflowPolicy;
+    private final long sendBlockTimeoutMillis;
+    private final byte compressFlag;
+    private final int compressThreshold;
+    private final long mappedReceiveThreshold;
+    private final int mappedReceiveWindowSize;
 
-    private IoContext(IoProvider ioProvider, Scheduler scheduler) {
-        this.ioProvider = ioProvider;
-        this.scheduler = scheduler;
+    private IoContext(StartedBoot boot) {
+        this.ioProvider = boot.ioProvider;
+        this.scheduler = boot.scheduler;
+        this.ioArgsPool = boot.ioArgsPool;
+        this.metrics = boot.metrics;
+        this.sendBatchFrames = boot.sendBatchFrames;
+        this.sendBatchBytes = boot.sendBatchBytes;
+        this.zeroCopyFile = boot.zeroCopyFile;
+        this.ioArgsMinSize = boot.ioArgsMinSize;
+        this.ioArgsInitialSize = boot.ioArgsInitialSize;
+        this.ioArgsMaxSize = boot.ioArgsMaxSize;
+        this.sendLowWatermark = boot.sendLowWatermark;
+        this.sendHighWatermark = boot.sendHighWatermark;
+        this.sendOverflowPolicy = boot.sendOverflowPolicy;
+        this.sendBlockTimeoutMillis = boot.sendBlockTimeoutMillis;
+        this.compressFlag = boot.compressFlag;
+        this.compressThreshold = boot.compressThreshold;
+        this.mappedReceiveThreshold = boot.mappedReceiveThreshold;
+        this.mappedReceiveWindowSize = boot.mappedReceiveWindowSize;
     }
 
     public IoProvider getIoProvider() {
@@ -28,6 +61,101 @@ public class IoContext {
         return scheduler;
     }
 
+    public IoArgsPool ioArgsPool() {
+        return ioArgsPool;
+    }
+
+    /**
+     * 框架的运行指标
+     */
+    public IoMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * 单次聚合写出的最大帧数量（严格来说是 IoArgs 的数量），为 1 时表示不进行聚合
+     */
+    public int sendBatchFrames() {
+        return sendBatchFrames;
+    }
+
+    /**
+     * 单次聚合写出的数据量上限
+     */
+    public int sendBatchBytes() {
+        return sendBatchBytes;
+    }
+
+    /**
+     * 文件是否使用 FileChannel 直接发送与接收
+     */
+    public boolean isZeroCopyFile() {
+        return zeroCopyFile;
+    }
+
+    /**
+     * 为一个连接的一个方向创建自适应的 IoArgs 容量
+     */
+    public AdaptiveIoArgsSizer newIoArgsSizer() {
+        return new AdaptiveIoArgsSizer(ioArgsMinSize, ioArgsInitialSize, ioArgsMaxSize);
+    }
+
+    /**
+     * 每个连接待发送数据的默认低水位
+     */
+    public long sendLowWatermark() {
+        return sendLowWatermark;
+    }
+
+    /**
+     * 每个连接待发送数据的默认高水位
+     */
+    public long sendHighWatermark() {
+        return sendHighWatermark;
+    }
+
+    /**
+     * 连接不可写时新发送的包的默认处理策略
+     */
+    public SendOverflowPolicy sendOverflowPolicy() {
+        return sendOverflowPolicy;
+    }
+
+    /**
+     * {@link SendOverflowPolicy#BLOCK} 策略下发送者最长的等待时间
+     */
+    public long sendBlockTimeoutMillis() {
+        return sendBlockTimeoutMillis;
+    }
+
+    /**
+     * 发送内存包时使用的压缩算法，{@link Frame#FLAG_NONE} 表示不压缩
+     */
+    public byte compressFlag() {
+        return compressFlag;
+    }
+
+    /**
+     * 内存包的长度达到该值时才压缩
+     */
+    public int compressThreshold() {
+        return compressThreshold;
+    }
+
+    /**
+     * 指定长度的文件是否通过内存映射接收
+     */
+    public boolean isMappedReceive(long length) {
+        return mappedReceiveThreshold >= 0 && length > 0 && length >= mappedReceiveThreshold;
+    }
+
+    /**
+     * 内存映射接收文件时每次映射的窗口大小
+     */
+    public int mappedReceiveWindowSize() {
+        return mappedReceiveWindowSize;
+    }
+
     public static IoContext get() {
         return INSTANCE;
     }
@@ -56,6 +184,23 @@ public class IoContext {
 
         private IoProvider ioProvider;
         private Scheduler scheduler;
+        private IoArgsPool ioArgsPool;
+        private IoMetrics metrics;
+        private int sendBatchFrames = 16;
+        private int sendBatchBytes = 64 * 1024;
+        private boolean zeroCopyFile = true;
+        private int ioArgsMinSize = IoArgsPool.DEFAULT_SIZE;
+        private int ioArgsInitialSize = IoArgsPool.DEFAULT_SIZE;
+        private int ioArgsMaxSize = 64 * 1024;
+        // 默认不限制待发送的数据量，需要时通过 sendWatermark 开启
+        private long sendLowWatermark = Long.MAX_VALUE - 1;
+        private long sendHighWatermark = Long.MAX_VALUE;
+        private SendOverflowPolicy sendOverflowPolicy = SendOverflowPolicy.DROP_NEW;
+        private long sendBlockTimeoutMillis = 3000;
+        private byte compressFlag = Frame.FLAG_NONE;
+        private int compressThreshold = 1024;
+        private long mappedReceiveThreshold = -1;
+        private int mappedReceiveWindowSize = 64 * 1024 * 1024;
 
         private StartedBoot() {
         }
@@ -73,11 +218,158 @@ public class IoContext {
             return this;
         }
 
+        /**
+         * 向 IoContext 提供 IoArgs 缓存池，不设置则使用默认的直接内存缓存池
+         */
+        public StartedBoot ioArgsPool(IoArgsPool ioArgsPool) {
+            this.ioArgsPool = ioArgsPool;
+            return this;
+        }
+
+        /**
+         * 向 IoContext 提供运行指标的记录者，不设置则创建一个新的
+         */
+        public StartedBoot metrics(IoMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * 设置发送时聚合写出的参数，多个帧将通过一次 GatheringByteChannel#write(ByteBuffer[]) 写出
+         *
+         * @param maxFrames 单次最多聚合的帧数量，为 1 时表示不进行聚合
+         * @param maxBytes  单次最多聚合的数据量
+         */
+        public StartedBoot sendBatch(int maxFrames, int maxBytes) {
+            if (maxFrames < 1 || maxBytes < 1) {
+                throw new IllegalArgumentException("maxFrames and maxBytes must be greater than 0.");
+            }
+            this.sendBatchFrames = maxFrames;
+            this.sendBatchBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * 设置文件的传输方式，默认开启
+         *
+         * @param zeroCopyFile true 时发送方通过 FileChannel#transferTo 发送文件实体帧，接收方直接写入到文件的对应位置；
+         *                     false 时使用流的方式逐段拷贝
+         */
+        public StartedBoot zeroCopyFile(boolean zeroCopyFile) {
+            this.zeroCopyFile = zeroCopyFile;
+            return this;
+        }
+
+        /**
+         * 设置每个连接读写时 IoArgs 的容量范围，容量在范围内根据实际读写的数据量自动调整，参考 {@link AdaptiveIoArgsSizer}
+         *
+         * @param minimum 最小容量，空闲连接将停留在该容量
+         * @param initial 初始容量
+         * @param maximum 最大容量，单帧最大为 {@link Frame#MAX_CAPACITY}，更大的容量收益不大
+         */
+        public StartedBoot ioArgsSize(int minimum, int initial, int maximum) {
+            if (minimum < Frame.FRAME_HEADER_LENGTH || initial < minimum || maximum < initial) {
+                throw new IllegalArgumentException("Required FRAME_HEADER_LENGTH <= minimum <= initial <= maximum.");
+            }
+            this.ioArgsMinSize = minimum;
+            this.ioArgsInitialSize = initial;
+            this.ioArgsMaxSize = maximum;
+            return this;
+        }
+
+        /**
+         * 设置每个连接待发送数据的水位，只统计内存中的包，每个连接可以通过 {@link Connector#setSendWatermark(long, long)} 单独设置。
+         * <p>
+         * 默认不限制，连接总是可写，溢出策略不会生效；设置之后超过高水位时新发送的包按照 {@link #sendOverflowPolicy(SendOverflowPolicy, long, TimeUnit)} 处理
+         *
+         * @param low  低水位，待发送的数据量降到该值及以下时恢复可写
+         * @param high 高水位，待发送的数据量达到该值时变为不可写
+         */
+        public StartedBoot sendWatermark(long low, long high) {
+            if (low < 0 || high <= low) {
+                throw new IllegalArgumentException("Required 0 <= low < high.");
+            }
+            this.sendLowWatermark = low;
+            this.sendHighWatermark = high;
+            return this;
+        }
+
+        /**
+         * 设置连接不可写时新发送的包的处理策略，默认为 {@link SendOverflowPolicy#DROP_NEW}
+         * <p>
+         * {@link SendOverflowPolicy#BLOCK} 只用于在专门的生产者线程中发送的场景；在 IO 线程或者分发线程中（比如收到消息后转发给群组）
+         * 发送时不会阻塞，直接丢弃新的包。
+         *
+         * @param policy        策略
+         * @param blockTimeout  {@link SendOverflowPolicy#BLOCK} 策略下发送者最长的等待时间，超时后丢弃新的包
+         * @param blockTimeUnit 等待时间的单位
+         */
+        public StartedBoot sendOverflowPolicy(SendOverflowPolicy policy, long blockTimeout, TimeUnit blockTimeUnit) {
+            if (policy == null || blockTimeout < 0) {
+                throw new IllegalArgumentException("policy must not be null and blockTimeout must not be negative.");
+            }
+            this.sendOverflowPolicy = policy;
+            this.sendBlockTimeoutMillis = blockTimeUnit.toMillis(blockTimeout);
+            return this;
+        }
+
+        /**
+         * 设置发送内存包（字节、字符串）时的压缩算法，默认不压缩。
+         * <p>
+         * 接收方总是可以解压，与自己的设置无关，因此两端可以单独开启。压缩后没有变小的包按原样发送。
+         *
+         * @param flag      {@link Frame#FLAG_COMPRESS_DEFLATE}：压缩率高，适合带宽受限的场景；
+         *                  {@link Frame#FLAG_COMPRESS_LZF}：速度快，适合对延迟敏感的场景；{@link Frame#FLAG_NONE}：不压缩
+         * @param threshold 包的长度达到该值时才压缩，太小的包压缩的收益不足以抵消耗时
+         */
+        public StartedBoot compression(byte flag, int threshold) {
+            if (flag != Frame.FLAG_NONE && flag != Frame.FLAG_COMPRESS_DEFLATE && flag != Frame.FLAG_COMPRESS_LZF) {
+                throw new IllegalArgumentException("Unsupported compress flag:" + flag);
+            }
+            if (threshold < 0) {
+                throw new IllegalArgumentException("threshold must not be negative.");
+            }
+            this.compressFlag = flag;
+            this.compressThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * 开启内存映射接收文件，默认关闭。
+         * <p>
+         * 达到阈值的文件在收到头帧时即预分配为包的长度，并按窗口映射，实体帧从 Socket 读取的数据直接落在映射的内存中，
+         * 适合几百 M 以上的大文件；开启后优先于 {@link #zeroCopyFile(boolean)} 的接收方式。
+         *
+         * @param threshold  文件的长度达到该值时使用内存映射，小于 0 时关闭
+         * @param windowSize 每次映射的窗口大小，越大重新映射的次数越少，但是占用的虚拟内存越多
+         */
+        public StartedBoot mappedReceive(long threshold, int windowSize) {
+            if (windowSize <= 0) {
+                throw new IllegalArgumentException("windowSize must be positive.");
+            }
+            this.mappedReceiveThreshold = threshold;
+            this.mappedReceiveWindowSize = windowSize;
+            return this;
+        }
+
         /**
          * 启动 IoContext
          */
         public IoContext start() {
-            INSTANCE = new IoContext(ioProvider, scheduler);
+            if (ioArgsPool == null) {
+                ioArgsPool = new IoArgsPool();
+            }
+            if (metrics == null) {
+                metrics = new IoMetrics();
+            }
+            metrics.registerGauge("ioargs.outstanding", ioArgsPool::getOutstandingCount);
+            if (ioProvider != null) {
+                ioProvider.setMetrics(metrics);
+            }
+            if (scheduler != null) {
+                scheduler.setMetrics(metrics);
+            }
+            INSTANCE = new IoContext(this);
             return INSTANCE;
         }
     }
@@ -0,0 +1,594 @@
+package clink.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import clink.utils.LatencyHistogram;
+
+/**
+ * 框架的运行指标，由 {@link IoContext} 持有，所有连接共享一份。
+ * <p>
+ * 计数全部使用 {@link LongAdder}，多个 IO 线程同时自增时各自落在不同的单元上，不会互相竞争；耗时使用 {@link LatencyHistogram} 统计分位数。
+ * 记录一次只是一两次无竞争的自增，可以在生产环境中一直开启。
+ * <p>
+ * 读取时通过 {@link #snapshot()} 获取某一时刻的快照，快照之间相减即可得到一段时间内的增量；
+ * 也可以通过 {@link #scheduleSnapshot(Scheduler, long, TimeUnit, SnapshotListener)} 定时获取，快照可以输出为文本或者 JSON。
+ */
+public class IoMetrics {
+
+    private static final int TYPE_COUNT = 256;
+
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    // 按类型统计，下标为类型值
+    private final LongAdder[] packetsSent = newAdders();
+    private final LongAdder[] packetsReceived = newAdders();
+    private final LongAdder[] framesSent = newAdders();
+    private final LongAdder[] framesReceived = newAdders();
+    private final LongAdder packetsSendFailed = new LongAdder();
+    private final LongAdder packetsDropped = new LongAdder();
+    private final LongAdder unwritable = new LongAdder();
+    private final LongAdder packetsReceiveFailed = new LongAdder();
+
+    // 压缩前后的实体数据量，相除即是压缩率
+    private final LongAdder compressInput = new LongAdder();
+    private final LongAdder compressOutput = new LongAdder();
+
+    private final LongAdder selects = new LongAdder();
+    private final LongAdder selectorWakeups = new LongAdder();
+
+    private final LongAdder heartbeatsSent = new LongAdder();
+    private final LongAdder heartbeatsReceived = new LongAdder();
+    private final LongAdder idleTimeouts = new LongAdder();
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+
+    // 一个包从收到头帧到接收完成的耗时
+    private final LatencyHistogram packetReceiveLatency = new LatencyHistogram();
+    // 分发任务的排队耗时与执行耗时
+    private final LatencyHistogram deliveryWaitLatency = new LatencyHistogram();
+    private final LatencyHistogram deliveryHandleLatency = new LatencyHistogram();
+
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[TYPE_COUNT];
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 记录
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 从通道中读取了数据
+     */
+    public void onRead(long bytes) {
+        reads.increment();
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * 向通道中写出了数据
+     */
+    public void onWrite(long bytes) {
+        writes.increment();
+        bytesWritten.add(bytes);
+    }
+
+    public void onPacketSent(byte type, boolean isSucceed) {
+        if (isSucceed) {
+            packetsSent[type & 0xFF].increment();
+        } else {
+            packetsSendFailed.increment();
+        }
+    }
+
+    /**
+     * @param nanos 从收到头帧到接收完成的耗时
+     */
+    public void onPacketReceived(byte type, boolean isSucceed, long nanos) {
+        if (isSucceed) {
+            packetsReceived[type & 0xFF].increment();
+            packetReceiveLatency.recordNanos(nanos);
+        } else {
+            packetsReceiveFailed.increment();
+        }
+    }
+
+    /**
+     * 一个包因为连接不可写被丢弃，同时也会被统计为发送失败
+     */
+    public void onPacketDropped() {
+        packetsDropped.increment();
+    }
+
+    /**
+     * 一个连接从可写变为不可写
+     */
+    public void onUnwritable() {
+        unwritable.increment();
+    }
+
+    /**
+     * 一个包的实体数据被压缩，没有变小而按原样发送的包也会统计，此时 output 等于 input
+     */
+    public void onCompressed(long input, long output) {
+        compressInput.add(input);
+        compressOutput.add(output);
+    }
+
+    public void onFrameSent(byte type) {
+        framesSent[type & 0xFF].increment();
+    }
+
+    public void onFrameReceived(byte type) {
+        framesReceived[type & 0xFF].increment();
+    }
+
+    /**
+     * 选择器从 select 中返回了一次
+     */
+    public void onSelect() {
+        selects.increment();
+    }
+
+    /**
+     * 其他线程调用了一次 Selector#wakeup
+     */
+    public void onSelectorWakeup() {
+        selectorWakeups.increment();
+    }
+
+    public void onHeartbeatSent() {
+        heartbeatsSent.increment();
+    }
+
+    public void onHeartbeatReceived() {
+        heartbeatsReceived.increment();
+    }
+
+    public void onIdleTimeout() {
+        idleTimeouts.increment();
+    }
+
+    public void onConnectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public void onConnectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    /**
+     * 一个分发任务执行完成
+     *
+     * @param waitNanos   排队耗时
+     * @param handleNanos 执行耗时
+     */
+    public void onDelivered(long waitNanos, long handleNanos) {
+        deliveryWaitLatency.recordNanos(waitNanos);
+        deliveryHandleLatency.recordNanos(handleNanos);
+    }
+
+    /**
+     * 注册一个瞬时值，比如队列深度，在获取快照时读取
+     *
+     * @param name     名称，相同名称的会被替换
+     * @param supplier 获取瞬时值，需要是线程安全的
+     */
+    public void registerGauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public void unregisterGauge(String name) {
+        gauges.remove(name);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 读取
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 获取当前所有指标的快照，与记录并发时各个指标之间不保证是同一时刻的值
+     */
+    public Snapshot snapshot() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("bytes.read", bytesRead.sum());
+        counters.put("bytes.written", bytesWritten.sum());
+        counters.put("io.reads", reads.sum());
+        counters.put("io.writes", writes.sum());
+        putTypes(counters, "packets.sent.", packetsSent, true);
+        counters.put("packets.sent.failed", packetsSendFailed.sum());
+        counters.put("packets.sent.dropped", packetsDropped.sum());
+        counters.put("send.unwritable", unwritable.sum());
+        putTypes(counters, "packets.received.", packetsReceived, true);
+        counters.put("packets.received.failed", packetsReceiveFailed.sum());
+        counters.put("compress.bytes.in", compressInput.sum());
+        counters.put("compress.bytes.out", compressOutput.sum());
+        putTypes(counters, "frames.sent.", framesSent, false);
+        putTypes(counters, "frames.received.", framesReceived, false);
+        counters.put("selector.selects", selects.sum());
+        counters.put("selector.wakeups", selectorWakeups.sum());
+        counters.put("heartbeats.sent", heartbeatsSent.sum());
+        counters.put("heartbeats.received", heartbeatsReceived.sum());
+        counters.put("idle.timeouts", idleTimeouts.sum());
+        counters.put("connections.opened", connectionsOpened.sum());
+        counters.put("connections.closed", connectionsClosed.sum());
+
+        Map<String, Long> gauges = new LinkedHashMap<>();
+        gauges.put("connections.active", counters.get("connections.opened") - counters.get("connections.closed"));
+        for (Map.Entry<String, LongSupplier> entry : this.gauges.entrySet()) {
+            gauges.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+
+        Map<String, Latency> latencies = new LinkedHashMap<>();
+        latencies.put("packet.receive", new Latency(packetReceiveLatency));
+        latencies.put("delivery.wait", new Latency(deliveryWaitLatency));
+        latencies.put("delivery.handle", new Latency(deliveryHandleLatency));
+
+        return new Snapshot(System.currentTimeMillis(), counters, gauges, latencies);
+    }
+
+    /**
+     * 已知的类型总是输出，未知的类型只在出现过时输出
+     */
+    private static void putTypes(Map<String, Long> counters, String prefix, LongAdder[] adders, boolean isPacket) {
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            String name = isPacket ? packetTypeName((byte) type) : frameTypeName((byte) type);
+            long value = adders[type].sum();
+            if (name != null || value != 0) {
+                counters.put(prefix + (name != null ? name : "type" + type), value);
+            }
+        }
+    }
+
+    private static String packetTypeName(byte type) {
+        switch (type) {
+            case Packet.TYPE_MEMORY_BYTES:
+                return "bytes";
+            case Packet.TYPE_MEMORY_STRING:
+                return "string";
+            case Packet.TYPE_STREAM_FILE:
+                return "file";
+            case Packet.TYPE_STREAM_DIRECT:
+                return "direct";
+            default:
+                return null;
+        }
+    }
+
+    private static String frameTypeName(byte type) {
+        switch (type) {
+            case Frame.TYPE_PACKET_HEADER:
+                return "header";
+            case Frame.TYPE_PACKET_ENTITY:
+                return "entity";
+            case Frame.TYPE_COMMAND_SEND_CANCEL:
+                return "cancel";
+            case Frame.TYPE_COMMAND_RECEIVE_REJECT:
+                return "reject";
+            case Frame.TYPE_COMMAND_RECEIVE_ACK:
+                return "ack";
+            case Frame.TYPE_COMMAND_HEARTBEAT:
+                return "heartbeat";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 定时获取快照，快照在调度者的线程中获取并回调
+     *
+     * @param scheduler 调度者
+     * @param period    间隔
+     * @param unit      间隔的单位
+     * @param listener  快照回调
+     * @return 关闭后停止获取
+     */
+    public Closeable scheduleSnapshot(Scheduler scheduler, long period, TimeUnit unit, SnapshotListener listener) {
+        SnapshotReporter reporter = new SnapshotReporter(scheduler, period, unit, listener);
+        reporter.schedule();
+        return reporter;
+    }
+
+    public interface SnapshotListener {
+
+        /**
+         * @param current  当前的快照
+         * @param interval 与上一次快照之间的增量，第一次时为从启动到现在的增量
+         */
+        void onSnapshot(Snapshot current, Snapshot interval);
+
+    }
+
+    private class SnapshotReporter implements Runnable, Closeable {
+
+        private final Scheduler scheduler;
+        private final long period;
+        private final TimeUnit unit;
+        private final SnapshotListener listener;
+
+        private volatile boolean isClosed;
+        private volatile ScheduledFuture<?> future;
+        private Snapshot previous;
+
+        SnapshotReporter(Scheduler scheduler, long period, TimeUnit unit, SnapshotListener listener) {
+            if (period <= 0) {
+                throw new IllegalArgumentException("period must be greater than 0.");
+            }
+            this.scheduler = scheduler;
+            this.period = period;
+            this.unit = unit;
+            this.listener = listener;
+        }
+
+        void schedule() {
+            if (!isClosed) {
+                future = scheduler.schedule(this, period, unit);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (isClosed) {
+                return;
+            }
+            Snapshot current = snapshot();
+            try {
+                listener.onSnapshot(current, previous == null ? current : current.since(previous));
+            } catch (Throwable throwable) {
+                throwable.printStackTrace();
+            }
+            previous = current;
+            schedule();
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+            ScheduledFuture<?> future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 快照
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 某一时刻的指标快照，不可变。
+     * <p>
+     * 计数为累计值（由 {@link #since(Snapshot)} 得到的快照中为增量），瞬时值与耗时分位数总是获取时的值。
+     */
+    public static class Snapshot {
+
+        private final long timestamp;
+        private final long intervalMillis;
+        private final Map<String, Long> counters;
+        private final Map<String, Long> gauges;
+        private final Map<String, Latency> latencies;
+
+        Snapshot(long timestamp, Map<String, Long> counters, Map<String, Long> gauges, Map<String, Latency> latencies) {
+            this(timestamp, 0, counters, gauges, latencies);
+        }
+
+        private Snapshot(long timestamp, long intervalMillis, Map<String, Long> counters, Map<String, Long> gauges, Map<String, Latency> latencies) {
+            this.timestamp = timestamp;
+            this.intervalMillis = intervalMillis;
+            this.counters = Collections.unmodifiableMap(counters);
+            this.gauges = Collections.unmodifiableMap(gauges);
+            this.latencies = Collections.unmodifiableMap(latencies);
+        }
+
+        /**
+         * 与之前的快照相减，得到这段时间内的增量
+         */
+        public Snapshot since(Snapshot previous) {
+            Map<String, Long> delta = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                Long before = previous.counters.get(entry.getKey());
+                delta.put(entry.getKey(), entry.getValue() - (before == null ? 0 : before));
+            }
+            return new Snapshot(timestamp, timestamp - previous.timestamp, delta, new LinkedHashMap<>(gauges), new LinkedHashMap<>(latencies));
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return 增量快照所覆盖的时长，毫秒，累计快照为 0
+         */
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        /**
+         * @return 不存在时返回 0
+         */
+        public long getCounter(String name) {
+            Long value = counters.get(name);
+            return value == null ? 0 : value;
+        }
+
+        /**
+         * @return 不存在时返回 0
+         */
+        public long getGauge(String name) {
+            Long value = gauges.get(name);
+            return value == null ? 0 : value;
+        }
+
+        /**
+         * @return 不存在时返回 null
+         */
+        public Latency getLatency(String name) {
+            return latencies.get(name);
+        }
+
+        public Map<String, Long> getCounters() {
+            return counters;
+        }
+
+        public Map<String, Long> getGauges() {
+            return gauges;
+        }
+
+        public Map<String, Latency> getLatencies() {
+            return latencies;
+        }
+
+        /**
+         * 每行一个指标，形如 name=value
+         */
+        public String toText() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("timestamp=").append(timestamp).append('\n');
+            if (intervalMillis > 0) {
+                builder.append("interval=").append(intervalMillis).append("ms\n");
+            }
+            for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                builder.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+            }
+            for (Map.Entry<String, Long> entry : gauges.entrySet()) {
+                builder.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+            }
+            for (Map.Entry<String, Latency> entry : latencies.entrySet()) {
+                builder.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+            }
+            return builder.toString();
+        }
+
+        public String toJson() {
+            StringBuilder builder = new StringBuilder("{");
+            builder.append("\"timestamp\":").append(timestamp);
+            builder.append(",\"intervalMillis\":").append(intervalMillis);
+            appendJson(builder, "counters", counters);
+            appendJson(builder, "gauges", gauges);
+            builder.append(",\"latencies\":{");
+            boolean first = true;
+            for (Map.Entry<String, Latency> entry : latencies.entrySet()) {
+                builder.append(first ? "" : ",").append('"').append(entry.getKey()).append("\":").append(entry.getValue().toJson());
+                first = false;
+            }
+            return builder.append("}}").toString();
+        }
+
+        private static void appendJson(StringBuilder builder, String name, Map<String, Long> values) {
+            builder.append(",\"").append(name).append("\":{");
+            boolean first = true;
+            for (Map.Entry<String, Long> entry : values.entrySet()) {
+                builder.append(first ? "" : ",").append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+                first = false;
+            }
+            builder.append('}');
+        }
+
+        /**
+         * 输出到本地文件，先写入临时文件再替换，读取方不会读到写了一半的内容
+         *
+         * @param file 目标文件
+         * @param json true 时输出 JSON，否则输出文本
+         */
+        public void dump(File file, boolean json) throws IOException {
+            File temp = new File(file.getPath() + ".tmp");
+            Files.write(temp.toPath(), (json ? toJson() : toText()).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        @Override
+        public String toString() {
+            return toText();
+        }
+
+    }
+
+    /**
+     * 获取快照时耗时直方图的分位数，微秒
+     */
+    public static class Latency {
+
+        private final long count;
+        private final long min;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+        private final double mean;
+
+        Latency(LatencyHistogram histogram) {
+            count = histogram.getCount();
+            min = histogram.getMin();
+            p50 = histogram.percentile(50);
+            p99 = histogram.percentile(99);
+            p999 = histogram.percentile(99.9);
+            max = histogram.getMax();
+            mean = histogram.getMean();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT, "{\"count\":%d,\"min\":%d,\"p50\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d,\"mean\":%.1f}",
+                    count, min, p50, p99, p999, max, mean);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, min=%dus, p50=%dus, p99=%dus, p999=%dus, max=%dus, mean=%.1fus",
+                    count, min, p50, p99, p999, max, mean);
+        }
+
+    }
+
+}
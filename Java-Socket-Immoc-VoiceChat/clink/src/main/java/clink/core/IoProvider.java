@@ -2,6 +2,7 @@ package clink.core;
 
 import java.io.Closeable;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * IO 读写调度器，可以把 关心可读/可写 的 SocketChannel 注册给 IoProvider ，当可读/可写时，对应的回调将会被调用。
@@ -26,10 +27,20 @@ public interface IoProvider extends Closeable {
 
     void unRegisterOutput(SocketChannel channel);
 
+    /**
+     * 设置运行指标的记录者，由 {@link IoContext} 启动时调用，实现可以记录选择器的唤醒次数等指标
+     */
+    default void setMetrics(IoMetrics metrics) {
+    }
+
     /**
      * 与关心可读/写的SocketChannel对应
      */
     abstract class HandleProviderCallback implements Runnable {
+
+        private static final AtomicReferenceFieldUpdater<HandleProviderCallback, IoArgs> ATTACH_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(HandleProviderCallback.class, IoArgs.class, "attach");
+
         /**
          * 附加本次未完全消费完成的IoArgs，然后进行自循环。
          */
@@ -37,7 +48,15 @@ public interface IoProvider extends Closeable {
 
         @Override
         public final void run() {
-            onProviderIo(attach);
+            // 取出附加的IoArgs，回调期间由回调持有
+            onProviderIo(takeAttach());
+        }
+
+        /**
+         * 取出并清空附加的IoArgs，与回调并发时只有一方可以取到
+         */
+        public IoArgs takeAttach() {
+            return ATTACH_UPDATER.getAndSet(this, null);
         }
 
         /**
@@ -0,0 +1,225 @@
+package clink.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 通过内存映射接收文件：创建时把文件预分配为包的长度，按窗口映射文件，实体帧从 Socket 读取的数据直接落在映射的内存中，
+ * 不再需要用户空间的缓冲与 write 系统调用，数据由操作系统在后台写回磁盘。
+ * <p>
+ * 同一个包的实体帧是顺序到达的，因此只需要映射当前的窗口，越过窗口时释放旧的映射再映射下一个窗口。
+ * <p>
+ * 映射的内存在被访问时释放会导致进程崩溃，因此映射区间借出期间（{@link #acquireRegion(long, int)} 到 {@link #releaseRegion()}）
+ * 调用 {@link #finish(long, boolean)} 时只做标记，等到归还区间时再释放映射与文件。
+ */
+public class MappedFileWriter implements Closeable {
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final long mLength;
+    private final int mWindowSize;
+
+    private MappedByteBuffer mWindow;
+    private long mWindowStart;
+
+    // 以下状态由 this 保护
+    private boolean mRegionAcquired;
+    private boolean mFinished;
+    private boolean mReleased;
+    private long mWrittenLength;
+    private boolean mIsSucceed;
+
+    /**
+     * @param file       接收的文件
+     * @param length     文件的长度，创建时即预分配
+     * @param windowSize 每次映射的窗口大小
+     */
+    public MappedFileWriter(File file, long length, int windowSize) throws IOException {
+        if (length <= 0 || windowSize <= 0) {
+            throw new IllegalArgumentException("length and windowSize must be positive.");
+        }
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            mFile.setLength(length);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+        mChannel = mFile.getChannel();
+        mLength = length;
+        mWindowSize = windowSize;
+    }
+
+    /**
+     * 借出文件中从 position 开始的映射区间，超出当前窗口时映射新的窗口
+     *
+     * @param length 期望的长度，返回的区间不会越过窗口的末尾，因此可能更短
+     * @return 区间的 position 为 0，limit 为区间的长度
+     */
+    public synchronized ByteBuffer acquireRegion(long position, int length) throws IOException {
+        if (mFinished) {
+            throw new IOException("MappedFileWriter has been finished.");
+        }
+        if (position < 0 || position >= mLength) {
+            throw new IOException("Position out of file: " + position);
+        }
+        MappedByteBuffer window = mWindow;
+        if (window == null || position < mWindowStart || position >= mWindowStart + window.capacity()) {
+            unmap(window);
+            mWindowStart = position - position % mWindowSize;
+            long size = Math.min(mWindowSize, mLength - mWindowStart);
+            window = mWindow = mChannel.map(FileChannel.MapMode.READ_WRITE, mWindowStart, size);
+        }
+        int offset = (int) (position - mWindowStart);
+        int size = Math.min(length, window.capacity() - offset);
+        ByteBuffer region = window.duplicate();
+        region.position(offset);
+        region.limit(offset + size);
+        mRegionAcquired = true;
+        return region.slice();
+    }
+
+    /**
+     * 归还 {@link #acquireRegion(long, int)} 借出的区间，区间借出期间已经结束时在这里释放
+     */
+    public void releaseRegion() {
+        synchronized (this) {
+            mRegionAcquired = false;
+            if (!mFinished || mReleased) {
+                return;
+            }
+            mReleased = true;
+        }
+        release();
+    }
+
+    /**
+     * 把 args 中的数据拷贝到文件的 position 处，用于数据没有直接读取到映射区间的情况
+     *
+     * @return 拷贝的数据量
+     */
+    public int write(IoArgs args, long position) throws IOException {
+        int count = 0;
+        while (args.remained()) {
+            ByteBuffer region = acquireRegion(position + count, args.remaining());
+            try {
+                count += args.writeTo(region);
+            } finally {
+                releaseRegion();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 结束写入，释放映射与文件
+     *
+     * @param writtenLength 已经写入的长度
+     * @param isSucceed     是否完整接收，未完整接收时文件截断为已写入的长度，与流的方式接收失败时的结果一致
+     */
+    public void finish(long writtenLength, boolean isSucceed) {
+        synchronized (this) {
+            if (mFinished) {
+                return;
+            }
+            mFinished = true;
+            mWrittenLength = writtenLength;
+            mIsSucceed = isSucceed;
+            if (mRegionAcquired) {
+                // 区间还在使用中，归还时再释放
+                return;
+            }
+            mReleased = true;
+        }
+        release();
+    }
+
+    private void release() {
+        unmap(mWindow);
+        mWindow = null;
+        try {
+            if (!mIsSucceed) {
+                mFile.setLength(mWrittenLength);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                mFile.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 与接收失败一样结束
+     */
+    @Override
+    public void close() {
+        finish(0, false);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 释放映射
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            // Java 9 之后通过 Unsafe#invokeCleaner 释放
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Exception ignored) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * 立即释放映射，不等待 GC；释放失败时交给 GC 处理
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                // Java 8 通过 DirectBuffer#cleaner 释放
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception ignored) {
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedFileWriter{" +
+                "length=" + mLength +
+                ", windowStart=" + mWindowStart +
+                ", windowSize=" + mWindowSize +
+                '}';
+    }
+
+}
@@ -0,0 +1,37 @@
+package clink.core;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 映射区间接收参数：包装 {@link MappedFileWriter} 借出的映射区间，从 SocketChannel 读取的数据直接落在文件映射的内存中，
+ * 不经过缓冲的拷贝，也没有写文件的系统调用。
+ * <p>
+ * 一份 MappedRegionIoArgs 对应一个实体帧的一段帧体，需要读满，不属于 {@link IoArgsPool}；使用完成后需要通过 {@link #release()} 归还区间。
+ */
+public class MappedRegionIoArgs extends IoArgs {
+
+    private final MappedFileWriter writer;
+
+    /**
+     * @param writer 借出区间的 MappedFileWriter
+     * @param region 映射区间
+     */
+    public MappedRegionIoArgs(MappedFileWriter writer, ByteBuffer region) {
+        super(region);
+        this.writer = writer;
+    }
+
+    @Override
+    public int writeTo(SocketChannel socketChannel) {
+        throw new UnsupportedOperationException("MappedRegionIoArgs only supports reading.");
+    }
+
+    /**
+     * 归还映射区间
+     */
+    public void release() {
+        writer.releaseRegion();
+    }
+
+}
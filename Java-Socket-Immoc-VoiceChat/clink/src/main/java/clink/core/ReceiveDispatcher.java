@@ -41,6 +41,15 @@ public interface ReceiveDispatcher extends Closeable {
          */
         void onReceivedHeartbeat();
 
+        /**
+         * 当收到对方的接收确认时触发，用于可续传的文件
+         *
+         * @param contentHash        被确认的文件的内容摘要
+         * @param acknowledgedLength 对方已经校验并持久化的长度
+         */
+        default void onReceivedAcknowledge(byte[] contentHash, long acknowledgedLength) {
+        }
+
     }
 
 
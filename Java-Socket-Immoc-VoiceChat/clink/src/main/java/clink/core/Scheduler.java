@@ -26,4 +26,22 @@ public interface Scheduler extends Closeable {
      */
     void delivery(Runnable runnable);
 
+    /**
+     * 分发执行一份有顺序要求的任务，key 相同的任务按提交顺序串行执行，key 不同的任务可以并行执行。
+     * <p>
+     * 默认交给 {@link #delivery(Runnable)}，只有一个分发线程时顺序自然得到保证。
+     *
+     * @param key      任务的 key，比如任务所属的连接
+     * @param runnable Runnable
+     */
+    default void delivery(Object key, Runnable runnable) {
+        delivery(runnable);
+    }
+
+    /**
+     * 设置运行指标的记录者，由 {@link IoContext} 启动时调用，实现可以记录分发任务的耗时与队列深度
+     */
+    default void setMetrics(IoMetrics metrics) {
+    }
+
 }
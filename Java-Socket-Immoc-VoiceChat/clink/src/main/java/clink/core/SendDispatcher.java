@@ -30,4 +30,33 @@ public interface SendDispatcher extends Closeable {
      */
     void sendHeartbeat();
 
+    /**
+     * 发送一个接收确认，告知对方可续传的文件已经校验并持久化的长度
+     *
+     * @param contentHash        文件的内容摘要
+     * @param acknowledgedLength 已经确认的长度
+     */
+    void sendAcknowledge(byte[] contentHash, long acknowledgedLength);
+
+    /**
+     * 当前是否可写，待发送的数据超过高水位时为 false，降到低水位以下时恢复为 true
+     */
+    default boolean isWritable() {
+        return true;
+    }
+
+    /**
+     * 可写状态变化的回调，在引起变化的发送线程或者 IO 线程中回调，不要在回调中执行耗时操作
+     */
+    interface WritabilityListener {
+
+        /**
+         * 回调可能与状态变化的顺序不一致，需要时通过 {@link SendDispatcher#isWritable()} 重新确认
+         *
+         * @param writable 是否可写
+         */
+        void onWritabilityChanged(boolean writable);
+
+    }
+
 }
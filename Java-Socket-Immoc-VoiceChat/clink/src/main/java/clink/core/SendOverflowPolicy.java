@@ -0,0 +1,34 @@
+package clink.core;
+
+/**
+ * 连接待发送的数据超过高水位时，新发送的包的处理策略。
+ * <p>
+ * 待发送的数据量只统计内存中的包（字节、字符串），文件与直流包的数据不在内存中，不参与统计，也不会因为水位被丢弃。
+ */
+public enum SendOverflowPolicy {
+
+    /**
+     * 丢弃队列中最早的内存包，直到低于高水位，再加入新的包；适合只关心最新消息的场景，比如状态推送
+     */
+    DROP_OLDEST,
+
+    /**
+     * 丢弃新的包，已在队列中的包不受影响
+     */
+    DROP_NEW,
+
+    /**
+     * 断开连接，对端长时间不读取数据时及时释放服务器的资源
+     */
+    DISCONNECT,
+
+    /**
+     * 阻塞发送者直到低于低水位、连接关闭或者等待超时，超时后丢弃新的包。
+     * <p>
+     * 只适合在专门的发送线程中调用 send，比如业务自己的生产者线程。IO 线程与分发线程被多个连接共享，
+     * 在其中阻塞会拖慢同一线程上的所有连接（比如群组转发时一个读取很慢的成员阻塞整个分发条带），
+     * 因此在这些线程中发送时不会等待，与 {@link #DROP_NEW} 一致。
+     */
+    BLOCK
+
+}
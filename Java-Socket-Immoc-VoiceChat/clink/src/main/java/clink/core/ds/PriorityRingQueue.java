@@ -0,0 +1,276 @@
+package clink.core.ds;
+
+import java.util.function.Consumer;
+
+/**
+ * 按优先级分组、组内轮转的队列，用于多个包的帧交错发送。
+ * <p>
+ * 每个元素由一个 {@link Node} 持有，节点放入所属优先级的环形链表中：
+ * <ul>
+ *     <li>权重为 {@link #STRICT} 的优先级只要不为空就总是先取出，用于取消、心跳等指令；</li>
+ *     <li>其他优先级之间按权重轮转：轮到某个优先级时最多连续取出 weight 次，再轮到下一个，低优先级不会被饿死；</li>
+ *     <li>同一优先级内的节点轮流取出，节点通过 {@link #rotate(Node, Object)} 更新元素后排到环的末尾；
+ *     通过 {@link #replace(Node, Object)} 更新元素时保持在环首，同一优先级内按加入的顺序逐个取完。</li>
+ * </ul>
+ * 取出的节点在被轮转或者移除之前一直是当前节点，{@link #peek()} 重复调用返回同一个元素，保证一个元素可以分多次消费。
+ * <p>
+ * 加入、取出、轮转、移除都是 O(1)。非线程安全，由使用者同步。
+ *
+ * @param <Item> 元素类型
+ */
+public class PriorityRingQueue<Item> {
+
+    /**
+     * 严格优先的权重
+     */
+    public static final int STRICT = 0;
+
+    private final Ring<Item>[] mRings;
+    private Node<Item> mCurrent;
+    private int mSize;
+
+    // 正在轮转的非严格优先级与剩余的次数
+    private int mCursor = -1;
+    private int mCredit;
+
+    /**
+     * @param weights 每个优先级的权重，下标即优先级，数值越小越靠前；严格优先的优先级需要排在所有非严格优先级之前
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PriorityRingQueue(int... weights) {
+        if (weights.length == 0) {
+            throw new IllegalArgumentException("At least one priority is required.");
+        }
+        mRings = new Ring[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("Weight must not be negative.");
+            }
+            if (i > 0 && weights[i] == STRICT && weights[i - 1] != STRICT) {
+                throw new IllegalArgumentException("Strict priorities must come first.");
+            }
+            mRings[i] = new Ring<>(weights[i]);
+        }
+    }
+
+    /**
+     * 加入一个元素，排在同一优先级的末尾
+     *
+     * @return 持有元素的节点，用于之后的轮转或者移除
+     */
+    public Node<Item> offer(Item item, int priority) {
+        Node<Item> node = new Node<>(item, mRings[priority]);
+        node.ring.add(node);
+        mSize++;
+        return node;
+    }
+
+    /**
+     * 获取当前节点的元素，没有当前节点时按照优先级与权重选出一个
+     *
+     * @return 队列为空时返回 null
+     */
+    public Item peek() {
+        Node<Item> current = current();
+        return current == null ? null : current.item;
+    }
+
+    /**
+     * 获取当前节点，没有当前节点时按照优先级与权重选出一个
+     *
+     * @return 队列为空时返回 null
+     */
+    public Node<Item> current() {
+        if (mCurrent == null && mSize > 0) {
+            mCurrent = select();
+        }
+        return mCurrent;
+    }
+
+    private Node<Item> select() {
+        Ring<Item>[] rings = mRings;
+        int first = 0;
+        for (; first < rings.length && rings[first].weight == STRICT; first++) {
+            if (rings[first].head != null) {
+                return rings[first].head;
+            }
+        }
+        int count = rings.length - first;
+        if (count == 0) {
+            return null;
+        }
+        if (mCursor < first) {
+            mCursor = first;
+            mCredit = rings[first].weight;
+        }
+        // 最多绕一圈，当前优先级的次数用完或者为空时轮到下一个
+        for (int i = 0; i <= count; i++) {
+            Ring<Item> ring = rings[mCursor];
+            if (ring.head != null && mCredit > 0) {
+                mCredit--;
+                return ring.head;
+            }
+            mCursor = mCursor + 1 < rings.length ? mCursor + 1 : first;
+            mCredit = rings[mCursor].weight;
+        }
+        return null;
+    }
+
+    /**
+     * 节点的元素消费完成，替换为下一个元素并排到同一优先级的末尾，同优先级的其他节点先被取出
+     */
+    public void rotate(Node<Item> node, Item next) {
+        node.item = next;
+        if (mCurrent == node) {
+            mCurrent = null;
+        }
+        Ring<Item> ring = node.ring;
+        if (ring != null && ring.head == node) {
+            ring.head = node.next;
+        }
+    }
+
+    /**
+     * 节点的元素消费完成，替换为下一个元素但不改变在同一优先级中的位置，下次轮到这个优先级时仍然先取出它
+     */
+    public void replace(Node<Item> node, Item next) {
+        node.item = next;
+        if (mCurrent == node) {
+            // 重新按优先级与权重选择，严格优先的元素可以插队
+            mCurrent = null;
+        }
+    }
+
+    /**
+     * 移除一个节点，已经移除的节点再次移除时忽略
+     */
+    public void remove(Node<Item> node) {
+        if (node.ring == null) {
+            return;
+        }
+        if (mCurrent == node) {
+            mCurrent = null;
+        }
+        node.ring.remove(node);
+        node.ring = null;
+        mSize--;
+    }
+
+    /**
+     * 遍历所有的元素，不改变队列
+     */
+    public void forEach(Consumer<Item> action) {
+        for (Ring<Item> ring : mRings) {
+            Node<Item> head = ring.head;
+            if (head == null) {
+                continue;
+            }
+            Node<Item> node = head;
+            do {
+                Node<Item> next = node.next;
+                action.accept(node.item);
+                node = next;
+            } while (node != head);
+        }
+    }
+
+    /**
+     * 移除所有的节点
+     */
+    public void clear() {
+        for (Ring<Item> ring : mRings) {
+            Node<Item> head = ring.head;
+            if (head == null) {
+                continue;
+            }
+            Node<Item> node = head;
+            do {
+                node.ring = null;
+                node = node.next;
+            } while (node != head);
+            ring.head = null;
+        }
+        mCurrent = null;
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * 持有一个元素的节点
+     */
+    public static final class Node<Item> {
+
+        private Item item;
+        private Ring<Item> ring;
+        private Node<Item> prev;
+        private Node<Item> next;
+
+        private Node(Item item, Ring<Item> ring) {
+            this.item = item;
+            this.ring = ring;
+        }
+
+        public Item item() {
+            return item;
+        }
+
+        /**
+         * 是否还在队列中
+         */
+        public boolean isQueued() {
+            return ring != null;
+        }
+
+    }
+
+    /**
+     * 同一优先级的双向环形链表，head 为下一个取出的节点
+     */
+    private static final class Ring<Item> {
+
+        private final int weight;
+        private Node<Item> head;
+
+        private Ring(int weight) {
+            this.weight = weight;
+        }
+
+        /*加入到 head 之前，即环的末尾*/
+        private void add(Node<Item> node) {
+            if (head == null) {
+                node.prev = node;
+                node.next = node;
+                head = node;
+            } else {
+                Node<Item> tail = head.prev;
+                node.prev = tail;
+                node.next = head;
+                tail.next = node;
+                head.prev = node;
+            }
+        }
+
+        private void remove(Node<Item> node) {
+            if (node.next == node) {
+                head = null;
+            } else {
+                node.prev.next = node.next;
+                node.next.prev = node.prev;
+                if (head == node) {
+                    head = node.next;
+                }
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+    }
+
+}
@@ -3,6 +3,7 @@ package clink.core.schedule;
 import java.util.concurrent.TimeUnit;
 
 import clink.core.Connector;
+import clink.core.IoContext;
 import clink.core.ScheduleJob;
 
 /**
@@ -28,6 +29,7 @@ public class IdleTimeoutScheduleJob extends ScheduleJob {
             // 调度下一次
             schedule(idleTimeoutMilliseconds);
             //执行这一次
+            IoContext.get().metrics().onIdleTimeout();
             try {
                 mConnector.fireIdleTimeoutEvent();
             } catch (Throwable throwable) {
@@ -0,0 +1,49 @@
+package clink.frame;
+
+import java.util.Arrays;
+
+import clink.core.IoArgs;
+
+/**
+ * 接收确认的接收帧，帧体接收完成后才能读取确认的内容。
+ */
+public class AckReceiveFrame extends AbsReceiveFrame {
+
+    private final byte[] body;
+
+    public AckReceiveFrame(byte[] header) {
+        super(header);
+        body = new byte[getBodyLength()];
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) {
+        int offset = body.length - bodyRemaining;
+        return args.writeTo(body, offset);
+    }
+
+    /**
+     * 接收方已经校验并持久化的长度
+     */
+    public long getAcknowledgedLength() {
+        if (body.length < AckSendFrame.ACK_LENGTH_BYTES) {
+            return -1;
+        }
+        return ((((long) body[0]) & 0xFFL) << 32)
+                | ((((long) body[1]) & 0xFFL) << 24)
+                | ((((long) body[2]) & 0xFFL) << 16)
+                | ((((long) body[3]) & 0xFFL) << 8)
+                | (((long) body[4]) & 0xFFL);
+    }
+
+    /**
+     * 被确认的文件的内容摘要
+     */
+    public byte[] getContentHash() {
+        if (body.length < AckSendFrame.ACK_LENGTH_BYTES) {
+            return new byte[0];
+        }
+        return Arrays.copyOfRange(body, AckSendFrame.ACK_LENGTH_BYTES, body.length);
+    }
+
+}
@@ -0,0 +1,43 @@
+package clink.frame;
+
+import clink.core.Frame;
+import clink.core.IoArgs;
+
+/**
+ * 接收确认的发送帧，帧体为 5 字节的已确认长度加上文件的内容摘要。
+ * <p>
+ * 确认帧由接收方发出，发送方按内容摘要找到对应的文件，不依赖包的唯一标识（包发送完成后标识可能已被复用），标识固定为 1。
+ */
+public class AckSendFrame extends AbsSendFrame {
+
+    static final int ACK_LENGTH_BYTES = 5;
+
+    private final byte[] body;
+
+    public AckSendFrame(byte[] contentHash, long acknowledgedLength) {
+        super(ACK_LENGTH_BYTES + contentHash.length,
+                Frame.TYPE_COMMAND_RECEIVE_ACK,
+                Frame.FLAG_NONE,
+                (short) 1);
+        body = new byte[ACK_LENGTH_BYTES + contentHash.length];
+        body[0] = (byte) (acknowledgedLength >> 32);
+        body[1] = (byte) (acknowledgedLength >> 24);
+        body[2] = (byte) (acknowledgedLength >> 16);
+        body[3] = (byte) (acknowledgedLength >> 8);
+        body[4] = (byte) (acknowledgedLength);
+        System.arraycopy(contentHash, 0, body, ACK_LENGTH_BYTES, contentHash.length);
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) {
+        int count = bodyRemaining;
+        int offset = body.length - count;
+        return args.readFrom(body, offset, count);
+    }
+
+    @Override
+    public Frame nextFrame() {
+        return null;
+    }
+
+}
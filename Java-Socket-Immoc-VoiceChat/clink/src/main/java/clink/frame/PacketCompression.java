@@ -0,0 +1,132 @@
+package clink.frame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterOutputStream;
+
+import clink.box.BytesSendPacket;
+import clink.box.SharedSendPacket;
+import clink.core.Frame;
+import clink.core.IoContext;
+import clink.core.SendPacket;
+import clink.utils.LzfCodec;
+
+/**
+ * 包级别的实体数据压缩。
+ * <p>
+ * 只压缩内存包（字节、字符串），它们的数据已经在内存中，发送前一次压缩完成，头帧中的包长度变为压缩后的长度，
+ * 并在头帧的 flag 中标记压缩算法、在头帧数据的末尾追加原始长度；文件与直流包不压缩。
+ * <p>
+ * 接收方根据头帧的 flag 把包的输出流包装为解压的流，实体帧到达时边接收边解压，不需要缓存整个压缩后的包。
+ */
+public final class PacketCompression {
+
+    private PacketCompression() {
+    }
+
+    /**
+     * 按照 IoContext 的设置压缩一个发送包的实体数据
+     *
+     * @return 不需要压缩或者压缩后没有变小时返回 null
+     */
+    static Encoded encode(SendPacket<?> packet) {
+        if (packet instanceof SharedSendPacket) {
+            // 共享包只压缩一次，所有的连接共用
+            SharedSendPacket sharedPacket = (SharedSendPacket) packet;
+            byte[] encodedEntity = sharedPacket.getEncodedEntity();
+            if (encodedEntity == null) {
+                Encoded encoded = encode(sharedPacket.getEntity());
+                if (encoded == null) {
+                    sharedPacket.setEncodedEntity(Frame.FLAG_NONE, sharedPacket.getEntity());
+                } else {
+                    sharedPacket.setEncodedEntity(encoded.flag, encoded.entity);
+                }
+                return encoded;
+            }
+            byte flag = sharedPacket.getEncodedFlag();
+            return flag == Frame.FLAG_NONE ? null : new Encoded(flag, encodedEntity);
+        } else if (packet instanceof BytesSendPacket) {
+            return encode(((BytesSendPacket) packet).getBytes());
+        }
+        return null;
+    }
+
+    private static Encoded encode(byte[] entity) {
+        IoContext ioContext = IoContext.get();
+        byte flag = ioContext.compressFlag();
+        if (flag == Frame.FLAG_NONE || entity.length < ioContext.compressThreshold()) {
+            return null;
+        }
+        byte[] compressed = compress(flag, entity, 0, entity.length);
+        if (compressed.length >= entity.length) {
+            ioContext.metrics().onCompressed(entity.length, entity.length);
+            return null;
+        }
+        ioContext.metrics().onCompressed(entity.length, compressed.length);
+        return new Encoded(flag, compressed);
+    }
+
+    /**
+     * 压缩数据
+     *
+     * @param flag 压缩算法，{@link Frame#FLAG_COMPRESS_DEFLATE} 或者 {@link Frame#FLAG_COMPRESS_LZF}
+     */
+    public static byte[] compress(byte flag, byte[] data, int offset, int length) {
+        switch (flag) {
+            case Frame.FLAG_COMPRESS_DEFLATE:
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    deflater.setInput(data, offset, length);
+                    deflater.finish();
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream(length / 2 + 16);
+                    byte[] buffer = new byte[Math.min(length + 16, 8 * 1024)];
+                    while (!deflater.finished()) {
+                        int count = deflater.deflate(buffer);
+                        outputStream.write(buffer, 0, count);
+                    }
+                    return outputStream.toByteArray();
+                } finally {
+                    // 及时释放本地内存，不等待 finalize
+                    deflater.end();
+                }
+            case Frame.FLAG_COMPRESS_LZF:
+                return LzfCodec.compress(data, offset, length);
+            default:
+                throw new UnsupportedOperationException("Unsupported compress flag:" + flag);
+        }
+    }
+
+    /**
+     * 创建一个解压的输出流，写入压缩的数据，解压后的数据写入到 out 中；关闭时结束解压并关闭 out。
+     *
+     * @param flag 头帧中的 flag
+     */
+    public static OutputStream newDecodingStream(byte flag, OutputStream out) {
+        switch (flag) {
+            case Frame.FLAG_COMPRESS_DEFLATE:
+                // 使用默认的 Inflater，关闭时会释放它的本地内存
+                return new InflaterOutputStream(out);
+            case Frame.FLAG_COMPRESS_LZF:
+                return LzfCodec.newDecodingStream(out);
+            default:
+                throw new UnsupportedOperationException("Unsupported compress flag:" + flag);
+        }
+    }
+
+    /**
+     * 压缩后的实体数据
+     */
+    static class Encoded {
+
+        final byte flag;
+        final byte[] entity;
+
+        Encoded(byte flag, byte[] entity) {
+            this.flag = flag;
+            this.entity = entity;
+        }
+
+    }
+
+}
@@ -1,9 +1,12 @@
 package clink.frame;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 
 import clink.core.IoArgs;
+import clink.core.MappedFileWriter;
+import clink.core.MappedRegionIoArgs;
 
 /**
  * 取消对应的packet发送
@@ -12,16 +15,93 @@ public class ReceiveEntityFrame extends AbsReceiveFrame {
 
     private WritableByteChannel channel;
 
+    // 文件通道以及当前帧在文件中的写入位置
+    private FileChannel fileChannel;
+    private long filePosition;
+    // 内存映射的文件，与 fileChannel 共用 filePosition
+    private MappedFileWriter mappedFile;
+
     ReceiveEntityFrame(byte[] header) {
         super(header);
     }
 
+    /**
+     * 使用新的帧头重置当前帧，用于复用同一个实例接收下一个实体帧
+     */
+    synchronized void reset(byte[] header) {
+        System.arraycopy(header, 0, this.header, 0, FRAME_HEADER_LENGTH);
+        bodyRemaining = getBodyLength();
+        channel = null;
+        fileChannel = null;
+        mappedFile = null;
+        filePosition = 0;
+    }
+
     public void bindPacketChannel(WritableByteChannel channel) {
         this.channel = channel;
     }
 
+    /**
+     * 绑定文件通道，数据将直接写入到文件的指定位置
+     *
+     * @param fileChannel 文件通道
+     * @param position    当前帧在文件中的起始位置
+     */
+    public void bindFileChannel(FileChannel fileChannel, long position) {
+        this.fileChannel = fileChannel;
+        this.filePosition = position;
+    }
+
+    /**
+     * 绑定内存映射的文件，数据将直接读取到文件映射的内存中
+     *
+     * @param mappedFile 内存映射的文件
+     * @param position   当前帧在文件中的起始位置
+     */
+    public void bindMappedFile(MappedFileWriter mappedFile, long position) {
+        this.mappedFile = mappedFile;
+        this.filePosition = position;
+    }
+
+    /**
+     * 是否通过内存映射写入到文件中
+     */
+    public boolean isBoundToMappedFile() {
+        return mappedFile != null;
+    }
+
+    /**
+     * 借出帧体剩余部分在文件中的映射区间，用于从 Socket 直接读取
+     */
+    public MappedRegionIoArgs takeMappedRegion() throws IOException {
+        return new MappedRegionIoArgs(mappedFile, mappedFile.acquireRegion(filePosition, bodyRemaining));
+    }
+
+    /**
+     * 是否直接写入到文件中
+     */
+    public boolean isBoundToFile() {
+        return fileChannel != null;
+    }
+
     @Override
     protected int consumeBody(IoArgs args) throws IOException {
+        if (mappedFile != null) {
+            int count;
+            if (args instanceof MappedRegionIoArgs) {
+                // 数据已经读取到映射的内存中
+                count = args.setEmpty(bodyRemaining);
+            } else {
+                count = mappedFile.write(args, filePosition);
+            }
+            filePosition += count;
+            return count;
+        }
+        if (fileChannel != null) {
+            int count = args.writeTo(fileChannel, filePosition);
+            filePosition += count;
+            return count;
+        }
         return channel == null ? args.setEmpty(bodyRemaining) : args.writeTo(channel);
     }
 
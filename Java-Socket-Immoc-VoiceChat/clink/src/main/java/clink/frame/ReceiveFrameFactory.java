@@ -15,16 +15,34 @@ public class ReceiveFrameFactory {
      * @return 构建的帧头数据
      */
     public static AbsReceiveFrame createInstance(IoArgs args) {
-        byte[] buffer = new byte[Frame.FRAME_HEADER_LENGTH];
+        return createInstance(args, new byte[Frame.FRAME_HEADER_LENGTH], null);
+    }
+
+    /**
+     * 使用传入的帧头数据构建接收帧，实体帧在接收中最为频繁，可以复用同一个实例，避免每一帧都分配内存
+     *
+     * @param args                IoArgs至少需要有6字节数据可读
+     * @param headerBuffer        用于读取帧头的缓冲，长度为{@link Frame#FRAME_HEADER_LENGTH}
+     * @param reusableEntityFrame 复用的实体帧，为 null 时新建
+     * @return 构建的帧头数据
+     */
+    public static AbsReceiveFrame createInstance(IoArgs args, byte[] headerBuffer, ReceiveEntityFrame reusableEntityFrame) {
+        byte[] buffer = headerBuffer;
         args.writeTo(buffer, 0);
         byte type = buffer[2];//第三个字节是类型标识
         switch (type) {
             case Frame.TYPE_PACKET_HEADER:
                 return new ReceiveHeaderFrame(buffer);
             case Frame.TYPE_PACKET_ENTITY:
-                return new ReceiveEntityFrame(buffer);
+                if (reusableEntityFrame == null) {
+                    return new ReceiveEntityFrame(buffer);
+                }
+                reusableEntityFrame.reset(buffer);
+                return reusableEntityFrame;
             case Frame.TYPE_COMMAND_SEND_CANCEL:
                 return new CancelReceiveFrame(buffer);
+            case Frame.TYPE_COMMAND_RECEIVE_ACK:
+                return new AckReceiveFrame(buffer);
             case Frame.TYPE_COMMAND_HEARTBEAT:
                 return HeartbeatReceiveFrame.INSTANCE;
             default:
@@ -32,4 +50,11 @@ public class ReceiveFrameFactory {
         }
     }
 
+    /**
+     * 创建一个可复用的实体帧，配合 {@link #createInstance(IoArgs, byte[], ReceiveEntityFrame)} 使用
+     */
+    public static ReceiveEntityFrame createReusableEntityFrame() {
+        return new ReceiveEntityFrame(new byte[Frame.FRAME_HEADER_LENGTH]);
+    }
+
 }
@@ -1,5 +1,6 @@
 package clink.frame;
 
+import clink.core.Frame;
 import clink.core.IoArgs;
 
 public class ReceiveHeaderFrame extends AbsReceiveFrame {
@@ -18,15 +19,36 @@ public class ReceiveHeaderFrame extends AbsReceiveFrame {
     }
 
     /**
-     * 获取包的长度，一共有五个字节用于存储包的长度。
+     * 获取包的长度，一共有五个字节用于存储包的长度；压缩的包返回解压后的原始长度。
      */
     public long getPacketLength() {
+        if (isCompressed()) {
+            return readLength(SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH);
+        }
+        return readLength(0);
+    }
+
+    /**
+     * 获取实体帧将要发送的数据长度，压缩的包为压缩后的长度，否则与包的长度相同。
+     */
+    public long getEntityLength() {
+        return readLength(0);
+    }
+
+    /**
+     * 包的实体数据是否经过压缩，压缩算法即是 {@link #getBodyFlag()}
+     */
+    public boolean isCompressed() {
+        return getBodyFlag() != Frame.FLAG_NONE;
+    }
+
+    private long readLength(int offset) {
         //&0xFF是为了避免字节复数符号位引起计算错误
-        return ((((long) body[0]) & 0xFFL) << 32)
-                | ((((long) body[1]) & 0xFFL) << 24)
-                | ((((long) body[2]) & 0xFFL) << 16)
-                | ((((long) body[3]) & 0xFFL) << 8)
-                | (((long) body[4]) & 0xFFL);
+        return ((((long) body[offset]) & 0xFFL) << 32)
+                | ((((long) body[offset + 1]) & 0xFFL) << 24)
+                | ((((long) body[offset + 2]) & 0xFFL) << 16)
+                | ((((long) body[offset + 3]) & 0xFFL) << 8)
+                | (((long) body[offset + 4]) & 0xFFL);
     }
 
     /**
@@ -40,10 +62,10 @@ public class ReceiveHeaderFrame extends AbsReceiveFrame {
      * 获取额外的头部信息
      */
     public byte[] getPacketHeaderInfo() {
-        if (body.length > SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH) {
-            byte[] headerInfo = new byte[body.length - SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH];
-            System.arraycopy(body, SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH,
-                    headerInfo, 0, headerInfo.length);
+        int offset = isCompressed() ? SendHeaderFrame.PACKET_HEADER_FRAME_COMPRESSED_LENGTH : SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH;
+        if (body.length > offset) {
+            byte[] headerInfo = new byte[body.length - offset];
+            System.arraycopy(body, offset, headerInfo, 0, headerInfo.length);
             return headerInfo;
         }
         return null;
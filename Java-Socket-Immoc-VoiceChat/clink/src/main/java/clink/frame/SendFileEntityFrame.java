@@ -0,0 +1,76 @@
+package clink.frame;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import clink.core.FileRegionIoArgs;
+import clink.core.Frame;
+import clink.core.IoArgs;
+import clink.core.SendPacket;
+
+/**
+ * 文件实体帧，与 {@link SendEntityFrame} 的帧结构完全一致，但帧体不经过 IoArgs 拷贝，
+ * 而是通过 {@link FileRegionIoArgs} 由 FileChannel 直接发送到 SocketChannel。
+ * <p>
+ * {@link clink.impl.async.AsyncPacketReader} 总是把文件实体帧整帧交给 {@link #takeRegion()} 发送，区间写出的过程中被取消时，
+ * 包要等到区间写出完成之后才能结束（关闭文件通道）。通过 {@link #handle(IoArgs)} 发送时与普通实体帧一样从文件中复制。
+ */
+public class SendFileEntityFrame extends AbsSendPacketFrame {
+
+    private final FileChannel mChannel;
+    private final long mPosition;
+    private final long mUnConsumeEntityLength;
+
+    SendFileEntityFrame(short identifier, long entityLength, FileChannel channel, long position, SendPacket<?> packet) {
+        super(
+                (int) Math.min(entityLength, Frame.MAX_CAPACITY),
+                Frame.TYPE_PACKET_ENTITY,
+                Frame.FLAG_NONE,
+                identifier,
+                packet);
+
+        mUnConsumeEntityLength = entityLength - bodyRemaining;
+        mChannel = channel;
+        mPosition = position;
+    }
+
+    /**
+     * 构建发送当前帧的 IoArgs，调用后当前帧被视为已全部消费
+     *
+     * @return 已被终止且未发送任何数据，或者已经构建过时返回 null
+     */
+    public synchronized FileRegionIoArgs takeRegion() {
+        if (isSending() || packet == null) {
+            return null;
+        }
+        mHeaderRemaining = 0;
+        bodyRemaining = 0;
+        return new FileRegionIoArgs(header, mChannel, mPosition, getBodyLength());
+    }
+
+    /**
+     * 是否已经通过 {@link #takeRegion()} 交出发送
+     */
+    public synchronized boolean isRegionTaken() {
+        return isSending();
+    }
+
+    @Override
+    protected Frame buildNextFrame() {
+        if (mUnConsumeEntityLength == 0) {
+            return null;
+        }
+        return new SendFileEntityFrame(getBodyIdentifier(), mUnConsumeEntityLength, mChannel, mPosition + getBodyLength(), packet);
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) throws IOException {
+        if (packet == null) {
+            // 已终止当前帧，文件通道可能已经关闭，填充假数据
+            return args.fillEmpty(bodyRemaining);
+        }
+        // 从帧体未发送的位置读取
+        return args.readFrom(mChannel, mPosition + getBodyLength() - bodyRemaining);
+    }
+
+}
@@ -1,12 +1,17 @@
 package clink.frame;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 
+import clink.box.SharedSendPacket;
 import clink.core.Frame;
 import clink.core.IoArgs;
+import clink.core.IoContext;
 import clink.core.Packet;
 import clink.core.SendPacket;
 
@@ -21,37 +26,81 @@ public class SendHeaderFrame extends AbsSendPacketFrame {
 
     //头部实体长度：5个字节用来表示实体数据长度，1个字节用来表示包的类型
     static final int PACKET_HEADER_FRAME_MIN_LENGTH = 6;/*头帧的实体数据最小长度*/
+    //压缩的包在末尾追加5个字节的原始长度，前5个字节为压缩后的实体数据长度
+    static final int PACKET_HEADER_FRAME_COMPRESSED_LENGTH = 11;
 
     private final byte[] body;
+    // 压缩后的实体数据，不压缩时为 null
+    private final PacketCompression.Encoded encoded;
 
     public SendHeaderFrame(short identifier, SendPacket sendPacket) {
-        super(PACKET_HEADER_FRAME_MIN_LENGTH,
+        this(identifier, sendPacket, PacketCompression.encode(sendPacket));
+    }
+
+    private SendHeaderFrame(short identifier, SendPacket sendPacket, PacketCompression.Encoded encoded) {
+        super((encoded == null ? PACKET_HEADER_FRAME_MIN_LENGTH : PACKET_HEADER_FRAME_COMPRESSED_LENGTH) + headerInfoLength(sendPacket),
                 Frame.TYPE_PACKET_HEADER,
-                Frame.FLAG_NONE,
+                encoded == null ? Frame.FLAG_NONE : encoded.flag,
                 identifier,
                 sendPacket);
 
+        this.encoded = encoded;
+
+        if (sendPacket instanceof SharedSendPacket) {
+            // 共享包的头部数据只构建一次
+            SharedSendPacket sharedPacket = (SharedSendPacket) sendPacket;
+            byte[] cachedBody = sharedPacket.getHeaderFrameBody();
+            if (cachedBody == null) {
+                cachedBody = buildBody(sendPacket, encoded, bodyRemaining);
+                sharedPacket.setHeaderFrameBody(cachedBody);
+            }
+            body = cachedBody;
+        } else {
+            body = buildBody(sendPacket, encoded, bodyRemaining);
+        }
+    }
+
+    /*头部额外信息追加在头帧数据的末尾*/
+    private static int headerInfoLength(SendPacket sendPacket) {
+        byte[] headerInfo = sendPacket.headerInfo();
+        return headerInfo == null ? 0 : headerInfo.length;
+    }
+
+    private static byte[] buildBody(SendPacket sendPacket, PacketCompression.Encoded encoded, int length) {
         // 头部对应的数据信息长度
-        body = new byte[bodyRemaining];
+        byte[] body = new byte[length];
 
-        //提取包的信息
+        //提取包的信息，压缩时实体帧发送的是压缩后的数据
         final long packetLength = sendPacket.getLength();
+        final long entityLength = encoded == null ? packetLength : encoded.entity.length;
         final byte packetType = sendPacket.getType();
         final byte[] packetHeaderInfo = sendPacket.headerInfo();
 
         // 头5字节存储长度信息低5字节（40位）数据
-        body[0] = (byte) (packetLength >> 32);
-        body[1] = (byte) (packetLength >> 24);
-        body[2] = (byte) (packetLength >> 16);
-        body[3] = (byte) (packetLength >> 8);
-        body[4] = (byte) (packetLength);
+        writeLength(body, 0, entityLength);
         //包类型
         body[5] = packetType;
 
-        //额外的头部信息，现在没有用
+        int headerInfoOffset = PACKET_HEADER_FRAME_MIN_LENGTH;
+        if (encoded != null) {
+            // 原始长度，接收方据此创建包
+            writeLength(body, PACKET_HEADER_FRAME_MIN_LENGTH, packetLength);
+            headerInfoOffset = PACKET_HEADER_FRAME_COMPRESSED_LENGTH;
+        }
+
+        //额外的头部信息，比如可续传文件的内容摘要与起始位置
         if (packetHeaderInfo != null) {
-            System.arraycopy(packetHeaderInfo, 0, body, PACKET_HEADER_FRAME_MIN_LENGTH, packetHeaderInfo.length);
+            System.arraycopy(packetHeaderInfo, 0, body, headerInfoOffset, packetHeaderInfo.length);
         }
+        return body;
+    }
+
+    private static void writeLength(byte[] body, int offset, long length) {
+        body[offset] = (byte) (length >> 32);
+        body[offset + 1] = (byte) (length >> 24);
+        body[offset + 2] = (byte) (length >> 16);
+        body[offset + 3] = (byte) (length >> 8);
+        body[offset + 4] = (byte) (length);
     }
 
     @Override
@@ -59,8 +108,24 @@ public class SendHeaderFrame extends AbsSendPacketFrame {
         byte type = packet.getType();
         if (type == Packet.TYPE_STREAM_DIRECT) {// 直流类型
             return SendDirectEntityFrame.buildEntityFrame(packet, getBodyIdentifier());
+        } else if (packet instanceof SharedSendPacket) {// 共享包直接读取共享的实体数据
+            SharedSendPacket sharedPacket = (SharedSendPacket) packet;
+            byte[] entity = encoded == null ? sharedPacket.getEntity() : encoded.entity;
+            return new SendSharedEntityFrame(getBodyIdentifier(), sharedPacket, entity, 0);
+        } else if (encoded != null) {// 压缩的内存包，发送压缩后的数据，不再打开包的流
+            ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(encoded.entity));
+            return new SendEntityFrame(getBodyIdentifier(), encoded.entity.length, channel, packet);
         } else { // 普通数据类型
             InputStream stream = packet.open();
+            if (stream instanceof FileInputStream && IoContext.get().isZeroCopyFile()) {
+                // 文件类型，由 FileChannel 直接发送
+                FileChannel fileChannel = ((FileInputStream) stream).getChannel();
+                try {
+                    return new SendFileEntityFrame(getBodyIdentifier(), packet.getLength(), fileChannel, fileChannel.position(), packet);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
             ReadableByteChannel channel = Channels.newChannel(stream);
             //头帧的下一帧就是数据帧的，所以它的下一帧数据帧就肯定是打开通开，开始数据读写。
             return new SendEntityFrame(getBodyIdentifier(), packet.getLength(), channel, packet);
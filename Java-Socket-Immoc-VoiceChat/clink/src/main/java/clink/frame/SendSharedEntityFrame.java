@@ -0,0 +1,50 @@
+package clink.frame;
+
+import clink.box.SharedSendPacket;
+import clink.core.Frame;
+import clink.core.IoArgs;
+
+/**
+ * 共享包的实体帧，与 {@link SendEntityFrame} 的帧结构完全一致，帧体直接从共享包的实体数据中按偏移读取，不打开流。
+ */
+public class SendSharedEntityFrame extends AbsSendPacketFrame {
+
+    private final byte[] mEntity;
+    // 当前帧体在实体数据中的偏移
+    private final int mOffset;
+
+    /**
+     * @param entity 发送的实体数据，共享包的实体数据或者压缩后的实体数据
+     */
+    SendSharedEntityFrame(short identifier, SharedSendPacket packet, byte[] entity, int offset) {
+        super(
+                Math.min(entity.length - offset, Frame.MAX_CAPACITY),
+                Frame.TYPE_PACKET_ENTITY,
+                Frame.FLAG_NONE,
+                identifier,
+                packet);
+
+        mEntity = entity;
+        mOffset = offset;
+    }
+
+    @Override
+    protected Frame buildNextFrame() {
+        int nextOffset = mOffset + getBodyLength();
+        if (nextOffset >= mEntity.length) {
+            return null;
+        }
+        return new SendSharedEntityFrame(getBodyIdentifier(), (SharedSendPacket) packet, mEntity, nextOffset);
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) {
+        if (packet == null) {
+            // 已终止当前帧，则填充假数据
+            return args.fillEmpty(bodyRemaining);
+        }
+        int consumed = getBodyLength() - bodyRemaining;
+        return args.readFrom(mEntity, mOffset + consumed, bodyRemaining);
+    }
+
+}
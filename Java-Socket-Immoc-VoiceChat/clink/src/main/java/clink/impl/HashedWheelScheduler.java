@@ -0,0 +1,411 @@
+package clink.impl;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import clink.core.IoMetrics;
+import clink.core.Scheduler;
+
+/**
+ * 基于哈希时间轮的调度者，适合大量连接的空闲超时与心跳这类对精度要求不高、又频繁重新调度与取消的任务。
+ * <p>
+ * {@link SchedulerImpl} 基于 ScheduledExecutorService，内部是一个堆结构的延迟队列，每次调度与取消都是 O(log n)，
+ * 十万个连接各自的空闲任务不停地重新调度时，开销集中在延迟队列的维护上。时间轮把任务按到期时间散列到固定数量的槽中：
+ * <ul>
+ * <li>调度：放入无锁队列，由时间轮线程在下一次 tick 时放入对应的槽，O(1)。</li>
+ * <li>取消：标记状态后放入取消队列，由时间轮线程从槽的链表中摘除，O(1)。</li>
+ * <li>执行：时间轮线程每个 tick 只处理当前槽中的任务，到期的任务直接在时间轮线程中执行。</li>
+ * </ul>
+ * 代价是精度：任务最多会延迟一个 tick 执行。任务在时间轮线程中执行，不能有耗时的操作。
+ */
+public class HashedWheelScheduler implements Scheduler {
+
+    // 每个 tick 最多从调度队列中转移的任务数量，防止调度过于密集时时间轮线程一直在转移而无法执行到期任务
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final Thread workerThread;
+    private final StripedDeliveryExecutor deliveryPool;
+    private final long startTime;
+
+    // 只由时间轮线程访问
+    private long tick;
+
+    private volatile boolean isClosed;
+
+    /**
+     * 默认 100 毫秒一个 tick，一圈 512 个槽
+     */
+    public HashedWheelScheduler() {
+        this(100, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * @param tickDuration  一个 tick 的时长，也即调度的精度
+     * @param unit          tickDuration 的单位
+     * @param ticksPerWheel 一圈的槽数，将被调整为 2 的幂
+     */
+    public HashedWheelScheduler(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this(tickDuration, unit, ticksPerWheel, 1);
+    }
+
+    /**
+     * @param tickDuration    一个 tick 的时长，也即调度的精度
+     * @param unit            tickDuration 的单位
+     * @param ticksPerWheel   一圈的槽数，将被调整为 2 的幂
+     * @param deliveryStripes 分发线程数量，同一个 key 的任务总是在同一个线程中按顺序执行
+     */
+    public HashedWheelScheduler(long tickDuration, TimeUnit unit, int ticksPerWheel, int deliveryStripes) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0.");
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("ticksPerWheel must be in (0, 2^30].");
+        }
+
+        int wheelSize = 1;
+        while (wheelSize < ticksPerWheel) {
+            wheelSize <<= 1;
+        }
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.tickDuration = unit.toNanos(tickDuration);
+
+        this.deliveryPool = new StripedDeliveryExecutor(deliveryStripes);
+        this.workerThread = new NameableThreadFactory("Scheduler-Wheel-Thread-").newThread(this::work);
+        this.startTime = System.nanoTime();
+        this.workerThread.start();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit) {
+        if (isClosed) {
+            throw new IllegalStateException("Scheduler is closed.");
+        }
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0)) - startTime;
+        WheelTimeout timeout = new WheelTimeout(this, runnable, deadline);
+        pendingTimeouts.offer(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void delivery(Runnable runnable) {
+        deliveryPool.execute(runnable);
+    }
+
+    @Override
+    public void delivery(Object key, Runnable runnable) {
+        deliveryPool.execute(key, runnable);
+    }
+
+    @Override
+    public void setMetrics(IoMetrics metrics) {
+        deliveryPool.setMetrics(metrics);
+        metrics.registerGauge("scheduler.pending", this::getPendingCount);
+    }
+
+    /**
+     * 分发执行器，用于获取各分发线程的统计信息
+     */
+    public StripedDeliveryExecutor getDeliveryExecutor() {
+        return deliveryPool;
+    }
+
+    /**
+     * 等待调度的任务数量（包括尚未转移到槽中的任务），仅用于统计
+     */
+    public int getPendingCount() {
+        int count = pendingTimeouts.size();
+        for (Bucket bucket : wheel) {
+            count += bucket.size;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+        workerThread.interrupt();
+        deliveryPool.close();
+    }
+
+    private void work() {
+        while (!isClosed) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+            removeCancelledTimeouts();
+            transferPendingTimeouts();
+            wheel[(int) (tick & mask)].expireTimeouts(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * 睡眠到下一个 tick
+     *
+     * @return 当前 tick 的截止时间（相对 startTime），被关闭时返回 -1
+     */
+    private long waitForNextTick() {
+        long deadline = tickDuration * (tick + 1);
+        for (; ; ) {
+            long currentTime = System.nanoTime() - startTime;
+            long sleepTimeMs = (deadline - currentTime + 999999) / 1000000;
+            if (sleepTimeMs <= 0) {
+                return currentTime;
+            }
+            try {
+                Thread.sleep(sleepTimeMs);
+            } catch (InterruptedException e) {
+                if (isClosed) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            WheelTimeout timeout = pendingTimeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (timeout.state != WheelTimeout.ST_INIT) {
+                // 转移之前就已经被取消
+                continue;
+            }
+            long calculated = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // 已经过期的任务放在当前槽中，本次 tick 就会执行
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * 时间轮中的一个槽，双向链表，只由时间轮线程访问
+     */
+    private static final class Bucket {
+
+        private WheelTimeout head;
+        private WheelTimeout tail;
+        // 只用于统计，允许其他线程读到旧值
+        private volatile int size;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+            size++;
+        }
+
+        void remove(WheelTimeout timeout) {
+            WheelTimeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            size--;
+        }
+
+        /**
+         * 执行当前槽中已经到期的任务，其余的任务剩余圈数减一
+         */
+        void expireTimeouts(long deadline) {
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= deadline) {
+                        timeout.expire();
+                    } else {
+                        throw new IllegalStateException("timeout.deadline > deadline");
+                    }
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * 时间轮中的一个任务
+     */
+    private static final class WheelTimeout implements ScheduledFuture<Void> {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+
+        private final HashedWheelScheduler scheduler;
+        private final Runnable task;
+        // 到期时间，相对 startTime
+        private final long deadline;
+
+        private volatile int state = ST_INIT;
+        // 任务已执行完成
+        private volatile boolean finished;
+        private Throwable cause;
+        // 在 get 中等待的线程数量，没有等待者时结束任务不需要获取锁
+        private volatile int waiters;
+
+        /*以下只由时间轮线程访问*/
+        long remainingRounds;
+        Bucket bucket;
+        WheelTimeout prev;
+        WheelTimeout next;
+
+        WheelTimeout(HashedWheelScheduler scheduler, Runnable task, long deadline) {
+            this.scheduler = scheduler;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        void expire() {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable throwable) {
+                cause = throwable;
+                throwable.printStackTrace();
+            }
+            finished = true;
+            notifyWaiters();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            scheduler.cancelledTimeouts.offer(this);
+            notifyWaiters();
+            return true;
+        }
+
+        private void notifyWaiters() {
+            if (waiters > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            return finished || state == ST_CANCELLED;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - (System.nanoTime() - scheduler.startTime), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public synchronized Void get() throws InterruptedException, ExecutionException {
+            waiters++;
+            try {
+                while (!isDone()) {
+                    wait();
+                }
+            } finally {
+                waiters--;
+            }
+            return report();
+        }
+
+        @Override
+        public synchronized Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long remaining = unit.toNanos(timeout);
+            long end = System.nanoTime() + remaining;
+            waiters++;
+            try {
+                while (!isDone()) {
+                    if (remaining <= 0) {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    remaining = end - System.nanoTime();
+                }
+            } finally {
+                waiters--;
+            }
+            return report();
+        }
+
+        private Void report() throws ExecutionException {
+            if (state == ST_CANCELLED) {
+                throw new CancellationException();
+            }
+            if (cause != null) {
+                throw new ExecutionException(cause);
+            }
+            return null;
+        }
+    }
+
+}
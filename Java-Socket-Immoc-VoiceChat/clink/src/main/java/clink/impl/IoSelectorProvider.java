@@ -16,6 +16,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import clink.core.IoMetrics;
 import clink.core.IoProvider;
 import clink.utils.CloseUtils;
 
@@ -44,6 +45,11 @@ public class IoSelectorProvider implements IoProvider {
     private final ExecutorService inputHandlePool;
     private final ExecutorService outputHandlePool;
 
+    private SelectThread readThread;
+    private SelectThread writeThread;
+
+    private volatile IoMetrics metrics;
+
     /**
      * 创建并启动IoSelectorProvider
      */
@@ -51,9 +57,9 @@ public class IoSelectorProvider implements IoProvider {
         readSelector = Selector.open();
         writeSelector = Selector.open();
 
-        inputHandlePool = Executors.newFixedThreadPool(20, new NameableThreadFactory("IoProvider-Input-Thread-"));
+        inputHandlePool = Executors.newFixedThreadPool(20, new NameableThreadFactory("IoProvider-Input-Thread-", true));
 
-        outputHandlePool = Executors.newFixedThreadPool(20, new NameableThreadFactory("IoProvider-Output-Thread-"));
+        outputHandlePool = Executors.newFixedThreadPool(20, new NameableThreadFactory("IoProvider-Output-Thread-", true));
 
         // 开始输出输入的监听
         startRead();
@@ -61,7 +67,7 @@ public class IoSelectorProvider implements IoProvider {
     }
 
     private void startRead() {
-        Thread thread = new SelectThread(
+        SelectThread thread = new SelectThread(
                 "Clink IoSelectorProvider ReadSelector Thread",
                 isClosed,
                 inRegInput,
@@ -70,12 +76,13 @@ public class IoSelectorProvider implements IoProvider {
                 inputHandlePool,
                 SelectionKey.OP_READ);
 
+        readThread = thread;
         thread.start();
     }
 
     private void startWrite() {
         //这个线程只负责从选择器中获取可写的 Channel，然后交给线程池处理。
-        Thread thread = new SelectThread(
+        SelectThread thread = new SelectThread(
                 "Clink IoSelectorProvider WriteSelector Thread",
                 isClosed,
                 inRegOutput,
@@ -84,6 +91,7 @@ public class IoSelectorProvider implements IoProvider {
                 outputHandlePool,
                 SelectionKey.OP_WRITE);
 
+        writeThread = thread;
         thread.start();
     }
 
@@ -99,6 +107,13 @@ public class IoSelectorProvider implements IoProvider {
         return registerSelection(channel, writeSelector, SelectionKey.OP_WRITE, inRegOutput, outputCallbackMap, callback) != null;
     }
 
+    @Override
+    public void setMetrics(IoMetrics metrics) {
+        this.metrics = metrics;
+        readThread.mMetrics = metrics;
+        writeThread.mMetrics = metrics;
+    }
+
     @Override
     public void unRegisterInput(SocketChannel channel) {
         unRegisterSelection(channel, readSelector, inputCallbackMap, inRegInput);
@@ -109,6 +124,13 @@ public class IoSelectorProvider implements IoProvider {
         unRegisterSelection(channel, writeSelector, outputCallbackMap, inRegOutput);
     }
 
+    private void onSelectorWakeup() {
+        IoMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.onSelectorWakeup();
+        }
+    }
+
     private void unRegisterSelection(SocketChannel channel, Selector selector, HashMap<SelectionKey, Runnable> map, AtomicBoolean locker) {
         //noinspection SynchronizationOnLocalVariableOrMethodParameter
         synchronized (locker) {
@@ -116,6 +138,7 @@ public class IoSelectorProvider implements IoProvider {
             try {
                 //重新唤醒一个 Selector，让其暂时停止select操作，以防止下面的   selectionKey.cancel(); 产生线程竞争。
                 selector.wakeup();
+                onSelectorWakeup();
 
                 if (channel.isRegistered()) {
                     SelectionKey selectionKey = channel.keyFor(selector);
@@ -219,6 +242,7 @@ public class IoSelectorProvider implements IoProvider {
 
                 // 唤醒当前的selector，让selector不处于select()状态
                 selector.wakeup();
+                onSelectorWakeup();
 
                 SelectionKey selectionKey = null;
                 //如果注册过就获取Key后修改Key的组合值
@@ -262,6 +286,7 @@ public class IoSelectorProvider implements IoProvider {
         private final ExecutorService mHandlePool;
         private final int mKeyOps;
         private final AtomicBoolean mIsClosed;
+        volatile IoMetrics mMetrics;
 
         SelectThread(String name, AtomicBoolean isClosed, AtomicBoolean locker, Selector selector, HashMap<SelectionKey, Runnable> mCallbackMap, ExecutorService handlePool, int ops) {
             super(name);
@@ -289,7 +314,12 @@ public class IoSelectorProvider implements IoProvider {
             while (!isClosed.get()) {
                 try {
                     //阻塞等待可写
-                    if (selector.select() == 0) {
+                    int selected = selector.select();
+                    IoMetrics metrics = mMetrics;
+                    if (metrics != null) {
+                        metrics.onSelect();
+                    }
+                    if (selected == 0) {
                         waitSelection(locker);
                         continue;
                     } else if (locker.get()) {
@@ -11,16 +11,26 @@ public class NameableThreadFactory implements ThreadFactory {
     private final ThreadGroup group;
     private final AtomicInteger threadNumber = new AtomicInteger(1);
     private final String namePrefix;
+    private final boolean nonBlocking;
 
     NameableThreadFactory(String namePrefix) {
+        this(namePrefix, false);
+    }
+
+    /**
+     * @param nonBlocking 是否创建 {@link NonBlockingThread}，用于 IO 线程与分发线程
+     */
+    NameableThreadFactory(String namePrefix, boolean nonBlocking) {
         SecurityManager s = System.getSecurityManager();
         this.group = (s != null) ? s.getThreadGroup() :
                 Thread.currentThread().getThreadGroup();
         this.namePrefix = namePrefix;
+        this.nonBlocking = nonBlocking;
     }
 
     public Thread newThread(Runnable r) {
-        Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement(), 0);
+        String name = namePrefix + threadNumber.getAndIncrement();
+        Thread t = nonBlocking ? new NonBlockingThread(group, r, name) : new Thread(group, r, name, 0);
         if (t.isDaemon())
             t.setDaemon(false);
         if (t.getPriority() != Thread.NORM_PRIORITY)
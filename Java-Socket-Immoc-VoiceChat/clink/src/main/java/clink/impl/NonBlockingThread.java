@@ -0,0 +1,26 @@
+package clink.impl;
+
+/**
+ * 不允许阻塞的线程：IO 线程与消息分发线程。
+ * <p>
+ * 这些线程被多个连接共享，在其中阻塞会拖慢所有共享它的连接，比如 {@link clink.core.SendOverflowPolicy#BLOCK}
+ * 在这些线程中不会等待，而是直接丢弃新的包。
+ */
+public class NonBlockingThread extends Thread {
+
+    public NonBlockingThread(String name) {
+        super(name);
+    }
+
+    public NonBlockingThread(ThreadGroup group, Runnable target, String name) {
+        super(group, target, name, 0);
+    }
+
+    /**
+     * 当前线程是否不允许阻塞
+     */
+    public static boolean isCurrent() {
+        return Thread.currentThread() instanceof NonBlockingThread;
+    }
+
+}
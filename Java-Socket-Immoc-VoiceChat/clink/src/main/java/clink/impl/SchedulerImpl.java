@@ -1,11 +1,11 @@
 package clink.impl;
 
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import clink.core.IoMetrics;
 import clink.core.Scheduler;
 
 /**
@@ -16,11 +16,24 @@ import clink.core.Scheduler;
 public class SchedulerImpl implements Scheduler {
 
     private final ScheduledExecutorService scheduledExecutorService;
-    private final ExecutorService deliveryPool;
+    private final StripedDeliveryExecutor deliveryPool;
 
+    /**
+     * 只有一个分发线程
+     *
+     * @param poolSize 调度线程数量
+     */
     public SchedulerImpl(int poolSize) {
+        this(poolSize, 1);
+    }
+
+    /**
+     * @param poolSize        调度线程数量
+     * @param deliveryStripes 分发线程数量，同一个 key 的任务总是在同一个线程中按顺序执行
+     */
+    public SchedulerImpl(int poolSize, int deliveryStripes) {
         this.scheduledExecutorService = Executors.newScheduledThreadPool(poolSize, new NameableThreadFactory("Scheduler-Thread-"));
-        this.deliveryPool = Executors.newFixedThreadPool(1, new NameableThreadFactory("Delivery-Thread-"));
+        this.deliveryPool = new StripedDeliveryExecutor(deliveryStripes);
     }
 
     @Override
@@ -33,10 +46,27 @@ public class SchedulerImpl implements Scheduler {
         deliveryPool.execute(runnable);
     }
 
+    @Override
+    public void delivery(Object key, Runnable runnable) {
+        deliveryPool.execute(key, runnable);
+    }
+
+    @Override
+    public void setMetrics(IoMetrics metrics) {
+        deliveryPool.setMetrics(metrics);
+    }
+
+    /**
+     * 分发执行器，用于获取各分发线程的统计信息
+     */
+    public StripedDeliveryExecutor getDeliveryExecutor() {
+        return deliveryPool;
+    }
+
     @Override
     public void close() {
         scheduledExecutorService.shutdownNow();
-        deliveryPool.shutdownNow();
+        deliveryPool.close();
     }
 
 }
\ No newline at end of file
@@ -5,6 +5,8 @@ import java.nio.channels.SocketChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import clink.core.IoArgs;
+import clink.core.IoContext;
+import clink.core.IoMetrics;
 import clink.core.IoProvider;
 import clink.core.Receiver;
 import clink.core.Sender;
@@ -23,6 +25,8 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
 
     private final OnChannelStatusChangedListener channelStatusChangedListener;
 
+    private final IoMetrics metrics;
+
     private IoArgs.IoArgsEventProcessor receiveIoEventListener;
 
     private IoArgs.IoArgsEventProcessor sendIoEventListener;
@@ -41,6 +45,7 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
         this.channel = channel;
         this.ioProvider = ioProvider;
         this.channelStatusChangedListener = onChannelStatusChangedListener;
+        this.metrics = IoContext.get().metrics();
         this.channel.configureBlocking(false);
     }
 
@@ -54,9 +59,30 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
             CloseUtils.close(channel);
             // 回调当前Channel已关闭
             channelStatusChangedListener.onChannelClosed(channel);
+            // 等待自循环的IoArgs不会再被回调，交还给所有者
+            failAttach(inputCallback, receiveIoEventListener);
+            failAttach(outputCallback, sendIoEventListener);
+        }
+    }
+
+    /**
+     * 取出附加的IoArgs并通知所有者消费失败，由所有者归还IoArgs
+     */
+    private static void failAttach(IoProvider.HandleProviderCallback callback, IoArgs.IoArgsEventProcessor processor) {
+        IoArgs args = callback.takeAttach();
+        if (args != null && processor != null) {
+            processor.onConsumeFailed(args, new IOException("Current channel is closed!"));
         }
     }
 
+    /**
+     * 读写出现异常，关闭连接后通知所有者消费失败，由所有者归还IoArgs
+     */
+    private void onIoFailed(IoArgs args, IoArgs.IoArgsEventProcessor processor, IOException e) {
+        CloseUtils.close(this);
+        processor.onConsumeFailed(args, e);
+    }
+
     @Override
     public boolean postSendAsync() throws IOException {
         //检查是否已经关闭。
@@ -64,7 +90,9 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
         //进行 Callback 状态监测，判断是否处于自循环状态。
         outputCallback.checkAttachNull();
         //向 IoProvider 注册读回调，当可写时，mHandleOutputCallback 会被回调
-        return ioProvider.registerOutput(channel, outputCallback);
+        boolean registered = ioProvider.registerOutput(channel, outputCallback);
+        unRegisterIfClosed();
+        return registered;
     }
 
     @Override
@@ -78,6 +106,16 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
         return mLastWriteTime;
     }
 
+    /**
+     * 注册之后检查是否已关闭：与 close 并发时，close 中的解除注册可能早于本次注册，此时由注册方再解除一次
+     */
+    private void unRegisterIfClosed() {
+        if (isClosed.get()) {
+            ioProvider.unRegisterInput(channel);
+            ioProvider.unRegisterOutput(channel);
+        }
+    }
+
     private void checkState() throws IOException {
         if (isClosed.get()) {
             throw new IOException("Current channel is closed!");
@@ -91,7 +129,9 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
         // 进行Callback状态监测，判断是否处于自循环状态
         inputCallback.checkAttachNull();
         //向 IoProvider 注册读回调，当可读时，mHandleInputCallback 会被回调
-        return ioProvider.registerInput(channel, inputCallback);
+        boolean registered = ioProvider.registerInput(channel, inputCallback);
+        unRegisterIfClosed();
+        return registered;
     }
 
     @Override
@@ -115,13 +155,16 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
 
         @Override
         protected void onProviderIo(IoArgs args) {
+            IoArgs.IoArgsEventProcessor processor = receiveIoEventListener;
             if (isClosed.get()) {
+                if (args != null && processor != null) {
+                    processor.onConsumeFailed(args, new IOException("Current channel is closed!"));
+                }
                 return;
             }
 
             mLastReadTime = System.currentTimeMillis();
 
-            IoArgs.IoArgsEventProcessor processor = receiveIoEventListener;
             if (processor == null) {
                 return;
             }
@@ -136,6 +179,7 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                     processor.onConsumeFailed(null, new IOException("ProvideIoArgs is null."));
                 } else {
                     int count = args.readFrom(channel);
+                    metrics.onRead(count);
 
                     if (count == 0) {
                         // 本次回调就代表可以进行数据消费，但是如果一个数据也没有产生消费，那么我们尝试输出一句语句到控制台
@@ -146,7 +190,12 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                     if (args.remained() && args.isNeedConsumeRemaining()) {
                         //没有读完，下次再读
                         attach = args;
-                        ioProvider.registerOutput(channel, this);
+                        ioProvider.registerInput(channel, this);
+                        if (isClosed.get()) {
+                            // 与 close 并发，附加的IoArgs不会再被回调
+                            unRegisterIfClosed();
+                            failAttach(this, processor);
+                        }
                     } else {
                         //读完置为null
                         attach = null;
@@ -155,8 +204,10 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                     }
 
                 }
-            } catch (IOException ignore) {
-                CloseUtils.close(SocketChannelAdapter.this);
+            } catch (IOException e) {
+                attach = null;
+                // 连接已不可用
+                onIoFailed(args, processor, e);
             }
         }
     };// mHandleInputCallback end
@@ -168,13 +219,16 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
 
         @Override
         protected void onProviderIo(IoArgs args) {
+            IoArgs.IoArgsEventProcessor processor = sendIoEventListener;
             if (isClosed.get()) {
+                if (args != null && processor != null) {
+                    processor.onConsumeFailed(args, new IOException("Current channel is closed!"));
+                }
                 return;
             }
 
             mLastWriteTime = System.currentTimeMillis();
 
-            IoArgs.IoArgsEventProcessor processor = sendIoEventListener;
             if (processor == null) {
                 return;
             }
@@ -189,6 +243,7 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                 } else {
 
                     int count = args.writeTo(channel);
+                    metrics.onWrite(count);
 
                     if (count == 0) {
                         // 本次回调就代表可以进行数据消费，但是如果一个数据也没有产生消费，那么我们尝试输出一句语句到控制台。
@@ -200,7 +255,12 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                         // 附加当前未消费完成的args
                         attach = args;
                         // 再次注册数据发送
-                        ioProvider.registerInput(channel, this);
+                        ioProvider.registerOutput(channel, this);
+                        if (isClosed.get()) {
+                            // 与 close 并发，附加的IoArgs不会再被回调
+                            unRegisterIfClosed();
+                            failAttach(this, processor);
+                        }
                     } else {
                         // 设置为null
                         attach = null;
@@ -209,7 +269,9 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                     }
                 }
             } catch (IOException e) {
-                CloseUtils.close(SocketChannelAdapter.this);
+                attach = null;
+                // 连接已不可用
+                onIoFailed(args, processor, e);
             }
         }
     };//mHandleOutputCallback end
@@ -0,0 +1,172 @@
+package clink.impl;
+
+import java.io.Closeable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import clink.core.IoMetrics;
+import clink.utils.LatencyHistogram;
+
+/**
+ * 分条的串行分发执行器：由若干个单线程的条带组成，同一个 key 的任务总是交给同一个条带，按提交顺序执行；
+ * 不同 key 的任务散列到不同的条带上并行执行。
+ * <p>
+ * 用于消息的分发：以连接为 key 时，同一个连接的消息保持先后顺序，一个连接的处理很慢时只会阻塞与它同一条带的连接，
+ * 而不是所有的连接。条带数量一般取 CPU 核数，为 1 时与单线程的分发池完全一致。
+ * <p>
+ * 每个条带统计队列深度、任务的排队耗时与执行耗时；设置了 {@link IoMetrics} 后，所有条带的耗时还会汇总记录到其中。
+ */
+public class StripedDeliveryExecutor implements Closeable {
+
+    private final Stripe[] stripes;
+
+    private volatile IoMetrics metrics;
+
+    /**
+     * @param stripeCount 条带数量
+     */
+    public StripedDeliveryExecutor(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("stripeCount must be greater than 0.");
+        }
+        NameableThreadFactory threadFactory = new NameableThreadFactory("Delivery-Thread-", true);
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(this, threadFactory);
+        }
+    }
+
+    /**
+     * 执行一个与其他任务没有顺序要求的任务，随机交给一个条带
+     */
+    public void execute(Runnable runnable) {
+        Stripe stripe = stripes.length == 1 ? stripes[0] : stripes[ThreadLocalRandom.current().nextInt(stripes.length)];
+        stripe.execute(runnable);
+    }
+
+    /**
+     * 执行一个任务，key 相同的任务按提交顺序串行执行
+     *
+     * @param key      任务的 key，比如连接
+     * @param runnable 任务
+     */
+    public void execute(Object key, Runnable runnable) {
+        stripes[indexFor(key)].execute(runnable);
+    }
+
+    private int indexFor(Object key) {
+        if (stripes.length == 1) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        // 打散高位，避免 hashCode 低位分布不均
+        hash ^= (hash >>> 16);
+        return (hash & 0x7FFFFFFF) % stripes.length;
+    }
+
+    /**
+     * 设置汇总记录的运行指标，同时注册所有条带的队列深度
+     */
+    public void setMetrics(IoMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null) {
+            metrics.registerGauge("delivery.queue", this::getQueueDepth);
+        }
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * 条带中等待执行的任务数量
+     */
+    public int getQueueDepth(int stripe) {
+        return stripes[stripe].executor.getQueue().size();
+    }
+
+    /**
+     * 所有条带中等待执行的任务数量
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for (Stripe stripe : stripes) {
+            depth += stripe.executor.getQueue().size();
+        }
+        return depth;
+    }
+
+    /**
+     * 条带中任务的排队耗时，微秒
+     */
+    public LatencyHistogram getWaitLatency(int stripe) {
+        return stripes[stripe].waitLatency;
+    }
+
+    /**
+     * 条带中任务的执行耗时，微秒
+     */
+    public LatencyHistogram getHandleLatency(int stripe) {
+        return stripes[stripe].handleLatency;
+    }
+
+    @Override
+    public void close() {
+        for (Stripe stripe : stripes) {
+            stripe.executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("StripedDeliveryExecutor{");
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[i];
+            builder.append(i == 0 ? "" : ", ")
+                    .append('[').append(i).append("]")
+                    .append("queue=").append(stripe.executor.getQueue().size())
+                    .append(", handled=").append(stripe.handleLatency.getCount())
+                    .append(", wait.p99=").append(stripe.waitLatency.percentile(99)).append("us")
+                    .append(", handle.p99=").append(stripe.handleLatency.percentile(99)).append("us");
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * 一个条带：单线程的执行器与统计信息
+     */
+    private static class Stripe {
+
+        private final StripedDeliveryExecutor owner;
+        private final ThreadPoolExecutor executor;
+        private final LatencyHistogram waitLatency = new LatencyHistogram();
+        private final LatencyHistogram handleLatency = new LatencyHistogram();
+
+        Stripe(StripedDeliveryExecutor owner, NameableThreadFactory threadFactory) {
+            this.owner = owner;
+            executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        }
+
+        void execute(Runnable runnable) {
+            long submitTime = System.nanoTime();
+            executor.execute(() -> {
+                long startTime = System.nanoTime();
+                waitLatency.recordNanos(startTime - submitTime);
+                try {
+                    runnable.run();
+                } finally {
+                    long handleTime = System.nanoTime() - startTime;
+                    handleLatency.recordNanos(handleTime);
+                    IoMetrics metrics = owner.metrics;
+                    if (metrics != null) {
+                        metrics.onDelivered(startTime - submitTime, handleTime);
+                    }
+                }
+            });
+        }
+
+    }
+
+}
@@ -2,16 +2,23 @@ package clink.impl.async;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import clink.core.Frame;
 import clink.core.IoArgs;
+import clink.core.IoContext;
+import clink.core.IoMetrics;
+import clink.core.Packet;
 import clink.core.SendPacket;
-import clink.core.ds.BytePriorityNode;
+import clink.core.ds.PriorityRingQueue;
 import clink.frame.AbsSendPacketFrame;
+import clink.frame.AckSendFrame;
 import clink.frame.CancelSendFrame;
 import clink.frame.HeartbeatSendFrame;
-import clink.frame.SendEntityFrame;
+import clink.frame.SendFileEntityFrame;
 import clink.frame.SendHeaderFrame;
 
 /**
@@ -23,18 +30,40 @@ import clink.frame.SendHeaderFrame;
  */
 class AsyncPacketReader implements Closeable {
 
+    /*
+     * 帧的优先级：取消与心跳等指令严格优先；内存包（字节、字符串）与流包（文件、直流）按 4:1 的帧数轮转，
+     * 大文件不会阻塞同一连接上的聊天消息。内存包按加入的顺序逐个发送完，保证消息的先后顺序；
+     * 多个流包每次发送一帧，轮流发送。
+     */
+    private static final int PRIORITY_COMMAND = 0;
+    private static final int PRIORITY_MEMORY = 1;
+    private static final int PRIORITY_STREAM = 2;
+    private static final int WEIGHT_MEMORY = 4;
+    private static final int WEIGHT_STREAM = 1;
+
+    // 同时在帧队列中的包的最大数量，超过时剩余的包留在发送调度者的队列中，仍然可以被完美取消或者按溢出策略丢弃
+    private static final int MAX_CONCURRENT_PACKETS = 8;
+
     private final PacketProvider mPacketProvider;
+    private final IoMetrics mMetrics;
 
-    private volatile IoArgs mIoArgs = new IoArgs();
+    //帧队列，每个正在发送的包同一时刻只有一个帧在队列中
+    private final PriorityRingQueue<Frame> mFrameQueue = new PriorityRingQueue<>(PriorityRingQueue.STRICT, WEIGHT_MEMORY, WEIGHT_STREAM);
+    //正在发送的包对应的队列节点，用于按包取消
+    private final Map<SendPacket, PriorityRingQueue.Node<Frame>> mPacketNodes = new IdentityHashMap<>();
+    //文件区间正在写出时被取消的包，区间写出完成、帧弹出之后再结束，否则会关闭正在使用的文件通道
+    private final Map<Frame, SendPacket> mCancelledRegionPackets = new IdentityHashMap<>();
+    //正在使用的唯一标识，交错发送时一个包可能在后面的包用完一轮标识之后还没有发送完成
+    private final boolean[] mIdentifierInUse = new boolean[256];
 
-    private volatile BytePriorityNode<Frame> mNode;//帧队列
-    private volatile int mNodeSize = 0;//节点数量
+    private boolean mIsClosed;
 
     //唯一标识从 1 开始，最大为 255，理论上最大支持并发  255 个 packet 同时发送
     private short mLastIdentifier = 0;//记录最后一次唯一标识
 
     AsyncPacketReader(PacketProvider packetProvider) {
         mPacketProvider = Objects.requireNonNull(packetProvider);
+        mMetrics = IoContext.get().metrics();
     }
 
     /**
@@ -44,103 +73,107 @@ class AsyncPacketReader implements Closeable {
      * @param packet 待取消的packet
      */
     synchronized void cancel(SendPacket packet) {
-        if (mNodeSize == 0) {
+        //找到那个需要取消的packet对应的frame（队列中对于每一个包，同时最多只会有一个帧，因为帧是顺序发送的。）
+        PriorityRingQueue.Node<Frame> node = mPacketNodes.remove(packet);
+        if (node == null) {
             return;
         }
-        //遍历找到那个需要取消的packet对应的frame
-        for (BytePriorityNode<Frame> x = mNode, before = null; x != null; before = x, x = x.next) {
-            Frame frame = x.item;
-            if (frame instanceof AbsSendPacketFrame) {//是发包的frame才需要被取消
-
-                AbsSendPacketFrame sendPacketFrame = (AbsSendPacketFrame) frame;
-
-                if (sendPacketFrame.getPacket() == packet) {//找到对应的帧（队列中对于每一个包，同时最多只会有一个帧，因为帧是顺序发送的。）
-
-                    boolean removable = sendPacketFrame.abort();
-                    //removable表示是否完美中止
-                    if (removable) {
-                        //是完美中止就移除吧
-                        removeFrame(x, before);
-                        if (sendPacketFrame instanceof SendHeaderFrame) {
-                            // 头帧，并且未被发送任何数据，直接取消后不需要添加取消发送帧
-                            break;
-                        }
-                    }//removable end
-
-                    //没有完美取消，或者完美取消的不是头帧，则需要发送一个取消帧告知接收方该包被取消了
-                    CancelSendFrame cancelSendFrame = new CancelSendFrame(sendPacketFrame.getBodyIdentifier());
-                    appendNewFrame(cancelSendFrame);
-                    // 取消则认为是意外终止，返回失败
-                    mPacketProvider.completedPacket(packet, false);
-                    break;
-
-                }//endPacketFrame.getPacket() == packet end
-            }
+        AbsSendPacketFrame sendPacketFrame = (AbsSendPacketFrame) node.item();
+        short identifier = sendPacketFrame.getBodyIdentifier();
+
+        boolean removable = sendPacketFrame.abort();
+        //removable表示是否完美中止
+        if (removable) {
+            //是完美中止就移除吧
+            mFrameQueue.remove(node);
+            mIdentifierInUse[identifier] = false;
         }
-    }
+        //没有完美中止的帧继续填充假数据直到发送完成，完成时因为已中止而没有下一帧，随即移出队列
 
-    private synchronized void removeFrame(BytePriorityNode<Frame> remove, BytePriorityNode<Frame> before) {
-        if (before == null) {
-            mNode = remove.next;
-        } else {
-            before.next = remove.next;
+        if (!removable || !(sendPacketFrame instanceof SendHeaderFrame)) {
+            //没有完美取消，或者完美取消的不是头帧，则需要发送一个取消帧告知接收方该包被取消了
+            appendNewFrame(new CancelSendFrame(identifier), PRIORITY_COMMAND);
         }
-        mNodeSize--;
-        //如果队列空了，看看是否还有需要发送到包。
-        if (mNode == null) {
-            requestTakePacket();
+
+        if (!removable && sendPacketFrame instanceof SendFileEntityFrame) {
+            // 没有完美中止的文件实体帧已经交出了区间，区间还在从文件通道写出，等帧弹出时再结束包
+            mCancelledRegionPackets.put(sendPacketFrame, packet);
+            return;
         }
+        // 取消则认为是意外终止，返回失败
+        mPacketProvider.completedPacket(packet, false);
     }
 
     /**
-     * 请求从 {@link #mPacketProvider}队列中拿一份Packet进行发送
+     * 请求从 {@link #mPacketProvider}队列中拿Packet进行发送，正在发送的包不足 {@link #MAX_CONCURRENT_PACKETS} 时继续拿
      *
      * @return 如果当前Reader中有可以用于网络发送的数据，则返回True
      */
     boolean requestTakePacket() {
-        //如果mNodeSize>=1，直接返回true，表示还有要发送的数据，mNodeSize可以再设置得大一点，用于支持多个线程并发发送。
-        synchronized (this) {
-            if (mNodeSize >= 1) {
-                return true;
+        for (; ; ) {
+            short identifier;
+            synchronized (this) {
+                if (mPacketNodes.size() >= MAX_CONCURRENT_PACKETS) {
+                    return true;
+                }
+                identifier = generateIdentifier();
+                if (identifier == 0) {
+                    // 所有的标识都在使用中
+                    return true;
+                }
+            }
+
+            SendPacket sendPacket = mPacketProvider.takePacket();
+            //根据新的包，构建一个头帧添加到队列中，头帧可能需要压缩数据，不在锁内构建
+            SendHeaderFrame sendHeaderFrame = sendPacket == null ? null : new SendHeaderFrame(identifier, sendPacket);
+
+            synchronized (this) {
+                if (mIsClosed) {
+                    // 与 close 并发时，close 已经清理过队列
+                    if (sendPacket != null) {
+                        mPacketProvider.completedPacket(sendPacket, false);
+                    }
+                    return false;
+                }
+                if (sendPacket == null) {
+                    mIdentifierInUse[identifier] = false;
+                    return !mFrameQueue.isEmpty();
+                }
+                mPacketNodes.put(sendPacket, appendNewFrame(sendHeaderFrame, priorityOf(sendPacket)));
             }
         }
+    }
 
-        SendPacket sendPacket = mPacketProvider.takePacket();
-        if (sendPacket != null) {
-            short identifier = generateIdentifier();
-            //根据新的包，构建一个头帧添加到节点中
-            SendHeaderFrame sendHeaderFrame = new SendHeaderFrame(identifier, sendPacket);
-            appendNewFrame(sendHeaderFrame);
+    private static int priorityOf(SendPacket packet) {
+        byte type = packet.getType();
+        if (type == Packet.TYPE_MEMORY_BYTES || type == Packet.TYPE_MEMORY_STRING) {
+            return PRIORITY_MEMORY;
         }
+        return PRIORITY_STREAM;
+    }
 
-        synchronized (this) {
-            return mNodeSize > 0;
+    synchronized boolean requestSendHeartbeatFrame() {
+        boolean[] hasHeartbeat = new boolean[1];
+        mFrameQueue.forEach(frame -> hasHeartbeat[0] |= frame.getBodyType() == Frame.TYPE_COMMAND_HEARTBEAT);
+        if (hasHeartbeat[0]) {
+            return false;
         }
+        // 添加心跳帧
+        appendNewFrame(new HeartbeatSendFrame(), PRIORITY_COMMAND);
+        return true;
     }
 
-    boolean requestSendHeartbeatFrame() {
-        synchronized (this) {
-            for (BytePriorityNode<Frame> x = mNode; x != null; x = x.next) {
-                Frame frame = x.item;
-                if (frame.getBodyType() == Frame.TYPE_COMMAND_HEARTBEAT) {
-                    return false;
-                }
-            }
-            // 添加心跳帧
-            appendNewFrame(new HeartbeatSendFrame());
-            return true;
+    synchronized void requestSendAckFrame(byte[] contentHash, long acknowledgedLength) {
+        if (mIsClosed) {
+            return;
         }
+        // 每个分块只确认一次，数量很少，不需要合并
+        appendNewFrame(new AckSendFrame(contentHash, acknowledgedLength), PRIORITY_COMMAND);
     }
 
     /*添加一个新的帧都队列中*/
-    private synchronized void appendNewFrame(Frame frame) {
-        BytePriorityNode<Frame> newNode = new BytePriorityNode<>(frame);
-        if (mNode != null) {
-            mNode.appendWithPriority(newNode);
-        } else {
-            mNode = newNode;
-        }
-        mNodeSize++;
+    private synchronized PriorityRingQueue.Node<Frame> appendNewFrame(Frame frame, int priority) {
+        return mFrameQueue.offer(frame, priority);
     }
 
     /**
@@ -148,82 +181,157 @@ class AsyncPacketReader implements Closeable {
      */
     @Override
     public synchronized void close() {
-        BytePriorityNode<Frame> node = mNode;
-        while (node != null) {
-            Frame frame = mNode.item;
+        mIsClosed = true;
+        mFrameQueue.forEach(frame -> {
             if (frame instanceof AbsSendPacketFrame) {
-                ((AbsSendPacketFrame) frame).abort();
-                mPacketProvider.completedPacket(((AbsSendPacketFrame) frame).getPacket(), false);
+                AbsSendPacketFrame sendPacketFrame = (AbsSendPacketFrame) frame;
+                SendPacket packet = sendPacketFrame.getPacket();
+                sendPacketFrame.abort();
+                if (packet != null) {
+                    // 已被终止的帧对应的包已经结束过了
+                    mPacketProvider.completedPacket(packet, false);
+                }
             }
-            node = node.next;
+        });
+        // 区间写出中被取消的包，连接已关闭，不会再写出
+        for (SendPacket packet : mCancelledRegionPackets.values()) {
+            mPacketProvider.completedPacket(packet, false);
         }
-        mNode = null;
-        mNodeSize = 0;
+        mCancelledRegionPackets.clear();
+        mFrameQueue.clear();
+        mPacketNodes.clear();
+        Arrays.fill(mIdentifierInUse, false);
     }
 
     /**
-     * 构建一份Packet惟一标志
+     * 构建一份Packet惟一标志，跳过正在使用的标志
      *
-     * @return 标志为：1～255
+     * @return 标志为：1～255，全部在使用中时返回 0
      */
     private short generateIdentifier() {
-        short identifier = ++mLastIdentifier;
-        if (identifier == 255) {
-            mLastIdentifier = 0;
+        for (int i = 0; i < 255; i++) {
+            short identifier = ++mLastIdentifier;
+            if (identifier == 255) {
+                mLastIdentifier = 0;
+            }
+            if (!mIdentifierInUse[identifier]) {
+                mIdentifierInUse[identifier] = true;
+                return identifier;
+            }
         }
-        return identifier;
+        return 0;
     }
 
     /**
      * 填充数据到IoArgs中
      *
+     * @param args 用于容纳数据的IoArgs
      * @return 如果当前有可用于发送的帧，则填充数据并返回，如果填充失败可返回null
      */
-    IoArgs fillData() {
+    IoArgs fillData(IoArgs args) {
         //没有数据了，则返回null
         Frame currentFrame = getCurrentFrame();
         if (currentFrame == null) {
             return null;
         }
 
+        if (currentFrame instanceof SendFileEntityFrame) {
+            // 文件实体帧整帧交给 FileRegionIoArgs 发送
+            IoArgs region = ((SendFileEntityFrame) currentFrame).takeRegion();
+            if (region == null) {
+                // 已被终止的帧没有数据，直接弹出并返回空的 args
+                completeFrame(currentFrame);
+                return args;
+            }
+            // 帧在区间写出完成后（completeRegion）才弹出，保证最后一帧写出之前包不会被关闭
+            return region;
+        }
+
         try {
             //返回true表示该帧的数据消费完了，handle方法是同步的。
-            if (currentFrame.handle(mIoArgs)) {
+            if (currentFrame.handle(args)) {
                 //因为handle方法是同步的，不可能有两个线程同事进入到该条件块内
-
-                Frame nextFrame = currentFrame.nextFrame(); //nextFrame 方法是同步的
-
-                if (nextFrame != null) {
-                    appendNewFrame(nextFrame);
-                } else if (currentFrame instanceof SendEntityFrame) {//是实体帧，且它的nextFrame 为 null，则说明其对应的包发送完了。
-                    mPacketProvider.completedPacket(((SendEntityFrame) currentFrame).getPacket(), true);
-                }
-
-                //既然当前帧发完了，就弹出来
-                popCurrentFrame();
+                completeFrame(currentFrame);
             }
 
-            return mIoArgs;
+            return args;
         } catch (IOException e) {
             e.printStackTrace();
         }
         return null;
     }
 
-    private synchronized void popCurrentFrame() {
-        mNode = mNode.next;
-        mNodeSize--;
-        //如果队列空了，看看是否还有需要发送到包。
-        if (mNode == null) {
-            requestTakePacket();
+    /**
+     * 当前帧已消费完成，构建下一帧替换当前帧，没有下一帧时将当前帧弹出
+     */
+    private void completeFrame(Frame currentFrame) {
+        mMetrics.onFrameSent(currentFrame.getBodyType());
+        Frame nextFrame = currentFrame.nextFrame(); //nextFrame 方法是同步的
+
+        SendPacket completedPacket = null;
+        SendPacket cancelledPacket;
+        synchronized (this) {
+            PriorityRingQueue.Node<Frame> node = mFrameQueue.current();
+            if (node == null || node.item() != currentFrame) {
+                // 已被取消并移出队列
+                return;
+            }
+            // 区间写出中被取消的包，区间已写出完成，可以结束了
+            cancelledPacket = mCancelledRegionPackets.remove(currentFrame);
+            if (nextFrame != null && currentFrame instanceof AbsSendPacketFrame && ((AbsSendPacketFrame) currentFrame).getPacket() == null) {
+                // 构建下一帧之后被取消，不再发送下一帧
+                nextFrame = null;
+            }
+            if (nextFrame != null) {
+                if (currentFrame instanceof AbsSendPacketFrame && priorityOf(((AbsSendPacketFrame) currentFrame).getPacket()) == PRIORITY_MEMORY) {
+                    // 内存包不交错，发送完当前包再发送下一个，保证消息按发送的顺序到达
+                    mFrameQueue.replace(node, nextFrame);
+                } else {
+                    // 同一个包的下一帧排到同优先级的末尾，与其他包的帧交错发送
+                    mFrameQueue.rotate(node, nextFrame);
+                }
+                return;
+            }
+            mFrameQueue.remove(node);
+            if (currentFrame instanceof AbsSendPacketFrame) {
+                SendPacket packet = ((AbsSendPacketFrame) currentFrame).getPacket();
+                if (packet != null && mPacketNodes.remove(packet) != null) {
+                    //没有被终止的帧没有下一帧，则说明其对应的包发送完了。
+                    completedPacket = packet;
+                }
+                mIdentifierInUse[currentFrame.getBodyIdentifier()] = false;
+            }
+        }
+
+        if (completedPacket != null) {
+            mPacketProvider.completedPacket(completedPacket, true);
+        }
+        if (cancelledPacket != null) {
+            mPacketProvider.completedPacket(cancelledPacket, false);
         }
+        //一个包发完了，看看是否还有需要发送到包。
+        requestTakePacket();
     }
 
-    private synchronized Frame getCurrentFrame() {
-        if (mNode != null) {
-            return mNode.item;
+    /**
+     * {@link #fillData(IoArgs)} 返回的文件区间已全部写出，弹出对应的文件实体帧
+     */
+    void completeRegion() {
+        Frame currentFrame = getCurrentFrame();
+        if (currentFrame instanceof SendFileEntityFrame && ((SendFileEntityFrame) currentFrame).isRegionTaken()) {
+            completeFrame(currentFrame);
         }
-        return null;
+    }
+
+    /**
+     * 当前帧是否需要单独发送，比如文件实体帧不能与其他帧聚合
+     */
+    synchronized boolean isCurrentFrameExclusive() {
+        return mFrameQueue.peek() instanceof SendFileEntityFrame;
+    }
+
+    private synchronized Frame getCurrentFrame() {
+        return mFrameQueue.peek();
     }
 
     /**
@@ -1,17 +1,30 @@
 package clink.impl.async;
 
 import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import clink.box.FileReceivePacket;
+import clink.core.AdaptiveIoArgsSizer;
 import clink.core.Frame;
 import clink.core.IoArgs;
+import clink.core.IoArgsPool;
+import clink.core.IoContext;
+import clink.core.IoMetrics;
+import clink.core.MappedFileWriter;
+import clink.core.MappedRegionIoArgs;
 import clink.core.ReceivePacket;
 import clink.frame.AbsReceiveFrame;
+import clink.frame.AckReceiveFrame;
 import clink.frame.CancelReceiveFrame;
+import clink.frame.PacketCompression;
 import clink.frame.HeartbeatReceiveFrame;
 import clink.frame.ReceiveEntityFrame;
 import clink.frame.ReceiveFrameFactory;
@@ -25,40 +38,97 @@ import clink.frame.ReceiveHeaderFrame;
 class AsyncPacketWriter implements Closeable {
 
     private final PacketProvider mPacketProvider;
-    private IoArgs mIoArgs = new IoArgs();
+    private final IoArgsPool mIoArgsPool;
+    private final IoMetrics mMetrics;
+    // 根据帧体的读取量调整接收 IoArgs 的容量，帧头固定只读取 6 字节，不参与调整
+    private final AdaptiveIoArgsSizer mIoArgsSizer;
 
     /**
-     * 用于存储当前正在接收的包，key为包的唯一标识，value记录了正在接受包的必须信息。
+     * 用于存储当前正在接收的包，下标为包的唯一标识（1~255），元素记录了正在接受包的必须信息，元素创建后被反复使用。
      */
-    private final HashMap<Short, PacketModel> mPacketMap = new HashMap<>();
+    private final PacketModel[] mPacketModels = new PacketModel[256];
 
     /**
      * 同一个时刻，只能接受一个帧的数据
      */
-    private volatile Frame frameTemp;
+    private Frame frameTemp;
 
-    AsyncPacketWriter(PacketProvider packetProvider) {
+    /*解析帧时复用的帧头缓冲与实体帧*/
+    private final byte[] mHeaderBuffer = new byte[Frame.FRAME_HEADER_LENGTH];
+    private final ReceiveEntityFrame mEntityFrame = ReceiveFrameFactory.createReusableEntityFrame();
+
+    private volatile boolean mIsClosed;
+
+    AsyncPacketWriter(PacketProvider packetProvider, IoArgsPool ioArgsPool) {
         mPacketProvider = packetProvider;
+        mIoArgsPool = ioArgsPool;
+        mIoArgsSizer = IoContext.get().newIoArgsSizer();
+        mMetrics = IoContext.get().metrics();
     }
 
+    /*
+     * 接收是串行的：takeIoArgs -> 读取数据 -> consumeIoArgs -> 再次注册接收，同一时刻只有一个线程进入下面的方法，
+     * 前后两次进入之间由 IoProvider 注册与回调的过程保证可见性，因此不需要同步。
+     * 只有 close 可能被其他线程并发调用，包的结束通过 PacketModel#take 的 CAS 保证只会发生一次。
+     */
+
     /**
      * 构建一份数据容纳封装
      * 当前帧如果没有则返回至少6字节长度的IoArgs，
-     * 如果当前帧有，则返回当前帧未消费完成的区间
+     * 如果当前帧有，则返回当前帧未消费完成的区间，IoArgs 借自缓存池，消费完成后需调用{@link #releaseIoArgs(IoArgs)}归还
      *
      * @return IoArgs
      */
-    synchronized IoArgs takeIoArgs() {
+    IoArgs takeIoArgs() {
+        Frame frame = frameTemp;
+        IoArgs args;
         //如果frameTemp为null，则先解析帧的头六个字节，用于确定是什么类型的数据，用于接下来的帧的构建
-        if (frameTemp == null) {
-            mIoArgs.limit(Frame.FRAME_HEADER_LENGTH);
+        if (frame == null) {
+            args = mIoArgsPool.acquire(Frame.FRAME_HEADER_LENGTH, true);
+            args.limit(Frame.FRAME_HEADER_LENGTH);
+        } else if (frame instanceof ReceiveEntityFrame && ((ReceiveEntityFrame) frame).isBoundToMappedFile()) {
+            // 内存映射的实体帧，数据直接读取到文件映射的内存中
+            try {
+                return ((ReceiveEntityFrame) frame).takeMappedRegion();
+            } catch (IOException e) {
+                // 映射失败时使用普通的 IoArgs，帧消费时拷贝到映射中，如果仍然失败则在消费时报告
+                e.printStackTrace();
+                args = mIoArgsPool.acquire(frame.getConsumableLength(), true);
+                args.limit(frame.getConsumableLength());
+            }
+        } else if (frame instanceof ReceiveEntityFrame && ((ReceiveEntityFrame) frame).isBoundToFile()) {
+            // 直接写入文件的实体帧，使用足够容纳剩余帧体的 IoArgs，减少读写次数
+            args = mIoArgsPool.acquire(frame.getConsumableLength(), true);
+            args.limit(frame.getConsumableLength());
         } else {
-            mIoArgs.limit(frameTemp.getConsumableLength());
+            // 帧体按自适应的容量读取，接收时总是需要填满，因此本次读取的数据量即是 limit
+            int size = Math.min(mIoArgsSizer.guess(), frame.getConsumableLength());
+            args = mIoArgsPool.acquire(size, true);
+            args.limit(size);
+            mIoArgsSizer.record(size);
         }
-        return mIoArgs;
+        return args;
+    }
+
+    /**
+     * 接收 IoArgs 的容量统计
+     */
+    AdaptiveIoArgsSizer getIoArgsSizer() {
+        return mIoArgsSizer;
     }
 
-    synchronized void consumeIoArgs(IoArgs args) {
+    /**
+     * 归还 {@link #takeIoArgs()} 借出的 IoArgs
+     */
+    void releaseIoArgs(IoArgs args) {
+        if (args instanceof MappedRegionIoArgs) {
+            ((MappedRegionIoArgs) args).release();
+            return;
+        }
+        mIoArgsPool.release(args);
+    }
+
+    void consumeIoArgs(IoArgs args) {
         if (frameTemp == null) {
             Frame temp;
             do {
@@ -103,11 +173,15 @@ class AsyncPacketWriter implements Closeable {
                                 headerFrame.getPacketHeaderInfo());
 
                         //把包的标识添加到缓存容器中
-                        appendNewPacket(headerFrame.getBodyIdentifier(), packet);
+                        appendNewPacket(headerFrame, packet);
 
                     } else if (currentFrame instanceof ReceiveEntityFrame) {
                         // Packet 实体帧消费完成，则将当前帧消费到Packet
                         completeEntityFrame((ReceiveEntityFrame) currentFrame);
+                    } else if (currentFrame instanceof AckReceiveFrame) {
+                        // 确认帧的帧体接收完成，交给连接更新对应文件的确认长度
+                        AckReceiveFrame ackFrame = (AckReceiveFrame) currentFrame;
+                        mPacketProvider.onReceivedAcknowledge(ackFrame.getContentHash(), ackFrame.getAcknowledgedLength());
                     }
 
                     // 接收完成后，直接退出循环，如果还有未消费数据则交给外层调度
@@ -126,36 +200,59 @@ class AsyncPacketWriter implements Closeable {
      * @param frame 已经消费的帧信息
      */
     private void completeEntityFrame(ReceiveEntityFrame frame) {
-        synchronized (mPacketMap) {//针对mPacketMap的同步
-            short identifier = frame.getBodyIdentifier();
-            int length = frame.getBodyLength();
-            PacketModel model = mPacketMap.get(identifier);
-
-            if (model == null) {
-                return;
-            }
+        PacketModel model = mPacketModels[frame.getBodyIdentifier()];
+        if (model == null || !model.isReceiving()) {
+            return;
+        }
 
-            model.unreceivedLength -= length;
+        model.unreceivedLength -= frame.getBodyLength();
 
-            //如果包对应的 model 中未消费的长度为0了，则说明该包已经接收完毕了
-            //应该将其从map中移除，并且通知外部该包已经接收完毕
-            if (model.unreceivedLength <= 0) {
-                mPacketProvider.completedPacket(model.packet, true);
-                mPacketMap.remove(identifier);
-            }
+        //如果包对应的 model 中未消费的长度为0了，则说明该包已经接收完毕了，通知外部该包已经接收完毕
+        if (model.unreceivedLength <= 0) {
+            completePacket(model, true);
         }
     }
 
     /**
      * 添加一个新的Packet到当前缓冲区
      *
-     * @param identifier Packet标志
-     * @param packet     Packet
+     * @param headerFrame Packet的头帧
+     * @param packet      Packet
      */
-    private void appendNewPacket(short identifier, ReceivePacket packet) {
-        synchronized (mPacketMap) {//针对mPacketMap的同步
-            PacketModel model = new PacketModel(packet);
-            mPacketMap.put(identifier, model);
+    private void appendNewPacket(ReceiveHeaderFrame headerFrame, ReceivePacket packet) {
+        short identifier = headerFrame.getBodyIdentifier();
+        PacketModel model = mPacketModels[identifier];
+        if (model == null) {
+            model = new PacketModel();
+            mPacketModels[identifier] = model;
+        } else if (model.isReceiving()) {
+            // 同一标识的上一个包还未接收完成就开始了新的包，上一个包已无法继续接收
+            completePacket(model, false);
+        }
+        model.reset(packet, headerFrame);
+
+        if (mIsClosed) {
+            // 与 close 并发时，close 可能已经遍历过当前元素
+            completePacket(model, false);
+        }
+    }
+
+    /**
+     * 结束一个包，与 close 并发时只会结束一次
+     */
+    private void completePacket(PacketModel model, boolean isSucceed) {
+        ReceivePacket packet = model.take();
+        if (packet != null) {
+            if (model.decoder != null) {
+                // 结束解压，解压器中缓存的数据写入包中，并释放解压器
+                isSucceed &= model.finishDecoding();
+            } else if (model.mappedFile != null) {
+                // 释放映射，失败时文件截断为已接收的长度
+                model.mappedFile.finish(model.entityLength - model.unreceivedLength, isSucceed);
+                model.mappedFile = null;
+            }
+            mMetrics.onPacketReceived(packet.getType(), isSucceed, System.nanoTime() - model.startTime);
+            mPacketProvider.completedPacket(packet, isSucceed);
         }
     }
 
@@ -167,61 +264,56 @@ class AsyncPacketWriter implements Closeable {
      * @return 返回新的帧
      */
     private Frame buildNewFrame(IoArgs args) {
-        AbsReceiveFrame frame = ReceiveFrameFactory.createInstance(args);
+        AbsReceiveFrame frame = ReceiveFrameFactory.createInstance(args, mHeaderBuffer, mEntityFrame);
+        mMetrics.onFrameReceived(frame.getBodyType());
         if (frame instanceof CancelReceiveFrame) {
             //取消则直接返回null
             cancelReceivePacket(frame.getBodyIdentifier());
             return null;
         } else if (frame instanceof HeartbeatReceiveFrame) {
+            mMetrics.onHeartbeatReceived();
             mPacketProvider.onReceivedHeartbeat();
             return null;
         } else if (frame instanceof ReceiveEntityFrame) {
-            //如果是实体帧，则应该为其创建Channel
-            WritableByteChannel channel = getPacketChannel(frame.getBodyIdentifier());
-            ((ReceiveEntityFrame) frame).bindPacketChannel(channel);
+            //如果是实体帧，则应该为其绑定Channel
+            PacketModel model = mPacketModels[frame.getBodyIdentifier()];
+            if (model != null && model.isReceiving()) {
+                ReceiveEntityFrame entityFrame = (ReceiveEntityFrame) frame;
+                if (model.mappedFile != null) {
+                    entityFrame.bindMappedFile(model.mappedFile, model.entityLength - model.unreceivedLength);
+                } else if (model.fileChannel != null) {
+                    // 同一个包的实体帧是顺序到达的，已接收的长度即是当前帧在文件中的位置
+                    entityFrame.bindFileChannel(model.fileChannel, model.entityLength - model.unreceivedLength);
+                } else {
+                    entityFrame.bindPacketChannel(model.channel);
+                }
+            }
         } /*else if (frame instanceof ReceiveHeaderFrame) {
             //否则 frame 就是头帧，直接返回即可
         }*/
         return frame;
     }
 
-    /**
-     * 获取Packet对应的输出通道，用以设置给帧进行数据传输
-     * 因为关闭当前map的原因，可能存在返回NULL
-     *
-     * @param identifier Packet对应的标志
-     * @return 通道
-     */
-    private WritableByteChannel getPacketChannel(short identifier) {
-        synchronized (mPacketMap) {
-            PacketModel model = mPacketMap.get(identifier);
-            return model == null ? null : model.channel;
-        }
-    }
-
     /**
      * 取消某Packet继续接收数据
      *
      * @param identifier Packet标志
      */
     private void cancelReceivePacket(short identifier) {
-        synchronized (mPacketMap) {
-            PacketModel model = mPacketMap.get(identifier);
-            if (model != null) {
-                ReceivePacket packet = model.packet;
-                mPacketProvider.completedPacket(packet, false);
-            }
+        // 结束后该包后续的实体帧（发送方填充的假数据）将被直接丢弃，不会再写入已关闭的流
+        PacketModel model = mPacketModels[identifier];
+        if (model != null) {
+            completePacket(model, false);
         }
     }
 
     @Override
     public void close() {
-        synchronized (mPacketMap) {
-            Collection<PacketModel> values = mPacketMap.values();
-            for (PacketModel value : values) {
-                mPacketProvider.completedPacket(value.packet, false);
+        mIsClosed = true;
+        for (PacketModel model : mPacketModels) {
+            if (model != null) {
+                completePacket(model, false);
             }
-            mPacketMap.clear();
         }
     }
 
@@ -253,18 +345,183 @@ class AsyncPacketWriter implements Closeable {
          */
         void onReceivedHeartbeat();
 
+        /**
+         * 当收到一个接收确认时触发
+         *
+         * @param contentHash        被确认的文件的内容摘要
+         * @param acknowledgedLength 接收方已经校验并持久化的长度
+         */
+        void onReceivedAcknowledge(byte[] contentHash, long acknowledgedLength);
+
     }
 
-    /*针对接收包信息的封装*/
+    /*针对接收包信息的封装，每个标识对应一个实例，接收新的包时重置*/
     static class PacketModel {
-        final ReceivePacket packet;
-        final WritableByteChannel channel;
-        volatile long unreceivedLength;
 
-        PacketModel(ReceivePacket<?, ?> packet) {
+        private static final AtomicReferenceFieldUpdater<PacketModel, ReceivePacket> PACKET_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(PacketModel.class, ReceivePacket.class, "packet");
+
+        volatile ReceivePacket packet;
+        WritableByteChannel channel;
+        // 文件类型的包直接写入 FileChannel，其他类型为 null
+        FileChannel fileChannel;
+        // 压缩的包通过解压器写入包的流，其他类型为 null
+        OutputStream decoder;
+        // 解压后的数据，限制不超过包的长度，其他类型为 null
+        LimitedOutputStream decoded;
+        // 写入解压器的通道，解压失败之后丢弃数据，其他类型为 null
+        DecodingChannel decodingChannel;
+        // 内存映射接收的文件，其他类型为 null
+        MappedFileWriter mappedFile;
+        // 实体帧的数据总长度，压缩的包为压缩后的长度
+        long entityLength;
+        long unreceivedLength;
+        // 收到头帧的时间，用于统计接收耗时
+        long startTime;
+
+        void reset(ReceivePacket<?, ?> packet, ReceiveHeaderFrame headerFrame) {
+            IoContext ioContext = IoContext.get();
+            this.decoder = null;
+            this.decoded = null;
+            this.decodingChannel = null;
+            this.mappedFile = null;
+            if (headerFrame.isCompressed()) {
+                // 边接收边解压，解压后的数据不能超过头帧中的原始长度，避免对端用很小的压缩包耗尽内存
+                this.decoded = new LimitedOutputStream(packet.open(), headerFrame.getPacketLength());
+                this.decoder = PacketCompression.newDecodingStream(headerFrame.getBodyFlag(), decoded);
+                this.decodingChannel = new DecodingChannel(Channels.newChannel(decoder));
+                this.fileChannel = null;
+                this.channel = decodingChannel;
+            } else if (packet instanceof FileReceivePacket && ioContext.isMappedReceive(headerFrame.getEntityLength())
+                    && (this.mappedFile = openMappedFile((FileReceivePacket) packet, headerFrame.getEntityLength())) != null) {
+                // 预分配文件并映射，实体帧直接读取到映射的内存中；不打开包的流，否则会截断文件并多持有一个文件句柄
+                this.fileChannel = null;
+                this.channel = null;
+            } else {
+                OutputStream stream = packet.open();
+                if (stream instanceof FileOutputStream && ioContext.isZeroCopyFile()) {
+                    this.fileChannel = ((FileOutputStream) stream).getChannel();
+                    this.channel = fileChannel;
+                } else {
+                    this.fileChannel = null;
+                    this.channel = Channels.newChannel(stream);
+                }
+            }
+            this.entityLength = headerFrame.getEntityLength();
+            this.unreceivedLength = entityLength;
+            this.startTime = System.nanoTime();
             this.packet = packet;
-            this.channel = Channels.newChannel(packet.open());
-            this.unreceivedLength = packet.getLength();
+        }
+
+        private static MappedFileWriter openMappedFile(FileReceivePacket packet, long length) {
+            try {
+                return new MappedFileWriter(packet.getFile(), length, IoContext.get().mappedReceiveWindowSize());
+            } catch (IOException e) {
+                // 预分配或者映射失败（比如磁盘空间不足）时使用普通的方式接收
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        /**
+         * 关闭解压器，数据不完整、已损坏或者解压后的长度与包的长度不一致时返回 false
+         */
+        boolean finishDecoding() {
+            try {
+                decoder.close();
+                return !decodingChannel.failed && decoded.count == decoded.limit;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            } finally {
+                decoder = null;
+                decoded = null;
+                decodingChannel = null;
+            }
+        }
+
+        boolean isReceiving() {
+            return packet != null;
+        }
+
+        /**
+         * 取出正在接收的包，取出后当前元素不再接收数据
+         *
+         * @return 已经被取出过时返回 null
+         */
+        ReceivePacket take() {
+            return PACKET_UPDATER.getAndSet(this, null);
+        }
+
+    }
+
+    /**
+     * 限制写入长度的输出流，写入的数据超过 limit 时抛出异常，超出的数据不会写入
+     */
+    static class LimitedOutputStream extends FilterOutputStream {
+
+        final long limit;
+        long count;
+
+        LimitedOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > limit - count) {
+                throw new IOException("Decoded data exceeds the packet length:" + limit);
+            }
+            out.write(b, off, len);
+            count += len;
+        }
+
+    }
+
+    /**
+     * 写入解压器的通道。解压失败（数据损坏或者超过包的长度）之后不再解压，但仍然消费所有的数据，
+     * 保证实体帧消费的长度与帧的长度一致，包在接收完成时以失败结束。
+     */
+    static class DecodingChannel implements WritableByteChannel {
+
+        private final WritableByteChannel channel;
+        boolean failed;
+
+        DecodingChannel(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            if (!failed) {
+                try {
+                    while (src.hasRemaining()) {
+                        channel.write(src);
+                    }
+                } catch (IOException e) {
+                    failed = true;
+                    e.printStackTrace();
+                }
+            }
+            src.position(src.limit());
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
         }
 
     }
@@ -3,7 +3,9 @@ package clink.impl.async;
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import clink.core.AdaptiveIoArgsSizer;
 import clink.core.IoArgs;
+import clink.core.IoContext;
 import clink.core.ReceiveDispatcher;
 import clink.core.ReceivePacket;
 import clink.core.Receiver;
@@ -43,9 +45,14 @@ public class AsyncReceiveDispatcher implements ReceiveDispatcher {
             receivePacketCallback.onReceivedHeartbeat();
         }
 
+        @Override
+        public void onReceivedAcknowledge(byte[] contentHash, long acknowledgedLength) {
+            receivePacketCallback.onReceivedAcknowledge(contentHash, acknowledgedLength);
+        }
+
     };
 
-    private final AsyncPacketWriter asyncPacketWriter = new AsyncPacketWriter(packetProvider);
+    private final AsyncPacketWriter asyncPacketWriter = new AsyncPacketWriter(packetProvider, IoContext.get().ioArgsPool());
 
     public AsyncReceiveDispatcher(Receiver receiver, ReceivePacketCallback receivePacketCallback) {
         this.receiver = receiver;
@@ -63,6 +70,13 @@ public class AsyncReceiveDispatcher implements ReceiveDispatcher {
         registerReceive();
     }
 
+    /**
+     * 接收 IoArgs 的容量统计
+     */
+    public AdaptiveIoArgsSizer getIoArgsSizer() {
+        return asyncPacketWriter.getIoArgsSizer();
+    }
+
     private void registerReceive() {
         try {
             receiver.postReceiveAsync();
@@ -95,6 +109,7 @@ public class AsyncReceiveDispatcher implements ReceiveDispatcher {
         @Override
         public void onConsumeCompleted(IoArgs args) {
             if (isClosed.get()) {
+                asyncPacketWriter.releaseIoArgs(args);
                 return;
             }
 
@@ -104,13 +119,19 @@ public class AsyncReceiveDispatcher implements ReceiveDispatcher {
             do {
                 asyncPacketWriter.consumeIoArgs(args);
             } while (args.remained() && !isClosed.get());
+            // 数据已消费，归还IoArgs
+            asyncPacketWriter.releaseIoArgs(args);
             //再次注册
             registerReceive();
         }
 
         @Override
         public void onConsumeFailed(IoArgs ioArgs, Exception e) {
-            e.printStackTrace();
+            asyncPacketWriter.releaseIoArgs(ioArgs);
+            if (!isClosed.get()) {
+                // 连接关闭导致的失败不需要打印
+                e.printStackTrace();
+            }
         }
 
     };
@@ -2,16 +2,36 @@ package clink.impl.async;
 
 import java.io.IOException;
 import java.util.Queue;
+import java.util.Iterator;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import clink.box.SharedSendPacket;
+import clink.core.AdaptiveIoArgsSizer;
+import clink.core.FileRegionIoArgs;
+import clink.core.GatheringIoArgs;
 import clink.core.IoArgs;
+import clink.core.IoArgsPool;
+import clink.core.IoContext;
+import clink.core.IoMetrics;
+import clink.core.Packet;
 import clink.core.SendDispatcher;
+import clink.core.SendOverflowPolicy;
 import clink.core.SendPacket;
 import clink.core.Sender;
+import clink.impl.NonBlockingThread;
 import clink.utils.CloseUtils;
 
 /**
+ * 发送调度的异步实现。
+ * <p>
+ * 每个连接统计待发送的内存数据量（已加入队列但还未发送完成的字节包与字符串包的长度之和），超过高水位时连接变为不可写，
+ * 降到低水位以下时恢复可写，状态变化通过 {@link SendDispatcher.WritabilityListener} 通知；
+ * 不可写期间发送的新包按照 {@link SendOverflowPolicy} 处理，避免对端读取过慢时数据在服务器中无限堆积。
+ *
  * @author Ztiany
  * Email ztiany3@gmail.com
  * Date 2018/11/18 17:35
@@ -22,26 +42,89 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
     private final AtomicBoolean mIsClosed = new AtomicBoolean(false);
 
     private final Queue<SendPacket> mSendPacketQueue = new ConcurrentLinkedQueue<>();
+    // 队列中包的数量，ConcurrentLinkedQueue#size 需要遍历整个队列
+    private final AtomicInteger mQueueSize = new AtomicInteger();
+
+    // 水位相关的状态都由 mWatermarkLock 保护，阻塞策略下的发送者也在其上等待
+    private final Object mWatermarkLock = new Object();
+    private volatile long mPendingBytes;
+    private volatile boolean mIsWritable = true;
+    private volatile long mLowWatermark;
+    private volatile long mHighWatermark;
+    private volatile SendOverflowPolicy mOverflowPolicy;
+    private final long mBlockTimeoutMillis;
+    private final WritabilityListener mWritabilityListener;
 
     private final AsyncPacketReader mAsyncPacketReader = new AsyncPacketReader(this);
 
     private final Sender mSender;
 
+    private final IoArgsPool mIoArgsPool;
+
+    private final IoMetrics mMetrics;
+
+    // 聚合写出的参数，发送是串行的，因此只需要一份
+    private final GatheringIoArgs mGatheringIoArgs;
+    private final int mSendBatchBytes;
+
+    // 根据每次填充的数据量调整发送 IoArgs 的容量
+    private final AdaptiveIoArgsSizer mIoArgsSizer;
+
     public AsyncSendDispatcher(Sender sender) {
+        this(sender, null);
+    }
+
+    /**
+     * @param writabilityListener 可写状态变化的回调，可以为 null
+     */
+    public AsyncSendDispatcher(Sender sender, WritabilityListener writabilityListener) {
+        IoContext ioContext = IoContext.get();
         mSender = sender;
+        mIoArgsPool = ioContext.ioArgsPool();
+        mMetrics = ioContext.metrics();
+        mGatheringIoArgs = ioContext.sendBatchFrames() > 1 ? new GatheringIoArgs(ioContext.sendBatchFrames()) : null;
+        mSendBatchBytes = ioContext.sendBatchBytes();
+        mIoArgsSizer = ioContext.newIoArgsSizer();
+        mLowWatermark = ioContext.sendLowWatermark();
+        mHighWatermark = ioContext.sendHighWatermark();
+        mOverflowPolicy = ioContext.sendOverflowPolicy();
+        mBlockTimeoutMillis = ioContext.sendBlockTimeoutMillis();
+        mWritabilityListener = writabilityListener;
         mSender.setSendListener(this);
     }
 
     /**
      * 发送Packet：首先添加到队列，如果当前状态为未启动发送状态，则尝试让reader提取一份packet进行数据发送，
      * 如果提取数据后reader有数据，则进行异步输出注册。
+     * <p>
+     * 共享包在加入队列时增加一个引用，在 {@link #completedPacket(SendPacket, boolean)} 中释放。
+     * <p>
+     * 连接不可写时，内存包按照溢出策略处理，可能被丢弃（视为发送失败）或者阻塞当前线程；
+     * 当前线程是 IO 线程或者分发线程时不会阻塞，直接丢弃。
      *
      * @param packet 数据
      */
     @Override
     public void send(SendPacket packet) {
+        if (packet instanceof SharedSendPacket) {
+            ((SharedSendPacket) packet).retain();
+        }
+        long weight = weightOf(packet);
+        if (weight > 0 && !mIsWritable && !handleOverflow()) {
+            // 丢弃新的包，它没有计入待发送的数据量
+            mMetrics.onPacketDropped();
+            finishPacket(packet, false);
+            return;
+        }
+        addPendingBytes(weight);
         //加入到队列中
         mSendPacketQueue.offer(packet);
+        mQueueSize.incrementAndGet();
+        if (mIsClosed.get()) {
+            // 与 close 并发时，close 可能已经清理过队列
+            clearPacketQueue();
+            return;
+        }
         //请求发送
         requestSend();
     }
@@ -52,14 +135,27 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
     @Override
     public void sendHeartbeat() {
         //如果队列中有实际的业务数据，则没有必要发送心跳帧。
-        if (mSendPacketQueue.size() > 0) {
+        if (mQueueSize.get() > 0) {
             return;
         }
         if (mAsyncPacketReader.requestSendHeartbeatFrame()) {
+            mMetrics.onHeartbeatSent();
             requestSend();
         }
     }
 
+    /**
+     * 发送确认帧，与心跳一样放到帧发送队列中优先发送
+     */
+    @Override
+    public void sendAcknowledge(byte[] contentHash, long acknowledgedLength) {
+        if (mIsClosed.get()) {
+            return;
+        }
+        mAsyncPacketReader.requestSendAckFrame(contentHash, acknowledgedLength);
+        requestSend();
+    }
+
 
     /**
      * 取消Packet操作：如果还在队列中，代表Packet未进行发送，则直接标志取消，并返回即可，
@@ -73,7 +169,14 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
         //完美取消
         boolean removed = mSendPacketQueue.remove(packet);
         if (removed) {
-            packet.cancel();
+            mQueueSize.decrementAndGet();
+            if (packet instanceof SharedSendPacket) {
+                // 共享包还可能在其他连接中发送，不能标记取消，只释放当前连接的引用
+                completedPacket(packet, false);
+            } else {
+                packet.cancel();
+                subtractPendingBytes(weightOf(packet));
+            }
             return;
         }
         //可能该包已经在发送了，调用包的发送者取消。
@@ -87,8 +190,10 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
         if (sendPacket == null) {
             return null;
         }
+        mQueueSize.decrementAndGet();
         //已经取消的包就不发送了
         if (sendPacket.isCanceled()) {
+            completedPacket(sendPacket, false);
             return takePacket();
         }
         return sendPacket;
@@ -132,13 +237,197 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
     public void close() {
         if (mIsClosed.compareAndSet(false, true)) {
             mAsyncPacketReader.close();
-            mSendPacketQueue.clear();
+            clearPacketQueue();
             synchronized (mIsSending) {
                 mIsSending.set(false);
             }
+            synchronized (mWatermarkLock) {
+                // 唤醒阻塞的发送者
+                mWatermarkLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 清空还未发送的包，这些包都视为发送失败
+     */
+    private void clearPacketQueue() {
+        SendPacket packet;
+        while ((packet = mSendPacketQueue.poll()) != null) {
+            mQueueSize.decrementAndGet();
+            completedPacket(packet, false);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 水位与溢出策略
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 包计入待发送数据量的大小，只有内存包才计入
+     */
+    private static long weightOf(SendPacket packet) {
+        byte type = packet.getType();
+        if (type == Packet.TYPE_MEMORY_BYTES || type == Packet.TYPE_MEMORY_STRING) {
+            return packet.getLength();
+        }
+        return 0;
+    }
+
+    private void addPendingBytes(long weight) {
+        if (weight == 0) {
+            return;
+        }
+        boolean changed = false;
+        synchronized (mWatermarkLock) {
+            mPendingBytes += weight;
+            if (mIsWritable && mPendingBytes >= mHighWatermark) {
+                mIsWritable = false;
+                changed = true;
+            }
+        }
+        if (changed) {
+            notifyWritabilityChanged(false);
+        }
+    }
+
+    private void subtractPendingBytes(long weight) {
+        if (weight == 0) {
+            return;
+        }
+        boolean changed = false;
+        synchronized (mWatermarkLock) {
+            mPendingBytes -= weight;
+            if (!mIsWritable && mPendingBytes <= mLowWatermark) {
+                mIsWritable = true;
+                changed = true;
+                mWatermarkLock.notifyAll();
+            }
+        }
+        if (changed) {
+            notifyWritabilityChanged(true);
+        }
+    }
+
+    private void notifyWritabilityChanged(boolean writable) {
+        if (!writable) {
+            mMetrics.onUnwritable();
+        }
+        WritabilityListener listener = mWritabilityListener;
+        if (listener != null) {
+            listener.onWritabilityChanged(writable);
+        }
+    }
+
+    /**
+     * 连接不可写时按照溢出策略处理
+     *
+     * @return 新的包是否可以加入队列
+     */
+    private boolean handleOverflow() {
+        switch (mOverflowPolicy) {
+            case DROP_OLDEST:
+                dropOldest();
+                return true;
+            case DISCONNECT:
+                // 关闭发送者即关闭整个连接，连接关闭时会关闭当前的调度者
+                CloseUtils.close(mSender);
+                return false;
+            case BLOCK:
+                // IO 线程与分发线程被多个连接共享，在其中阻塞会拖慢其他连接，按 DROP_NEW 处理
+                return !NonBlockingThread.isCurrent() && awaitWritable();
+            case DROP_NEW:
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 从队头开始丢弃内存包，直到低于高水位；正在发送的包不会被丢弃
+     */
+    private void dropOldest() {
+        Iterator<SendPacket> iterator = mSendPacketQueue.iterator();
+        while (mPendingBytes >= mHighWatermark && iterator.hasNext()) {
+            SendPacket packet = iterator.next();
+            if (weightOf(packet) > 0 && mSendPacketQueue.remove(packet)) {
+                mQueueSize.decrementAndGet();
+                mMetrics.onPacketDropped();
+                completedPacket(packet, false);
+            }
         }
     }
 
+    /**
+     * 等待连接恢复可写
+     *
+     * @return 在超时之前恢复可写时返回 true，超时、连接关闭或者被中断时返回 false
+     */
+    private boolean awaitWritable() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mBlockTimeoutMillis);
+        synchronized (mWatermarkLock) {
+            while (!mIsWritable && !mIsClosed.get()) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    mWatermarkLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return mIsWritable;
+        }
+    }
+
+    @Override
+    public boolean isWritable() {
+        return mIsWritable;
+    }
+
+    /**
+     * 待发送的内存数据量，字节
+     */
+    public long getPendingBytes() {
+        return mPendingBytes;
+    }
+
+    /**
+     * 设置当前连接的水位，替换 IoContext 中的默认值
+     *
+     * @param low  低水位，待发送的数据量降到该值及以下时恢复可写
+     * @param high 高水位，待发送的数据量达到该值时变为不可写
+     */
+    public void setWatermark(long low, long high) {
+        if (low < 0 || high <= low) {
+            throw new IllegalArgumentException("Required 0 <= low < high.");
+        }
+        boolean changed = false;
+        synchronized (mWatermarkLock) {
+            mLowWatermark = low;
+            mHighWatermark = high;
+            if (mIsWritable && mPendingBytes >= high) {
+                mIsWritable = false;
+                changed = true;
+            } else if (!mIsWritable && mPendingBytes <= low) {
+                mIsWritable = true;
+                changed = true;
+                mWatermarkLock.notifyAll();
+            }
+        }
+        if (changed) {
+            notifyWritabilityChanged(mIsWritable);
+        }
+    }
+
+    /**
+     * 设置当前连接的溢出策略，替换 IoContext 中的默认值
+     */
+    public void setOverflowPolicy(SendOverflowPolicy policy) {
+        mOverflowPolicy = Objects.requireNonNull(policy);
+    }
+
     /**
      * 网络发送就绪回调，当前已进入发送就绪状态，等待填充数据进行发送，
      * 此时从reader中填充数据，并进行后续网络发送。
@@ -148,14 +437,73 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
     @Override
     public IoArgs provideIoArgs() {
         //System.out.println(Thread.currentThread()+" provideIoArgs "+this);
-        return mIsClosed.get() ? null : mAsyncPacketReader.fillData();
+        if (mIsClosed.get()) {
+            return null;
+        }
+        IoArgs args = fillNext();
+        if (args == null || mGatheringIoArgs == null || args instanceof FileRegionIoArgs) {
+            return args;
+        }
+
+        // 继续填充后续已就绪的帧，通过一次系统调用写出
+        GatheringIoArgs gatheringIoArgs = mGatheringIoArgs;
+        gatheringIoArgs.add(args);
+        while (!gatheringIoArgs.isFull() && gatheringIoArgs.totalBytes() < mSendBatchBytes
+                && !mAsyncPacketReader.isCurrentFrameExclusive()) {
+            IoArgs next = fillNext();
+            if (next == null) {
+                break;
+            }
+            if (!next.remained()) {
+                // 没有填充任何数据（比如已取消的帧），本次不再继续聚合
+                mIoArgsPool.release(next);
+                break;
+            }
+            gatheringIoArgs.add(next);
+        }
+
+        if (gatheringIoArgs.size() == 1) {
+            // 只有一份时没有必要聚合
+            gatheringIoArgs.clear();
+            return args;
+        }
+        return gatheringIoArgs;
+    }
+
+    /**
+     * 从 reader 中填充一份数据，没有可发送的帧时返回 null
+     */
+    private IoArgs fillNext() {
+        int size = mIoArgsSizer.guess();
+        IoArgs args = mIoArgsPool.acquire(size, true);
+        args.limit(size);
+        IoArgs filled = mAsyncPacketReader.fillData(args);
+        if (filled != args) {
+            // 没有数据，或者返回的是文件区间
+            mIoArgsPool.release(args);
+        } else {
+            mIoArgsSizer.record(args.remaining());
+        }
+        return filled;
+    }
+
+    /**
+     * 发送 IoArgs 的容量统计
+     */
+    public AdaptiveIoArgsSizer getIoArgsSizer() {
+        return mIoArgsSizer;
     }
 
     @Override
     public void onConsumeFailed(IoArgs ioArgs, Exception e) {
         //System.out.println(Thread.currentThread()+" onConsumeFailed "+this);
 
-        e.printStackTrace();
+        if (!mIsClosed.get()) {
+            // 连接关闭导致的失败不需要打印
+            e.printStackTrace();
+        }
+        // 归还IoArgs
+        mIoArgsPool.release(ioArgs);
         // 设置当前发送状态
         synchronized (mIsSending) {
             mIsSending.set(false);
@@ -168,6 +516,14 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
     public void onConsumeCompleted(IoArgs args) {
         //System.out.println(Thread.currentThread()+" onConsumeCompleted "+this);
 
+        if (args instanceof FileRegionIoArgs) {
+            // 文件区间写出完成，才可以结束对应的帧
+            mAsyncPacketReader.completeRegion();
+        }
+
+        // 数据已写出，归还IoArgs
+        mIoArgsPool.release(args);
+
         // 设置当前发送状态
         synchronized (mIsSending) {
             mIsSending.set(false);
@@ -183,7 +539,19 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
      */
     @Override
     public void completedPacket(SendPacket sendPacket, boolean isSucceed) {
+        subtractPendingBytes(weightOf(sendPacket));
+        finishPacket(sendPacket, isSucceed);
+    }
+
+    /**
+     * 结束一个包，不涉及待发送数据量的统计
+     */
+    private void finishPacket(SendPacket sendPacket, boolean isSucceed) {
+        mMetrics.onPacketSent(sendPacket.getType(), isSucceed);
         CloseUtils.close(sendPacket);
+        if (sendPacket instanceof SharedSendPacket) {
+            ((SharedSendPacket) sendPacket).release();
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package clink.impl.bridge;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import clink.core.IoArgs;
+
+/**
+ * 桥接转发的一块数据，由接收到数据的 IoArgs 直接构成，被所有转发目标共享，引用计数归零时由来源归还 IoArgs。
+ */
+class BridgeChunk {
+
+    private final BridgeSocketDispatcher source;
+    private final IoArgs args;
+    private final AtomicInteger refCount;
+
+    /**
+     * @param source   数据来源
+     * @param args     已处于读取模式的 IoArgs
+     * @param refCount 初始引用计数，即转发目标的数量
+     */
+    BridgeChunk(BridgeSocketDispatcher source, IoArgs args, int refCount) {
+        this.source = source;
+        this.args = args;
+        this.refCount = new AtomicInteger(refCount);
+    }
+
+    IoArgs getArgs() {
+        return args;
+    }
+
+    /**
+     * 为一个转发目标创建用于发送的视图，不拷贝数据
+     */
+    IoArgs newView() {
+        return args.duplicate();
+    }
+
+    /**
+     * 一个转发目标已经使用完成
+     */
+    void release() {
+        if (refCount.decrementAndGet() == 0) {
+            source.onChunkReleased(this);
+        }
+    }
+
+}
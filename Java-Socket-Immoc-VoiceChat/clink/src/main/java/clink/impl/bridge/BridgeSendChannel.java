@@ -0,0 +1,130 @@
+package clink.impl.bridge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import clink.core.IoArgs;
+import clink.core.Sender;
+
+/**
+ * 桥接的发送通道，接管一个链接的发送者，把来自一个或多个桥接来源的数据块依次发送出去。
+ * <p>
+ * 发送的是数据块的视图，多个目标共享同一份接收到的数据；一个目标链接只有一个发送通道，多个来源（比如多人的音频房间）共享它。
+ */
+public class BridgeSendChannel implements IoArgs.IoArgsEventProcessor, Closeable {
+
+    private final Sender sender;
+
+    private final Queue<BridgeChunk> mChunkQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 正在发送的数据块，发送是串行的，同一时刻最多只有一个
+     */
+    private final AtomicReference<BridgeChunk> mSendingChunk = new AtomicReference<>();
+
+    /**
+     * 当前是否处于发送中
+     */
+    private final AtomicBoolean isSending = new AtomicBoolean();
+
+    private volatile boolean isClosed;
+
+    public BridgeSendChannel(Sender sender) {
+        this.sender = sender;
+        sender.setSendListener(this);
+    }
+
+    /**
+     * 添加一块待发送的数据，当前通道持有数据块的一个引用，发送完成或被关闭时释放
+     */
+    void offer(BridgeChunk chunk) {
+        if (isClosed) {
+            chunk.release();
+            return;
+        }
+        mChunkQueue.offer(chunk);
+        if (isClosed) {
+            // 与 close 并发时，close 可能已经清理过队列
+            releaseQueuedChunks();
+            return;
+        }
+        requestSend();
+    }
+
+    /**
+     * 请求网络进行数据发送
+     */
+    private void requestSend() {
+        synchronized (isSending) {
+            if (isSending.get() || isClosed || mChunkQueue.isEmpty()) {
+                return;
+            }
+            try {
+                if (sender.postSendAsync()) {
+                    isSending.set(true);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public IoArgs provideIoArgs() {
+        BridgeChunk chunk = mChunkQueue.poll();
+        if (chunk == null) {
+            return null;
+        }
+        mSendingChunk.set(chunk);
+        return chunk.newView();
+    }
+
+    @Override
+    public void onConsumeFailed(IoArgs args, Exception e) {
+        if (!isClosed) {
+            // 连接关闭导致的失败不需要打印
+            e.printStackTrace();
+        }
+        onConsumeCompleted(args);
+    }
+
+    @Override
+    public void onConsumeCompleted(IoArgs args) {
+        BridgeChunk chunk = mSendingChunk.getAndSet(null);
+        if (chunk != null) {
+            chunk.release();
+        }
+        // 设置当前发送状态
+        synchronized (isSending) {
+            isSending.set(false);
+        }
+        // 继续发送后续的数据
+        requestSend();
+    }
+
+    private void releaseQueuedChunks() {
+        BridgeChunk chunk;
+        while ((chunk = mChunkQueue.poll()) != null) {
+            chunk.release();
+        }
+    }
+
+    /**
+     * 关闭后不再发送数据，释放所有持有的数据块；发送中的数据块在链接关闭时不会再有完成回调，也在此释放
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        sender.setSendListener(null);
+        releaseQueuedChunks();
+        BridgeChunk chunk = mSendingChunk.getAndSet(null);
+        if (chunk != null) {
+            chunk.release();
+        }
+    }
+
+}
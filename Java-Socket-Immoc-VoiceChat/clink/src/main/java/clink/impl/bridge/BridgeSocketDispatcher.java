@@ -1,85 +1,98 @@
-
 package clink.impl.bridge;
 
 
 import clink.core.*;
-import clink.utils.plugin.CircularByteBuffer;
 
 import java.io.IOException;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 桥接调度器实现
  * 当前调度器同时实现了发送者与接受者调度逻辑
  * 核心思想为：把接受者接收到的数据全部转发给发送者
+ * <p>
+ * 接收到的 IoArgs 不再拷贝到中间缓冲区，而是作为一个数据块直接交给所有转发目标的 {@link BridgeSendChannel}，
+ * 各目标发送数据块的视图，全部发送完成后 IoArgs 才归还缓存池。
+ * 在途（已接收但还未被所有目标发送完成）的数据块达到 {@link #MAX_IN_FLIGHT_CHUNKS} 时暂停接收，由 TCP 把压力反馈给发送方。
  */
 public class BridgeSocketDispatcher implements ReceiveDispatcher, SendDispatcher {
 
     /**
-     * 数据暂存的缓冲区
-     */
-    private final CircularByteBuffer mBuffer = new CircularByteBuffer(512, true);
-
-    /**
-     * 根据缓冲区得到的读取通道
+     * 最多在途的数据块数量
      */
-    private final ReadableByteChannel readableByteChannel = Channels.newChannel(mBuffer.getInputStream());
+    private static final int MAX_IN_FLIGHT_CHUNKS = 8;
 
-    /**
-     * 根据缓冲区得到的写入通道
-     */
-    private final WritableByteChannel writableByteChannel = Channels.newChannel(mBuffer.getOutputStream());
+    private static final BridgeSendChannel[] EMPTY_TARGETS = new BridgeSendChannel[0];
 
     private final Receiver receiver;
 
     /**
-     * 有数据则接收，无数据不强求填满，有多少返回多少
+     * 接收所用的 IoArgs 借自缓存池，所有目标发送完成后归还
      */
-    private final IoArgs receiveIoArgs = new IoArgs(256, false);
+    private final IoArgsPool ioArgsPool;
 
-    private volatile Sender sender;
+    private final AdaptiveIoArgsSizer ioArgsSizer;
 
     /**
-     * 当前是否处于发送中
+     * 转发目标，读多写少，修改时整体替换
      */
-    private final AtomicBoolean isSending = new AtomicBoolean();
+    private volatile BridgeSendChannel[] targets = EMPTY_TARGETS;
+
+    private final AtomicInteger inFlightChunks = new AtomicInteger();
 
     /**
-     * 用以发送的IoArgs，默认全部发送数据
+     * 是否因为在途的数据块过多而暂停了接收
      */
-    private final IoArgs sendIoArgs = new IoArgs();
+    private final AtomicBoolean isReceivePaused = new AtomicBoolean();
+
+    private volatile boolean isClosed;
 
     public BridgeSocketDispatcher(Receiver receiver) {
         this.receiver = receiver;
+        IoContext ioContext = IoContext.get();
+        this.ioArgsPool = ioContext.ioArgsPool();
+        this.ioArgsSizer = ioContext.newIoArgsSizer();
     }
 
     /**
-     * 绑定一个新的发送者，在绑定时，将老的发送者对应的调度设置为 null。
+     * 绑定唯一的转发目标，替换之前所有的目标。
      *
-     * @param sender 新的发送者
+     * @param target 新的转发目标，为 null 时解除所有的转发
      */
-    public void bindSender(Sender sender) {
-        // 清理老的发送者回调
-        final Sender oldSender = this.sender;
-        if (oldSender != null) {
-            oldSender.setSendListener(null);
-        }
+    public synchronized void bindTarget(BridgeSendChannel target) {
+        targets = target == null ? EMPTY_TARGETS : new BridgeSendChannel[]{target};
+    }
 
-        // 清理操作
-        synchronized (isSending) {
-            isSending.set(false);
+    /**
+     * 添加一个转发目标，用于一对多的转发
+     */
+    public synchronized void addTarget(BridgeSendChannel target) {
+        BridgeSendChannel[] current = targets;
+        for (BridgeSendChannel channel : current) {
+            if (channel == target) {
+                return;
+            }
         }
+        BridgeSendChannel[] newTargets = Arrays.copyOf(current, current.length + 1);
+        newTargets[current.length] = target;
+        targets = newTargets;
+    }
 
-        mBuffer.clear();
-
-        // 设置新的发送者
-        this.sender = sender;
-        if (sender != null) {
-            sender.setSendListener(senderEventProcessor);
-            requestSend();
+    /**
+     * 移除一个转发目标，已经交给该目标的数据仍会发送完成
+     */
+    public synchronized void removeTarget(BridgeSendChannel target) {
+        BridgeSendChannel[] current = targets;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == target) {
+                BridgeSendChannel[] newTargets = new BridgeSendChannel[current.length - 1];
+                System.arraycopy(current, 0, newTargets, 0, i);
+                System.arraycopy(current, i + 1, newTargets, i, current.length - i - 1);
+                targets = newTargets;
+                return;
+            }
         }
     }
 
@@ -107,6 +120,11 @@ public class BridgeSocketDispatcher implements ReceiveDispatcher, SendDispatcher
         // nothing
     }
 
+    @Override
+    public void sendAcknowledge(byte[] contentHash, long acknowledgedLength) {
+        // nothing
+    }
+
     @Override
     public void cancel(SendPacket packet) {
         // nothing
@@ -114,13 +132,17 @@ public class BridgeSocketDispatcher implements ReceiveDispatcher, SendDispatcher
 
     @Override
     public void close() {
-        // nothing
+        isClosed = true;
+        targets = EMPTY_TARGETS;
     }
 
     /**
      * 请求网络进行数据接收
      */
     private void registerReceive() {
+        if (isClosed) {
+            return;
+        }
         try {
             receiver.postReceiveAsync();
         } catch (IOException e) {
@@ -129,26 +151,27 @@ public class BridgeSocketDispatcher implements ReceiveDispatcher, SendDispatcher
     }
 
     /**
-     * 请求网络进行数据发送
+     * 在途的数据块过多时暂停接收，否则继续接收
      */
-    private void requestSend() {
-        synchronized (isSending) {
-            final Sender sender = this.sender;
-            if (isSending.get() || sender == null) {
-                return;
-            }
+    private void registerReceiveIfAllowed() {
+        if (inFlightChunks.get() < MAX_IN_FLIGHT_CHUNKS) {
+            registerReceive();
+            return;
+        }
+        isReceivePaused.set(true);
+        // 设置暂停标志的同时可能所有的数据块都已经被释放，需要再检查一次
+        if (inFlightChunks.get() < MAX_IN_FLIGHT_CHUNKS && isReceivePaused.compareAndSet(true, false)) {
+            registerReceive();
+        }
+    }
 
-            // 返回True代表当前有数据需要发送
-            if (mBuffer.getAvailable() > 0) {
-                try {
-                    boolean isSucceed = sender.postSendAsync();
-                    if (isSucceed) {
-                        isSending.set(true);
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+    /**
+     * 数据块已被所有的目标发送完成
+     */
+    void onChunkReleased(BridgeChunk chunk) {
+        ioArgsPool.release(chunk.getArgs());
+        if (inFlightChunks.decrementAndGet() < MAX_IN_FLIGHT_CHUNKS && isReceivePaused.compareAndSet(true, false)) {
+            registerReceive();
         }
     }
 
@@ -159,7 +182,8 @@ public class BridgeSocketDispatcher implements ReceiveDispatcher, SendDispatcher
 
         @Override
         public IoArgs provideIoArgs() {
-            receiveIoArgs.resetLimit();
+            // 有数据则接收，无数据不强求填满，有多少返回多少
+            IoArgs receiveIoArgs = ioArgsPool.acquire(ioArgsSizer.guess(), false);
             // 一份新的 IoArgs 需要调用一次开始写入数据的操作。
             receiveIoArgs.startWriting();
             return receiveIoArgs;
@@ -167,66 +191,35 @@ public class BridgeSocketDispatcher implements ReceiveDispatcher, SendDispatcher
 
         @Override
         public void onConsumeFailed(IoArgs args, Exception e) {
-            e.printStackTrace();
+            ioArgsPool.release(args);
+            if (!isClosed) {
+                // 连接关闭导致的失败不需要打印
+                e.printStackTrace();
+            }
         }
 
         @Override
         public void onConsumeCompleted(IoArgs args) {
             args.finishWriting();
-            try {
-                args.writeTo(writableByteChannel);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            registerReceive();
-            // 接收数据后请求发送数据
-            requestSend();
-        }
-    };
+            ioArgsSizer.record(args.remaining());
 
-    /**
-     * 发送者回调
-     */
-    private final IoArgs.IoArgsEventProcessor senderEventProcessor = new IoArgs.IoArgsEventProcessor() {
-
-        @Override
-        public IoArgs provideIoArgs() {
-            try {
-                int available = mBuffer.getAvailable();
-                IoArgs args = BridgeSocketDispatcher.this.sendIoArgs;
-                if (available > 0) {
-                    args.limit(available);
-                    args.startWriting();
-                    args.readFrom(readableByteChannel);
-                    args.finishWriting();
-                    return args;
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+            BridgeSendChannel[] targets = BridgeSocketDispatcher.this.targets;
+            if (targets.length == 0 || !args.remained()) {
+                // 没有转发目标，丢弃数据
+                ioArgsPool.release(args);
+                registerReceive();
+                return;
             }
-            return null;
-        }
 
-        @Override
-        public void onConsumeFailed(IoArgs args, Exception e) {
-            e.printStackTrace();
-            // 设置当前发送状态
-            synchronized (isSending) {
-                isSending.set(false);
+            // 所有目标共享同一份数据
+            inFlightChunks.incrementAndGet();
+            BridgeChunk chunk = new BridgeChunk(BridgeSocketDispatcher.this, args, targets.length);
+            for (BridgeSendChannel target : targets) {
+                target.offer(chunk);
             }
-            // 继续请求发送当前的数据
-            requestSend();
-        }
 
-        @Override
-        public void onConsumeCompleted(IoArgs args) {
-            // 设置当前发送状态
-            synchronized (isSending) {
-                isSending.set(false);
-            }
-            // 继续请求发送当前的数据
-            requestSend();
+            registerReceiveIfAllowed();
         }
     };
 
-}
\ No newline at end of file
+}
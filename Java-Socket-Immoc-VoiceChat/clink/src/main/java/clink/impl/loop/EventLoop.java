@@ -0,0 +1,227 @@
+package clink.impl.loop;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import clink.core.IoMetrics;
+import clink.core.IoProvider;
+import clink.impl.NonBlockingThread;
+import clink.utils.CloseUtils;
+
+/**
+ * 事件循环线程，独占一个 Selector，同时负责 select、IO 回调的执行以及注册任务的处理。
+ * <p>
+ * 所有对 Selector 的修改（register、interestOps、cancel）都只在本线程中进行：其他线程的注册请求被放入无锁任务队列，
+ * 由本线程在每一轮 select 之后统一消费，因此不再需要 IoSelectorProvider 中的 locker 同步以及每次注册都 wakeup。
+ */
+class EventLoop extends NonBlockingThread {
+
+    // 允许的操作
+    private static final int VALID_OPS = SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+
+    private final Selector selector;
+
+    // 待执行的注册/取消注册任务，多生产者单消费者
+    private final Queue<Runnable> taskQueue = new ConcurrentLinkedQueue<>();
+
+    // 为 true 时表示当前线程不处于 select 阻塞中（或者已经被唤醒过），此时添加任务无需再次 wakeup
+    private final AtomicBoolean wakenUp = new AtomicBoolean(false);
+
+    private volatile boolean isRunning = true;
+
+    volatile IoMetrics metrics;
+
+    EventLoop(String name) throws IOException {
+        super(name);
+        this.selector = Selector.open();
+        setPriority(Thread.MAX_PRIORITY);
+    }
+
+    /**
+     * 注册关心的事件，当事件就绪时 callback 将在本线程中被回调；对于同一个通道同一事件只在就绪时回调一次，如需继续关心需要重新注册。
+     */
+    boolean register(SocketChannel channel, int ops, IoProvider.HandleProviderCallback callback) {
+        if (!channel.isOpen() || !isRunning) {
+            return false;
+        }
+        execute(() -> doRegister(channel, ops, callback));
+        return true;
+    }
+
+    /**
+     * 取消通道对应的事件，当通道的所有事件都已取消时，将取消通道在 Selector 中的注册。
+     */
+    void unregister(SocketChannel channel, int ops) {
+        if (isRunning) {
+            execute(() -> doUnregister(channel, ops));
+        }
+    }
+
+    private void execute(Runnable task) {
+        if (Thread.currentThread() == this) {
+            // 已处于事件循环中（比如在 IO 回调中重新注册），直接执行
+            task.run();
+            return;
+        }
+        taskQueue.offer(task);
+        if (wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+            IoMetrics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.onSelectorWakeup();
+            }
+        }
+    }
+
+    private void doRegister(SocketChannel channel, int ops, IoProvider.HandleProviderCallback callback) {
+        if ((ops & ~VALID_OPS) != 0) {
+            return;
+        }
+        try {
+            SelectionKey key = channel.keyFor(selector);
+            if (key == null) {
+                key = channel.register(selector, ops, new KeyAttachment());
+            } else {
+                key.interestOps(key.interestOps() | ops);
+            }
+            ((KeyAttachment) key.attachment()).attach(ops, callback);
+        } catch (ClosedChannelException //通道可能关闭
+                | ClosedSelectorException  // Selector 可能被关闭
+                | CancelledKeyException ignore) /*key 可能被取消*/ {
+        }
+    }
+
+    private void doUnregister(SocketChannel channel, int ops) {
+        SelectionKey key = channel.keyFor(selector);
+        if (key == null) {
+            return;
+        }
+        KeyAttachment attachment = (KeyAttachment) key.attachment();
+        attachment.attach(ops, null);
+        if (attachment.isEmpty()) {
+            key.cancel();
+        } else if (key.isValid()) {
+            key.interestOps(key.interestOps() & ~ops);
+        }
+    }
+
+    @Override
+    public void run() {
+        final Selector selector = this.selector;
+        final AtomicBoolean wakenUp = this.wakenUp;
+
+        while (isRunning) {
+            try {
+                wakenUp.set(false);
+                // 有待执行的任务时不进行阻塞
+                if (taskQueue.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                IoMetrics metrics = this.metrics;
+                if (metrics != null) {
+                    metrics.onSelect();
+                }
+                // 处理期间其他线程添加任务无需唤醒，在本轮末尾会统一消费
+                wakenUp.set(true);
+
+                processSelectedKeys(selector.selectedKeys());
+                runAllTasks();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (ClosedSelectorException e) {
+                break;
+            }
+        }
+
+        CloseUtils.close(selector);
+    }
+
+    private void processSelectedKeys(Set<SelectionKey> selectionKeys) {
+        Iterator<SelectionKey> iterator = selectionKeys.iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+
+            KeyAttachment attachment = (KeyAttachment) key.attachment();
+            IoProvider.HandleProviderCallback inputCallback = null;
+            IoProvider.HandleProviderCallback outputCallback = null;
+
+            try {
+                int readyOps = key.readyOps();
+                // 取消已就绪事件的关心，回调中需要时会重新注册
+                key.interestOps(key.interestOps() & ~readyOps);
+                if ((readyOps & SelectionKey.OP_READ) != 0) {
+                    inputCallback = attachment.inputCallback;
+                }
+                if ((readyOps & SelectionKey.OP_WRITE) != 0) {
+                    outputCallback = attachment.outputCallback;
+                }
+            } catch (CancelledKeyException e) {
+                continue;
+            }
+
+            runCallback(inputCallback);
+            runCallback(outputCallback);
+        }
+    }
+
+    private void runAllTasks() {
+        Runnable task = taskQueue.poll();
+        while (task != null) {
+            runCallback(task);
+            task = taskQueue.poll();
+        }
+    }
+
+    private static void runCallback(Runnable runnable) {
+        if (runnable == null) {
+            return;
+        }
+        try {
+            runnable.run();
+        } catch (Exception e) {
+            // 不能让单个连接的异常导致整个事件循环退出
+            e.printStackTrace();
+        }
+    }
+
+    void exit() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    /**
+     * 通道在 Selector 中的附加值，保存读写回调
+     */
+    private static class KeyAttachment {
+
+        private IoProvider.HandleProviderCallback inputCallback;
+        private IoProvider.HandleProviderCallback outputCallback;
+
+        void attach(int ops, IoProvider.HandleProviderCallback callback) {
+            if ((ops & SelectionKey.OP_READ) != 0) {
+                inputCallback = callback;
+            }
+            if ((ops & SelectionKey.OP_WRITE) != 0) {
+                outputCallback = callback;
+            }
+        }
+
+        boolean isEmpty() {
+            return inputCallback == null && outputCallback == null;
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package clink.impl.loop;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import clink.core.IoMetrics;
+import clink.core.IoProvider;
+
+/**
+ * 基于多个事件循环的 IoProvider。
+ * <p>
+ * 与 IoSelectorProvider 的 读/写两个 Selector + 两个 20 线程的线程池 不同，这里启动 N 个（默认为 CPU 核心数）{@link EventLoop}，
+ * 每个 EventLoop 独占一个 Selector 并直接在本线程中执行 IO 回调。连接在第一次注册时（即 accept 后开始接收时）以轮询的方式绑定到某一个 EventLoop，
+ * 此后该连接所有的读写都在同一个线程中完成，避免了线程切换以及锁竞争。
+ */
+public class EventLoopProvider implements IoProvider {
+
+    private final AtomicBoolean isClosed = new AtomicBoolean(false);
+
+    private final EventLoop[] eventLoops;
+
+    // 连接与事件循环的绑定关系
+    private final ConcurrentHashMap<SocketChannel, EventLoop> channelLoops = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    public EventLoopProvider() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param loopCount 事件循环的数量
+     */
+    public EventLoopProvider(int loopCount) throws IOException {
+        if (loopCount <= 0) {
+            throw new IllegalArgumentException("loopCount must be greater than 0.");
+        }
+        eventLoops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            eventLoops[i] = new EventLoop("Clink EventLoop Thread-" + (i + 1));
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+    }
+
+    @Override
+    public boolean registerInput(SocketChannel channel, HandleProviderCallback callback) {
+        return register(channel, SelectionKey.OP_READ, callback);
+    }
+
+    @Override
+    public boolean registerOutput(SocketChannel channel, HandleProviderCallback callback) {
+        return register(channel, SelectionKey.OP_WRITE, callback);
+    }
+
+    private boolean register(SocketChannel channel, int ops, HandleProviderCallback callback) {
+        // 已关闭的通道不再绑定，否则绑定不会再被解除
+        if (isClosed.get() || !channel.isOpen()) {
+            return false;
+        }
+        EventLoop eventLoop = loopOf(channel);
+        if (eventLoop.register(channel, ops, callback)) {
+            return true;
+        }
+        // 检查之后通道被关闭，或者事件循环已退出，解除绑定
+        channelLoops.remove(channel, eventLoop);
+        return false;
+    }
+
+    @Override
+    public void setMetrics(IoMetrics metrics) {
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.metrics = metrics;
+        }
+    }
+
+    @Override
+    public void unRegisterInput(SocketChannel channel) {
+        EventLoop eventLoop = channelLoops.get(channel);
+        if (eventLoop != null) {
+            eventLoop.unregister(channel, SelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    public void unRegisterOutput(SocketChannel channel) {
+        // 连接关闭时会依次取消读写，取消写时同时解除绑定
+        EventLoop eventLoop = channelLoops.remove(channel);
+        if (eventLoop != null) {
+            eventLoop.unregister(channel, SelectionKey.OP_WRITE);
+        }
+    }
+
+    private EventLoop loopOf(SocketChannel channel) {
+        return channelLoops.computeIfAbsent(channel, key -> eventLoops[Math.abs(nextIndex.getAndIncrement() % eventLoops.length)]);
+    }
+
+    @Override
+    public void close() {
+        if (isClosed.compareAndSet(false, true)) {
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.exit();
+            }
+            channelLoops.clear();
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package clink.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图，以微秒为单位记录耗时，用于统计 p50/p99/p999 这类分位数。
+ * <p>
+ * 采用与 HdrHistogram 类似的对数-线性分桶：小于 32 微秒时每微秒一个桶，之后每个 2 的幂区间再均分为 32 个桶，
+ * 因此任意值的相对误差不超过 1/32（约 3%），而覆盖到 long 的全部范围也只需要不到 2000 个桶，记录一次只是一次原子自增。
+ * <p>
+ * 可以被多个线程同时记录；{@link #reset()} 与记录并发时可能丢失少量记录，只适合用于分段统计。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    // 总数与总和每次都会更新，使用 LongAdder 避免多个线程同时记录时竞争同一个值
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时，纳秒，小于 0 时按 0 记录
+     */
+    public void recordNanos(long nanos) {
+        record(TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0)));
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param micros 耗时，微秒
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        buckets.incrementAndGet(indexOf(micros));
+        count.increment();
+        sum.add(micros);
+        updateMin(micros);
+        updateMax(micros);
+    }
+
+    private void updateMin(long value) {
+        long current;
+        while (value < (current = min.get())) {
+            if (min.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private void updateMax(long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        // value >> shift 落在 [32, 64) 之间
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + (int) ((value >> shift) - SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * 桶所代表的最大值
+     */
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long sub = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * 获取分位数
+     *
+     * @param percentile 百分位，比如 99.9
+     * @return 微秒，没有记录时返回 0
+     */
+    public long percentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100D) / 100D));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += buckets.get(i);
+            if (accumulated >= target) {
+                // 不超过实际记录到的最大值
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return 最小值，微秒，没有记录时返回 0
+     */
+    public long getMin() {
+        return count.sum() == 0 ? 0 : min.get();
+    }
+
+    /**
+     * @return 最大值，微秒
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return 平均值，微秒
+     */
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * 清空所有记录
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, min=%dus, p50=%dus, p99=%dus, p999=%dus, max=%dus, mean=%.1fus",
+                getCount(),
+                getMin(),
+                percentile(50),
+                percentile(99),
+                percentile(99.9),
+                getMax(),
+                getMean());
+    }
+
+}
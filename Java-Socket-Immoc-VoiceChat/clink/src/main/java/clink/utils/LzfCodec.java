@@ -0,0 +1,311 @@
+package clink.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * LZF 压缩，与 liblzf 的块内编码一致：压缩率不如 Deflate，但是压缩与解压的速度快很多，适合对延迟敏感的消息。
+ * <p>
+ * 数据被切分为不超过 {@link #CHUNK_SIZE} 的块，每个块独立编码：
+ * <pre>
+ *     块类型：一个字节，0 表示未压缩，1 表示已压缩
+ *     块数据长度：两个字节
+ *     原始数据长度：两个字节，只有已压缩的块才有
+ *     块数据
+ * </pre>
+ * 压缩后更大的块按原样存储。解压时按块进行，通过 {@link #newDecodingStream(OutputStream)} 边接收边解压，最多只缓存一个块。
+ */
+public class LzfCodec {
+
+    public static final int CHUNK_SIZE = 0xFFFF;
+
+    private static final byte BLOCK_UNCOMPRESSED = 0;
+    private static final byte BLOCK_COMPRESSED = 1;
+
+    // 哈希表按输入的大小分配，小的消息不需要分配完整的表
+    private static final int MIN_HASH_BITS = 8;
+    private static final int MAX_HASH_BITS = 14;
+    // 最大回溯距离 8K，最大匹配长度 264
+    private static final int MAX_OFFSET = 1 << 13;
+    private static final int MAX_MATCH = (1 << 8) + (1 << 3);
+    // 字面量每段最多 32 个
+    private static final int MAX_LITERAL = 1 << 5;
+
+    private LzfCodec() {
+    }
+
+    /**
+     * 压缩数据
+     */
+    public static byte[] compress(byte[] data, int offset, int length) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(length / 2 + 16);
+        int maxChunk = Math.min(length, CHUNK_SIZE);
+        int hashBits = Math.max(MIN_HASH_BITS, Math.min(MAX_HASH_BITS, 32 - Integer.numberOfLeadingZeros(maxChunk)));
+        int[] hashTable = new int[1 << hashBits];
+        // 块的最大输出：块头 + 每 32 个字面量多一个控制字节
+        byte[] buffer = new byte[5 + maxChunk + maxChunk / MAX_LITERAL + 1];
+        int end = offset + length;
+        for (int position = offset; position < end; position += CHUNK_SIZE) {
+            int chunkLength = Math.min(CHUNK_SIZE, end - position);
+            int compressed = compressChunk(data, position, position + chunkLength, buffer, 5, hashTable, hashBits) - 5;
+            if (compressed < chunkLength) {
+                buffer[0] = BLOCK_COMPRESSED;
+                writeShort(buffer, 1, compressed);
+                writeShort(buffer, 3, chunkLength);
+                outputStream.write(buffer, 0, 5 + compressed);
+            } else {
+                buffer[0] = BLOCK_UNCOMPRESSED;
+                writeShort(buffer, 1, chunkLength);
+                outputStream.write(buffer, 0, 3);
+                outputStream.write(data, position, chunkLength);
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 压缩一个块
+     *
+     * @return 输出的结束位置
+     */
+    private static int compressChunk(byte[] in, int inPos, int inEnd, byte[] out, int outPos, int[] hashTable, int hashBits) {
+        // 哈希表中保存的是位置 + 1，0 表示没有
+        Arrays.fill(hashTable, 0);
+
+        int literals = 0;
+        // 为字面量的控制字节预留位置
+        int literalPos = outPos++;
+        int ip = inPos;
+
+        while (ip + 2 < inEnd) {
+            int hash = hash(in, ip, hashBits);
+            int ref = hashTable[hash] - 1;
+            hashTable[hash] = ip + 1;
+
+            int distance = ip - ref - 1;
+            if (ref >= inPos && distance < MAX_OFFSET
+                    && in[ref] == in[ip] && in[ref + 1] == in[ip + 1] && in[ref + 2] == in[ip + 2]) {
+                int maxLength = Math.min(inEnd - ip, MAX_MATCH);
+                int length = 3;
+                while (length < maxLength && in[ref + length] == in[ip + length]) {
+                    length++;
+                }
+
+                // 结束之前的字面量
+                if (literals == 0) {
+                    outPos = literalPos;
+                } else {
+                    out[literalPos] = (byte) (literals - 1);
+                }
+
+                int lengthCode = length - 2;
+                if (lengthCode < 7) {
+                    out[outPos++] = (byte) ((distance >> 8) + (lengthCode << 5));
+                } else {
+                    out[outPos++] = (byte) ((distance >> 8) + (7 << 5));
+                    out[outPos++] = (byte) (lengthCode - 7);
+                }
+                out[outPos++] = (byte) distance;
+
+                literals = 0;
+                literalPos = outPos++;
+
+                // 匹配的末尾也加入哈希表，提高后续的匹配率
+                int next = ip + length;
+                if (next + 2 < inEnd) {
+                    hashTable[hash(in, next - 1, hashBits)] = next;
+                }
+                ip = next;
+            } else {
+                out[outPos++] = in[ip++];
+                if (++literals == MAX_LITERAL) {
+                    out[literalPos] = (byte) (MAX_LITERAL - 1);
+                    literals = 0;
+                    literalPos = outPos++;
+                }
+            }
+        }
+
+        while (ip < inEnd) {
+            out[outPos++] = in[ip++];
+            if (++literals == MAX_LITERAL) {
+                out[literalPos] = (byte) (MAX_LITERAL - 1);
+                literals = 0;
+                literalPos = outPos++;
+            }
+        }
+
+        if (literals == 0) {
+            outPos = literalPos;
+        } else {
+            out[literalPos] = (byte) (literals - 1);
+        }
+        return outPos;
+    }
+
+    private static int hash(byte[] in, int position, int hashBits) {
+        int value = ((in[position] & 0xFF) << 16) | ((in[position + 1] & 0xFF) << 8) | (in[position + 2] & 0xFF);
+        return (value * 0x9E3779B1) >>> (32 - hashBits);
+    }
+
+    /**
+     * 解压一个块
+     *
+     * @return 解压后的长度
+     */
+    private static int decompressChunk(byte[] in, int inLength, byte[] out) throws IOException {
+        int ip = 0;
+        int op = 0;
+        try {
+            while (ip < inLength) {
+                int control = in[ip++] & 0xFF;
+                if (control < MAX_LITERAL) {
+                    // 字面量
+                    int length = control + 1;
+                    System.arraycopy(in, ip, out, op, length);
+                    ip += length;
+                    op += length;
+                } else {
+                    // 回溯引用
+                    int length = control >> 5;
+                    if (length == 7) {
+                        length += in[ip++] & 0xFF;
+                    }
+                    length += 2;
+                    int ref = op - ((control & 0x1F) << 8) - (in[ip++] & 0xFF) - 1;
+                    if (ref < 0) {
+                        throw new IOException("Corrupted lzf chunk: bad back reference.");
+                    }
+                    // 引用可能与输出重叠，只能逐字节复制
+                    for (int i = 0; i < length; i++) {
+                        out[op++] = out[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupted lzf chunk.", e);
+        }
+        return op;
+    }
+
+    private static void writeShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >> 8);
+        buffer[offset + 1] = (byte) value;
+    }
+
+    private static int readShort(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF);
+    }
+
+    /**
+     * 创建一个解压的输出流：写入压缩数据，解压后的数据写入到 out 中。
+     * <p>
+     * 关闭时检查数据是否完整，并且会关闭 out。
+     */
+    public static OutputStream newDecodingStream(OutputStream out) {
+        return new DecodingOutputStream(out);
+    }
+
+    private static class DecodingOutputStream extends FilterOutputStream {
+
+        private final byte[] header = new byte[5];
+        // 按遇到的最大块分配，小的消息不需要分配完整的块
+        private byte[] chunk = new byte[0];
+        private byte[] decoded = new byte[0];
+
+        // 当前块头已接收的长度
+        private int headerPosition;
+        // 当前块的头部长度，3 或者 5
+        private int headerLength = 3;
+        // 当前块数据的长度与已接收的长度
+        private int chunkLength = -1;
+        private int chunkPosition;
+
+        DecodingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int end = off + len;
+            while (off < end) {
+                if (chunkLength < 0) {
+                    // 接收块头
+                    header[headerPosition++] = b[off++];
+                    if (headerPosition == 1) {
+                        if (header[0] != BLOCK_UNCOMPRESSED && header[0] != BLOCK_COMPRESSED) {
+                            throw new IOException("Corrupted lzf stream: unknown block type " + header[0]);
+                        }
+                        headerLength = header[0] == BLOCK_COMPRESSED ? 5 : 3;
+                    }
+                    if (headerPosition == headerLength) {
+                        chunkLength = readShort(header, 1);
+                        chunkPosition = 0;
+                        if (header[0] == BLOCK_COMPRESSED) {
+                            ensureCapacity(chunkLength, readShort(header, 3));
+                        }
+                        if (chunkLength == 0) {
+                            completeChunk();
+                        }
+                    }
+                    continue;
+                }
+
+                int count = Math.min(end - off, chunkLength - chunkPosition);
+                if (header[0] == BLOCK_UNCOMPRESSED) {
+                    // 未压缩的块直接写出，不需要缓存
+                    out.write(b, off, count);
+                } else {
+                    System.arraycopy(b, off, chunk, chunkPosition, count);
+                }
+                off += count;
+                chunkPosition += count;
+                if (chunkPosition == chunkLength) {
+                    completeChunk();
+                }
+            }
+        }
+
+        private void ensureCapacity(int chunkLength, int decodedLength) {
+            if (chunk.length < chunkLength) {
+                chunk = new byte[chunkLength];
+            }
+            if (decoded.length < decodedLength) {
+                decoded = new byte[decodedLength];
+            }
+        }
+
+        private void completeChunk() throws IOException {
+            if (header[0] == BLOCK_COMPRESSED) {
+                int length = decompressChunk(chunk, chunkLength, decoded);
+                if (length != readShort(header, 3)) {
+                    throw new IOException("Corrupted lzf chunk: length mismatch.");
+                }
+                out.write(decoded, 0, length);
+            }
+            headerPosition = 0;
+            chunkLength = -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (headerPosition != 0 || chunkLength >= 0) {
+                    throw new IOException("Corrupted lzf stream: incomplete chunk.");
+                }
+            } finally {
+                super.close();
+            }
+        }
+
+    }
+
+}
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.channels.SocketChannel;
 
+import clink.box.ResumableFileStore;
 import clink.box.StringReceivePacket;
 import clink.core.Connector;
 import clink.core.IoContext;
@@ -65,6 +66,14 @@ public class ConnectorHandler extends Connector {
         return Foo.createRandomTemp(cachePath);
     }
 
+    /**
+     * 可续传文件的接收状态与临时文件保存在同一个缓存目录中
+     */
+    @Override
+    protected ResumableFileStore getResumableFileStore() {
+        return ResumableFileStore.of(cachePath);
+    }
+
     @Override
     protected OutputStream createNewReceiveDirectOutputStream(long length, byte[] headerInfo) {
         // 服务器默认创建一个内存存储ByteArrayOutputStream
@@ -95,9 +104,10 @@ public class ConnectorHandler extends Connector {
     }
 
     private void deliveryStringPacket(StringReceivePacket packet) {
+        // 以当前连接为 key 分发，同一个连接的消息按顺序处理，不同连接的消息可以并行处理
         IoContext.get()
                 .scheduler()
-                .delivery(() -> mStringPacketChain.handle(this, packet));
+                .delivery(this, () -> mStringPacketChain.handle(this, packet));
     }
 
     /**
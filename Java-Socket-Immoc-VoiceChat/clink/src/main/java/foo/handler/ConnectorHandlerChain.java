@@ -1,97 +1,139 @@
 package foo.handler;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 /**
  * 责任链默认结构封装
+ * <p>
+ * 链上的所有节点保存在链头持有的一个不可变数组中，添加与移除节点时复制出新的数组并通过 CAS 整体替换；
+ * 分发消息时只读取一次数组快照，然后依次遍历，不需要获取任何锁，也不会因为链很长而递归很深。
+ * 分发过程中链被修改时，本次分发仍然使用修改之前的快照。
  *
  * @param <Model>
  */
 public abstract class ConnectorHandlerChain<Model> {
 
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ConnectorHandlerChain, ConnectorHandlerChain[]> NODES_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(ConnectorHandlerChain.class, ConnectorHandlerChain[].class, "nodes");
+
     /**
-     * 当前节点所持有的下一份节点
+     * 链上的所有节点，第一个就是链头，只有链头持有
      */
-    private volatile ConnectorHandlerChain<Model> next;
+    private volatile ConnectorHandlerChain<Model>[] nodes;
+
+    /**
+     * 当前节点所在链的链头，新建的节点自己就是链头
+     */
+    private volatile ConnectorHandlerChain<Model> head;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected ConnectorHandlerChain() {
+        head = this;
+        nodes = new ConnectorHandlerChain[]{this};
+    }
 
     /**
      * 添加一个新的节点到当前链式结构的末尾。
      *
-     * @param newChain 新的节点
-     * @return 返回新的节点
+     * @param newChain 新的节点，只添加节点本身，不包括它自己的后续节点
+     * @return 返回新的节点，链中已经存在同一个 Class 的节点时返回已存在的节点
      */
     public ConnectorHandlerChain<Model> appendLast(ConnectorHandlerChain<Model> newChain) {
-        // 添加前，优先判断是否就是当前实例，
-        // 同时在一个链式结构中只能存在某一个节点的一个实例，使用Class区分
-        if (newChain == this || this.getClass().equals(newChain.getClass())) {
-            return this;
-        }
+        ConnectorHandlerChain<Model> head = this.head;
+        for (; ; ) {
+            ConnectorHandlerChain<Model>[] current = head.nodes;
+            // 在一个链式结构中只能存在某一个节点的一个实例，使用Class区分
+            for (ConnectorHandlerChain<Model> node : current) {
+                if (node == newChain || node.getClass().equals(newChain.getClass())) {
+                    return node;
+                }
+            }
 
-        synchronized (this) {
-            // 下一个节点为null，则追加
-            if (next == null) {
-                next = newChain;
+            ConnectorHandlerChain<Model>[] newNodes = Arrays.copyOf(current, current.length + 1);
+            newNodes[current.length] = newChain;
+            newChain.head = head;
+            if (NODES_UPDATER.compareAndSet(head, current, newNodes)) {
                 return newChain;
             }
-            // 否则让下一个节点进行新节点的添加，把责任让后推
-            return next.appendLast(newChain);
         }
     }
 
-
     /**
-     * <ul>
-     *     <li>PS1：移除节点中的某一个节点及其之后节点。</li>
-     *     <li>PS2：移除某节点时，如果其具有后续的节点，则把后续节点接到当节点上；实现可以移除中间某个节点。</li>
-     * </ul>
+     * 移除链中某一个节点，其后续的节点前移；链头不能被移除。
      *
      * @param clx 待移除节点的Class信息
      * @return 是否移除成功
      */
-    public synchronized boolean remove(Class<? extends ConnectorHandlerChain<Model>> clx) {
-        // 自己不能移除自己，因为自己未持有上一个链接的引用
-        if (this.getClass().equals(clx)) {
-            return false;
-        }
-
-        synchronized (this) {
-            if (next == null) {
-                // 当前无下一个节点存在，无法判断
+    public boolean remove(Class<? extends ConnectorHandlerChain<Model>> clx) {
+        ConnectorHandlerChain<Model> head = this.head;
+        for (; ; ) {
+            ConnectorHandlerChain<Model>[] current = head.nodes;
+            int index = -1;
+            // 从 1 开始，链头没有上一个节点，不能移除
+            for (int i = 1; i < current.length; i++) {
+                if (current[i].getClass().equals(clx)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
                 return false;
-            } else if (next.getClass().equals(clx)) {
-                // 移除next节点
-                next = next.next;
-                // A B C -> B
-                // A C
+            }
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            ConnectorHandlerChain<Model>[] newNodes = new ConnectorHandlerChain[current.length - 1];
+            System.arraycopy(current, 0, newNodes, 0, index);
+            System.arraycopy(current, index + 1, newNodes, index, current.length - index - 1);
+            if (NODES_UPDATER.compareAndSet(head, current, newNodes)) {
                 return true;
-            } else {
-                // 交给next进行移除操作
-                return next.remove(clx);
             }
         }
     }
 
     /**
-     * 优先自己消费，如果自己未消费；则给 next 消费，若：next=null 或 next 未消费，则回调{@link #consumeAgain(ConnectorHandler, Object)} 尝试再次消费。
+     * 从当前节点开始依次消费，如果有节点消费了则结束；若都未消费，则从最后一个节点往前依次回调{@link #consumeAgain(ConnectorHandler, Object)} 尝试再次消费。
      *
      * @param handler ClientHandler
      * @param model   Model
      * @return True consume 消费 或 consumeAgain 消费
      */
-    synchronized boolean handle(ConnectorHandler handler, Model model) {
-        ConnectorHandlerChain<Model> next = this.next;
+    public boolean handle(ConnectorHandler handler, Model model) {
+        ConnectorHandlerChain<Model>[] nodes = head.nodes;
+        int start = 0;
+        if (nodes[0] != this) {
+            // 不是从链头开始分发
+            start = indexOf(nodes, this);
+            if (start < 0) {
+                // 已经被移除
+                return consume(handler, model) || consumeAgain(handler, model);
+            }
+        }
 
-        // 自己消费
-        if (consume(handler, model)) {
-            return true;
+        // 依次消费
+        for (int i = start; i < nodes.length; i++) {
+            if (nodes[i].consume(handler, model)) {
+                return true;
+            }
         }
 
-        //交给下游处理
-        boolean consumed = next != null && next.handle(handler, model);
-        if (consumed) {
-            return true;
+        // 都不处理，从后往前再看要不要处理
+        for (int i = nodes.length - 1; i >= start; i--) {
+            if (nodes[i].consumeAgain(handler, model)) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        //下游不处理，自己再看要不要处理
-        return consumeAgain(handler, model);
+    private static int indexOf(ConnectorHandlerChain<?>[] nodes, ConnectorHandlerChain<?> node) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] == node) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     protected abstract boolean consume(ConnectorHandler handler, Model model);
@@ -101,4 +143,3 @@ public abstract class ConnectorHandlerChain<Model> {
     }
 
 }
-
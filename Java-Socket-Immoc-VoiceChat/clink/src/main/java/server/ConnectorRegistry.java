@@ -0,0 +1,173 @@
+package server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import foo.handler.ConnectorHandler;
+
+/**
+ * 连接注册表：以连接的 UUID 为键索引所有的连接，查找与移除都是 O(1)。
+ * <p>
+ * 同时维护两个二级索引，连接断开时按索引直接清理，不需要遍历所有的连接与群：
+ * <ul>
+ * <li>群成员索引：连接加入了哪些群。</li>
+ * <li>音频配对索引：命令链接与音频流链接的双向映射。</li>
+ * </ul>
+ * 所有的索引都是并发容器，可以在 IO 线程（连接关闭）与消息分发线程（命令处理）中同时访问。
+ */
+class ConnectorRegistry {
+
+    private final Map<UUID, ConnectorHandler> connectors = new ConcurrentHashMap<>();
+
+    /**
+     * 连接-所在的群
+     */
+    private final Map<ConnectorHandler, Set<Group>> memberships = new ConcurrentHashMap<>();
+
+    /**
+     * 音频命令控制链接-数据流传输链接
+     */
+    private final Map<ConnectorHandler, ConnectorHandler> audioCmdToStream = new ConcurrentHashMap<>();
+
+    /**
+     * 数据流传输链接-音频命令控制链接
+     */
+    private final Map<ConnectorHandler, ConnectorHandler> audioStreamToCmd = new ConcurrentHashMap<>();
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 连接
+    ///////////////////////////////////////////////////////////////////////////
+
+    void register(ConnectorHandler handler) {
+        connectors.put(handler.getKey(), handler);
+    }
+
+    /**
+     * @return 是否移除成功
+     */
+    boolean unregister(ConnectorHandler handler) {
+        return connectors.remove(handler.getKey(), handler);
+    }
+
+    /**
+     * 通过连接的唯一标志查找连接
+     *
+     * @param key UUID 字符串，忽略大小写
+     * @return 没有找到或者 key 不合法时返回 null
+     */
+    ConnectorHandler find(String key) {
+        try {
+            return connectors.get(UUID.fromString(key.trim()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    int size() {
+        return connectors.size();
+    }
+
+    /**
+     * 当前所有连接的快照
+     */
+    ConnectorHandler[] snapshot() {
+        return connectors.values().toArray(new ConnectorHandler[0]);
+    }
+
+    /**
+     * 清空所有的连接与索引
+     *
+     * @return 清空之前所有连接的快照
+     */
+    ConnectorHandler[] clear() {
+        ConnectorHandler[] handlers = snapshot();
+        for (ConnectorHandler handler : handlers) {
+            connectors.remove(handler.getKey(), handler);
+        }
+        memberships.clear();
+        audioCmdToStream.clear();
+        audioStreamToCmd.clear();
+        return handlers;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 群成员索引
+    ///////////////////////////////////////////////////////////////////////////
+
+    void onJoinGroup(ConnectorHandler handler, Group group) {
+        memberships.computeIfAbsent(handler, key -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(group);
+    }
+
+    void onLeaveGroup(ConnectorHandler handler, Group group) {
+        Set<Group> groups = memberships.get(handler);
+        if (groups != null) {
+            groups.remove(group);
+        }
+    }
+
+    /**
+     * 移除连接的群成员索引
+     *
+     * @return 连接所在的群
+     */
+    Group[] removeMemberships(ConnectorHandler handler) {
+        Set<Group> groups = memberships.remove(handler);
+        return groups == null ? new Group[0] : groups.toArray(new Group[0]);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 音频配对索引
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 建立命令链接与音频流链接的双向映射，替换两者之前的配对
+     */
+    synchronized void pairAudio(ConnectorHandler cmdConnector, ConnectorHandler streamConnector) {
+        unpairAudioCmd(cmdConnector);
+        unpairAudioStream(streamConnector);
+        audioCmdToStream.put(cmdConnector, streamConnector);
+        audioStreamToCmd.put(streamConnector, cmdConnector);
+    }
+
+    ConnectorHandler getAudioStream(ConnectorHandler cmdConnector) {
+        return audioCmdToStream.get(cmdConnector);
+    }
+
+    ConnectorHandler getAudioCmd(ConnectorHandler streamConnector) {
+        return audioStreamToCmd.get(streamConnector);
+    }
+
+    boolean isAudioCmd(ConnectorHandler handler) {
+        return audioCmdToStream.containsKey(handler);
+    }
+
+    /**
+     * 解除命令链接的配对
+     *
+     * @return 与之配对的音频流链接
+     */
+    synchronized ConnectorHandler unpairAudioCmd(ConnectorHandler cmdConnector) {
+        ConnectorHandler streamConnector = audioCmdToStream.remove(cmdConnector);
+        if (streamConnector != null) {
+            audioStreamToCmd.remove(streamConnector, cmdConnector);
+        }
+        return streamConnector;
+    }
+
+    /**
+     * 解除音频流链接的配对
+     *
+     * @return 与之配对的命令链接
+     */
+    synchronized ConnectorHandler unpairAudioStream(ConnectorHandler streamConnector) {
+        ConnectorHandler cmdConnector = audioStreamToCmd.remove(streamConnector);
+        if (cmdConnector != null) {
+            audioCmdToStream.remove(cmdConnector, streamConnector);
+        }
+        return cmdConnector;
+    }
+
+}
@@ -1,20 +1,25 @@
 package server;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import clink.box.SharedSendPacket;
 import clink.box.StringReceivePacket;
+import clink.core.SendPacket;
 import foo.handler.ConnectorHandler;
 import foo.handler.ConnectorStringPacketChain;
 
 /**
  * 群封装
+ * <p>
+ * 成员列表是写时复制的：加入与退出较少，转发消息时遍历的是成员的快照，不需要持有锁；
+ * 一条消息转发给所有成员时只编码一次，所有成员共享同一个 {@link SharedSendPacket}。
  */
 class Group {
 
     private final String name;
     private final GroupMessageAdapter adapter;
-    private final List<ConnectorHandler> members = new ArrayList<>();
+    private final List<ConnectorHandler> members = new CopyOnWriteArrayList<>();
 
     /**
      * @param name    群名
@@ -73,16 +78,22 @@ class Group {
 
         @Override
         protected boolean consume(ConnectorHandler handler, StringReceivePacket stringReceivePacket) {
-            synchronized (members) {
-                for (ConnectorHandler member : members) {
-                    if (member == handler) {
-                        continue;
-                    }
-                    //由外部发送和统计
-                    adapter.sendMessageToClient(member, stringReceivePacket.getEntity());
+            SharedSendPacket packet = null;
+            for (ConnectorHandler member : members) {
+                if (member == handler) {
+                    continue;
                 }
-                return true;
+                if (packet == null) {
+                    packet = new SharedSendPacket(stringReceivePacket.getEntity());
+                }
+                //由外部发送和统计
+                adapter.sendMessageToClient(member, packet);
+            }
+            if (packet != null) {
+                // 释放创建时持有的引用
+                packet.release();
             }
+            return true;
         }
     }
 
@@ -94,9 +105,9 @@ class Group {
          * 发送消息的接口
          *
          * @param handler 客户端
-         * @param msg     消息
+         * @param packet  消息，群发时所有成员共享同一个包
          */
-        void sendMessageToClient(ConnectorHandler handler, String msg);
+        void sendMessageToClient(ConnectorHandler handler, SendPacket packet);
     }
 
 }
\ No newline at end of file
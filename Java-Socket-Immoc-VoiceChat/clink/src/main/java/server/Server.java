@@ -1,9 +1,11 @@
 package server;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
 
 import clink.core.IoContext;
 import clink.impl.IoSelectorProvider;
@@ -25,7 +27,10 @@ class Server {
         //启动IoContext
         IoContext.setup()
                 .ioProvider(new IoSelectorProvider())
-                .scheduler(new SchedulerImpl(1))
+                // 可替换为多事件循环的实现进行对比：.ioProvider(new EventLoopProvider())
+                // 每个核一个分发线程，同一个连接的消息总是在同一个线程中按顺序处理
+                .scheduler(new SchedulerImpl(1, Runtime.getRuntime().availableProcessors()))
+                // 连接量较大时可替换为时间轮的实现：.scheduler(new HashedWheelScheduler(100, TimeUnit.MILLISECONDS, 512, Runtime.getRuntime().availableProcessors()))
                 .start();
 
         //文件缓存路径
@@ -41,6 +46,20 @@ class Server {
         //启动 UDP 接收，让 TCP 服务可以通过 UDP 广播被搜索到
         UDPProvider.start(UDPConstants.PORT_SERVER);
 
+        // 每 10 秒将运行指标输出到缓存目录，便于本地查看与采集
+        File metricsFile = new File(cachePath, "metrics.json");
+        Closeable metricsReporter = IoContext.get().metrics().scheduleSnapshot(
+                IoContext.get().scheduler(),
+                10,
+                TimeUnit.SECONDS,
+                (current, interval) -> {
+                    try {
+                        current.dump(metricsFile, true);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+
         // 启动Gui界面
         FooGui gui = new FooGui("Clink-Server", tcpServer::getStatusString);
         gui.doShow();
@@ -63,6 +82,7 @@ class Server {
 
         } while (true);
 
+        metricsReporter.close();
         UDPProvider.stop();
         tcpServer.stop();
         //关闭IoContext
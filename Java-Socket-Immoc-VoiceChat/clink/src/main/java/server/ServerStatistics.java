@@ -1,16 +1,20 @@
 package server;
 
+import java.util.concurrent.atomic.LongAdder;
+
 import clink.box.StringReceivePacket;
 import foo.handler.ConnectorHandler;
 import foo.handler.ConnectorStringPacketChain;
 
 /**
- * 负责统计
+ * 负责统计业务层面的消息数量，连接、字节、包、帧等框架层面的统计参考 {@link clink.core.IoMetrics}。
+ * <p>
+ * 计数会在多个分发线程中同时自增，因此使用 LongAdder。
  */
 class ServerStatistics {
 
-    long receiveSize;
-    long sendSize;
+    final LongAdder receiveSize = new LongAdder();
+    final LongAdder sendSize = new LongAdder();
 
     ConnectorStringPacketChain statisticsChain() {
         return new StatisticsConnectorStringPacketChain();
@@ -24,7 +28,7 @@ class ServerStatistics {
         @Override
         protected boolean consume(ConnectorHandler handler, StringReceivePacket stringReceivePacket) {
             // 接收数据量自增
-            receiveSize++;
+            receiveSize.increment();
             return false;
         }
     }
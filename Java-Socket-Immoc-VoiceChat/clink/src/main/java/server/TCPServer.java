@@ -6,15 +6,17 @@ import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+import clink.box.SharedSendPacket;
 import clink.box.StringReceivePacket;
 import clink.core.Connector;
+import clink.core.IoContext;
+import clink.core.IoMetrics;
 import clink.core.ScheduleJob;
+import clink.core.SendPacket;
 import clink.core.schedule.IdleTimeoutScheduleJob;
 import clink.utils.CloseUtils;
 import foo.Foo;
@@ -36,9 +38,9 @@ class TCPServer {
     private final int portServer;
 
     /**
-     * 所有建立的连接
+     * 所有建立的连接，以及群成员与音频配对的索引
      */
-    private final List<ConnectorHandler> connectorHandlerList = new ArrayList<>();
+    private final ConnectorRegistry registry = new ConnectorRegistry();
 
     /**
      * 文件缓存路径
@@ -55,7 +57,7 @@ class TCPServer {
     /**
      * 所有的群
      */
-    private final Map<String, Group> groups = new HashMap<>();
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
 
     /**
      * 新连接建立监听与处理
@@ -84,10 +86,8 @@ class TCPServer {
                 connectorHandler.schedule(scheduleJob);
 
                 //添加到连接管理中
-                synchronized (connectorHandlerList) {
-                    connectorHandlerList.add(connectorHandler);
-                    System.out.println("当前客户端数量：" + connectorHandlerList.size());
-                }
+                registry.register(connectorHandler);
+                System.out.println("当前客户端数量：" + registry.size());
 
                 // 回送客户端在服务器的唯一标志
                 sendMessageToClient(connectorHandler, Foo.COMMAND_INFO_NAME + connectorHandler.getKey().toString());
@@ -150,13 +150,7 @@ class TCPServer {
             acceptor.exit();
         }
 
-        ConnectorHandler[] connectorHandlers;
-
-        synchronized (connectorHandlerList) {
-            connectorHandlers = connectorHandlerList.toArray(new ConnectorHandler[0]);
-            connectorHandlerList.clear();
-        }
-
+        ConnectorHandler[] connectorHandlers = registry.clear();
         for (ConnectorHandler connectorHandler : connectorHandlers) {
             connectorHandler.exit();
         }
@@ -171,12 +165,11 @@ class TCPServer {
 
         @Override
         protected boolean consume(ConnectorHandler handler, Connector connector) {
-            synchronized (connectorHandlerList) {
-                connectorHandlerList.remove(handler);
+            registry.unregister(handler);
+            // 从所在的群中移除
+            for (Group group : registry.removeMemberships(handler)) {
+                group.removeMember(handler);
             }
-            // 移除群聊的客户端
-            Group group = groups.get(Foo.DEFAULT_GROUP_NAME);
-            group.removeMember(handler);
             return true;
         }
 
@@ -192,10 +185,16 @@ class TCPServer {
      * 获取当前的状态信息
      */
     Object[] getStatusString() {
+        IoMetrics.Snapshot snapshot = IoContext.get().metrics().snapshot();
         return new String[]{
-                "客户端数量：" + connectorHandlerList.size(),
-                "发送数量：" + statistics.sendSize,
-                "接收数量：" + statistics.receiveSize
+                "客户端数量：" + registry.size(),
+                "发送数量：" + statistics.sendSize.sum(),
+                "接收数量：" + statistics.receiveSize.sum(),
+                "读取字节：" + snapshot.getCounter("bytes.read"),
+                "写出字节：" + snapshot.getCounter("bytes.written"),
+                "分发队列：" + snapshot.getGauge("delivery.queue"),
+                "分发耗时：" + snapshot.getLatency("delivery.handle"),
+                "IoArgs池：" + IoContext.get().ioArgsPool()
         };
     }
 
@@ -208,13 +207,13 @@ class TCPServer {
      */
     void broadcast(String line) {
         line = "系统通知：" + line;
-        ConnectorHandler[] connectorHandlers;
-        synchronized (connectorHandlerList) {
-            connectorHandlers = connectorHandlerList.toArray(new ConnectorHandler[0]);
-        }
+        ConnectorHandler[] connectorHandlers = registry.snapshot();
+        // 所有客户端共享同一个包，只编码一次
+        SharedSendPacket packet = new SharedSendPacket(line);
         for (ConnectorHandler connectorHandler : connectorHandlers) {
-            sendMessageToClient(connectorHandler, line);
+            sendMessageToClient(connectorHandler, packet);
         }
+        packet.release();
     }
 
     /**
@@ -225,7 +224,18 @@ class TCPServer {
      */
     public void sendMessageToClient(ConnectorHandler handler, String msg) {
         handler.send(msg);
-        statistics.sendSize++;
+        statistics.sendSize.increment();
+    }
+
+    /**
+     * 发送包给某个客户端
+     *
+     * @param handler 客户端
+     * @param packet  包，可以是多个客户端共享的 {@link SharedSendPacket}
+     */
+    public void sendMessageToClient(ConnectorHandler handler, SendPacket packet) {
+        handler.send(packet);
+        statistics.sendSize.increment();
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -249,6 +259,7 @@ class TCPServer {
                 case Foo.COMMAND_GROUP_JOIN: {
                     Group group = groups.get(Foo.DEFAULT_GROUP_NAME);
                     if (group.addMember(handler)) {
+                        registry.onJoinGroup(handler, group);
                         sendMessageToClient(handler, "Join Group:" + group.getName());
                     }
                     return true;
@@ -256,6 +267,7 @@ class TCPServer {
                 case Foo.COMMAND_GROUP_LEAVE: {
                     Group group = groups.get(Foo.DEFAULT_GROUP_NAME);
                     if (group.removeMember(handler)) {
+                        registry.onLeaveGroup(handler, group);
                         sendMessageToClient(handler, "Leave Group:" + group.getName());
                     }
                     return true;
@@ -267,7 +279,7 @@ class TCPServer {
         @Override
         protected boolean consumeAgain(ConnectorHandler handler, StringReceivePacket stringReceivePacket) {
             // 捡漏的模式，当我们第一遍未消费，然后又没有加入到群，自然没有后续的节点消费，此时我们进行二次消费，返回发送过来的消息
-            mGroupMessageAdapter.sendMessageToClient(handler, "server replay：" + stringReceivePacket.getEntity());
+            sendMessageToClient(handler, "server replay：" + stringReceivePacket.getEntity());
             return true;
         }
 
@@ -277,35 +289,11 @@ class TCPServer {
     // 一对一桥接通信支持
     ///////////////////////////////////////////////////////////////////////////
 
-    /**
-     * 从全部列表中通过Key查询到一个链接
-     */
-    private ConnectorHandler findConnectorFromKey(String key) {
-        synchronized (connectorHandlerList) {
-            for (ConnectorHandler connectorHandler : connectorHandlerList) {
-                if (connectorHandler.getKey().toString().equalsIgnoreCase(key)) {
-                    return connectorHandler;
-                }
-            }
-        }
-        return null;
-    }
-
-    /**
-     * 音频命令控制链接映射表
-     */
-    private final HashMap<ConnectorHandler, ConnectorHandler> audioCmdToStreamMap = new HashMap<>(100);
-
-    /**
-     * 数据流传输链接映射表
-     */
-    private final HashMap<ConnectorHandler, ConnectorHandler> audioStreamToCmdMap = new HashMap<>(100);
-
     /**
      * 通过音频命令控制链接寻找数据传输流链接, 未找到则发送错误
      */
     private ConnectorHandler findAudioStreamConnector(ConnectorHandler handler) {
-        ConnectorHandler connectorHandler = audioCmdToStreamMap.get(handler);
+        ConnectorHandler connectorHandler = registry.getAudioStream(handler);
         if (connectorHandler == null) {
             sendMessageToClient(handler, Foo.COMMAND_INFO_AUDIO_ERROR);
             return null;
@@ -318,18 +306,23 @@ class TCPServer {
      * 通过音频数据传输流链接寻找命令控制链接
      */
     private ConnectorHandler findAudioCmdConnector(ConnectorHandler handler) {
-        return audioStreamToCmdMap.get(handler);
+        return registry.getAudioCmd(handler);
     }
 
     /**
      * 房间映射表, 房间号-房间的映射
      */
-    private final HashMap<String, AudioRoom> audioRoomMap = new HashMap<>(50);
+    private final Map<String, AudioRoom> audioRoomMap = new ConcurrentHashMap<>(50);
+
+    /**
+     * 多人房间的最大容量
+     */
+    private static final int MAX_AUDIO_ROOM_CAPACITY = 16;
 
     /**
      * 链接与房间的映射表，音频链接-房间的映射
      */
-    private final HashMap<ConnectorHandler, AudioRoom> audioStreamRoomMap = new HashMap<>(100);
+    private final Map<ConnectorHandler, AudioRoom> audioStreamRoomMap = new ConcurrentHashMap<>(100);
 
     /**
      * 音频命令解析
@@ -342,11 +335,10 @@ class TCPServer {
             if (str.startsWith(Foo.COMMAND_CONNECTOR_BIND)) {
                 // 绑定命令，也就是将音频流绑定到当前的命令流上【一个客户端会有两个连接，一个用于传输命令，一个用于传输流。】
                 String key = str.substring(Foo.COMMAND_CONNECTOR_BIND.length());
-                ConnectorHandler audioStreamConnector = findConnectorFromKey(key);
-                if (audioStreamConnector != null) {
+                ConnectorHandler audioStreamConnector = registry.find(key);
+                if (audioStreamConnector != null && audioStreamConnector != handler) {
                     // 添加绑定关系【双向绑定】
-                    audioCmdToStreamMap.put(handler, audioStreamConnector);
-                    audioStreamToCmdMap.put(audioStreamConnector, handler);
+                    registry.pairAudio(handler, audioStreamConnector);
                     // 转换为桥接模式
                     audioStreamConnector.changeToBridge();
                 }
@@ -354,8 +346,8 @@ class TCPServer {
                 // 创建房间操作
                 ConnectorHandler audioStreamConnector = findAudioStreamConnector(handler);
                 if (audioStreamConnector != null) {
-                    // 随机创建房间
-                    AudioRoom room = createNewRoom();
+                    // 随机创建房间，命令后可以跟房间的容量，默认为一对一
+                    AudioRoom room = createNewRoom(parseRoomCapacity(str.substring(Foo.COMMAND_AUDIO_CREATE_ROOM.length())));
                     // 加入一个客户端
                     joinRoom(room, audioStreamConnector);
                     // 发送成功消息
@@ -365,8 +357,8 @@ class TCPServer {
                 // 离开房间命令
                 ConnectorHandler audioStreamConnector = findAudioStreamConnector(handler);
                 if (audioStreamConnector != null) {
-                    // 任意一人离开都销毁房间
-                    dissolveRoom(audioStreamConnector);
+                    // 离开房间，剩余不足两人时销毁房间
+                    leaveRoom(audioStreamConnector);
                     // 发送离开消息
                     sendMessageToClient(handler, Foo.COMMAND_INFO_AUDIO_STOP);
                 }
@@ -379,17 +371,21 @@ class TCPServer {
                     AudioRoom room = audioRoomMap.get(roomCode);
                     // 如果找到了房间就走后面流程
                     if (room != null && joinRoom(room, audioStreamConnector)) {
-                        // 对方
-                        ConnectorHandler theOtherHandler = room.getTheOtherHandler(audioStreamConnector);
+                        // 房间内的其他人
+                        ConnectorHandler[] otherHandlers = room.getOtherHandlers(audioStreamConnector);
 
-                        // 相互搭建好乔
-                        theOtherHandler.bindToBridge(audioStreamConnector.getSender());
-                        audioStreamConnector.bindToBridge(theOtherHandler.getSender());
+                        // 与每个人相互搭建好桥，同一份数据转发给多人时不会拷贝
+                        for (ConnectorHandler otherHandler : otherHandlers) {
+                            otherHandler.addToBridge(audioStreamConnector);
+                            audioStreamConnector.addToBridge(otherHandler);
+                        }
 
                         // 成功加入房间
                         sendMessageToClient(handler, Foo.COMMAND_INFO_AUDIO_START);
-                        // 给对方发送可开始聊天的消息
-                        sendStreamConnectorMessage(theOtherHandler, Foo.COMMAND_INFO_AUDIO_START);
+                        if (otherHandlers.length == 1) {
+                            // 房间刚刚可以聊天，给对方发送可开始聊天的消息
+                            sendStreamConnectorMessage(otherHandlers[0], Foo.COMMAND_INFO_AUDIO_START);
+                        }
                     } else {
                         // 房间没找到，房间人员已满
                         sendMessageToClient(handler, Foo.COMMAND_INFO_AUDIO_ERROR);
@@ -409,14 +405,12 @@ class TCPServer {
 
         @Override
         protected boolean consume(ConnectorHandler handler, Connector connector) {
-            if (audioCmdToStreamMap.containsKey(handler)) {
+            if (registry.isAudioCmd(handler)) {
                 // 命令链接断开
-                audioCmdToStreamMap.remove(handler);
-            } else if (audioStreamToCmdMap.containsKey(handler)) {
-                // 流断开
-                audioStreamToCmdMap.remove(handler);
-                // 解散房间
-                dissolveRoom(handler);
+                registry.unpairAudioCmd(handler);
+            } else if (registry.unpairAudioStream(handler) != null) {
+                // 流断开，离开房间
+                leaveRoom(handler);
             }
             return false;
         }
@@ -428,20 +422,21 @@ class TCPServer {
     private void sendStreamConnectorMessage(ConnectorHandler streamConnector, String msg) {
         if (streamConnector != null) {
             ConnectorHandler audioCmdConnector = findAudioCmdConnector(streamConnector);
-            sendMessageToClient(audioCmdConnector, msg);
+            if (audioCmdConnector != null) {
+                sendMessageToClient(audioCmdConnector, msg);
+            }
         }
     }
 
     /**
      * 生成一个当前缓存列表中没有的房间
      */
-    private AudioRoom createNewRoom() {
+    private AudioRoom createNewRoom(int capacity) {
         AudioRoom room;
         do {
-            room = new AudioRoom();
-        } while (audioRoomMap.containsKey(room.getRoomCode()));
-        // 添加到缓存列表
-        audioRoomMap.put(room.getRoomCode(), room);
+            room = new AudioRoom(capacity);
+            // 添加到缓存列表，房间号已存在时重新生成
+        } while (audioRoomMap.putIfAbsent(room.getRoomCode(), room) != null);
         return room;
     }
 
@@ -451,13 +446,56 @@ class TCPServer {
      * @return 是否加入成功
      */
     private boolean joinRoom(AudioRoom room, ConnectorHandler streamConnector) {
-        if (room.enterRoom(streamConnector)) {
-            audioStreamRoomMap.put(streamConnector, room);
-            return true;
+        synchronized (room) {
+            // 房间可能已经被并发地解散
+            if (audioRoomMap.get(room.getRoomCode()) == room && room.enterRoom(streamConnector)) {
+                audioStreamRoomMap.put(streamConnector, room);
+                return true;
+            }
         }
         return false;
     }
 
+    /**
+     * 解析创建房间时指定的容量，未指定或不合法时为一对一
+     */
+    private static int parseRoomCapacity(String value) {
+        try {
+            int capacity = Integer.parseInt(value.trim());
+            return Math.max(AudioRoom.DEFAULT_CAPACITY, Math.min(capacity, MAX_AUDIO_ROOM_CAPACITY));
+        } catch (NumberFormatException e) {
+            return AudioRoom.DEFAULT_CAPACITY;
+        }
+    }
+
+    /**
+     * 离开房间，剩余不足两人时解散房间
+     *
+     * @param streamConnector 离开者
+     */
+    private void leaveRoom(ConnectorHandler streamConnector) {
+        AudioRoom room = audioStreamRoomMap.get(streamConnector);
+        if (room == null) {
+            return;
+        }
+
+        // 加入、离开与解散房间可能分别在消息分发线程与连接关闭的 IO 线程中进行
+        synchronized (room) {
+            if (room.getConnectors().length <= AudioRoom.DEFAULT_CAPACITY) {
+                dissolveRoom(streamConnector);
+                return;
+            }
+
+            // 拆除与其他人之间的桥
+            streamConnector.unBindToBridge();
+            for (ConnectorHandler otherHandler : room.getOtherHandlers(streamConnector)) {
+                otherHandler.removeFromBridge(streamConnector);
+            }
+            room.exitRoom(streamConnector);
+            audioStreamRoomMap.remove(streamConnector);
+        }
+    }
+
     /**
      * 解散房间
      *
@@ -6,20 +6,40 @@ import foo.handler.ConnectorHandler;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * 一对一房间的基本封装
+ * 音频房间的基本封装，默认为一对一房间，指定容量后可作为多人房间，房间内每个人的音频转发给其他所有人
  */
 public class AudioRoom {
 
+    /**
+     * 默认容量，一对一
+     */
+    public static final int DEFAULT_CAPACITY = 2;
+
     private final String roomCode;
 
-    private volatile ConnectorHandler handler1;
+    private final int capacity;
 
-    private volatile ConnectorHandler handler2;
+    /**
+     * 房间成员，读多写少
+     */
+    private final List<ConnectorHandler> handlers = new CopyOnWriteArrayList<>();
 
     public AudioRoom() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 房间最多容纳的人数
+     */
+    public AudioRoom(int capacity) {
+        if (capacity < DEFAULT_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be at least " + DEFAULT_CAPACITY);
+        }
         this.roomCode = getRandomString(5);
+        this.capacity = capacity;
     }
 
     public String getRoomCode() {
@@ -27,31 +47,35 @@ public class AudioRoom {
     }
 
     public ConnectorHandler[] getConnectors() {
-        List<ConnectorHandler> handlers = new ArrayList<>(2);
-
-        if (handler1 != null) {
-            handlers.add(handler1);
-        }
-
-        if (handler2 != null) {
-            handlers.add(handler2);
-        }
-
         return handlers.toArray(new ConnectorHandler[0]);
     }
 
     /**
-     * 获取对方
+     * 获取对方，多人房间时返回其他人中的第一个
      */
     public ConnectorHandler getTheOtherHandler(ConnectorHandler handler) {
-        return (handler1 == handler || handler1 == null) ? handler2 : handler1;
+        for (ConnectorHandler other : handlers) {
+            if (other != handler) {
+                return other;
+            }
+        }
+        return null;
     }
 
     /**
-     * 房间是否可聊天，是否两个客户端都具有。
+     * 获取除自己以外的其他人
      */
-    public synchronized boolean isEnable() {
-        return handler1 != null && handler2 != null;
+    public ConnectorHandler[] getOtherHandlers(ConnectorHandler handler) {
+        List<ConnectorHandler> others = new ArrayList<>(handlers);
+        others.remove(handler);
+        return others.toArray(new ConnectorHandler[0]);
+    }
+
+    /**
+     * 房间是否可聊天，是否至少有两个客户端。
+     */
+    public boolean isEnable() {
+        return handlers.size() >= DEFAULT_CAPACITY;
     }
 
     /**
@@ -60,28 +84,21 @@ public class AudioRoom {
      * @return 加入是否成功
      */
     public synchronized boolean enterRoom(ConnectorHandler handler) {
-        if (handler1 == null) {
-            handler1 = handler;
-        } else if (handler2 == null) {
-            handler2 = handler;
-        } else {
+        if (handlers.size() >= capacity || handlers.contains(handler)) {
             return false;
         }
+        handlers.add(handler);
         return true;
     }
 
     /**
      * 退出房间
      *
-     * @return 退出后如果还有一人剩余则返回剩余的人
+     * @return 退出后房间剩余的人数
      */
-    public synchronized ConnectorHandler exitRoom(ConnectorHandler handler) {
-        if (handler1 == handler) {
-            handler1 = null;
-        } else if (handler2 == handler) {
-            handler2 = null;
-        }
-        return handler1 == null ? handler2 : handler1;
+    public synchronized int exitRoom(ConnectorHandler handler) {
+        handlers.remove(handler);
+        return handlers.size();
     }
 
     /**
@@ -0,0 +1,109 @@
+package tester;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import clink.core.Frame;
+import clink.frame.PacketCompression;
+
+/**
+ * 包压缩的测试：以文本为主的聊天消息分别不压缩、Deflate 压缩、LZF 压缩时，线路上的数据量与压缩、解压的吞吐。
+ * <p>
+ * 消息由常用的中英文聊天语句随机拼接而成，长度分别为 1K、16K、256K；解压时按 4K 分段写入，与实体帧边接收边解压的方式一致。
+ */
+public class CompressionBenchmark {
+
+    private static final String[] WORDS = {
+            "你好", "在吗", "今天晚上一起吃饭吧", "好的，没问题", "我马上到", "收到", "哈哈哈哈", "这个文件帮我看一下",
+            "会议改到下午三点", "[表情]", "刚才网络不好", "hello", "ok", "see you later", "thanks!", "lol",
+            "http://www.example.com/share?id=", "@所有人 ", "明天见", "辛苦了"
+    };
+
+    private static final int[] SIZES = {1024, 16 * 1024, 256 * 1024};
+    private static final int DECODE_SEGMENT = 4 * 1024;
+    private static final byte[] FLAGS = {Frame.FLAG_NONE, Frame.FLAG_COMPRESS_DEFLATE, Frame.FLAG_COMPRESS_LZF};
+    private static final String[] NAMES = {"none", "deflate", "lzf"};
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(7);
+
+        // 预热
+        for (int size : SIZES) {
+            byte[] message = newMessage(random, size);
+            for (byte flag : FLAGS) {
+                run(flag, message, 200, false);
+            }
+        }
+
+        System.out.println("------------------------------");
+        for (int size : SIZES) {
+            byte[] message = newMessage(random, size);
+            int iterations = Math.max(20, 64 * 1024 * 1024 / size);
+            for (int i = 0; i < FLAGS.length; i++) {
+                System.out.print(String.format("size=%-7d %-8s", size, NAMES[i]));
+                run(FLAGS[i], message, iterations, true);
+            }
+        }
+    }
+
+    private static void run(byte flag, byte[] message, int iterations, boolean print) throws IOException {
+        byte[] encoded = message;
+        long compressTime = 0;
+        long decompressTime = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            if (flag != Frame.FLAG_NONE) {
+                encoded = PacketCompression.compress(flag, message, 0, message.length);
+            }
+            compressTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            byte[] decoded = decode(flag, encoded, message.length);
+            decompressTime += System.nanoTime() - start;
+
+            if (i == 0 && !Arrays.equals(message, decoded)) {
+                throw new IllegalStateException("Decoded message mismatch, flag=" + flag);
+            }
+        }
+
+        if (print) {
+            double megabytes = (double) message.length * iterations / (1024 * 1024);
+            System.out.println(String.format("wire=%8d (%5.1f%%)  compress=%8.1f MB/s  decompress=%8.1f MB/s",
+                    encoded.length,
+                    encoded.length * 100.0 / message.length,
+                    flag == Frame.FLAG_NONE ? 0 : megabytes / (compressTime / 1e9),
+                    flag == Frame.FLAG_NONE ? 0 : megabytes / (decompressTime / 1e9)));
+        }
+    }
+
+    private static byte[] decode(byte flag, byte[] encoded, int length) throws IOException {
+        if (flag == Frame.FLAG_NONE) {
+            return encoded;
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(length);
+        OutputStream decoder = PacketCompression.newDecodingStream(flag, outputStream);
+        for (int offset = 0; offset < encoded.length; offset += DECODE_SEGMENT) {
+            decoder.write(encoded, offset, Math.min(DECODE_SEGMENT, encoded.length - offset));
+        }
+        decoder.close();
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] newMessage(Random random, int size) {
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+            if (random.nextInt(4) == 0) {
+                builder.append(random.nextInt(100000));
+            }
+            builder.append(random.nextBoolean() ? ' ' : '\n');
+        }
+        byte[] bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(bytes, size);
+    }
+
+}
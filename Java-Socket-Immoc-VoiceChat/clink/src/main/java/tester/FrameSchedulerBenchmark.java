@@ -0,0 +1,160 @@
+package tester;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import clink.core.ds.PriorityRingQueue;
+
+/**
+ * 帧队列的测试：对比原来按优先级插入、按包线性查找取消的单向链表与 {@link PriorityRingQueue}。
+ * <p>
+ * 队列中同时有 n 个包（n 分别为 8、64、255），每个包同一时刻只有一个帧：
+ * 每次操作取出当前帧、加入同一个包的下一帧，每 16 次操作取消一个包并加入一个新的包，与多个文件、聊天消息在同一个连接上交错发送的情况一致。
+ * <p>
+ * 最后模拟一个 1000 帧的文件与随后到达的一条聊天消息，统计聊天消息发送之前需要等待的帧数。
+ */
+public class FrameSchedulerBenchmark {
+
+    private static final int OPERATIONS = 2000000;
+    private static final int CANCEL_INTERVAL = 16;
+
+    public static void main(String[] args) {
+        // 预热
+        for (int n : new int[]{8, 64, 255}) {
+            runLegacy(n);
+            runRing(n);
+        }
+
+        System.out.println("------------------------------");
+        for (int n : new int[]{8, 64, 255}) {
+            long legacyTime = runLegacy(n);
+            long ringTime = runRing(n);
+            System.out.println(String.format("packets=%-4d legacy=%,12.0f op/s  ring=%,12.0f op/s",
+                    n,
+                    OPERATIONS / (legacyTime / 1e9),
+                    OPERATIONS / (ringTime / 1e9)));
+        }
+
+        System.out.println("------------------------------");
+        System.out.println("frames before chat message, legacy=" + chatWaitLegacy(1000) + " ring=" + chatWaitRing(1000));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 吞吐
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static long runLegacy(int n) {
+        LegacyNode head = null;
+        int nextPacket = 0;
+        for (int i = 0; i < n; i++) {
+            head = LegacyNode.append(head, new LegacyNode(nextPacket++, (byte) (i & 1)));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            // 弹出当前帧，加入下一帧
+            LegacyNode current = head;
+            head = head.next;
+            head = LegacyNode.append(head, new LegacyNode(current.packet, current.priority));
+            if (i % CANCEL_INTERVAL == 0) {
+                // 线性查找取消的包
+                int cancel = nextPacket - n;
+                for (LegacyNode x = head, before = null; x != null; before = x, x = x.next) {
+                    if (x.packet == cancel) {
+                        if (before == null) {
+                            head = x.next;
+                        } else {
+                            before.next = x.next;
+                        }
+                        break;
+                    }
+                }
+                head = LegacyNode.append(head, new LegacyNode(nextPacket++, (byte) (i & 1)));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runRing(int n) {
+        PriorityRingQueue<Integer> queue = new PriorityRingQueue<>(PriorityRingQueue.STRICT, 4, 1);
+        Map<Integer, PriorityRingQueue.Node<Integer>> nodes = new IdentityHashMap<>();
+        Integer[] packets = new Integer[OPERATIONS / CANCEL_INTERVAL + n + 1];
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = Integer.valueOf(i);
+        }
+        int nextPacket = 0;
+        for (int i = 0; i < n; i++) {
+            Integer packet = packets[nextPacket++];
+            nodes.put(packet, queue.offer(packet, 1 + (i & 1)));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            PriorityRingQueue.Node<Integer> current = queue.current();
+            queue.rotate(current, current.item());
+            if (i % CANCEL_INTERVAL == 0) {
+                queue.remove(nodes.remove(packets[nextPacket - n]));
+                Integer packet = packets[nextPacket++];
+                nodes.put(packet, queue.offer(packet, 1 + (i & 1)));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 聊天消息的等待
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 原来的实现同一时刻只发送一个包，文件的剩余帧全部发送完成之后才能发送聊天消息
+     */
+    private static int chatWaitLegacy(int fileFrames) {
+        return fileFrames;
+    }
+
+    private static int chatWaitRing(int fileFrames) {
+        PriorityRingQueue<String> queue = new PriorityRingQueue<>(PriorityRingQueue.STRICT, 4, 1);
+        PriorityRingQueue.Node<String> file = queue.offer("file", 2);
+        // 文件已经开始发送
+        queue.rotate(queue.current(), "file");
+        queue.offer("chat", 1);
+        int waited = 0;
+        for (int i = 0; i < fileFrames; i++) {
+            String item = queue.peek();
+            if (item.equals("chat")) {
+                return waited;
+            }
+            waited++;
+            queue.rotate(file, "file");
+        }
+        return waited;
+    }
+
+    /**
+     * 原来的帧队列节点，按优先级递归插入
+     */
+    private static class LegacyNode {
+
+        final int packet;
+        final byte priority;
+        LegacyNode next;
+
+        LegacyNode(int packet, byte priority) {
+            this.packet = packet;
+            this.priority = priority;
+        }
+
+        static LegacyNode append(LegacyNode head, LegacyNode node) {
+            if (head == null) {
+                return node;
+            }
+            LegacyNode x = head;
+            while (x.next != null && x.next.priority >= node.priority) {
+                x = x.next;
+            }
+            node.next = x.next;
+            x.next = node;
+            return head;
+        }
+
+    }
+
+}
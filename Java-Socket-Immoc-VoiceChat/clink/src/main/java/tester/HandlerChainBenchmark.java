@@ -0,0 +1,165 @@
+package tester;
+
+import foo.handler.ConnectorHandler;
+import foo.handler.ConnectorHandlerChain;
+
+/**
+ * 责任链分发的吞吐测试：对比每个节点都加锁、递归分发的旧实现与数组快照、无锁迭代分发的 {@link ConnectorHandlerChain}。
+ * <p>
+ * 链长分别为 3、10、30，只有最后一个节点消费消息，与服务器中消息依次经过统计、命令解析、群转发等节点的情况一致。
+ * 每种链长分别由 1 个线程与 CPU 核数个线程（模拟多个分发线程处理不同连接的消息）执行。
+ */
+public class HandlerChainBenchmark {
+
+    private static final int ITERATIONS = 5000000;
+    private static final String MESSAGE = "Hello~~";
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        // 预热
+        for (int length : new int[]{3, 10, 30}) {
+            run(length, 1);
+        }
+
+        System.out.println("------------------------------");
+        int[] threadCounts = threads > 1 ? new int[]{1, threads} : new int[]{1};
+        for (int length : new int[]{3, 10, 30}) {
+            for (int threadCount : threadCounts) {
+                run(length, threadCount);
+            }
+        }
+    }
+
+    private static void run(int length, int threads) throws InterruptedException {
+        LegacyChain legacy = newLegacyChain(length);
+        ConnectorHandlerChain<String> snapshot = newSnapshotChain(length);
+
+        long legacyTime = parallel(threads, () -> legacy.handle(null, MESSAGE));
+        long snapshotTime = parallel(threads, () -> snapshot.handle(null, MESSAGE));
+
+        long total = (long) ITERATIONS * threads;
+        System.out.println(String.format("nodes=%-3d threads=%-2d legacy=%,12.0f msg/s  snapshot=%,12.0f msg/s",
+                length,
+                threads,
+                total / (legacyTime / 1e9),
+                total / (snapshotTime / 1e9)));
+    }
+
+    /**
+     * 每个线程执行 ITERATIONS 次
+     *
+     * @return 耗时，纳秒
+     */
+    private static long parallel(int threads, Runnable operation) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    operation.run();
+                }
+            }, "Benchmark-Thread-" + t);
+        }
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 快照实现
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static ConnectorHandlerChain<String> newSnapshotChain(int length) {
+        ConnectorHandlerChain<String>[] passNodes = newPassNodes();
+        if (length - 1 > passNodes.length) {
+            throw new IllegalArgumentException("length should not be greater than " + (passNodes.length + 1));
+        }
+        ConnectorHandlerChain<String> head = passNodes[0];
+        for (int i = 1; i < length - 1; i++) {
+            head.appendLast(passNodes[i]);
+        }
+        head.appendLast(new ConsumeNode());
+        return head;
+    }
+
+    private static class PassNode extends ConnectorHandlerChain<String> {
+        @Override
+        protected boolean consume(ConnectorHandler handler, String message) {
+            return false;
+        }
+    }
+
+    private static class ConsumeNode extends ConnectorHandlerChain<String> {
+        @Override
+        protected boolean consume(ConnectorHandler handler, String message) {
+            return !message.isEmpty();
+        }
+    }
+
+    /**
+     * 链中同一个 Class 只能有一个节点，因此每个节点都是不同的匿名类
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ConnectorHandlerChain<String>[] newPassNodes() {
+        return new ConnectorHandlerChain[]{
+                new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {},
+                new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {},
+                new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {},
+                new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {},
+                new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {},
+                new PassNode() {}, new PassNode() {}, new PassNode() {}, new PassNode() {}
+        };
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 旧实现：每个节点持有下一个节点，加锁递归分发
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static LegacyChain newLegacyChain(int length) {
+        LegacyChain head = new LegacyChain(false);
+        LegacyChain tail = head;
+        for (int i = 1; i < length; i++) {
+            LegacyChain node = new LegacyChain(i == length - 1);
+            tail.next = node;
+            tail = node;
+        }
+        return head;
+    }
+
+    private static class LegacyChain {
+
+        private final boolean isConsumer;
+        private volatile LegacyChain next;
+
+        LegacyChain(boolean isConsumer) {
+            this.isConsumer = isConsumer;
+        }
+
+        synchronized boolean handle(ConnectorHandler handler, String message) {
+            LegacyChain next = this.next;
+            if (consume(message)) {
+                return true;
+            }
+            boolean consumed = next != null && next.handle(handler, message);
+            if (consumed) {
+                return true;
+            }
+            return consumeAgain(message);
+        }
+
+        private boolean consume(String message) {
+            return isConsumer && !message.isEmpty();
+        }
+
+        private boolean consumeAgain(String message) {
+            return false;
+        }
+    }
+
+}
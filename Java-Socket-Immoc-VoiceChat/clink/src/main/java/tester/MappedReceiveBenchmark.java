@@ -0,0 +1,164 @@
+package tester;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+import clink.core.MappedFileWriter;
+
+/**
+ * 大文件接收的测试：通过本地回环的 Socket 接收 256M 的数据写入文件，对比三种方式的吞吐与 write 调用的次数：
+ * <ul>
+ *     <li>stream：读取到堆内的缓冲，再写入 FileOutputStream，与原来的 FileReceivePacket 一致；</li>
+ *     <li>channel：读取到直接内存的缓冲，再按位置写入 FileChannel；</li>
+ *     <li>mapped：通过 {@link MappedFileWriter} 直接读取到文件的映射中，没有 write 调用。</li>
+ * </ul>
+ * 每次读取最多 64K，与连接的接收缓冲大小一致。
+ */
+public class MappedReceiveBenchmark {
+
+    private static final long LENGTH = 256L * 1024 * 1024;
+    private static final int READ_SIZE = 64 * 1024;
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final String[] MODES = {"stream", "channel", "mapped"};
+
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("mapped-receive", ".tmp");
+        file.deleteOnExit();
+
+        // 预热
+        for (String mode : MODES) {
+            run(mode, file);
+        }
+
+        System.out.println("------------------------------");
+        for (String mode : MODES) {
+            long start = System.nanoTime();
+            long writes = run(mode, file);
+            long time = System.nanoTime() - start;
+            if (file.length() != LENGTH) {
+                throw new IllegalStateException("Received length mismatch: " + file.length());
+            }
+            System.out.println(String.format("%-8s %8.1f MB/s  writes=%d",
+                    mode,
+                    LENGTH / (1024.0 * 1024) / (time / 1e9),
+                    writes));
+        }
+        file.delete();
+    }
+
+    /**
+     * @return write 调用的次数
+     */
+    private static long run(String mode, File file) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            Thread sender = startSender(server.getLocalAddress());
+            try (SocketChannel socket = server.accept()) {
+                switch (mode) {
+                    case "stream":
+                        return receiveByStream(socket, file);
+                    case "channel":
+                        return receiveByChannel(socket, file);
+                    default:
+                        return receiveByMapping(socket, file);
+                }
+            } finally {
+                sender.join();
+            }
+        }
+    }
+
+    private static long receiveByStream(SocketChannel socket, File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+        long writes = 0;
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            for (long received = 0; received < LENGTH; ) {
+                buffer.clear();
+                int count = socket.read(buffer);
+                if (count < 0) {
+                    throw new IOException("Socket closed.");
+                }
+                outputStream.write(buffer.array(), 0, count);
+                writes++;
+                received += count;
+            }
+        }
+        return writes;
+    }
+
+    private static long receiveByChannel(SocketChannel socket, File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_SIZE);
+        long writes = 0;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(0);
+            FileChannel channel = randomAccessFile.getChannel();
+            for (long received = 0; received < LENGTH; ) {
+                buffer.clear();
+                int count = socket.read(buffer);
+                if (count < 0) {
+                    throw new IOException("Socket closed.");
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    received += channel.write(buffer, received);
+                    writes++;
+                }
+            }
+        }
+        return writes;
+    }
+
+    private static long receiveByMapping(SocketChannel socket, File file) throws IOException {
+        MappedFileWriter writer = new MappedFileWriter(file, LENGTH, WINDOW_SIZE);
+        long received = 0;
+        try {
+            while (received < LENGTH) {
+                ByteBuffer region = writer.acquireRegion(received, READ_SIZE);
+                try {
+                    int count = socket.read(region);
+                    if (count < 0) {
+                        throw new IOException("Socket closed.");
+                    }
+                    received += count;
+                } finally {
+                    writer.releaseRegion();
+                }
+            }
+        } finally {
+            writer.finish(received, received == LENGTH);
+        }
+        return 0;
+    }
+
+    private static Thread startSender(SocketAddress address) {
+        Thread thread = new Thread(() -> {
+            byte[] data = new byte[1024 * 1024];
+            new Random(7).nextBytes(data);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+            try (SocketChannel socket = SocketChannel.open(address)) {
+                for (long sent = 0; sent < LENGTH; ) {
+                    buffer.clear();
+                    buffer.put(data, 0, (int) Math.min(data.length, LENGTH - sent));
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        sent += socket.write(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "MappedReceiveBenchmark-Sender");
+        thread.start();
+        return thread;
+    }
+
+}
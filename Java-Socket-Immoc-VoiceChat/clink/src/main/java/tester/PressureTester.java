@@ -1,97 +1,579 @@
 package tester;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
-import client.ServerInfo;
-import client.TCPClient;
-import client.UDPSearcher;
+import clink.box.BytesSendPacket;
+import clink.box.FileSendPacket;
+import clink.box.StreamDirectSendPacket;
+import clink.box.StringReceivePacket;
+import clink.box.StringSendPacket;
+import clink.core.Connector;
 import clink.core.IoContext;
+import clink.core.IoProvider;
+import clink.core.Packet;
+import clink.core.ReceivePacket;
+import clink.core.SendPacket;
 import clink.impl.IoSelectorProvider;
 import clink.impl.SchedulerImpl;
+import clink.impl.loop.EventLoopProvider;
+import clink.utils.CloseUtils;
+import clink.utils.LatencyHistogram;
 import foo.Foo;
+import foo.constants.TCPConstants;
 
 /**
- * 压力测试
+ * 压力测试：直接连接指定地址的服务器（不经过 UDP 搜索），按给定速率建立大量连接，并按给定的包类型比例与速率发送数据。
+ * <p>
+ * 统计内容：
+ * <ul>
+ * <li>建立连接的耗时直方图。</li>
+ * <li>字符串包的往返延迟直方图：服务器会把未被命令消费的字符串以 "server replay：" 为前缀回送，字符串中携带了发送时间。
+ * 字节、文件、直流包服务器不会回送，只统计发送量。</li>
+ * <li>每个统计周期的连接数、发送量、回送量与错误数，周期内的往返延迟分位数。</li>
+ * </ul>
+ * 每个周期的数据写入 CSV，最终的汇总写入 JSON。
+ * <p>
+ * 参数（均可省略）：
+ * <pre>
+ * --host 127.0.0.1          服务器地址
+ * --port 30401              服务器端口
+ * --connections 1000        连接数量
+ * --ramp 500                每秒建立的连接数量
+ * --bind 127.0.0.1,...      本地绑定地址，轮流使用；单个本地地址的临时端口只有约 2.8 万个，连接数更多时需要多个回环地址
+ * --connect-timeout 5000    连接超时，毫秒
+ * --rate 1000               每秒发送的包数量（所有连接合计），0 表示只建立连接
+ * --senders 1               发送线程数量
+ * --mix string:80,bytes:20  包类型比例，可选 string、bytes、file、stream
+ * --size 64                 字符串与字节包的大小
+ * --file-size 65536         文件包的大小
+ * --stream-size 65536       直流包的大小
+ * --duration 60             连接建立完成之后持续发送的秒数
+ * --interval 1              统计周期，秒
+ * --provider selector       客户端的 IoProvider：selector 或 loop
+ * --out cache/tester/pressure-时间  输出文件前缀，生成 .csv 与 .json
+ * </pre>
+ * 数万连接时注意调大进程的文件描述符上限（ulimit -n）。
  */
 public class PressureTester {
 
-    private static boolean done;
+    /**
+     * 回送字符串中的标记，其后是发送时的 System.nanoTime()
+     */
+    private static final String ECHO_TAG = "pt:";
 
-    public static void main(String[] args) throws IOException {
-        File cachePath = Foo.getCacheDir("tester");
+    private enum PacketKind {
+        STRING, BYTES, FILE, STREAM
+    }
+
+    /*参数*/
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int rampRate;
+    private final String[] bindAddresses;
+    private final int connectTimeout;
+    private final int rate;
+    private final int senders;
+    private final PacketKind[] mixKinds;
+    private final int[] mixWeights;
+    private final int mixTotalWeight;
+    private final int size;
+    private final int fileSize;
+    private final int streamSize;
+    private final int duration;
+    private final int interval;
+    private final String provider;
+    private final String out;
+
+    /*测试数据*/
+    private final File cachePath = Foo.getCacheDir("tester");
+    private final byte[] payload;
+    private final byte[] streamPayload;
+    private final String stringPadding;
+    private File payloadFile;
+
+    /*连接*/
+    private final AtomicReferenceArray<LoadConnector> connectors;
+    private final AtomicInteger connectedCount = new AtomicInteger();
+    private volatile boolean isRunning = true;
+    private volatile boolean isStopping;
+
+    /*统计*/
+    private final LatencyHistogram connectHistogram = new LatencyHistogram();
+    private final LatencyHistogram rttHistogram = new LatencyHistogram();
+    private final LatencyHistogram intervalRttHistogram = new LatencyHistogram();
+    private final AtomicLong connectFailed = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+    private final AtomicLong sendFailed = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong[] sentPackets = new AtomicLong[PacketKind.values().length];
+    private final AtomicLong echoes = new AtomicLong();
+    private long startTime;
+    private long rampFinishedTime;
+
+    private PressureTester(Map<String, String> options) {
+        host = option(options, "host", "127.0.0.1");
+        port = Integer.parseInt(option(options, "port", String.valueOf(TCPConstants.PORT_SERVER)));
+        connections = Integer.parseInt(option(options, "connections", "1000"));
+        rampRate = Math.max(1, Integer.parseInt(option(options, "ramp", "500")));
+        bindAddresses = options.containsKey("bind") ? options.get("bind").split(",") : new String[0];
+        connectTimeout = Integer.parseInt(option(options, "connect-timeout", "5000"));
+        rate = Integer.parseInt(option(options, "rate", "1000"));
+        senders = Math.max(1, Integer.parseInt(option(options, "senders", "1")));
+        size = Integer.parseInt(option(options, "size", "64"));
+        fileSize = Integer.parseInt(option(options, "file-size", "65536"));
+        streamSize = Integer.parseInt(option(options, "stream-size", "65536"));
+        duration = Integer.parseInt(option(options, "duration", "60"));
+        interval = Math.max(1, Integer.parseInt(option(options, "interval", "1")));
+        provider = option(options, "provider", "selector");
+        out = option(options, "out", new File(cachePath, "pressure-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())).getPath());
+
+        String[] mixItems = option(options, "mix", "string:80,bytes:20").split(",");
+        mixKinds = new PacketKind[mixItems.length];
+        mixWeights = new int[mixItems.length];
+        int totalWeight = 0;
+        for (int i = 0; i < mixItems.length; i++) {
+            String[] kindAndWeight = mixItems[i].split(":");
+            mixKinds[i] = PacketKind.valueOf(kindAndWeight[0].trim().toUpperCase(Locale.ROOT));
+            mixWeights[i] = kindAndWeight.length > 1 ? Integer.parseInt(kindAndWeight[1].trim()) : 1;
+            totalWeight += mixWeights[i];
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("Illegal mix: " + options.get("mix"));
+        }
+        mixTotalWeight = totalWeight;
+
+        connectors = new AtomicReferenceArray<>(connections);
+        for (int i = 0; i < sentPackets.length; i++) {
+            sentPackets[i] = new AtomicLong();
+        }
+
+        payload = new byte[size];
+        streamPayload = new byte[streamSize];
+        ThreadLocalRandom.current().nextBytes(payload);
+        ThreadLocalRandom.current().nextBytes(streamPayload);
+        char[] padding = new char[Math.max(0, size - ECHO_TAG.length() - 20)];
+        Arrays.fill(padding, 'x');
+        stringPadding = new String(padding);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                System.out.println("Usage: PressureTester [--name value]...，参数说明见类注释");
+                return;
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        new PressureTester(options).run();
+    }
+
+    private void run() throws Exception {
+        IoProvider ioProvider = "loop".equals(provider) ? new EventLoopProvider() : new IoSelectorProvider();
         IoContext.setup()
-                .ioProvider(new IoSelectorProvider())
+                .ioProvider(ioProvider)
                 .scheduler(new SchedulerImpl(1))
                 .start();
 
-        ServerInfo info = UDPSearcher.searchServer(10000);
-        System.out.println("Server:" + info);
+        for (PacketKind kind : mixKinds) {
+            if (kind == PacketKind.FILE) {
+                payloadFile = createPayloadFile();
+                break;
+            }
+        }
+
+        System.out.println(String.format("压力测试：%s:%d connections=%d ramp=%d/s rate=%d/s mix=%s duration=%ds",
+                host, port, connections, rampRate, rate, mixString(), duration));
 
-        if (info == null) {
-            return;
+        startTime = System.nanoTime();
+
+        Thread rampThread = new Thread(this::ramp, "PressureTester-Ramp");
+        rampThread.start();
+
+        Thread[] senderThreads = new Thread[rate > 0 ? senders : 0];
+        for (int i = 0; i < senderThreads.length; i++) {
+            final int senderIndex = i;
+            senderThreads[i] = new Thread(() -> send(senderIndex), "PressureTester-Sender-" + i);
+            senderThreads[i].start();
         }
 
-        // 当前连接数量
-        int size = 0;
-        final List<TCPClient> tcpClients = new ArrayList<>();
-        for (int i = 0; i < 200; i++) {
-            try {
-                TCPClient tcpClient = TCPClient.linkWith(info, cachePath);
-                if (tcpClient == null) {
-                    throw new NullPointerException();
-                }
+        try (PrintWriter csv = new PrintWriter(new FileOutputStream(out + ".csv"))) {
+            csv.println("elapsed_s,connections,connect_failed,disconnected,sent_packets,sent_bytes,echoes,send_failed," +
+                    "packets_per_s,bytes_per_s,echoes_per_s,rtt_p50_us,rtt_p99_us,rtt_p999_us");
+            report(csv, rampThread);
+        }
 
-                tcpClients.add(tcpClient);
+        isRunning = false;
+        rampThread.join();
+        for (Thread senderThread : senderThreads) {
+            senderThread.join();
+        }
 
-                System.out.println("连接成功：" + (++size));
+        // 稍作等待，接收还在途中的回送
+        Thread.sleep(500);
+        long elapsed = System.nanoTime() - startTime;
 
-            } catch (NullPointerException e) {
-                System.out.println("连接异常");
-                break;
+        isStopping = true;
+        for (int i = 0; i < connections; i++) {
+            CloseUtils.close(connectors.get(i));
+        }
+        IoContext.close();
+
+        String summary = summaryJson(elapsed);
+        try (PrintWriter json = new PrintWriter(new FileOutputStream(out + ".json"))) {
+            json.println(summary);
+        }
+        System.out.println(summary);
+        System.out.println("结果已写入：" + out + ".csv, " + out + ".json");
+        System.exit(0);
+    }
+
+    private File createPayloadFile() throws IOException {
+        File file = new File(cachePath, "pressure-payload.bin");
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            ThreadLocalRandom.current().nextBytes(buffer);
+            for (int written = 0; written < fileSize; written += buffer.length) {
+                outputStream.write(buffer, 0, Math.min(buffer.length, fileSize - written));
             }
         }
+        return file;
+    }
 
-        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(System.in));
-        bufferedReader.readLine();
+    ///////////////////////////////////////////////////////////////////////////
+    // 建立连接
+    ///////////////////////////////////////////////////////////////////////////
 
-        Runnable runnable = () -> {
-            while (!done) {
-                for (TCPClient tcpClient : tcpClients) {
-                    tcpClient.send("Hello~~");
-                }
-                try {
-                    Thread.sleep(1500);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+    private void ramp() {
+        long rampStart = System.nanoTime();
+        for (int i = 0; i < connections && isRunning; i++) {
+            // 按速率建立连接
+            long expectedTime = rampStart + TimeUnit.SECONDS.toNanos(i) / rampRate;
+            long waitTime = expectedTime - System.nanoTime();
+            if (waitTime > 0) {
+                LockSupport.parkNanos(waitTime);
+            }
+            LoadConnector connector = connect(i);
+            if (connector != null) {
+                connectors.set(connectedCount.get(), connector);
+                connectedCount.incrementAndGet();
+            }
+        }
+        rampFinishedTime = System.nanoTime();
+    }
+
+    private LoadConnector connect(int index) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            if (bindAddresses.length > 0) {
+                channel.bind(new InetSocketAddress(bindAddresses[index % bindAddresses.length].trim(), 0));
+            }
+            long start = System.nanoTime();
+            channel.socket().connect(new InetSocketAddress(host, port), connectTimeout);
+            connectHistogram.recordNanos(System.nanoTime() - start);
+            return new LoadConnector(channel);
+        } catch (IOException e) {
+            connectFailed.incrementAndGet();
+            CloseUtils.close(channel);
+            return null;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 发送
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 每个发送线程负责 rate/senders 的速率，轮流使用已经建立的连接
+     */
+    private void send(int senderIndex) {
+        double senderRate = (double) rate / senders;
+        int cursor = senderIndex;
+        long start = 0;
+        long sent = 0;
+
+        while (isRunning) {
+            int count = connectedCount.get();
+            if (count == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            if (start == 0) {
+                start = System.nanoTime();
+            }
+
+            long expected = (long) ((System.nanoTime() - start) * senderRate / 1e9);
+            while (sent < expected && isRunning) {
+                cursor = (cursor + 1) % count;
+                LoadConnector connector = connectors.get(cursor);
+                if (connector != null && !connector.isClosed) {
+                    sendOne(connector);
                 }
+                sent++;
             }
-        };
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
 
-        Thread thread = new Thread(runnable);
-        thread.setName("Test sender-----");
-        thread.start();
+    private void sendOne(LoadConnector connector) {
+        PacketKind kind = nextKind();
+        SendPacket<?> packet;
+        switch (kind) {
+            case STRING:
+                packet = new StringSendPacket(ECHO_TAG + System.nanoTime() + ":" + stringPadding);
+                break;
+            case BYTES:
+                packet = new BytesSendPacket(payload);
+                break;
+            case FILE:
+                packet = new FileSendPacket(payloadFile);
+                break;
+            default:
+                packet = new StreamDirectSendPacket(new ByteArrayInputStream(streamPayload));
+                break;
+        }
+        try {
+            connector.send(packet);
+            sentPackets[kind.ordinal()].incrementAndGet();
+            sentBytes.addAndGet(kind == PacketKind.STREAM ? streamPayload.length : packet.getLength());
+        } catch (RuntimeException e) {
+            sendFailed.incrementAndGet();
+        }
+    }
 
-        bufferedReader.readLine();
+    private PacketKind nextKind() {
+        if (mixKinds.length == 1) {
+            return mixKinds[0];
+        }
+        int value = ThreadLocalRandom.current().nextInt(mixTotalWeight);
+        for (int i = 0; i < mixKinds.length; i++) {
+            value -= mixWeights[i];
+            if (value < 0) {
+                return mixKinds[i];
+            }
+        }
+        return mixKinds[mixKinds.length - 1];
+    }
 
-        // 等待线程完成
-        done = true;
+    private void onEchoReceived(String entity) {
+        int tagIndex = entity.indexOf(ECHO_TAG);
+        if (tagIndex < 0) {
+            // 服务器的其他消息，比如连接建立后回送的唯一标志
+            return;
+        }
+        int start = tagIndex + ECHO_TAG.length();
+        int end = entity.indexOf(':', start);
         try {
-            thread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            long sendTime = Long.parseLong(entity.substring(start, end < 0 ? entity.length() : end));
+            long rtt = System.nanoTime() - sendTime;
+            rttHistogram.recordNanos(rtt);
+            intervalRttHistogram.recordNanos(rtt);
+            echoes.incrementAndGet();
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 统计
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 按周期输出统计，直到连接建立完成并持续发送了 duration 秒
+     */
+    private void report(PrintWriter csv, Thread rampThread) throws InterruptedException {
+        long lastPackets = 0;
+        long lastBytes = 0;
+        long lastEchoes = 0;
+        long nextReportTime = startTime;
+
+        while (true) {
+            nextReportTime += TimeUnit.SECONDS.toNanos(interval);
+            long waitTime = nextReportTime - System.nanoTime();
+            if (waitTime > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitTime);
+            }
+
+            long packets = totalSentPackets();
+            long bytes = sentBytes.get();
+            long echoCount = echoes.get();
+            double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+
+            String row = String.format(Locale.ROOT, "%.1f,%d,%d,%d,%d,%d,%d,%d,%.1f,%.1f,%.1f,%d,%d,%d",
+                    elapsedSeconds,
+                    connectedCount.get(),
+                    connectFailed.get(),
+                    disconnected.get(),
+                    packets,
+                    bytes,
+                    echoCount,
+                    sendFailed.get(),
+                    (packets - lastPackets) / (double) interval,
+                    (bytes - lastBytes) / (double) interval,
+                    (echoCount - lastEchoes) / (double) interval,
+                    intervalRttHistogram.percentile(50),
+                    intervalRttHistogram.percentile(99),
+                    intervalRttHistogram.percentile(99.9));
+            intervalRttHistogram.reset();
+            csv.println(row);
+            csv.flush();
+            System.out.println(row);
+
+            lastPackets = packets;
+            lastBytes = bytes;
+            lastEchoes = echoCount;
+
+            if (!rampThread.isAlive() && System.nanoTime() - rampFinishedTime >= TimeUnit.SECONDS.toNanos(duration)) {
+                return;
+            }
         }
+    }
 
-        // 客户端结束操作
-        for (TCPClient tcpClient : tcpClients) {
-            tcpClient.exit();
+    private long totalSentPackets() {
+        long total = 0;
+        for (AtomicLong count : sentPackets) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    private String mixString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < mixKinds.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(mixKinds[i].name().toLowerCase(Locale.ROOT)).append(':').append(mixWeights[i]);
+        }
+        return builder.toString();
+    }
+
+    private String summaryJson(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+        long packets = totalSentPackets();
+        StringBuilder packetsJson = new StringBuilder("{");
+        for (PacketKind kind : PacketKind.values()) {
+            if (kind.ordinal() > 0) {
+                packetsJson.append(", ");
+            }
+            packetsJson.append('"').append(kind.name().toLowerCase(Locale.ROOT)).append("\": ").append(sentPackets[kind.ordinal()].get());
+        }
+        packetsJson.append('}');
+
+        return String.format(Locale.ROOT, "{\n" +
+                        "  \"config\": {\"host\": \"%s\", \"port\": %d, \"connections\": %d, \"ramp\": %d, \"rate\": %d, \"senders\": %d, " +
+                        "\"mix\": \"%s\", \"size\": %d, \"fileSize\": %d, \"streamSize\": %d, \"duration\": %d, \"provider\": \"%s\"},\n" +
+                        "  \"elapsedSeconds\": %.3f,\n" +
+                        "  \"connections\": {\"established\": %d, \"failed\": %d, \"disconnected\": %d},\n" +
+                        "  \"connectMicros\": %s,\n" +
+                        "  \"rttMicros\": %s,\n" +
+                        "  \"sentPackets\": %s,\n" +
+                        "  \"sentBytes\": %d,\n" +
+                        "  \"echoes\": %d,\n" +
+                        "  \"pendingEchoes\": %d,\n" +
+                        "  \"sendFailed\": %d,\n" +
+                        "  \"throughput\": {\"packetsPerSecond\": %.1f, \"bytesPerSecond\": %.1f, \"echoesPerSecond\": %.1f}\n" +
+                        "}",
+                host, port, connections, rampRate, rate, senders, mixString(), size, fileSize, streamSize, duration, provider,
+                elapsedSeconds,
+                connectedCount.get(), connectFailed.get(), disconnected.get(),
+                histogramJson(connectHistogram),
+                histogramJson(rttHistogram),
+                packetsJson,
+                sentBytes.get(),
+                echoes.get(),
+                sentPackets[PacketKind.STRING.ordinal()].get() - echoes.get(),
+                sendFailed.get(),
+                packets / elapsedSeconds,
+                sentBytes.get() / elapsedSeconds,
+                echoes.get() / elapsedSeconds);
+    }
+
+    private static String histogramJson(LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "{\"count\": %d, \"min\": %d, \"p50\": %d, \"p99\": %d, \"p999\": %d, \"max\": %d, \"mean\": %.1f}",
+                histogram.getCount(),
+                histogram.getMin(),
+                histogram.percentile(50),
+                histogram.percentile(99),
+                histogram.percentile(99.9),
+                histogram.getMax(),
+                histogram.getMean());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 连接
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 压测用的连接，不打印收到的消息，只统计回送
+     */
+    private class LoadConnector extends Connector {
+
+        private volatile boolean isClosed;
+
+        LoadConnector(SocketChannel channel) throws IOException {
+            setup(channel);
+        }
+
+        @Override
+        protected void onReceiveNewPacket(ReceivePacket packet) {
+            if (packet.getType() == Packet.TYPE_MEMORY_STRING) {
+                onEchoReceived(((StringReceivePacket) packet).getEntity());
+            }
+        }
+
+        @Override
+        protected void processOnChannelClosed(SocketChannel channel) {
+            isClosed = true;
+            if (!isStopping) {
+                disconnected.incrementAndGet();
+            }
+        }
+
+        @Override
+        protected File createNewReceiveFile(long length, byte[] headerInfo) {
+            return Foo.createRandomTemp(cachePath);
+        }
+
+        @Override
+        protected OutputStream createNewReceiveDirectOutputStream(long length, byte[] headerInfo) {
+            // 丢弃直流数据
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
         }
 
-        IoContext.close();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,211 @@
+package tester;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import clink.box.StringReceivePacket;
+import clink.box.StringSendPacket;
+import clink.core.IoArgs;
+import clink.core.IoContext;
+import clink.core.ReceiveDispatcher;
+import clink.core.ReceivePacket;
+import clink.core.Receiver;
+import clink.core.Sender;
+import clink.impl.async.AsyncReceiveDispatcher;
+import clink.impl.async.AsyncSendDispatcher;
+import clink.utils.CloseUtils;
+
+/**
+ * 接收路径的吞吐测试：先通过发送调度者把大量字符串包编码为帧数据，再由当前线程直接驱动 AsyncReceiveDispatcher 的
+ * provideIoArgs/onConsumeCompleted 循环解析这些数据，只衡量帧的解析与包的组装，不包含网络读写。
+ */
+public class ReceiveFrameBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        IoContext.setup()
+                .sendBatch(1, 1)
+                .start();
+
+        byte[] small = encode(200000, "Hello~~");
+        byte[] medium = encode(20000, repeat('a', 4 * 1024));
+
+        // 预热
+        for (int i = 0; i < ROUNDS; i++) {
+            run("warmup", small, 200000);
+            run("warmup", medium, 20000);
+        }
+
+        System.out.println("------------------------------");
+        for (int i = 0; i < ROUNDS; i++) {
+            run("7B", small, 200000);
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            run("4KB", medium, 20000);
+        }
+    }
+
+    /**
+     * 每个包由一个头帧和一个实体帧组成
+     */
+    private static void run(String name, byte[] data, int packetCount) throws IOException {
+        DirectReceiver receiver = new DirectReceiver(Channels.newChannel(new ByteArrayInputStream(data)), data.length);
+        int[] completed = new int[1];
+        AsyncReceiveDispatcher dispatcher = new AsyncReceiveDispatcher(receiver, new ReceiveDispatcher.ReceivePacketCallback() {
+            @Override
+            public void onReceivePacketCompleted(ReceivePacket packet) {
+                completed[0]++;
+            }
+
+            @Override
+            public ReceivePacket<?, ?> onArrivedNewPacket(byte type, long length, byte[] headerInfo) {
+                return new StringReceivePacket(length);
+            }
+
+            @Override
+            public void onReceivedHeartbeat() {
+            }
+        });
+
+        long start = System.nanoTime();
+        dispatcher.start();
+        receiver.drive();
+        long elapsed = System.nanoTime() - start;
+        CloseUtils.close(dispatcher);
+
+        if (completed[0] != packetCount) {
+            throw new IllegalStateException("Expected " + packetCount + " packets but completed " + completed[0]);
+        }
+
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format("%-6s packets=%-7d time=%6.1fms  %,.0f frames/s  %.1f MB/s",
+                name,
+                packetCount,
+                elapsed / 1e6,
+                packetCount * 2 / seconds,
+                data.length / seconds / 1024 / 1024));
+    }
+
+    /**
+     * 通过发送调度者把字符串包编码为帧数据
+     */
+    private static byte[] encode(int count, String message) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CapturedSender sender = new CapturedSender(Channels.newChannel(outputStream));
+        AsyncSendDispatcher dispatcher = new AsyncSendDispatcher(sender);
+        for (int i = 0; i < count; i++) {
+            dispatcher.send(new StringSendPacket(message));
+        }
+        sender.drive();
+        CloseUtils.close(dispatcher);
+        return outputStream.toByteArray();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 在当前线程中从内存读取数据的 Receiver
+     */
+    private static class DirectReceiver implements Receiver {
+
+        private final ReadableByteChannel channel;
+        private long remaining;
+        private IoArgs.IoArgsEventProcessor processor;
+        private boolean posted;
+
+        DirectReceiver(ReadableByteChannel channel, long length) {
+            this.channel = channel;
+            this.remaining = length;
+        }
+
+        @Override
+        public boolean postReceiveAsync() {
+            posted = true;
+            return true;
+        }
+
+        /**
+         * 循环读取，直到数据全部交给调度者
+         */
+        void drive() throws IOException {
+            while (posted && remaining > 0) {
+                posted = false;
+                IoArgs args = processor.provideIoArgs();
+                remaining -= args.readFrom(channel);
+                processor.onConsumeCompleted(args);
+            }
+        }
+
+        @Override
+        public void setReceiveListener(IoArgs.IoArgsEventProcessor ioArgsEventProcessor) {
+            processor = ioArgsEventProcessor;
+        }
+
+        @Override
+        public long getLastReadTime() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 把发送的数据写入到内存中的 Sender
+     */
+    private static class CapturedSender implements Sender {
+
+        private final WritableByteChannel channel;
+        private IoArgs.IoArgsEventProcessor processor;
+        private boolean posted;
+
+        CapturedSender(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean postSendAsync() {
+            posted = true;
+            return true;
+        }
+
+        void drive() throws IOException {
+            while (posted) {
+                posted = false;
+                IoArgs args = processor.provideIoArgs();
+                if (args == null) {
+                    continue;
+                }
+                args.writeTo(channel);
+                processor.onConsumeCompleted(args);
+            }
+        }
+
+        @Override
+        public void setSendListener(IoArgs.IoArgsEventProcessor ioArgsEventProcessor) {
+            processor = ioArgsEventProcessor;
+        }
+
+        @Override
+        public long getLastWriteTime() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
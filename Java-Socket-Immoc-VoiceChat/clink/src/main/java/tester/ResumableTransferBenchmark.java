@@ -0,0 +1,229 @@
+package tester;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import clink.box.FileSendPacket;
+import clink.box.ResumableFile;
+import clink.box.ResumableFileReceivePacket;
+import clink.box.ResumableFileStore;
+import clink.core.Connector;
+import clink.core.IoContext;
+import clink.core.ReceivePacket;
+import clink.impl.IoSelectorProvider;
+import clink.impl.SchedulerImpl;
+import clink.utils.CloseUtils;
+
+/**
+ * 断点续传的测试：通过本地回环发送一个 64M 的文件，发送到一半时断开连接，重新连接后继续发送，
+ * 对比普通文件包（重新连接后从头发送）与可续传文件包在线路上发送的总数据量与耗时。
+ */
+public class ResumableTransferBenchmark {
+
+    private static final int FILE_SIZE = 64 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final double DROP_AT = 0.5;
+
+    public static void main(String[] args) throws Exception {
+        IoContext.setup()
+                .ioProvider(new IoSelectorProvider())
+                .scheduler(new SchedulerImpl(1))
+                .start();
+
+        File dir = new File(System.getProperty("java.io.tmpdir"), "resumable-benchmark");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Create dir error: " + dir);
+        }
+        File source = new File(dir, "source.bin");
+        byte[] buffer = new byte[1024 * 1024];
+        Random random = new Random(7);
+        try (OutputStream outputStream = new FileOutputStream(source)) {
+            for (int i = 0; i < FILE_SIZE / buffer.length; i++) {
+                random.nextBytes(buffer);
+                outputStream.write(buffer);
+            }
+        }
+        byte[] sourceHash = md5(source);
+
+        System.out.println("------------------------------");
+        runPlain(source, dir, sourceHash);
+        runResumable(source, dir, sourceHash);
+
+        // 断开时未接收完成的临时文件
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+        IoContext.close();
+    }
+
+    private static void runPlain(File source, File dir, byte[] sourceHash) throws Exception {
+        long start = System.nanoTime();
+        long bytesStart = bytesWritten();
+
+        // 第一次连接，发送到一半时断开
+        Pair pair = Pair.open(dir, null);
+        pair.sender.send(new FileSendPacket(source));
+        waitReceived(pair.receiverBytes, (long) (FILE_SIZE * DROP_AT));
+        pair.close();
+
+        // 重新连接，只能从头发送
+        pair = Pair.open(dir, null);
+        pair.sender.send(new FileSendPacket(source));
+        File received = (File) pair.packets.poll(60, TimeUnit.SECONDS).getEntity();
+        pair.close();
+
+        report("plain", start, bytesStart, Arrays.equals(sourceHash, md5(received)));
+        received.delete();
+    }
+
+    private static void runResumable(File source, File dir, byte[] sourceHash) throws Exception {
+        long start = System.nanoTime();
+        long bytesStart = bytesWritten();
+        ResumableFile resumableFile = new ResumableFile(source, CHUNK_SIZE);
+        ResumableFileStore store = ResumableFileStore.of(dir);
+
+        Pair pair = Pair.open(dir, store);
+        pair.sender.send(resumableFile);
+        waitReceived(pair.receiverBytes, (long) (FILE_SIZE * DROP_AT));
+        pair.close();
+        long acknowledged = resumableFile.getAcknowledgedLength();
+
+        // 重新连接，从已确认的位置继续
+        pair = Pair.open(dir, store);
+        pair.sender.send(resumableFile);
+        ResumableFileReceivePacket packet = null;
+        for (ReceivePacket receivePacket; (receivePacket = pair.packets.poll(60, TimeUnit.SECONDS)) != null; ) {
+            if (receivePacket instanceof ResumableFileReceivePacket && ((ResumableFileReceivePacket) receivePacket).isCompleted()) {
+                packet = (ResumableFileReceivePacket) receivePacket;
+                break;
+            }
+        }
+        pair.close();
+        if (packet == null) {
+            throw new IllegalStateException("Resumable file not completed.");
+        }
+
+        File received = packet.getEntity();
+        report("resumable", start, bytesStart, Arrays.equals(sourceHash, md5(received)));
+        System.out.println("          resumed from " + acknowledged + ", acknowledged=" + resumableFile.isAcknowledged());
+        received.delete();
+    }
+
+    private static void report(String name, long start, long bytesStart, boolean matched) {
+        long time = System.nanoTime() - start;
+        long bytes = bytesWritten() - bytesStart;
+        System.out.println(String.format("%-10s wire=%,12d bytes (%5.1f%% of file)  time=%6d ms  md5ok=%s",
+                name, bytes, bytes * 100.0 / FILE_SIZE, time / 1000000, matched));
+    }
+
+    private static long bytesWritten() {
+        return IoContext.get().metrics().snapshot().getCounter("bytes.written");
+    }
+
+    private static void waitReceived(long receiverBytes, long length) throws InterruptedException {
+        while (IoContext.get().metrics().snapshot().getCounter("bytes.read") - receiverBytes < length) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static byte[] md5(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        byte[] buffer = new byte[1024 * 1024];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int count;
+            while ((count = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * 本地回环上的一对连接
+     */
+    private static class Pair {
+
+        final BlockingQueue<ReceivePacket> packets = new LinkedBlockingQueue<>();
+        // 建立连接时已经读取的数据量，用于判断本次连接接收了多少
+        final long receiverBytes = IoContext.get().metrics().snapshot().getCounter("bytes.read");
+        Connector sender;
+        Connector receiver;
+
+        static Pair open(File dir, ResumableFileStore store) throws IOException {
+            Pair pair = new Pair();
+            try (ServerSocketChannel server = ServerSocketChannel.open()) {
+                server.bind(new InetSocketAddress("127.0.0.1", 0));
+                SocketChannel senderChannel = SocketChannel.open(server.getLocalAddress());
+                SocketChannel receiverChannel = server.accept();
+                pair.sender = new BenchmarkConnector(dir, null, null);
+                pair.sender.setup(senderChannel);
+                pair.receiver = new BenchmarkConnector(dir, store, pair.packets);
+                pair.receiver.setup(receiverChannel);
+            }
+            return pair;
+        }
+
+        void close() {
+            CloseUtils.close(sender, receiver);
+        }
+
+    }
+
+    private static class BenchmarkConnector extends Connector {
+
+        private final File mDir;
+        private final ResumableFileStore mStore;
+        private final BlockingQueue<ReceivePacket> mPackets;
+
+        BenchmarkConnector(File dir, ResumableFileStore store, BlockingQueue<ReceivePacket> packets) {
+            mDir = dir;
+            mStore = store;
+            mPackets = packets;
+        }
+
+        @Override
+        protected File createNewReceiveFile(long length, byte[] headerInfo) {
+            try {
+                return File.createTempFile("receive", ".tmp", mDir);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        protected OutputStream createNewReceiveDirectOutputStream(long length, byte[] headerInfo) {
+            return null;
+        }
+
+        @Override
+        protected ResumableFileStore getResumableFileStore() {
+            return mStore;
+        }
+
+        @Override
+        protected void onReceiveNewPacket(ReceivePacket packet) {
+            if (mPackets != null) {
+                mPackets.add(packet);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+package tester;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import clink.core.Scheduler;
+import clink.impl.HashedWheelScheduler;
+import clink.impl.SchedulerImpl;
+
+/**
+ * 调度吞吐测试：模拟大量连接的空闲超时任务，对比 {@link SchedulerImpl} 与 {@link HashedWheelScheduler}。
+ * <ul>
+ * <li>schedule：每个连接调度一个 10~60 秒后到期的任务。</li>
+ * <li>reschedule：每个连接取消原来的任务并重新调度，与连接活跃时重新计算空闲超时的开销一致。</li>
+ * <li>retained：reschedule 之后调度者占用的堆内存，ScheduledExecutorService 取消任务时并不会从延迟队列中移除。</li>
+ * <li>cancel：连接全部关闭，取消所有任务。</li>
+ * </ul>
+ * 每一项分别由 1 个线程与 CPU 核数个线程（模拟多个 IO 线程同时调度）执行，任务都不会到期，只衡量调度与取消本身。
+ */
+public class SchedulerBenchmark {
+
+    private static final Runnable NOOP = () -> {
+    };
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        // 预热
+        run("SchedulerImpl", new SchedulerImpl(1), 100000, threads);
+        run("HashedWheel", new HashedWheelScheduler(), 100000, threads);
+
+        System.out.println("------------------------------");
+        int[] threadCounts = threads > 1 ? new int[]{1, threads} : new int[]{1};
+        for (int count : new int[]{10000, 100000, 1000000}) {
+            for (int threadCount : threadCounts) {
+                run("SchedulerImpl", new SchedulerImpl(1), count, threadCount);
+                run("HashedWheel", new HashedWheelScheduler(), count, threadCount);
+            }
+        }
+    }
+
+    private static void run(String name, Scheduler scheduler, int count, int threads) throws Exception {
+        ScheduledFuture<?>[] futures = new ScheduledFuture<?>[count];
+        long baseMemory = usedMemory();
+
+        long scheduleTime = parallel(count, threads, i ->
+                futures[i] = scheduler.schedule(NOOP, ThreadLocalRandom.current().nextLong(10000, 60000), TimeUnit.MILLISECONDS));
+
+        long rescheduleTime = parallel(count, threads, i -> {
+            futures[i].cancel(false);
+            futures[i] = scheduler.schedule(NOOP, ThreadLocalRandom.current().nextLong(10000, 60000), TimeUnit.MILLISECONDS);
+        });
+
+        // 等待时间轮线程处理完取消队列
+        Thread.sleep(300);
+        long retained = usedMemory() - baseMemory;
+
+        long cancelTime = parallel(count, threads, i -> futures[i].cancel(false));
+
+        scheduler.close();
+
+        System.out.println(String.format("%-13s jobs=%-8d threads=%-2d schedule=%,12.0f ops/s  reschedule=%,12.0f ops/s  cancel=%,12.0f ops/s  retained=%5.1fMB",
+                name,
+                count,
+                threads,
+                count / (scheduleTime / 1e9),
+                count / (rescheduleTime / 1e9),
+                count / (cancelTime / 1e9),
+                retained / 1024.0 / 1024.0));
+    }
+
+    /**
+     * 将 [0, count) 均分给 threads 个线程执行
+     *
+     * @return 耗时，纳秒
+     */
+    private static long parallel(int count, int threads, IntConsumer operation) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        int step = (count + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            int from = t * step;
+            int to = Math.min(count, from + step);
+            workers[t] = new Thread(() -> {
+                for (int i = from; i < to; i++) {
+                    operation.accept(i);
+                }
+            }, "Benchmark-Thread-" + t);
+        }
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
@@ -0,0 +1,145 @@
+package tester;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import clink.box.StringSendPacket;
+import clink.core.IoArgs;
+import clink.core.IoContext;
+import clink.core.Sender;
+import clink.impl.async.AsyncSendDispatcher;
+import clink.utils.CloseUtils;
+
+/**
+ * 聚合写出的吞吐测试：通过本机回环连接发送大量小的字符串包，对比不聚合与聚合时的写出次数和吞吐量。
+ * <p>
+ * 绕开 IoProvider，由当前线程直接驱动 AsyncSendDispatcher 的 provideIoArgs/onConsumeCompleted 循环，只衡量发送路径本身。
+ */
+public class SendBatchBenchmark {
+
+    private static final int PACKET_COUNT = 200000;
+    private static final String MESSAGE = "Hello~~";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // 预热
+        run(1, 1);
+        run(16, 64 * 1024);
+
+        System.out.println("------------------------------");
+        run(1, 1);
+        run(4, 64 * 1024);
+        run(16, 64 * 1024);
+        run(64, 64 * 1024);
+    }
+
+    private static void run(int batchFrames, int batchBytes) throws IOException, InterruptedException {
+        IoContext.setup()
+                .sendBatch(batchFrames, batchBytes)
+                .start();
+
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", 0));
+        SocketChannel client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel accepted = server.accept();
+
+        // 接收端只负责读空数据
+        AtomicLong receivedBytes = new AtomicLong();
+        Thread drainThread = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            try {
+                int len;
+                while ((len = accepted.read(buffer)) >= 0) {
+                    receivedBytes.addAndGet(len);
+                    buffer.clear();
+                }
+            } catch (IOException ignored) {
+            }
+        }, "Benchmark-Drain-Thread");
+        drainThread.start();
+
+        DirectSender sender = new DirectSender(client);
+        AsyncSendDispatcher dispatcher = new AsyncSendDispatcher(sender);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < PACKET_COUNT; i++) {
+            dispatcher.send(new StringSendPacket(MESSAGE));
+        }
+        sender.drive();
+        long elapsed = System.nanoTime() - start;
+
+        CloseUtils.close(dispatcher, client);
+        drainThread.join();
+        CloseUtils.close(accepted, server);
+
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format("batchFrames=%-3d writes=%-8d bytes=%-9d time=%6.1fms  %,.0f packets/s  %.1f MB/s  pool=%s",
+                batchFrames,
+                sender.writeCount,
+                receivedBytes.get(),
+                elapsed / 1e6,
+                PACKET_COUNT / seconds,
+                sender.writtenBytes / seconds / 1024 / 1024,
+                IoContext.get().ioArgsPool()));
+    }
+
+    /**
+     * 在当前线程中以阻塞方式直接写出的 Sender
+     */
+    private static class DirectSender implements Sender {
+
+        private final SocketChannel channel;
+        private IoArgs.IoArgsEventProcessor processor;
+        private boolean posted;
+
+        long writeCount;
+        long writtenBytes;
+
+        DirectSender(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean postSendAsync() {
+            posted = true;
+            return true;
+        }
+
+        /**
+         * 循环写出，直到调度者没有再请求发送
+         */
+        void drive() throws IOException {
+            while (posted) {
+                posted = false;
+                IoArgs args = processor.provideIoArgs();
+                if (args == null) {
+                    processor.onConsumeFailed(null, new IOException("ProvideIoArgs is null."));
+                    continue;
+                }
+                while (args.remained()) {
+                    writtenBytes += args.writeTo(channel);
+                    writeCount++;
+                }
+                processor.onConsumeCompleted(args);
+            }
+        }
+
+        @Override
+        public void setSendListener(IoArgs.IoArgsEventProcessor ioArgsEventProcessor) {
+            processor = ioArgsEventProcessor;
+        }
+
+        @Override
+        public long getLastWriteTime() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -35,6 +35,11 @@ public interface IoProvider extends Closeable {
          */
         protected volatile IoArgs attach;
 
+        /**
+         * 累计读/写的字节数，同一时刻只会有一个线程执行该回调，IoProvider 可据此评估连接的负载。
+         */
+        private volatile long transferredBytes;
+
         @Override
         public final void run() {
             onProviderIo(attach);
@@ -45,6 +50,22 @@ public interface IoProvider extends Closeable {
          */
         protected abstract void onProviderIo(IoArgs attach);
 
+        /**
+         * 记录本次读/写的字节数
+         */
+        protected final void onTransferred(int count) {
+            if (count > 0) {
+                transferredBytes += count;
+            }
+        }
+
+        /**
+         * 获取累计读/写的字节数
+         */
+        public long getTransferredBytes() {
+            return transferredBytes;
+        }
+
         /**
          * 检查当前的附加值是否未null，如果处于自循环时当前附加值不为null，
          * 此时如果外层有调度注册异步发送或者接收是错误的。
@@ -144,6 +144,7 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                     processor.onConsumeFailed(null, new IOException("ProvideIoArgs is null."));
                 } else {
                     int count = args.readFrom(channel);
+                    onTransferred(count);
 
                     if (count == 0) {
                         // 本次回调就代表可以进行数据消费，但是如果一个数据也没有产生消费，那么我们尝试输出一句语句到控制台
@@ -154,7 +155,7 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                     if (args.remained() && args.isNeedConsumeRemaining()) {
                         //没有读完，下次再读
                         attach = args;
-                        ioProvider.registerOutput(channel, this);
+                        ioProvider.registerInput(channel, this);
                         System.out.println("register again");
                     } else {
                         //读完置为null
@@ -199,6 +200,7 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                 } else {
 
                     int count = args.writeTo(channel);
+                    onTransferred(count);
 
                     if (count == 0) {
                         // 本次回调就代表可以进行数据消费，但是如果一个数据也没有产生消费，那么我们尝试输出一句语句到控制台。
@@ -210,7 +212,7 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                         // 附加当前未消费完成的args
                         attach = args;
                         // 再次注册数据发送
-                        ioProvider.registerInput(channel, this);
+                        ioProvider.registerOutput(channel, this);
                     } else {
                         // 设置为null
                         attach = null;
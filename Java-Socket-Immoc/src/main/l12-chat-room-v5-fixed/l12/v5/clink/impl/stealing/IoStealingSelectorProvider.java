@@ -6,15 +6,20 @@ import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 可窃取任务的 IoProvider。
+ * <p>
+ * 连接在第一次注册时绑定到负载最低的线程，此后读写都注册在同一个 Selector 上；就绪的任务可以被空闲线程窃取执行。
  */
 public class IoStealingSelectorProvider implements IoProvider {
 
-    private final IoStealingThread[] threads;
     private final StealingService stealingService;
 
+    // 连接与线程的绑定关系，同一个通道不能同时注册到多个 Selector
+    private final ConcurrentHashMap<SocketChannel, StealingSelectorThread> channelThreads = new ConcurrentHashMap<>();
+
     public IoStealingSelectorProvider(int poolSize) throws IOException {
         IoStealingThread[] threads = new IoStealingThread[poolSize];
 
@@ -30,13 +35,12 @@ public class IoStealingSelectorProvider implements IoProvider {
             thread.start();
         }
 
-        this.threads = threads;
         this.stealingService = stealingService;
     }
 
     @Override
     public boolean registerInput(SocketChannel channel, HandleProviderCallback callback) {
-        StealingSelectorThread thread = stealingService.getNotBusyThread();
+        StealingSelectorThread thread = threadOf(channel);
         if (thread != null) {
             return thread.register(channel, SelectionKey.OP_READ, callback);
         }
@@ -45,16 +49,32 @@ public class IoStealingSelectorProvider implements IoProvider {
 
     @Override
     public boolean registerOutput(SocketChannel channel, HandleProviderCallback callback) {
-        StealingSelectorThread thread = stealingService.getNotBusyThread();
+        StealingSelectorThread thread = threadOf(channel);
         if (thread != null) {
             return thread.register(channel, SelectionKey.OP_WRITE, callback);
         }
         return false;
     }
 
+    private StealingSelectorThread threadOf(SocketChannel channel) {
+        StealingSelectorThread thread = channelThreads.get(channel);
+        if (thread == null) {
+            thread = stealingService.getNotBusyThread();
+            if (thread == null) {
+                return null;
+            }
+            StealingSelectorThread exists = channelThreads.putIfAbsent(channel, thread);
+            if (exists != null) {
+                thread = exists;
+            }
+        }
+        return thread;
+    }
+
     @Override
     public void unRegisterInput(SocketChannel channel) {
-        for (IoStealingThread thread : threads) {
+        StealingSelectorThread thread = channelThreads.remove(channel);
+        if (thread != null) {
             thread.unregister(channel);
         }
     }
@@ -66,6 +86,14 @@ public class IoStealingSelectorProvider implements IoProvider {
     @Override
     public void close() {
         stealingService.shutdown();
+        channelThreads.clear();
+    }
+
+    /**
+     * 各线程的执行、窃取、积压以及流量统计
+     */
+    public String getStatistics() {
+        return stealingService.dumpStatistics();
     }
 
     static class IoStealingThread extends StealingSelectorThread {
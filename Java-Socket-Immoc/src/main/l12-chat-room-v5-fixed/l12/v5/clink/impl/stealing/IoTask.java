@@ -13,11 +13,14 @@ class IoTask {
     public final SocketChannel channel;
     public final IoProvider.HandleProviderCallback providerCallback;
     public final int ops;
+    // 通道所注册的线程，任务被窃取执行时，产生的流量依然记在该线程上
+    final StealingSelectorThread owner;
 
-    IoTask(SocketChannel channel, int ops, IoProvider.HandleProviderCallback providerCallback) {
+    IoTask(SocketChannel channel, int ops, IoProvider.HandleProviderCallback providerCallback, StealingSelectorThread owner) {
         this.channel = channel;
         this.providerCallback = providerCallback;
         this.ops = ops;
+        this.owner = owner;
     }
 
 }
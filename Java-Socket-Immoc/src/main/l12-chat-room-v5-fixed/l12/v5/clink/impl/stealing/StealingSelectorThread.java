@@ -10,11 +10,17 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * PS：可窃取任务的线程
+ * <p>
+ * 已就绪的任务放在无锁双端队列中：自己从队头取任务，其他线程从队尾窃取，两端的竞争被分开。
+ * 没有任务时阻塞在 select 上，有新的注册任务或其他线程积压了可窃取的任务时被唤醒，不再使用 selectNow + yield 空转。
  */
 @SuppressWarnings("MagicConstant")
 public abstract class StealingSelectorThread extends Thread {
@@ -22,22 +28,53 @@ public abstract class StealingSelectorThread extends Thread {
     // 允许的操作
     private static final int VALID_OPS = SelectionKey.OP_READ | SelectionKey.OP_WRITE;
 
+    // 流量采样间隔，同时也是空闲时 select 的最长阻塞时间，保证空闲线程的流量能够衰减
+    private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+
+    // 流量指数加权平均的系数，越大越偏向最近一次的采样
+    private static final double EWMA_ALPHA = 0.3;
+
+    // 单轮最多窃取的任务数量，避免窃取时长时间不处理自己的 Selector
+    private static final int MAX_STEAL_PER_ROUND = 64;
+
     private final Selector selector;
 
     // 是否还处于运行中
     private volatile boolean isRunning = true;
 
-    // 已就绪任务队列
-    private final LinkedBlockingQueue<IoTask> readyTaskQueue = new LinkedBlockingQueue<>();
+    // 已就绪任务队列，自己操作队头，窃取者操作队尾
+    private final ConcurrentLinkedDeque<IoTask> readyTaskDeque = new ConcurrentLinkedDeque<>();
+
+    // 已就绪任务的数量，ConcurrentLinkedDeque#size 需要遍历，这里单独计数
+    private final AtomicInteger backlog = new AtomicInteger();
 
     // 待注册的任务队列
-    private final LinkedBlockingQueue<IoTask> registerTaskQueue = new LinkedBlockingQueue<>();
+    private final ConcurrentLinkedQueue<IoTask> registerTaskQueue = new ConcurrentLinkedQueue<>();
 
     // 单次就绪的任务缓存，随后一次性加入到就绪队列中
     private final List<IoTask> onceReadyTaskCache = new ArrayList<>(200);
 
-    // 任务饱和度度量
-    private final AtomicLong saturatingCapacity = new AtomicLong();
+    // 为 true 时表示当前线程不处于 select 阻塞中（或者已经被唤醒过），此时无需再次 wakeup
+    private final AtomicBoolean wakenUp = new AtomicBoolean(false);
+
+    // 是否处于空闲（即将或正在阻塞于 select）
+    private volatile boolean isIdle = false;
+
+    /*统计信息*/
+    // 本线程执行的任务数量（包括窃取的）
+    private final LongAdder executedCount = new LongAdder();
+    // 本线程从其他线程窃取的任务数量
+    private final LongAdder stolenCount = new LongAdder();
+    // 注册在本线程的通道产生的流量
+    private final LongAdder transferredBytes = new LongAdder();
+    // 注册在本线程的通道数量
+    private volatile int registeredKeyCount;
+    // 流量的指数加权平均值（字节/秒）
+    private volatile long bytesPerSecond;
+
+    // 以下仅在本线程中访问
+    private long lastSampleTime = System.currentTimeMillis();
+    private long lastSampleBytes;
 
     // 用于多线程协同的Service
     private volatile StealingService stealingService;
@@ -57,26 +94,40 @@ public abstract class StealingSelectorThread extends Thread {
     }
 
     /**
-     * 获取内部的任务队列
-     *
-     * @return 任务队列
+     * 当前线程是否可用
      */
-    LinkedBlockingQueue<IoTask> getReadyTaskQueue() {
-        return readyTaskQueue;
+    boolean isAvailable() {
+        return isRunning && selector.isOpen();
+    }
+
+    boolean isIdle() {
+        return isIdle;
     }
 
     /**
-     * 获取饱和程度
-     * 暂时的饱和度量是使用任务执行的次数来定
-     *
-     * @return -1 已失效
+     * 已就绪但还未执行的任务数量
      */
-    long getSaturatingCapacity() {
-        if (selector.isOpen()) {
-            return saturatingCapacity.get();
-        } else {
-            return -1;
-        }
+    int getBacklog() {
+        return backlog.get();
+    }
+
+    long getExecutedCount() {
+        return executedCount.sum();
+    }
+
+    long getStolenCount() {
+        return stolenCount.sum();
+    }
+
+    int getRegisteredKeyCount() {
+        return registeredKeyCount;
+    }
+
+    /**
+     * 注册在本线程上的通道最近的流量（字节/秒）
+     */
+    long getBytesPerSecond() {
+        return bytesPerSecond;
     }
 
     /**
@@ -88,10 +139,11 @@ public abstract class StealingSelectorThread extends Thread {
      * @return 是否注册成功
      */
     public boolean register(SocketChannel channel, int ops, IoProvider.HandleProviderCallback callback) {
-        if (channel.isOpen()) {
+        if (channel.isOpen() && isAvailable()) {
             //TODO：内存抖动
-            IoTask ioTask = new IoTask(channel, ops, callback);
+            IoTask ioTask = new IoTask(channel, ops, callback, this);
             registerTaskQueue.offer(ioTask);
+            wakeup();
             return true;
         } else {
             return false;
@@ -109,8 +161,49 @@ public abstract class StealingSelectorThread extends Thread {
             // 关闭前可使用Attach简单判断是否已处于队列中
             selectionKey.attach(null);
             // 添加取消操作
-            IoTask ioTask = new IoTask(channel, 0, null);
+            IoTask ioTask = new IoTask(channel, 0, null, this);
             registerTaskQueue.offer(ioTask);
+            wakeup();
+        }
+    }
+
+    /**
+     * 添加一个已就绪的任务到队尾
+     */
+    void offerTask(IoTask task) {
+        backlog.incrementAndGet();
+        readyTaskDeque.offerLast(task);
+        wakeup();
+    }
+
+    /**
+     * 从队尾窃取一个任务，由其他线程调用
+     */
+    IoTask stealTask() {
+        IoTask task = readyTaskDeque.pollLast();
+        if (task != null) {
+            backlog.decrementAndGet();
+        }
+        return task;
+    }
+
+    /**
+     * 从队头取出一个任务，仅由自己调用
+     */
+    private IoTask pollTask() {
+        IoTask task = readyTaskDeque.pollFirst();
+        if (task != null) {
+            backlog.decrementAndGet();
+        }
+        return task;
+    }
+
+    /**
+     * 唤醒处于 select 中的线程，本线程调用时无需唤醒
+     */
+    void wakeup() {
+        if (Thread.currentThread() != this && wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
         }
     }
 
@@ -119,10 +212,14 @@ public abstract class StealingSelectorThread extends Thread {
      *
      * @param registerTaskQueue 待注册的通道
      */
-    private void consumeRegisterTodoTasks(final LinkedBlockingQueue<IoTask> registerTaskQueue) {
+    private void consumeRegisterTodoTasks(final ConcurrentLinkedQueue<IoTask> registerTaskQueue) {
         final Selector selector = this.selector;
 
         IoTask registerTask = registerTaskQueue.poll();
+        if (registerTask == null) {
+            return;
+        }
+
         while (registerTask != null) {
             try {
                 final SocketChannel channel = registerTask.channel;
@@ -156,60 +253,103 @@ public abstract class StealingSelectorThread extends Thread {
                 registerTask = registerTaskQueue.poll();
             }
         }
+
+        registeredKeyCount = selector.keys().size();
     }
 
     /**
      * 将单次就绪的任务缓存加入到总队列中
      *
-     * @param readyTaskQueue     总任务队列
+     * @param readyTaskDeque     总任务队列
      * @param onceReadyTaskCache 单次待执行的任务
      */
-    private void joinTaskQueue(final LinkedBlockingQueue<IoTask> readyTaskQueue, final List<IoTask> onceReadyTaskCache) {
-        readyTaskQueue.addAll(onceReadyTaskCache);
-        // TODO 通知 StealingService 任务数量改变了，可以做一定的排序操作
+    private void joinTaskQueue(final ConcurrentLinkedDeque<IoTask> readyTaskDeque, final List<IoTask> onceReadyTaskCache) {
+        // 先计数再入队，窃取者看到计数时可能暂时取不到任务，但计数不会为负
+        int count = backlog.addAndGet(onceReadyTaskCache.size());
+        readyTaskDeque.addAll(onceReadyTaskCache);
+
+        // 积压的任务可以被窃取时，唤醒空闲的线程来窃取
+        final StealingService stealingService = this.stealingService;
+        if (stealingService != null && stealingService.isStealable(count)) {
+            stealingService.notifyBacklog(this);
+        }
     }
 
     /**
      * 消费待完成的任务
      */
-    private void consumeTodoTasks(final LinkedBlockingQueue<IoTask> readyTaskQueue, LinkedBlockingQueue<IoTask> registerTaskQueue) {
-        final AtomicLong saturatingCapacity = this.saturatingCapacity;
-
+    private void consumeTodoTasks() {
         // 循环把所有任务做完
-        IoTask doTask = readyTaskQueue.poll();
+        IoTask doTask = pollTask();
         while (doTask != null) {
-            // 增加饱和度
-            saturatingCapacity.incrementAndGet();
             // 做任务
-            if (processTask(doTask)) {
-                // 做完工作后添加待注册的列表
-                registerTaskQueue.offer(doTask);
-            }
+            runTask(doTask);
             // 下个任务
-            doTask = readyTaskQueue.poll();
+            doTask = pollTask();
         }
 
         // 窃取其他的任务
         final StealingService stealingService = this.stealingService;
         if (stealingService != null) {
-            doTask = stealingService.steal(readyTaskQueue);
-            while (doTask != null) {
-                saturatingCapacity.incrementAndGet();
-                if (processTask(doTask)) {
-                    registerTaskQueue.offer(doTask);
-                }
-                doTask = stealingService.steal(readyTaskQueue);
+            int stealCount = 0;
+            while (stealCount < MAX_STEAL_PER_ROUND && (doTask = stealingService.steal(this)) != null) {
+                stealCount++;
+                stolenCount.increment();
+                runTask(doTask);
             }
         }
     }
 
+    private void runTask(IoTask task) {
+        final IoProvider.HandleProviderCallback callback = task.providerCallback;
+        long before = callback.getTransferredBytes();
+
+        executedCount.increment();
+        boolean again = processTask(task);
+
+        // 流量记在通道所注册的线程上，用于评估该线程的负载
+        task.owner.transferredBytes.add(callback.getTransferredBytes() - before);
+
+        if (again) {
+            // 做完工作后添加到所属线程的待注册列表
+            task.owner.registerTaskQueue.offer(task);
+            task.owner.wakeup();
+        }
+    }
+
+    /**
+     * 采样流量，计算指数加权平均值
+     */
+    private void sampleTransferredBytes() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - lastSampleTime;
+        if (elapsed < SAMPLE_INTERVAL_MILLIS) {
+            return;
+        }
+        long bytes = transferredBytes.sum();
+        long rate = (bytes - lastSampleBytes) * 1000 / elapsed;
+        bytesPerSecond = (long) (EWMA_ALPHA * rate + (1 - EWMA_ALPHA) * bytesPerSecond);
+        lastSampleTime = now;
+        lastSampleBytes = bytes;
+    }
+
+    /**
+     * 是否有需要立即处理的工作
+     */
+    private boolean hasPendingWork() {
+        final StealingService stealingService = this.stealingService;
+        return !registerTaskQueue.isEmpty()
+                || backlog.get() > 0
+                || (stealingService != null && stealingService.hasStealable(this));
+    }
+
     @Override
     public final void run() {
         super.run();
 
         final Selector selector = this.selector;
-        final LinkedBlockingQueue<IoTask> readyTaskQueue = this.readyTaskQueue;
-        final LinkedBlockingQueue<IoTask> registerTaskQueue = this.registerTaskQueue;
+        final ConcurrentLinkedDeque<IoTask> readyTaskDeque = this.readyTaskDeque;
+        final ConcurrentLinkedQueue<IoTask> registerTaskQueue = this.registerTaskQueue;
         final List<IoTask> onceReadyTaskCache = this.onceReadyTaskCache;
 
         try {
@@ -217,11 +357,19 @@ public abstract class StealingSelectorThread extends Thread {
                 // 加入待注册的通道
                 consumeRegisterTodoTasks(registerTaskQueue);
 
-                // 检查一次
-                if ((selector.selectNow()) == 0) {
-                    Thread.yield();
-                    continue;
+                /*
+                先标记为空闲再检查是否有工作：其他线程总是先发布工作再检查 isIdle/wakenUp，
+                两边至少有一方能看到对方，不会出现有任务却一直阻塞的情况。
+                 */
+                wakenUp.set(false);
+                isIdle = true;
+                if (hasPendingWork()) {
+                    selector.selectNow();
+                } else {
+                    selector.select(SAMPLE_INTERVAL_MILLIS);
                 }
+                isIdle = false;
+                wakenUp.set(true);
 
                 // 处理已就绪的通道
                 Set<SelectionKey> selectionKeys = selector.selectedKeys();
@@ -266,18 +414,21 @@ public abstract class StealingSelectorThread extends Thread {
                 // 判断本次是否有待执行的任务
                 if (!onceReadyTaskCache.isEmpty()) {
                     // 加入到总队列中
-                    joinTaskQueue(readyTaskQueue, onceReadyTaskCache);
+                    joinTaskQueue(readyTaskDeque, onceReadyTaskCache);
                     onceReadyTaskCache.clear();
                 }
 
                 // 消费总队列中的任务
-                consumeTodoTasks(readyTaskQueue, registerTaskQueue);
+                consumeTodoTasks();
+
+                sampleTransferredBytes();
             }
         } catch (ClosedSelectorException ignored) {
         } catch (IOException e) {
             CloseUtils.close(selector);
         } finally {
-            readyTaskQueue.clear();
+            readyTaskDeque.clear();
+            backlog.set(0);
             registerTaskQueue.clear();
             onceReadyTaskCache.clear();
         }
@@ -1,15 +1,24 @@
 package l12.v5.clink.impl.stealing;
 
-import java.util.Arrays;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.function.IntFunction;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 窃取调度服务
+ * <p>
+ * 窃取时只比较各线程的任务计数，从积压最多的线程队尾窃取；分配新连接时综合考虑线程上连接的实测流量、积压的任务与连接数量。
  */
-@SuppressWarnings("unused")
 public class StealingService {
 
+    /**
+     * 每积压一个任务折算的负载（字节/秒），积压说明线程已经处理不过来，权重应明显高于连接数
+     */
+    private static final long BACKLOG_LOAD = 64 * 1024;
+
+    /**
+     * 每个连接折算的负载（字节/秒），流量都为 0 时保证连接被均匀分配
+     */
+    private static final long KEY_LOAD = 1024;
+
     /**
      * 当任务队列数量低于安全值时，不可窃取
      */
@@ -20,45 +29,86 @@ public class StealingService {
      */
     private final StealingSelectorThread[] threads;
 
-    /**
-     * 对应的任务队列
-     */
-    private final LinkedBlockingQueue<IoTask>[] queues;
-
     // 结束标志
     private volatile boolean isTerminated = false;
 
     public StealingService(StealingSelectorThread[] threads, int minSafetyThreshold) {
         this.threads = threads;
-        this.queues = Arrays.stream(threads)
-                .map(StealingSelectorThread::getReadyTaskQueue)
-                .toArray((IntFunction<LinkedBlockingQueue<IoTask>[]>) LinkedBlockingQueue[]::new);
         this.minSafetyThreshold = minSafetyThreshold;
     }
 
     /**
-     * 窃取一个任务，排除自己，从他人队列窃取一个任务
+     * 积压的任务数量是否达到可窃取的程度
+     */
+    boolean isStealable(int backlog) {
+        return backlog > minSafetyThreshold;
+    }
+
+    /**
+     * 除 thief 以外是否有线程积压了可窃取的任务
+     */
+    boolean hasStealable(final StealingSelectorThread thief) {
+        for (StealingSelectorThread thread : threads) {
+            if (thread != thief && isStealable(thread.getBacklog())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 窃取一个任务，排除自己，从积压最多的线程的队尾窃取一个任务
      *
-     * @param excludedQueue 待排除的队列
+     * @param thief 窃取者
      * @return 窃取成功返回实例，失败返回NULL
      */
-    IoTask steal(final LinkedBlockingQueue<IoTask> excludedQueue) {
-        final int minSafetyThreshold = this.minSafetyThreshold;
-        final LinkedBlockingQueue<IoTask>[] queues = this.queues;
-        for (LinkedBlockingQueue<IoTask> queue : queues) {
-            if (queue == excludedQueue) {
+    IoTask steal(final StealingSelectorThread thief) {
+        final StealingSelectorThread[] threads = this.threads;
+        final int length = threads.length;
+        // 随机起点，避免多个窃取者总是盯着同一个线程
+        final int start = ThreadLocalRandom.current().nextInt(length);
+
+        StealingSelectorThread victim = null;
+        int victimBacklog = minSafetyThreshold;
+        for (int i = 0; i < length; i++) {
+            StealingSelectorThread thread = threads[(start + i) % length];
+            if (thread == thief) {
                 continue;
             }
+            int backlog = thread.getBacklog();
+            if (backlog > victimBacklog) {
+                victimBacklog = backlog;
+                victim = thread;
+            }
+        }
+
+        return victim == null ? null : victim.stealTask();
+    }
 
-            int size = queue.size();
-            if (size > minSafetyThreshold) {
-                IoTask poll = queue.poll();
-                if (poll != null) {
-                    return poll;
-                }
+    /**
+     * 某个线程积压了可窃取的任务，唤醒一个空闲的线程来窃取
+     *
+     * @param source 积压任务的线程
+     */
+    void notifyBacklog(final StealingSelectorThread source) {
+        for (StealingSelectorThread thread : threads) {
+            if (thread != source && thread.isIdle()) {
+                thread.wakeup();
+                return;
             }
         }
-        return null;
+    }
+
+    /**
+     * 负载：实测流量 + 积压任务 + 连接数量，-1 表示线程已失效
+     */
+    private static long loadOf(StealingSelectorThread thread) {
+        if (!thread.isAvailable()) {
+            return -1;
+        }
+        return thread.getBytesPerSecond()
+                + thread.getBacklog() * BACKLOG_LOAD
+                + thread.getRegisteredKeyCount() * KEY_LOAD;
     }
 
     /**
@@ -68,11 +118,11 @@ public class StealingService {
      */
     public StealingSelectorThread getNotBusyThread() {
         StealingSelectorThread targetThread = null;
-        long targetKeyCount = Long.MAX_VALUE;
+        long targetLoad = Long.MAX_VALUE;
         for (StealingSelectorThread thread : threads) {
-            long registerKeyCount = thread.getSaturatingCapacity();
-            if (registerKeyCount != -1 && registerKeyCount < targetKeyCount) {
-                targetKeyCount = registerKeyCount;
+            long load = loadOf(thread);
+            if (load != -1 && load < targetLoad) {
+                targetLoad = load;
                 targetThread = thread;
             }
         }
@@ -102,12 +152,43 @@ public class StealingService {
     }
 
     /**
-     * 执行一个任务
+     * 执行一个任务，任务被放入积压最少的线程的队尾
      *
      * @param task 任务
      */
     public void execute(IoTask task) {
+        if (isTerminated) {
+            return;
+        }
+        StealingSelectorThread targetThread = null;
+        int targetBacklog = Integer.MAX_VALUE;
+        for (StealingSelectorThread thread : threads) {
+            int backlog = thread.getBacklog();
+            if (thread.isAvailable() && backlog < targetBacklog) {
+                targetBacklog = backlog;
+                targetThread = thread;
+            }
+        }
+        if (targetThread != null) {
+            targetThread.offerTask(task);
+        }
+    }
 
+    /**
+     * 输出各线程的统计信息
+     */
+    public String dumpStatistics() {
+        StringBuilder builder = new StringBuilder();
+        for (StealingSelectorThread thread : threads) {
+            builder.append(thread.getName())
+                    .append(": executed=").append(thread.getExecutedCount())
+                    .append(", stolen=").append(thread.getStolenCount())
+                    .append(", backlog=").append(thread.getBacklog())
+                    .append(", keys=").append(thread.getRegisteredKeyCount())
+                    .append(", bytes/s=").append(thread.getBytesPerSecond())
+                    .append('\n');
+        }
+        return builder.toString();
     }
 
 }
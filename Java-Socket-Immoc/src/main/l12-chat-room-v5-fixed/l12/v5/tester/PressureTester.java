@@ -41,12 +41,12 @@ public class PressureTester {
         }
 
         File cachePath = Foo.getCacheDir("l5/client/test");
+        //TODO：性能优化3（多线程任务窃取）
+        IoStealingSelectorProvider ioProvider = new IoStealingSelectorProvider(3);
         IoContext.setup()
-                .ioProvider(new IoStealingSelectorProvider(1))
                 //TODO：性能优化2（单线程selector）
                 //.ioProvider(new SingleSelectorProvider())
-                //TODO：性能优化3（多线程任务窃取）
-                .ioProvider(new IoStealingSelectorProvider(3))
+                .ioProvider(ioProvider)
                 .scheduler(new SchedulerImpl(1))
                 .start();
 
@@ -117,6 +117,9 @@ public class PressureTester {
             tcpClient.exit();
         }
 
+        // 输出各线程的执行与窃取情况
+        System.out.println(ioProvider.getStatistics());
+
         // 关闭框架线程池
         IoContext.close();
 
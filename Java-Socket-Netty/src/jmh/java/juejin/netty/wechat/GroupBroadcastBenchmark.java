@@ -0,0 +1,72 @@
+package juejin.netty.wechat;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import juejin.netty.wechat.common.codec.IMCodecHandler;
+import juejin.netty.wechat.common.protocol.response.GroupMessageResponsePacket;
+import juejin.netty.wechat.common.session.Session;
+import juejin.netty.wechat.utils.BroadcastUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 群消息广播的 CPU 开销与群大小的关系：
+ * <ul>
+ *     <li>pojo：原来的方式，通过 ChannelGroup 写出 Packet，每个成员的编码器各序列化一次；</li>
+ *     <li>once：通过 {@link BroadcastUtil} 只编码一次，各成员共享同一个 ByteBuf。</li>
+ * </ul>
+ * 成员使用 EmbeddedChannel，管道中与服务端一样有 {@link IMCodecHandler}，写出的数据在每次广播之后释放；
+ * EmbeddedChannel 的写出在当前线程完成，这里只体现编码次数的差异，不体现按 EventLoop 合并任务的收益。
+ * <p>
+ * 运行：./gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GroupBroadcastBenchmark {
+
+    @Param({"10", "100", "2000"})
+    public int groupSize;
+
+    @Param({"pojo", "once"})
+    public String mode;
+
+    private ChannelGroup mChannelGroup;
+    private GroupMessageResponsePacket mPacket;
+
+    @Setup
+    public void setup() {
+        mChannelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        for (int i = 0; i < groupSize; i++) {
+            mChannelGroup.add(new EmbeddedChannel(IMCodecHandler.INSTANCE));
+        }
+
+        mPacket = new GroupMessageResponsePacket();
+        mPacket.setFromGroupId("9b1e04c7");
+        mPacket.setFromUser(new Session("a3f9c2d1", "ztiany"));
+        mPacket.setMessage("今晚一起吃饭吗？See you at 7pm.");
+    }
+
+    @TearDown
+    public void tearDown() {
+        mChannelGroup.close().syncUninterruptibly();
+    }
+
+    @Benchmark
+    public void broadcast() {
+        if ("once".equals(mode)) {
+            BroadcastUtil.broadcast(mChannelGroup, mPacket, PooledByteBufAllocator.DEFAULT);
+        } else {
+            mChannelGroup.writeAndFlush(mPacket);
+        }
+        for (Channel channel : mChannelGroup) {
+            ((EmbeddedChannel) channel).releaseOutbound();
+        }
+    }
+
+}
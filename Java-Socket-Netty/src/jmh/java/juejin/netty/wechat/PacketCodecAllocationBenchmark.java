@@ -0,0 +1,114 @@
+package juejin.netty.wechat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import juejin.netty.wechat.common.protocol.Packet;
+import juejin.netty.wechat.common.protocol.PacketCodec;
+import juejin.netty.wechat.common.protocol.request.MessageRequestPacket;
+import juejin.netty.wechat.common.protocol.response.GroupMessageResponsePacket;
+import juejin.netty.wechat.common.serialization.Algorithms;
+import juejin.netty.wechat.common.serialization.Serializer;
+import juejin.netty.wechat.common.session.Session;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实体数据编解码的内存分配：
+ * <ul>
+ *     <li>copy：原来的方式，编码时先序列化为 byte[] 再写入 ByteBuf，解码时先从 ByteBuf 复制出 byte[] 再反序列化；</li>
+ *     <li>direct：直接写入、读取 ByteBuf。</li>
+ * </ul>
+ * 与管道中一样，编码写入从池化分配器申请的 ioBuffer，解码读取直接内存中的帧。
+ * <p>
+ * 运行：./gradlew jmh，每条消息分配的字节数见 gc.alloc.rate.norm。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PacketCodecAllocationBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    public String algorithm;
+
+    @Param({"copy", "direct"})
+    public String mode;
+
+    private Serializer mSerializer;
+    private boolean mDirect;
+    private MessageRequestPacket mMessageRequest;
+    private GroupMessageResponsePacket mGroupMessageResponse;
+
+    private ByteBuf mMessageRequestFrame;
+    private ByteBuf mGroupMessageResponseFrame;
+
+    @Setup
+    public void setup() {
+        mSerializer = PacketCodec.get().getSerializer("JSON".equals(algorithm) ? Algorithms.JSON : Algorithms.BINARY);
+        mDirect = "direct".equals(mode);
+
+        mMessageRequest = new MessageRequestPacket("a3f9c2d1", "今晚一起吃饭吗？See you at 7pm.");
+
+        mGroupMessageResponse = new GroupMessageResponsePacket();
+        mGroupMessageResponse.setFromGroupId("9b1e04c7");
+        mGroupMessageResponse.setFromUser(new Session("a3f9c2d1", "ztiany"));
+        mGroupMessageResponse.setMessage("今晚一起吃饭吗？See you at 7pm.");
+
+        mMessageRequestFrame = PooledByteBufAllocator.DEFAULT.ioBuffer();
+        mSerializer.serialize(mMessageRequest, mMessageRequestFrame);
+        mGroupMessageResponseFrame = PooledByteBufAllocator.DEFAULT.ioBuffer();
+        mSerializer.serialize(mGroupMessageResponse, mGroupMessageResponseFrame);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mMessageRequestFrame.release();
+        mGroupMessageResponseFrame.release();
+    }
+
+    @Benchmark
+    public int encodeMessageRequest() {
+        return encode(mMessageRequest);
+    }
+
+    @Benchmark
+    public Packet decodeMessageRequest() {
+        return decode(MessageRequestPacket.class, mMessageRequestFrame);
+    }
+
+    @Benchmark
+    public int encodeGroupMessageResponse() {
+        return encode(mGroupMessageResponse);
+    }
+
+    @Benchmark
+    public Packet decodeGroupMessageResponse() {
+        return decode(GroupMessageResponsePacket.class, mGroupMessageResponseFrame);
+    }
+
+    private int encode(Packet packet) {
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.ioBuffer();
+        try {
+            if (mDirect) {
+                mSerializer.serialize(packet, out);
+            } else {
+                out.writeBytes(mSerializer.serialize(packet));
+            }
+            return out.writerIndex();
+        } finally {
+            out.release();
+        }
+    }
+
+    private <T extends Packet> T decode(Class<T> clazz, ByteBuf frame) {
+        ByteBuf in = frame.duplicate();
+        int length = in.readableBytes();
+        if (mDirect) {
+            return mSerializer.deserialize(clazz, in, length);
+        }
+        byte[] data = new byte[length];
+        in.readBytes(data);
+        return mSerializer.deserialize(clazz, data);
+    }
+
+}
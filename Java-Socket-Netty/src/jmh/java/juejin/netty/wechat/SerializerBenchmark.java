@@ -0,0 +1,92 @@
+package juejin.netty.wechat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import juejin.netty.wechat.common.protocol.Packet;
+import juejin.netty.wechat.common.protocol.PacketCodec;
+import juejin.netty.wechat.common.protocol.request.MessageRequestPacket;
+import juejin.netty.wechat.common.protocol.response.GroupMessageResponsePacket;
+import juejin.netty.wechat.common.serialization.Algorithms;
+import juejin.netty.wechat.common.session.Session;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON 与二进制序列化的对比：分别编码、解码 {@link MessageRequestPacket} 与 {@link GroupMessageResponsePacket}，
+ * 编码包含完整的协议头，与连接上实际写出的数据一致。
+ * <p>
+ * 运行：./gradlew jmh，编码后的大小在开始时打印。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializerBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    public String algorithm;
+
+    private byte mAlgorithm;
+    private MessageRequestPacket mMessageRequest;
+    private GroupMessageResponsePacket mGroupMessageResponse;
+
+    private ByteBuf mOut;
+    private ByteBuf mEncodedMessageRequest;
+    private ByteBuf mEncodedGroupMessageResponse;
+
+    @Setup
+    public void setup() {
+        mAlgorithm = "JSON".equals(algorithm) ? Algorithms.JSON : Algorithms.BINARY;
+
+        mMessageRequest = new MessageRequestPacket("a3f9c2d1", "今晚一起吃饭吗？See you at 7pm.");
+
+        mGroupMessageResponse = new GroupMessageResponsePacket();
+        mGroupMessageResponse.setFromGroupId("9b1e04c7");
+        mGroupMessageResponse.setFromUser(new Session("a3f9c2d1", "ztiany"));
+        mGroupMessageResponse.setMessage("今晚一起吃饭吗？See you at 7pm.");
+
+        mOut = PooledByteBufAllocator.DEFAULT.heapBuffer(256);
+        mEncodedMessageRequest = encodeOnce(mMessageRequest);
+        mEncodedGroupMessageResponse = encodeOnce(mGroupMessageResponse);
+        System.out.printf("%n%s: MessageRequestPacket=%d bytes, GroupMessageResponsePacket=%d bytes%n",
+                algorithm, mEncodedMessageRequest.readableBytes(), mEncodedGroupMessageResponse.readableBytes());
+    }
+
+    private ByteBuf encodeOnce(Packet packet) {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.heapBuffer(256);
+        PacketCodec.get().encode(buf, packet, mAlgorithm);
+        return buf;
+    }
+
+    @TearDown
+    public void tearDown() {
+        mOut.release();
+        mEncodedMessageRequest.release();
+        mEncodedGroupMessageResponse.release();
+    }
+
+    @Benchmark
+    public int encodeMessageRequest() {
+        mOut.clear();
+        PacketCodec.get().encode(mOut, mMessageRequest, mAlgorithm);
+        return mOut.writerIndex();
+    }
+
+    @Benchmark
+    public Packet decodeMessageRequest() {
+        return PacketCodec.get().decode(mEncodedMessageRequest.duplicate());
+    }
+
+    @Benchmark
+    public int encodeGroupMessageResponse() {
+        mOut.clear();
+        PacketCodec.get().encode(mOut, mGroupMessageResponse, mAlgorithm);
+        return mOut.writerIndex();
+    }
+
+    @Benchmark
+    public Packet decodeGroupMessageResponse() {
+        return PacketCodec.get().decode(mEncodedGroupMessageResponse.duplicate());
+    }
+
+}
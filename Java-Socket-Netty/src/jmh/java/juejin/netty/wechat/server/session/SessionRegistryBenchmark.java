@@ -0,0 +1,203 @@
+package juejin.netty.wechat.server.session;
+
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.channel.local.LocalChannel;
+import io.netty.util.concurrent.EventExecutor;
+import juejin.netty.wechat.common.attribute.Attributes;
+import juejin.netty.wechat.common.session.Session;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 100 万在线用户时会话注册表的吞吐，对比：
+ * <ul>
+ *     <li>old：原来的 SessionUtil，全局的 ConcurrentHashMap&lt;String, Channel&gt;，id 为 UUID 截取的字符串，任意线程直接读写；</li>
+ *     <li>sharded：{@link SessionRegistry}，通过公开的 login/logout/findUser 访问，分片只在自己的 EventLoop 中读写。</li>
+ * </ul>
+ * 注册表建立在真实的 {@link DefaultEventLoopGroup} 上，每个用户一个注册到其中的 {@link LocalChannel}。
+ * 服务端的登录与查找都发生在处理请求的 EventLoop 中，因此每次操作都先提交到本线程对应的 EventLoop，
+ * 等到结果（findUser 的回调）返回之后才算完成，两种方式都包含这一次切换。登出时打印的日志在测试期间被丢弃。
+ * <ul>
+ *     <li>login：新建连接并注册，登录后关闭连接，关闭时登出，在线用户数保持不变；</li>
+ *     <li>lookup：查找与调用者在同一个 EventLoop 上的用户，分片的方式直接在本地查找；</li>
+ *     <li>route：根据协议中的字符串 id 查找任意用户，分片的方式在用户不在本 EventLoop 时还需要切换到它所在的 EventLoop。</li>
+ * </ul>
+ * 运行：./gradlew jmh
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(SessionRegistryBenchmark.THREADS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SessionRegistryBenchmark {
+
+    static final int THREADS = 4;
+    private static final int SESSIONS = 1_000_000;
+    private static final int SESSIONS_PER_LOOP = SESSIONS / THREADS;
+
+    @State(Scope.Benchmark)
+    public static class Registry {
+
+        @Param({"old", "sharded"})
+        public String model;
+
+        final AtomicInteger mNextLoop = new AtomicInteger();
+
+        DefaultEventLoopGroup mGroup;
+        EventLoop[] mLoops;
+
+        // old
+        Map<String, Channel> mUsers;
+        // sharded
+        SessionRegistry mRegistry;
+
+        // 协议中的 id，按用户所在的 EventLoop 存放
+        String[][] mIds;
+
+        PrintStream mOut;
+
+        @Setup
+        public void setup() {
+            mOut = System.out;
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }));
+
+            mGroup = new DefaultEventLoopGroup(THREADS);
+            mLoops = new EventLoop[THREADS];
+            int index = 0;
+            for (EventExecutor executor : mGroup) {
+                mLoops[index++] = (EventLoop) executor;
+            }
+            if ("old".equals(model)) {
+                mUsers = new ConcurrentHashMap<>();
+            } else {
+                SessionRegistry.init(mGroup);
+                mRegistry = SessionRegistry.get();
+            }
+
+            // 每个 EventLoop 中登录各自的用户
+            mIds = new String[THREADS][SESSIONS_PER_LOOP];
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int loop = 0; loop < THREADS; loop++) {
+                int loopIndex = loop;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < SESSIONS_PER_LOOP; i++) {
+                        mIds[loopIndex][i] = login(newChannel(mLoops[loopIndex]));
+                    }
+                }, mLoops[loop]));
+            }
+            futures.forEach(CompletableFuture::join);
+        }
+
+        /**
+         * 在 loop 中调用，注册在 loop 中同步完成
+         */
+        Channel newChannel(EventLoop loop) {
+            Channel channel = new LocalChannel();
+            loop.register(channel);
+            return channel;
+        }
+
+        /**
+         * 在连接所在的 EventLoop 中调用
+         *
+         * @return 用户 id
+         */
+        String login(Channel channel) {
+            if (mRegistry != null) {
+                return mRegistry.login(channel, "user").getUserId();
+            }
+            // 原来的登录：绑定会话并放入全局的表，连接关闭时移除
+            String id = UUID.randomUUID().toString().split("-")[0];
+            mUsers.put(id, channel);
+            channel.attr(Attributes.SESSION).set(new Session(id, "user"));
+            channel.closeFuture().addListener(future -> {
+                mUsers.remove(id);
+                Session session = channel.attr(Attributes.SESSION).getAndSet(null);
+                System.out.println(session + " 退出登录!");
+            });
+            return id;
+        }
+
+        @TearDown
+        public void tearDown() {
+            mGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+            System.setOut(mOut);
+        }
+
+    }
+
+    /**
+     * 每个线程对应一个 EventLoop，模拟在这个 EventLoop 中处理请求
+     */
+    @State(Scope.Thread)
+    public static class Local {
+
+        int mLoop;
+
+        @Setup
+        public void setup(Registry registry) {
+            mLoop = registry.mNextLoop.getAndIncrement() % THREADS;
+        }
+
+    }
+
+    @Benchmark
+    public Object login(Registry registry, Local local) {
+        EventLoop loop = registry.mLoops[local.mLoop];
+        CompletableFuture<String> result = new CompletableFuture<>();
+        loop.execute(() -> {
+            Channel channel = registry.newChannel(loop);
+            String id = registry.login(channel);
+            // 在 EventLoop 中关闭，关闭的监听（登出）同步执行
+            channel.close();
+            result.complete(id);
+        });
+        return result.join();
+    }
+
+    @Benchmark
+    public Channel lookup(Registry registry, Local local) {
+        String userId = registry.mIds[local.mLoop][ThreadLocalRandom.current().nextInt(SESSIONS_PER_LOOP)];
+        return find(registry, local, userId);
+    }
+
+    @Benchmark
+    public Channel route(Registry registry, Local local) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String userId = registry.mIds[random.nextInt(THREADS)][random.nextInt(SESSIONS_PER_LOOP)];
+        return find(registry, local, userId);
+    }
+
+    private static Channel find(Registry registry, Local local, String userId) {
+        CompletableFuture<Channel> result = new CompletableFuture<>();
+        registry.mLoops[local.mLoop].execute(() -> {
+            if (registry.mRegistry != null) {
+                registry.mRegistry.findUser(userId, result::complete);
+            } else {
+                result.complete(registry.mUsers.get(userId));
+            }
+        });
+        return result.join();
+    }
+
+}
@@ -1,6 +1,7 @@
 package juejin.netty.wechat.client.console;
 
 import io.netty.channel.Channel;
+import juejin.netty.wechat.common.protocol.PacketCodec;
 import juejin.netty.wechat.common.protocol.request.LoginRequestPacket;
 
 import java.io.BufferedReader;
@@ -16,6 +17,8 @@ public class LoginConsoleCommand implements ConsoleCommand {
         loginRequestPacket.setUsername(interruptReadLine(bufferedReader));
         System.out.print("请输入密码: ");
         loginRequestPacket.setPassword(interruptReadLine(bufferedReader));
+        // 协商登录之后使用的序列化方式
+        loginRequestPacket.setSerializationAlgorithms(PacketCodec.get().getSupportedAlgorithms());
 
         // 发送登录数据包
         channel.writeAndFlush(loginRequestPacket);
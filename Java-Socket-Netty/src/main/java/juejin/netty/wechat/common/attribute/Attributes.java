@@ -7,4 +7,9 @@ public class Attributes {
 
     public static final AttributeKey<Session> SESSION = AttributeKey.newInstance("session");
 
+    /**
+     * 连接协商的序列化方式，未协商时为 null，使用 JSON
+     */
+    public static final AttributeKey<Byte> SERIALIZATION_ALGORITHM = AttributeKey.newInstance("serializationAlgorithm");
+
 }
@@ -31,14 +31,14 @@ public class IMCodecHandler extends MessageToMessageCodec<ByteBuf, Packet> {
 
     @Override
     protected void encode(ChannelHandlerContext ctx, Packet msg, List<Object> out) {
-        ByteBuf byteBuf = ctx.channel().alloc().ioBuffer();
-        PacketCodec.get().encode(byteBuf, msg);
+        ByteBuf byteBuf = ctx.alloc().ioBuffer();
+        PacketCodec.get().encode(ctx.channel(), byteBuf, msg);
         out.add(byteBuf);
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) {
-        out.add(PacketCodec.get().decode(msg));
+        out.add(PacketCodec.get().decode(ctx.channel(), msg));
     }
 
 }
\ No newline at end of file
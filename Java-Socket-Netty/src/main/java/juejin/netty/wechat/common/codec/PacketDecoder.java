@@ -20,7 +20,7 @@ public class PacketDecoder extends ByteToMessageDecoder {
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
-        out.add(PacketCodec.get().decode(in));
+        out.add(PacketCodec.get().decode(ctx.channel(), in));
     }
 
 }
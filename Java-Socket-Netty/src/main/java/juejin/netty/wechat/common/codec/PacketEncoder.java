@@ -10,7 +10,7 @@ public class PacketEncoder extends MessageToByteEncoder<Packet> {
 
     @Override
     protected void encode(ChannelHandlerContext ctx, Packet msg, ByteBuf out) {
-        PacketCodec.get().encode(out, msg);
+        PacketCodec.get().encode(ctx.channel(), out, msg);
     }
 
 }
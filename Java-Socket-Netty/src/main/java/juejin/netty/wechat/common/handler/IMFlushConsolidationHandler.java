@@ -0,0 +1,163 @@
+package juejin.netty.wechat.common.handler;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.Future;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ 合并 flush 的 handler。
+
+    说明：各个 Handler 处理一个请求之后都调用 writeAndFlush()，每次 flush 都会触发一次 write 系统调用，消息频繁时系统调用的开销很大，
+         而一次 write 系统调用可以写出多个消息。
+
+    合并的策略：
+        （1）读取数据的过程中（channelRead 到 channelReadComplete 之间）产生的 flush 推迟到 channelReadComplete 时执行一次，
+            这一批读到的所有请求的响应一起写出；
+        （2）不在读取过程中产生的 flush，比如转发给其他用户的消息、群消息，推迟 MAX_DELAY_MICROS 微秒后执行一次，
+            为 0 时在 EventLoop 执行完当前的任务之后执行，这段时间内写给同一个连接的其他消息一起写出，空闲连接的延迟不会超过这个时间；
+        （3）推迟的 flush 达到 MAX_PENDING_FLUSHES 次时立即执行，避免数据积压；
+        （4）连接关闭、出现异常、连接变为不可写时立即执行。
+
+    通过系统属性配置，部署时可以关闭：
+        -Dwechat.flush.consolidation=false        关闭合并，每次 flush 直接执行
+        -Dwechat.flush.maxPending=64              最多推迟的 flush 次数
+        -Dwechat.flush.maxDelayMicros=0           不在读取过程中的 flush 最多推迟的时间
+
+    IMFlushConsolidationHandler 需要放在所有会写数据的 Handler 之前（靠近 head），才能接收到所有的 flush；它包含了内部状态，因此不能被多个 Channel 共享。
+ */
+public class IMFlushConsolidationHandler extends ChannelDuplexHandler {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("wechat.flush.consolidation", "true"));
+    private static final int MAX_PENDING_FLUSHES = Integer.getInteger("wechat.flush.maxPending", 64);
+    private static final long MAX_DELAY_MICROS = Long.getLong("wechat.flush.maxDelayMicros", 0);
+
+    // 所有连接的统计
+    private static final LongAdder FLUSHES_REQUESTED = new LongAdder();
+    private static final LongAdder FLUSHES_PERFORMED = new LongAdder();
+
+    private ChannelHandlerContext mContext;
+    private Runnable mFlushTask;
+    private Future<?> mScheduledFlush;
+    private int mPendingFlushes;
+    private boolean mReadInProgress;
+
+    /**
+     * 各个 Handler 调用 flush 的次数
+     */
+    public static long getFlushesRequested() {
+        return FLUSHES_REQUESTED.sum();
+    }
+
+    /**
+     * 实际执行 flush 的次数
+     */
+    public static long getFlushesPerformed() {
+        return FLUSHES_PERFORMED.sum();
+    }
+
+    /**
+     * 合并掉的 flush 次数
+     */
+    public static long getFlushesAvoided() {
+        return getFlushesRequested() - getFlushesPerformed();
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        mContext = ctx;
+        mFlushTask = () -> {
+            mScheduledFlush = null;
+            if (mPendingFlushes > 0 && !mReadInProgress) {
+                flushNow(mContext);
+            }
+        };
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        flushIfNeeded(ctx);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        FLUSHES_REQUESTED.increment();
+        if (++mPendingFlushes >= MAX_PENDING_FLUSHES) {
+            flushNow(ctx);
+        } else if (!mReadInProgress) {
+            scheduleFlush(ctx);
+        }
+        // 读取过程中的 flush 在 channelReadComplete 时执行
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        mReadInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        mReadInProgress = false;
+        flushIfNeeded(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (!ctx.channel().isWritable()) {
+            // 写缓冲已满，尽快写出
+            flushIfNeeded(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        flushIfNeeded(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) {
+        flushIfNeeded(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) {
+        flushIfNeeded(ctx);
+        ctx.close(promise);
+    }
+
+    private void scheduleFlush(ChannelHandlerContext ctx) {
+        if (mScheduledFlush != null) {
+            return;
+        }
+        if (MAX_DELAY_MICROS > 0) {
+            mScheduledFlush = ctx.executor().schedule(mFlushTask, MAX_DELAY_MICROS, TimeUnit.MICROSECONDS);
+        } else {
+            mScheduledFlush = ctx.executor().submit(mFlushTask);
+        }
+    }
+
+    private void flushIfNeeded(ChannelHandlerContext ctx) {
+        if (mPendingFlushes > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        if (mScheduledFlush != null) {
+            mScheduledFlush.cancel(false);
+            mScheduledFlush = null;
+        }
+        mPendingFlushes = 0;
+        FLUSHES_PERFORMED.increment();
+        ctx.flush();
+    }
+
+}
@@ -1,8 +1,10 @@
 package juejin.netty.wechat.common.protocol;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import juejin.netty.wechat.common.attribute.Attributes;
 import juejin.netty.wechat.common.protocol.command.Command;
 import juejin.netty.wechat.common.protocol.request.*;
 import juejin.netty.wechat.common.protocol.response.*;
@@ -13,6 +15,13 @@ import juejin.netty.wechat.common.serialization.Serializer;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * 协议编解码。
+ * <p>
+ * 序列化方式按连接协商：连接建立时使用 JSON，客户端在登录请求中带上自己支持的序列化方式，服务端选择双方都支持的优先级最高的一种，
+ * 记录在连接的 {@link Attributes#SERIALIZATION_ALGORITHM} 中，从登录响应开始使用；客户端收到登录响应时，以响应使用的序列化方式作为协商结果。
+ * 数据包头部中带有序列化方式，因此解码不依赖协商的结果，协商前后的数据包都可以正确解码；不支持协商的旧版本一直使用 JSON。
+ */
 public class PacketCodec {
 
     private static final PacketCodec codec = new PacketCodec();
@@ -32,6 +41,9 @@ public class PacketCodec {
     private static final int SERIALIZATION_LENGTH = 1;
     private static final int DATA_LENGTH = 4;
 
+    // 支持的序列化方式，按优先级排列
+    private static final byte[] SUPPORTED_ALGORITHMS = {Algorithms.BINARY, Algorithms.JSON};
+
     private PacketCodec() {
         //指令对应的 Package 类型
         packetTypeMap = new HashMap<>();
@@ -58,13 +70,25 @@ public class PacketCodec {
         serializerMap = new HashMap<>();
         Serializer serializer = new JSONSerializer();
         serializerMap.put(serializer.getAlgorithm(), serializer);
+        serializer = PacketSchemas.newBinarySerializer();
+        serializerMap.put(serializer.getAlgorithm(), serializer);
+    }
+
+    /**
+     * 支持的序列化方式，按优先级排列，客户端登录时发送给服务端用于协商
+     */
+    public byte[] getSupportedAlgorithms() {
+        return SUPPORTED_ALGORITHMS.clone();
     }
 
     private Serializer getDefaultSerializer() {
         return serializerMap.get(Algorithms.JSON);
     }
 
-    private Serializer getSerializer(byte serializeAlgorithm) {
+    /**
+     * @return 不支持的序列化方式返回 null
+     */
+    public Serializer getSerializer(byte serializeAlgorithm) {
         return serializerMap.get(serializeAlgorithm);
     }
 
@@ -72,18 +96,44 @@ public class PacketCodec {
         return packetTypeMap.get(command);
     }
 
+    /**
+     * 使用默认的序列化方式（JSON）编码
+     */
     public void encode(ByteBuf byteBuf, Packet packet) {
+        encode(byteBuf, packet, Algorithms.JSON);
+    }
+
+    /**
+     * 使用连接协商的序列化方式编码
+     */
+    public void encode(Channel channel, ByteBuf byteBuf, Packet packet) {
+        encode(byteBuf, packet, getSerializationAlgorithm(channel));
+    }
+
+    /**
+     * 连接协商的序列化方式，未协商时为 JSON
+     */
+    public byte getSerializationAlgorithm(Channel channel) {
+        Byte algorithm = channel.attr(Attributes.SERIALIZATION_ALGORITHM).get();
+        return algorithm == null ? Algorithms.JSON : algorithm;
+    }
+
+    public void encode(ByteBuf byteBuf, Packet packet, byte serializationAlgorithm) {
         // 获取序列化器
-        Serializer defaultSerializer = getDefaultSerializer();
-        byte[] data = defaultSerializer.serialize(packet);
+        Serializer serializer = getSerializer(serializationAlgorithm);
+        if (serializer == null) {
+            throw new IllegalStateException(String.format("unsupported serialization algorithm %d", serializationAlgorithm));
+        }
 
         // 执行编码
         byteBuf.writeInt(MAGIC_NUMBER);//魔数
         byteBuf.writeByte(packet.getVersion());//协议版本
-        byteBuf.writeByte(defaultSerializer.getAlgorithm());//序列化方式
+        byteBuf.writeByte(serializer.getAlgorithm());//序列化方式
         byteBuf.writeByte(packet.getCommand());//指令
-        byteBuf.writeInt(data.length);//实体数据长度
-        byteBuf.writeBytes(data);//实体数据
+        int lengthIndex = byteBuf.writerIndex();
+        byteBuf.writeInt(0);//实体数据长度，写入数据后回填
+        serializer.serialize(packet, byteBuf);//实体数据，直接写入 byteBuf，不经过中间的字节数组
+        byteBuf.setInt(lengthIndex, byteBuf.writerIndex() - lengthIndex - DATA_LENGTH);
     }
 
     public Packet decode(ByteBuf byteBuf) {
@@ -98,9 +148,6 @@ public class PacketCodec {
         byte command = byteBuf.readByte();
         // 读取长度
         int length = byteBuf.readInt();
-        // 读取数据
-        byte[] data = new byte[length];
-        byteBuf.readBytes(data);
         // 根据指令获取对应的 Packet 类型
         Class<? extends Packet> clazz = getRequestType(command);
 
@@ -112,7 +159,35 @@ public class PacketCodec {
         }
 
         // 执行反序列化
-        return serializer.deserialize(clazz, data);
+        return serializer.deserialize(clazz, byteBuf, length);
+    }
+
+    /**
+     * 解码，并在登录的请求与响应中协商该连接使用的序列化方式
+     */
+    public Packet decode(Channel channel, ByteBuf byteBuf) {
+        byte serializationAlgorithm = byteBuf.getByte(byteBuf.readerIndex() + MAGIC_NUM_LENGTH + VERSION_LENGTH);
+        Packet packet = decode(byteBuf);
+        if (packet instanceof LoginRequestPacket) {
+            // 服务端：选择客户端支持的优先级最高的一种
+            byte[] algorithms = ((LoginRequestPacket) packet).getSerializationAlgorithms();
+            channel.attr(Attributes.SERIALIZATION_ALGORITHM).set(negotiate(algorithms));
+        } else if (packet instanceof LoginResponsePacket) {
+            // 客户端：登录响应使用的就是服务端选择的序列化方式
+            channel.attr(Attributes.SERIALIZATION_ALGORITHM).set(serializationAlgorithm);
+        }
+        return packet;
+    }
+
+    private byte negotiate(byte[] algorithms) {
+        if (algorithms != null) {
+            for (byte algorithm : algorithms) {
+                if (getSerializer(algorithm) != null) {
+                    return algorithm;
+                }
+            }
+        }
+        return Algorithms.JSON;
     }
 
     /**
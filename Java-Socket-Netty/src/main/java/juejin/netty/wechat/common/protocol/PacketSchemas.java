@@ -0,0 +1,118 @@
+package juejin.netty.wechat.common.protocol;
+
+import juejin.netty.wechat.common.protocol.request.*;
+import juejin.netty.wechat.common.protocol.response.*;
+import juejin.netty.wechat.common.serialization.BinarySchema;
+import juejin.netty.wechat.common.serialization.BinarySerializer;
+import juejin.netty.wechat.common.session.Session;
+
+/**
+ * 各个 Packet 的二进制结构。
+ * <p>
+ * 新增字段时使用新的编号，不要修改或者复用已有字段的编号，这样新旧版本之间仍然可以互相解码（不认识的字段会被跳过）。
+ */
+class PacketSchemas {
+
+    private PacketSchemas() {
+    }
+
+    private static final BinarySchema<Session> SESSION = BinarySchema.builder(Session::new)
+            .string(1, Session::getUserId, Session::setUserId)
+            .string(2, Session::getUserName, Session::setUserName)
+            .build();
+
+    static BinarySerializer newBinarySerializer() {
+        BinarySerializer serializer = new BinarySerializer();
+
+        // 登录
+        serializer.register(LoginRequestPacket.class, BinarySchema.builder(LoginRequestPacket::new)
+                .string(1, LoginRequestPacket::getUsername, LoginRequestPacket::setUsername)
+                .string(2, LoginRequestPacket::getPassword, LoginRequestPacket::setPassword)
+                .bytes(3, LoginRequestPacket::getSerializationAlgorithms, LoginRequestPacket::setSerializationAlgorithms)
+                .build());
+        serializer.register(LoginResponsePacket.class, BinarySchema.builder(LoginResponsePacket::new)
+                .bool(1, LoginResponsePacket::isSuccess, LoginResponsePacket::setSuccess)
+                .string(2, LoginResponsePacket::getReason, LoginResponsePacket::setReason)
+                .string(3, LoginResponsePacket::getUserId, LoginResponsePacket::setUserId)
+                .string(4, LoginResponsePacket::getUserName, LoginResponsePacket::setUserName)
+                .build());
+
+        // 单聊
+        serializer.register(MessageRequestPacket.class, BinarySchema.builder(MessageRequestPacket::new)
+                .string(1, MessageRequestPacket::getToUserId, MessageRequestPacket::setToUserId)
+                .string(2, MessageRequestPacket::getMessage, MessageRequestPacket::setMessage)
+                .build());
+        serializer.register(MessageResponsePacket.class, BinarySchema.builder(MessageResponsePacket::new)
+                .string(1, MessageResponsePacket::getMessage, MessageResponsePacket::setMessage)
+                .string(2, MessageResponsePacket::getFromUserId, MessageResponsePacket::setFromUserId)
+                .string(3, MessageResponsePacket::getFromUserName, MessageResponsePacket::setFromUserName)
+                .build());
+
+        // 登出
+        serializer.register(LogoutRequestPacket.class, BinarySchema.builder(LogoutRequestPacket::new).build());
+        serializer.register(LogoutResponsePacket.class, BinarySchema.builder(LogoutResponsePacket::new)
+                .bool(1, LogoutResponsePacket::isSuccess, LogoutResponsePacket::setSuccess)
+                .string(2, LogoutResponsePacket::getReason, LogoutResponsePacket::setReason)
+                .build());
+
+        // 建群
+        serializer.register(CreateGroupRequestPacket.class, BinarySchema.builder(CreateGroupRequestPacket::new)
+                .stringList(1, CreateGroupRequestPacket::getUserIdList, CreateGroupRequestPacket::setUserIdList)
+                .build());
+        serializer.register(CreateGroupResponsePacket.class, BinarySchema.builder(CreateGroupResponsePacket::new)
+                .bool(1, CreateGroupResponsePacket::isSuccess, CreateGroupResponsePacket::setSuccess)
+                .string(2, CreateGroupResponsePacket::getReason, CreateGroupResponsePacket::setReason)
+                .string(3, CreateGroupResponsePacket::getGroupId, CreateGroupResponsePacket::setGroupId)
+                .stringList(4, CreateGroupResponsePacket::getMemberNameList, CreateGroupResponsePacket::setMemberNameList)
+                .build());
+
+        // 群成员
+        serializer.register(ListGroupMembersRequestPacket.class, BinarySchema.builder(ListGroupMembersRequestPacket::new)
+                .string(1, ListGroupMembersRequestPacket::getGroupId, ListGroupMembersRequestPacket::setGroupId)
+                .build());
+        serializer.register(ListGroupMembersResponsePacket.class, BinarySchema.builder(ListGroupMembersResponsePacket::new)
+                .string(1, ListGroupMembersResponsePacket::getGroupId, ListGroupMembersResponsePacket::setGroupId)
+                .bool(2, ListGroupMembersResponsePacket::isSuccess, ListGroupMembersResponsePacket::setSuccess)
+                .string(3, ListGroupMembersResponsePacket::getReason, ListGroupMembersResponsePacket::setReason)
+                .messageList(4, SESSION, ListGroupMembersResponsePacket::getSessionList, ListGroupMembersResponsePacket::setSessionList)
+                .build());
+
+        // 加群
+        serializer.register(JoinGroupRequestPacket.class, BinarySchema.builder(JoinGroupRequestPacket::new)
+                .string(1, JoinGroupRequestPacket::getGroupId, JoinGroupRequestPacket::setGroupId)
+                .build());
+        serializer.register(JoinGroupResponsePacket.class, BinarySchema.builder(JoinGroupResponsePacket::new)
+                .bool(1, JoinGroupResponsePacket::isSuccess, JoinGroupResponsePacket::setSuccess)
+                .string(2, JoinGroupResponsePacket::getReason, JoinGroupResponsePacket::setReason)
+                .string(3, JoinGroupResponsePacket::getGroupId, JoinGroupResponsePacket::setGroupId)
+                .build());
+
+        // 退群
+        serializer.register(QuitGroupRequestPacket.class, BinarySchema.builder(QuitGroupRequestPacket::new)
+                .string(1, QuitGroupRequestPacket::getGroupId, QuitGroupRequestPacket::setGroupId)
+                .build());
+        serializer.register(QuitGroupResponsePacket.class, BinarySchema.builder(QuitGroupResponsePacket::new)
+                .bool(1, QuitGroupResponsePacket::isSuccess, QuitGroupResponsePacket::setSuccess)
+                .string(2, QuitGroupResponsePacket::getReason, QuitGroupResponsePacket::setReason)
+                .string(3, QuitGroupResponsePacket::getGroupId, QuitGroupResponsePacket::setGroupId)
+                .build());
+
+        // 群聊
+        serializer.register(GroupMessageRequestPacket.class, BinarySchema.builder(GroupMessageRequestPacket::new)
+                .string(1, GroupMessageRequestPacket::getToGroupId, GroupMessageRequestPacket::setToGroupId)
+                .string(2, GroupMessageRequestPacket::getMessage, GroupMessageRequestPacket::setMessage)
+                .build());
+        serializer.register(GroupMessageResponsePacket.class, BinarySchema.builder(GroupMessageResponsePacket::new)
+                .string(1, GroupMessageResponsePacket::getFromGroupId, GroupMessageResponsePacket::setFromGroupId)
+                .message(2, SESSION, GroupMessageResponsePacket::getFromUser, GroupMessageResponsePacket::setFromUser)
+                .string(3, GroupMessageResponsePacket::getMessage, GroupMessageResponsePacket::setMessage)
+                .build());
+
+        // 心跳
+        serializer.register(HeartbeatRequestPacket.class, BinarySchema.builder(HeartbeatRequestPacket::new).build());
+        serializer.register(HeartbeatResponsePacket.class, BinarySchema.builder(HeartbeatResponsePacket::new).build());
+
+        return serializer;
+    }
+
+}
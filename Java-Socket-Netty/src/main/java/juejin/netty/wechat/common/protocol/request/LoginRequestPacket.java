@@ -13,6 +13,11 @@ public class LoginRequestPacket extends Packet {
 
     private String password;
 
+    /**
+     * 客户端支持的序列化方式，按优先级排列，服务端从中选择该连接之后使用的序列化方式，见 {@link juejin.netty.wechat.common.protocol.PacketCodec}
+     */
+    private byte[] serializationAlgorithms;
+
     @Override
     public Byte getCommand() {
         return Command.LOGIN_REQUEST;
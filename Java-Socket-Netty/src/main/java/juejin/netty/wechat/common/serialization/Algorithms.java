@@ -4,4 +4,9 @@ public class Algorithms {
 
     public static final byte JSON = 1;
 
+    /**
+     * 基于字段编号的二进制格式，见 {@link BinarySerializer}
+     */
+    public static final byte BINARY = 2;
+
 }
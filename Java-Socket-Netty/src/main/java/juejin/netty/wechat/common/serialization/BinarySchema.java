@@ -0,0 +1,495 @@
+package juejin.netty.wechat.common.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 一种消息的二进制结构，由若干带编号（tag）的字段组成，字段通过 getter/setter 的方法引用读写，编解码时不使用反射。
+ * <p>
+ * 每个字段编码为 key + value，key 是 varint，值为 (tag << 3) | wireType：
+ * <ul>
+ *     <li>{@link #WIRE_VARINT}：值为 varint，用于 boolean；</li>
+ *     <li>{@link #WIRE_LENGTH_DELIMITED}：值为 varint 长度 + 数据，用于 UTF-8 字符串、字节数组、嵌套消息与列表，
+ *     列表的数据为元素数量（varint）+ 每个元素的长度与数据。</li>
+ * </ul>
+ * 值为 null 或者 false 的字段不编码；解码时不认识的字段按 wireType 跳过，因此增加字段不影响旧版本的解码。
+ *
+ * @param <T> 消息的类型
+ */
+public final class BinarySchema<T> {
+
+    static final int WIRE_VARINT = 0;
+    static final int WIRE_LENGTH_DELIMITED = 2;
+
+    // 编号用作解码时的数组下标，不需要很大
+    private static final int MAX_TAG = 255;
+
+    private final Supplier<T> mFactory;
+    private final Field<T>[] mFields;
+    // 按编号索引，用于解码
+    private final Field<T>[] mFieldsByTag;
+
+    private BinarySchema(Supplier<T> factory, Field<T>[] fields, Field<T>[] fieldsByTag) {
+        mFactory = factory;
+        mFields = fields;
+        mFieldsByTag = fieldsByTag;
+    }
+
+    /**
+     * @param factory 解码时创建消息对象
+     */
+    public static <T> Builder<T> builder(Supplier<T> factory) {
+        return new Builder<>(factory);
+    }
+
+    /**
+     * 把消息写入 out
+     */
+    public void write(T message, ByteBuf out) {
+        for (Field<T> field : mFields) {
+            field.write(message, out);
+        }
+    }
+
+    /**
+     * 从 in 中读取 length 个字节解码成消息
+     */
+    public T read(ByteBuf in, int length) {
+        if (length < 0 || length > in.readableBytes()) {
+            throw new IllegalStateException("message length out of range: " + length);
+        }
+        T message = mFactory.get();
+        int end = in.readerIndex() + length;
+        while (in.readerIndex() < end) {
+            int key = readVarint(in);
+            int tag = key >>> 3;
+            int wireType = key & 7;
+            Field<T> field = tag < mFieldsByTag.length ? mFieldsByTag[tag] : null;
+            if (field != null && field.mWireType == wireType) {
+                field.read(message, in);
+            } else {
+                skip(in, wireType);
+            }
+        }
+        if (in.readerIndex() != end) {
+            throw new IllegalStateException("message truncated");
+        }
+        return message;
+    }
+
+    /**
+     * 消息编码后的长度，用于嵌套消息的长度前缀
+     */
+    int sizeOf(T message) {
+        int size = 0;
+        for (Field<T> field : mFields) {
+            size += field.size(message);
+        }
+        return size;
+    }
+
+    private static void skip(ByteBuf in, int wireType) {
+        switch (wireType) {
+            case WIRE_VARINT:
+                readVarint(in);
+                break;
+            case WIRE_LENGTH_DELIMITED:
+                in.skipBytes(readLength(in));
+                break;
+            default:
+                throw new IllegalStateException("unsupported wire type " + wireType);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // varint
+    ///////////////////////////////////////////////////////////////////////////
+
+    static void writeVarint(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarint(ByteBuf in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("malformed varint");
+    }
+
+    static int varintSize(int value) {
+        if ((value & (~0 << 7)) == 0) {
+            return 1;
+        }
+        if ((value & (~0 << 14)) == 0) {
+            return 2;
+        }
+        if ((value & (~0 << 21)) == 0) {
+            return 3;
+        }
+        if ((value & (~0 << 28)) == 0) {
+            return 4;
+        }
+        return 5;
+    }
+
+    /**
+     * 读取长度前缀，并检查剩余的数据是否足够
+     */
+    private static int readLength(ByteBuf in) {
+        int length = readVarint(in);
+        if (length < 0 || length > in.readableBytes()) {
+            throw new IllegalStateException("length out of range: " + length);
+        }
+        return length;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 值的编解码
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 长度前缀形式的值（字符串、字节数组、嵌套消息）的编解码
+     */
+    private interface ValueCodec<V> {
+
+        /**
+         * 值的数据长度，不包含长度前缀
+         */
+        int size(V value);
+
+        /**
+         * 写入值的数据，不包含长度前缀
+         */
+        void write(V value, int size, ByteBuf out);
+
+        V read(ByteBuf in, int length);
+
+    }
+
+    private static final ValueCodec<String> STRING = new ValueCodec<String>() {
+        @Override
+        public int size(String value) {
+            return ByteBufUtil.utf8Bytes(value);
+        }
+
+        @Override
+        public void write(String value, int size, ByteBuf out) {
+            ByteBufUtil.reserveAndWriteUtf8(out, value, size);
+        }
+
+        @Override
+        public String read(ByteBuf in, int length) {
+            String value = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+            in.skipBytes(length);
+            return value;
+        }
+    };
+
+    private static final ValueCodec<byte[]> BYTES = new ValueCodec<byte[]>() {
+        @Override
+        public int size(byte[] value) {
+            return value.length;
+        }
+
+        @Override
+        public void write(byte[] value, int size, ByteBuf out) {
+            out.writeBytes(value);
+        }
+
+        @Override
+        public byte[] read(ByteBuf in, int length) {
+            byte[] value = new byte[length];
+            in.readBytes(value);
+            return value;
+        }
+    };
+
+    private static <V> ValueCodec<V> messageCodec(BinarySchema<V> schema) {
+        return new ValueCodec<V>() {
+            @Override
+            public int size(V value) {
+                return schema.sizeOf(value);
+            }
+
+            @Override
+            public void write(V value, int size, ByteBuf out) {
+                schema.write(value, out);
+            }
+
+            @Override
+            public V read(ByteBuf in, int length) {
+                return schema.read(in, length);
+            }
+        };
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 字段
+    ///////////////////////////////////////////////////////////////////////////
+
+    private abstract static class Field<T> {
+
+        final int mTag;
+        final int mWireType;
+        final int mKey;
+        final int mKeySize;
+
+        Field(int tag, int wireType) {
+            mTag = tag;
+            mWireType = wireType;
+            mKey = tag << 3 | wireType;
+            mKeySize = varintSize(mKey);
+        }
+
+        /**
+         * 写入 key 与值，值为默认值时不写入
+         */
+        abstract void write(T message, ByteBuf out);
+
+        /**
+         * 写入的长度，包含 key
+         */
+        abstract int size(T message);
+
+        /**
+         * key 已经读取，读取值并设置到消息中
+         */
+        abstract void read(T message, ByteBuf in);
+
+    }
+
+    private static final class BooleanField<T> extends Field<T> {
+
+        private final Predicate<T> mGetter;
+        private final BooleanSetter<T> mSetter;
+
+        BooleanField(int tag, Predicate<T> getter, BooleanSetter<T> setter) {
+            super(tag, WIRE_VARINT);
+            mGetter = getter;
+            mSetter = setter;
+        }
+
+        @Override
+        void write(T message, ByteBuf out) {
+            if (mGetter.test(message)) {
+                writeVarint(out, mKey);
+                out.writeByte(1);
+            }
+        }
+
+        @Override
+        int size(T message) {
+            return mGetter.test(message) ? mKeySize + 1 : 0;
+        }
+
+        @Override
+        void read(T message, ByteBuf in) {
+            mSetter.set(message, readVarint(in) != 0);
+        }
+
+    }
+
+    private static final class ValueField<T, V> extends Field<T> {
+
+        private final ValueCodec<V> mCodec;
+        private final Function<T, V> mGetter;
+        private final BiConsumer<T, V> mSetter;
+
+        ValueField(int tag, ValueCodec<V> codec, Function<T, V> getter, BiConsumer<T, V> setter) {
+            super(tag, WIRE_LENGTH_DELIMITED);
+            mCodec = codec;
+            mGetter = getter;
+            mSetter = setter;
+        }
+
+        @Override
+        void write(T message, ByteBuf out) {
+            V value = mGetter.apply(message);
+            if (value == null) {
+                return;
+            }
+            int size = mCodec.size(value);
+            writeVarint(out, mKey);
+            writeVarint(out, size);
+            mCodec.write(value, size, out);
+        }
+
+        @Override
+        int size(T message) {
+            V value = mGetter.apply(message);
+            if (value == null) {
+                return 0;
+            }
+            int size = mCodec.size(value);
+            return mKeySize + varintSize(size) + size;
+        }
+
+        @Override
+        void read(T message, ByteBuf in) {
+            mSetter.accept(message, mCodec.read(in, readLength(in)));
+        }
+
+    }
+
+    /**
+     * 列表编码为一个字段，空列表与 null 可以区分
+     */
+    private static final class ListField<T, V> extends Field<T> {
+
+        private final ValueCodec<V> mCodec;
+        private final Function<T, List<V>> mGetter;
+        private final BiConsumer<T, List<V>> mSetter;
+
+        ListField(int tag, ValueCodec<V> codec, Function<T, List<V>> getter, BiConsumer<T, List<V>> setter) {
+            super(tag, WIRE_LENGTH_DELIMITED);
+            mCodec = codec;
+            mGetter = getter;
+            mSetter = setter;
+        }
+
+        @Override
+        void write(T message, ByteBuf out) {
+            List<V> list = mGetter.apply(message);
+            if (list == null) {
+                return;
+            }
+            writeVarint(out, mKey);
+            writeVarint(out, payloadSize(list));
+            writeVarint(out, list.size());
+            for (V value : list) {
+                int size = mCodec.size(value);
+                writeVarint(out, size);
+                mCodec.write(value, size, out);
+            }
+        }
+
+        @Override
+        int size(T message) {
+            List<V> list = mGetter.apply(message);
+            if (list == null) {
+                return 0;
+            }
+            int payloadSize = payloadSize(list);
+            return mKeySize + varintSize(payloadSize) + payloadSize;
+        }
+
+        private int payloadSize(List<V> list) {
+            int size = varintSize(list.size());
+            for (V value : list) {
+                if (value == null) {
+                    throw new IllegalArgumentException("null element in list field " + mTag);
+                }
+                int valueSize = mCodec.size(value);
+                size += varintSize(valueSize) + valueSize;
+            }
+            return size;
+        }
+
+        @Override
+        void read(T message, ByteBuf in) {
+            int end = readLength(in) + in.readerIndex();
+            int count = readVarint(in);
+            // 数量来自网络，每个元素至少占一个字节，不按数量预分配过大的空间
+            List<V> list = new ArrayList<>(Math.max(0, Math.min(count, end - in.readerIndex())));
+            for (int i = 0; i < count; i++) {
+                list.add(mCodec.read(in, readLength(in)));
+            }
+            if (in.readerIndex() != end) {
+                throw new IllegalStateException("list field " + mTag + " length mismatch");
+            }
+            mSetter.accept(message, list);
+        }
+
+    }
+
+    /**
+     * boolean 字段的 setter，避免装箱
+     */
+    public interface BooleanSetter<T> {
+
+        void set(T message, boolean value);
+
+    }
+
+    /**
+     * 按字段编号声明消息的结构，编号在 1 ~ 255 之间且不能重复，1 ~ 15 的 key 只占一个字节，已经使用过的编号不要改作他用
+     */
+    public static final class Builder<T> {
+
+        private final Supplier<T> mFactory;
+        private final List<Field<T>> mFields = new ArrayList<>();
+
+        private Builder(Supplier<T> factory) {
+            mFactory = factory;
+        }
+
+        public Builder<T> bool(int tag, Predicate<T> getter, BooleanSetter<T> setter) {
+            return add(new BooleanField<>(tag, getter, setter));
+        }
+
+        public Builder<T> string(int tag, Function<T, String> getter, BiConsumer<T, String> setter) {
+            return add(new ValueField<>(tag, STRING, getter, setter));
+        }
+
+        public Builder<T> bytes(int tag, Function<T, byte[]> getter, BiConsumer<T, byte[]> setter) {
+            return add(new ValueField<>(tag, BYTES, getter, setter));
+        }
+
+        public <V> Builder<T> message(int tag, BinarySchema<V> schema, Function<T, V> getter, BiConsumer<T, V> setter) {
+            return add(new ValueField<>(tag, messageCodec(schema), getter, setter));
+        }
+
+        public Builder<T> stringList(int tag, Function<T, List<String>> getter, BiConsumer<T, List<String>> setter) {
+            return add(new ListField<>(tag, STRING, getter, setter));
+        }
+
+        public <V> Builder<T> messageList(int tag, BinarySchema<V> schema, Function<T, List<V>> getter, BiConsumer<T, List<V>> setter) {
+            return add(new ListField<>(tag, messageCodec(schema), getter, setter));
+        }
+
+        private Builder<T> add(Field<T> field) {
+            if (field.mTag <= 0 || field.mTag > MAX_TAG) {
+                throw new IllegalArgumentException("tag out of range: " + field.mTag);
+            }
+            for (Field<T> added : mFields) {
+                if (added.mTag == field.mTag) {
+                    throw new IllegalArgumentException("duplicate tag: " + field.mTag);
+                }
+            }
+            mFields.add(field);
+            return this;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public BinarySchema<T> build() {
+            int maxTag = 0;
+            for (Field<T> field : mFields) {
+                maxTag = Math.max(maxTag, field.mTag);
+            }
+            Field<T>[] fieldsByTag = new Field[maxTag + 1];
+            for (Field<T> field : mFields) {
+                fieldsByTag[field.mTag] = field;
+            }
+            return new BinarySchema<>(mFactory, mFields.toArray(new Field[0]), fieldsByTag);
+        }
+
+    }
+
+}
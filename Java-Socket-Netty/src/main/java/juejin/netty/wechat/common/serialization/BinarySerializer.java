@@ -0,0 +1,62 @@
+package juejin.netty.wechat.common.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 二进制序列化器：每种类型通过 {@link #register(Class, BinarySchema)} 注册自己的 {@link BinarySchema}，
+ * 字段按编号编码为 varint 与带长度前缀的 UTF-8 字符串，没有 JSON 中的字段名、引号与转义，编码后的数据更小，编解码也不需要反射。
+ * <p>
+ * 所有类型都需要在使用之前注册，注册之后不再修改。
+ */
+public class BinarySerializer implements Serializer {
+
+    private final Map<Class<?>, BinarySchema<?>> mSchemas = new HashMap<>();
+
+    public <T> BinarySerializer register(Class<T> clazz, BinarySchema<T> schema) {
+        mSchemas.put(clazz, schema);
+        return this;
+    }
+
+    @Override
+    public byte getAlgorithm() {
+        return Algorithms.BINARY;
+    }
+
+    @Override
+    public byte[] serialize(Object object) {
+        ByteBuf buffer = Unpooled.buffer();
+        serialize(object, buffer);
+        return ByteBufUtil.getBytes(buffer);
+    }
+
+    @Override
+    public <T> T deserialize(Class<T> clazz, byte[] bytes) {
+        return deserialize(clazz, Unpooled.wrappedBuffer(bytes), bytes.length);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void serialize(Object object, ByteBuf out) {
+        ((BinarySchema<Object>) getSchema(object.getClass())).write(object, out);
+    }
+
+    @Override
+    public <T> T deserialize(Class<T> clazz, ByteBuf in, int length) {
+        return getSchema(clazz).read(in, length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> BinarySchema<T> getSchema(Class<T> clazz) {
+        BinarySchema<T> schema = (BinarySchema<T>) mSchemas.get(clazz);
+        if (schema == null) {
+            throw new IllegalStateException(String.format("no binary schema for %s", clazz.getName()));
+        }
+        return schema;
+    }
+
+}
@@ -2,6 +2,8 @@ package juejin.netty.wechat.common.serialization;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
 import java.nio.charset.StandardCharsets;
 
@@ -24,4 +26,58 @@ public class JSONSerializer implements Serializer {
         return mGson.fromJson(new String(bytes, StandardCharsets.UTF_8), clazz);
     }
 
+    /**
+     * Gson 输出的字符直接按 UTF-8 编码写入 out，不生成中间的 String 与 byte[]
+     */
+    @Override
+    public void serialize(Object object, ByteBuf out) {
+        mGson.toJson(object, new ByteBufAppendable(out));
+    }
+
+    /**
+     * 直接从 in 中解码 UTF-8 字符串，Netty 解码时使用线程内缓存的字符缓冲，不再复制一份 byte[]
+     */
+    @Override
+    public <T> T deserialize(Class<T> clazz, ByteBuf in, int length) {
+        String json = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+        in.skipBytes(length);
+        return mGson.fromJson(json, clazz);
+    }
+
+    /**
+     * 把字符按 UTF-8 写入 ByteBuf。
+     * <p>
+     * Gson 按字符串片段或者单个字符（引号、括号、逗号等）写入，字符串只在需要转义的字符处分段，不会把代理对拆开。
+     */
+    private static class ByteBufAppendable implements Appendable {
+
+        private final ByteBuf mOut;
+
+        ByteBufAppendable(ByteBuf out) {
+            mOut = out;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            ByteBufUtil.writeUtf8(mOut, csq, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            if (c < 0x80) {
+                mOut.writeByte(c);
+            } else {
+                ByteBufUtil.writeUtf8(mOut, String.valueOf(c));
+            }
+            return this;
+        }
+
+    }
+
 }
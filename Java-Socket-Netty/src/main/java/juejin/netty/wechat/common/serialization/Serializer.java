@@ -1,5 +1,7 @@
 package juejin.netty.wechat.common.serialization;
 
+import io.netty.buffer.ByteBuf;
+
 /**
  * 序列化器
  */
@@ -20,4 +22,20 @@ public interface Serializer {
      */
     <T> T deserialize(Class<T> clazz, byte[] bytes);
 
-}
\ No newline at end of file
+    /**
+     * java 对象直接写入 ByteBuf，可以直接写入的序列化器覆盖该方法以省去中间的字节数组
+     */
+    default void serialize(Object object, ByteBuf out) {
+        out.writeBytes(serialize(object));
+    }
+
+    /**
+     * 从 ByteBuf 中读取 length 个字节转换成 java 对象
+     */
+    default <T> T deserialize(Class<T> clazz, ByteBuf in, int length) {
+        byte[] bytes = new byte[length];
+        in.readBytes(bytes);
+        return deserialize(clazz, bytes);
+    }
+
+}
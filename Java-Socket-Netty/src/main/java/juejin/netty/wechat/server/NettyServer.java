@@ -4,17 +4,22 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.AttributeKey;
 import juejin.netty.wechat.common.codec.IMCodecHandler;
 import juejin.netty.wechat.common.handler.HeartbeatRequestHandler;
+import juejin.netty.wechat.common.handler.IMFlushConsolidationHandler;
 import juejin.netty.wechat.common.handler.IMIdleStateHandler;
 import juejin.netty.wechat.common.protocol.PacketCodec;
 import juejin.netty.wechat.server.handler.*;
+import juejin.netty.wechat.server.session.SessionRegistry;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.TimeUnit;
+
 import static juejin.netty.wechat.Constant.PORT;
 
 public class NettyServer {
@@ -63,11 +68,16 @@ public class NettyServer {
                             （1）压缩 handler 的链条，利用一个 Handler 来管理那些没有状态的 Handler，这个可以压缩 handler 的传播链条，从而优化响应速度。【比如这里的 ComposeHandler】
                             （2）没有状态的 Handler 可以用单例来实现，从而避免为每个连接创建一个对象。
                          */
-                        ch.pipeline()
+                        ChannelPipeline pipeline = ch.pipeline()
                                 //打印生命周期【测试用】
                                 //.addLast(new LifecycleTestHandler())
                                 //空闲检测
-                                .addLast(new IMIdleStateHandler())
+                                .addLast(new IMIdleStateHandler());
+                        if (IMFlushConsolidationHandler.ENABLED) {
+                            //合并 flush，需要在所有会写数据的 Handler 之前
+                            pipeline.addLast(new IMFlushConsolidationHandler());
+                        }
+                        pipeline
                                 //拆包
                                 .addLast(PacketCodec.newProtocolDecoder())
                                 //编解解码
@@ -83,6 +93,16 @@ public class NettyServer {
                     }
                 });
 
+        //会话注册表按 worker 的 EventLoop 分片
+        SessionRegistry.init(workerGroup);
+
+        //定时打印合并 flush 的统计
+        if (IMFlushConsolidationHandler.ENABLED) {
+            bossGroup.scheduleAtFixedRate(() -> System.out.println("flush: requested=" + IMFlushConsolidationHandler.getFlushesRequested()
+                    + ", performed=" + IMFlushConsolidationHandler.getFlushesPerformed()
+                    + ", avoided=" + IMFlushConsolidationHandler.getFlushesAvoided()), 1, 1, TimeUnit.MINUTES);
+        }
+
         //启动服务器
         doBind(serverBootstrap, PORT);
     }
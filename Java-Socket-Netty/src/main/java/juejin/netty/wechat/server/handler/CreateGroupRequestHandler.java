@@ -4,11 +4,12 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.group.ChannelGroup;
-import io.netty.channel.group.DefaultChannelGroup;
 import juejin.netty.wechat.common.protocol.request.CreateGroupRequestPacket;
 import juejin.netty.wechat.common.protocol.response.CreateGroupResponsePacket;
-import juejin.netty.wechat.utils.IDUtil;
+import juejin.netty.wechat.common.session.Session;
+import juejin.netty.wechat.server.session.Group;
+import juejin.netty.wechat.server.session.SessionRegistry;
+import juejin.netty.wechat.utils.BroadcastUtil;
 import juejin.netty.wechat.utils.SessionUtil;
 
 import java.util.ArrayList;
@@ -26,35 +27,35 @@ public class CreateGroupRequestHandler extends SimpleChannelInboundHandler<Creat
     protected void channelRead0(ChannelHandlerContext ctx, CreateGroupRequestPacket createGroupRequestPacket) {
         List<String> userIdList = createGroupRequestPacket.getUserIdList();
 
-        List<String> userNameList = new ArrayList<>();
-
-        // 1. 创建一个 channel 分组
-        ChannelGroup channelGroup = new DefaultChannelGroup(ctx.executor());
-
-        // 2. 筛选出待加入群聊的用户的 channel 和 userName
-        for (String userId : userIdList) {
-            Channel channel = SessionUtil.getChannel(userId);
-            if (channel != null) {
-                channelGroup.add(channel);
-                userNameList.add(SessionUtil.getSession(channel).getUserName());
+        // 1. 筛选出待加入群聊的在线用户的 channel，回调在当前连接的 EventLoop 中执行
+        SessionRegistry registry = SessionRegistry.get();
+        registry.findUsers(userIdList, ctx.executor(), channels -> {
+            // 2. 创建群，保存在当前连接所在的分片中
+            Group group = registry.createGroup(ctx.channel());
+
+            // 3. 把用户加入群聊，同时得到 userName
+            List<String> userNameList = new ArrayList<>();
+            for (Channel channel : channels) {
+                Session session = SessionUtil.getSession(channel);
+                if (session != null) {
+                    group.add(channel);
+                    userNameList.add(session.getUserName());
+                }
             }
-        }
-
-        // 3. 创建群聊创建结果的响应
-        String groupId = IDUtil.createRandomId();
-        CreateGroupResponsePacket createGroupResponsePacket = new CreateGroupResponsePacket();
-        createGroupResponsePacket.setSuccess(true);
-        createGroupResponsePacket.setGroupId(groupId);
-        createGroupResponsePacket.setMemberNameList(userNameList);
 
-        // 4. 给每个客户端发送拉群通知
-        channelGroup.writeAndFlush(createGroupResponsePacket);
+            // 4. 创建群聊创建结果的响应
+            CreateGroupResponsePacket createGroupResponsePacket = new CreateGroupResponsePacket();
+            createGroupResponsePacket.setSuccess(true);
+            createGroupResponsePacket.setGroupId(group.getId());
+            createGroupResponsePacket.setMemberNameList(userNameList);
 
-        System.out.print("群创建成功，id 为 " + createGroupResponsePacket.getGroupId() + ", ");
-        System.out.println("群里面有：" + createGroupResponsePacket.getMemberNameList());
+            // 5. 给每个客户端发送拉群通知
+            // 只编码一次，按 EventLoop 批量写出，见 BroadcastUtil
+            BroadcastUtil.broadcast(group.channels(), createGroupResponsePacket, ctx.alloc());
 
-        // 5. 保存群组相关的信息
-        SessionUtil.bindChannelGroup(groupId, channelGroup);
+            System.out.print("群创建成功，id 为 " + createGroupResponsePacket.getGroupId() + ", ");
+            System.out.println("群里面有：" + createGroupResponsePacket.getMemberNameList());
+        });
     }
 
 }
@@ -3,9 +3,10 @@ package juejin.netty.wechat.server.handler;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.group.ChannelGroup;
 import juejin.netty.wechat.common.protocol.request.GroupMessageRequestPacket;
 import juejin.netty.wechat.common.protocol.response.GroupMessageResponsePacket;
+import juejin.netty.wechat.server.session.SessionRegistry;
+import juejin.netty.wechat.utils.BroadcastUtil;
 import juejin.netty.wechat.utils.SessionUtil;
 
 @ChannelHandler.Sharable
@@ -18,21 +19,22 @@ public class GroupMessageRequestHandler extends SimpleChannelInboundHandler<Grou
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, GroupMessageRequestPacket requestPacket) {
-        // 1. 拿到群聊对应的 channelGroup，写到每个客户端
+        // 1.拿到 groupId 构造群聊消息的响应
         String groupId = requestPacket.getToGroupId();
-        ChannelGroup channelGroup = SessionUtil.getChannelGroup(groupId);
-        if (channelGroup == null) {
-            System.out.println("群[" + groupId + "]不存在，无法发送消息到该群");
-            return;
-        }
-
-        // 2.拿到 groupId 构造群聊消息的响应
         GroupMessageResponsePacket responsePacket = new GroupMessageResponsePacket();
         responsePacket.setFromGroupId(groupId);
         responsePacket.setMessage(requestPacket.getMessage());
         responsePacket.setFromUser(SessionUtil.getSession(ctx.channel()));
 
-        channelGroup.writeAndFlush(responsePacket);
+        // 2. 拿到群，写到每个客户端，回调在群所在的 EventLoop 中执行
+        SessionRegistry.get().findGroup(groupId, group -> {
+            if (group == null) {
+                System.out.println("群[" + groupId + "]不存在，无法发送消息到该群");
+                return;
+            }
+            // 只编码一次，按 EventLoop 批量写出，见 BroadcastUtil
+            BroadcastUtil.broadcast(group.channels(), responsePacket, ctx.alloc());
+        });
     }
 
 }
\ No newline at end of file
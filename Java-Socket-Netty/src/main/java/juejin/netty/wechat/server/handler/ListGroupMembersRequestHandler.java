@@ -4,10 +4,10 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.group.ChannelGroup;
 import juejin.netty.wechat.common.protocol.request.ListGroupMembersRequestPacket;
 import juejin.netty.wechat.common.protocol.response.ListGroupMembersResponsePacket;
 import juejin.netty.wechat.common.session.Session;
+import juejin.netty.wechat.server.session.SessionRegistry;
 import juejin.netty.wechat.utils.SessionUtil;
 
 import java.util.ArrayList;
@@ -23,28 +23,30 @@ public class ListGroupMembersRequestHandler extends SimpleChannelInboundHandler<
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, ListGroupMembersRequestPacket requestPacket) {
-        ListGroupMembersResponsePacket responsePacket = new ListGroupMembersResponsePacket();
-
-        // 1. 获取群的 ChannelGroup
+        // 1. 获取群，回调在群所在的 EventLoop 中执行
         String groupId = requestPacket.getGroupId();
-        ChannelGroup channelGroup = SessionUtil.getChannelGroup(groupId);
-
-        // 2. 遍历群成员的 channel，对应的 session，构造群成员的信息
-        if (channelGroup != null) {
-            List<Session> sessionList = new ArrayList<>();
-            for (Channel channel : channelGroup) {
-                Session session = SessionUtil.getSession(channel);
-                sessionList.add(session);
+        SessionRegistry.get().findGroup(groupId, group -> {
+            ListGroupMembersResponsePacket responsePacket = new ListGroupMembersResponsePacket();
+
+            // 2. 遍历群成员的 channel，对应的 session，构造群成员的信息
+            if (group != null) {
+                List<Session> sessionList = new ArrayList<>();
+                for (Channel channel : group.channels()) {
+                    Session session = SessionUtil.getSession(channel);
+                    if (session != null) {
+                        sessionList.add(session);
+                    }
+                }
+                responsePacket.setGroupId(groupId);
+                responsePacket.setSessionList(sessionList);
+            } else {
+                responsePacket.setSuccess(false);
+                responsePacket.setReason("该群不存在");
             }
-            responsePacket.setGroupId(groupId);
-            responsePacket.setSessionList(sessionList);
-        } else {
-            responsePacket.setSuccess(false);
-            responsePacket.setReason("该群不存在");
-        }
-
-        // 3. 构建获取成员列表响应写回到客户端
-        ctx.writeAndFlush(responsePacket);
+
+            // 3. 构建获取成员列表响应写回到客户端
+            ctx.writeAndFlush(responsePacket);
+        });
     }
 
 }
\ No newline at end of file
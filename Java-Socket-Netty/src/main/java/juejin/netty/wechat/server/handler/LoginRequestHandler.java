@@ -6,7 +6,7 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import juejin.netty.wechat.common.protocol.request.LoginRequestPacket;
 import juejin.netty.wechat.common.protocol.response.LoginResponsePacket;
 import juejin.netty.wechat.common.session.Session;
-import juejin.netty.wechat.utils.IDUtil;
+import juejin.netty.wechat.server.session.SessionRegistry;
 import juejin.netty.wechat.utils.SessionUtil;
 
 @ChannelHandler.Sharable
@@ -26,11 +26,11 @@ public class LoginRequestHandler extends SimpleChannelInboundHandler<LoginReques
         loginResponsePacket.setUserName(msg.getUsername());
 
         if (SessionUtil.verifyLoginRequest(msg)) {
+            Session session = SessionRegistry.get().login(ctx.channel(), msg.getUsername());
             loginResponsePacket.setSuccess(true);
-            loginResponsePacket.setUserId(IDUtil.createRandomId());
+            loginResponsePacket.setUserId(session.getUserId());
 
             System.out.println("[" + msg.getUsername() + "]登录成功");
-            SessionUtil.bindSession(new Session(loginResponsePacket.getUserId(), msg.getUsername()), ctx.channel());
         } else {
             loginResponsePacket.setReason("账号密码校验失败");
             loginResponsePacket.setSuccess(false);
@@ -5,7 +5,7 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import juejin.netty.wechat.common.protocol.request.LogoutRequestPacket;
 import juejin.netty.wechat.common.protocol.response.LogoutResponsePacket;
-import juejin.netty.wechat.utils.SessionUtil;
+import juejin.netty.wechat.server.session.SessionRegistry;
 
 @ChannelHandler.Sharable
 public class LogoutRequestHandler extends SimpleChannelInboundHandler<LogoutRequestPacket> {
@@ -17,7 +17,7 @@ public class LogoutRequestHandler extends SimpleChannelInboundHandler<LogoutRequ
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, LogoutRequestPacket msg) {
-        SessionUtil.unbindSession(ctx.channel());
+        SessionRegistry.get().logout(ctx.channel());
         LogoutResponsePacket logoutResponsePacket = new LogoutResponsePacket();
         logoutResponsePacket.setSuccess(true);
         ctx.writeAndFlush(logoutResponsePacket);
@@ -1,12 +1,12 @@
 package juejin.netty.wechat.server.handler;
 
-import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import juejin.netty.wechat.common.protocol.request.MessageRequestPacket;
 import juejin.netty.wechat.common.protocol.response.MessageResponsePacket;
 import juejin.netty.wechat.common.session.Session;
+import juejin.netty.wechat.server.session.SessionRegistry;
 import juejin.netty.wechat.utils.SessionUtil;
 
 
@@ -28,20 +28,20 @@ public class MessageRequestHandler extends SimpleChannelInboundHandler<MessageRe
         messageResponsePacket.setFromUserName(session.getUserName());
         messageResponsePacket.setMessage(msg.getMessage());
 
-        // 3.拿到消息接收方的 channel
-        Channel toUserChannel = SessionUtil.getChannel(msg.getToUserId());
-
-        // 4.将消息发送给消息接收方
-        if (toUserChannel != null && SessionUtil.hasLogin(toUserChannel)) {
-            toUserChannel.writeAndFlush(messageResponsePacket).addListener(future -> {
-                if (future.isDone()) {
-                    //考试统计
-                    long time = System.currentTimeMillis() - begin;
-                }
-            });
-        } else {
-            System.err.println("[" + session.getUserId() + "] 不在线，发送失败!");
-        }
+        // 3.拿到消息接收方的 channel，回调在接收方所在的 EventLoop 中执行
+        SessionRegistry.get().findUser(msg.getToUserId(), toUserChannel -> {
+            // 4.将消息发送给消息接收方
+            if (toUserChannel != null && SessionUtil.hasLogin(toUserChannel)) {
+                toUserChannel.writeAndFlush(messageResponsePacket).addListener(future -> {
+                    if (future.isDone()) {
+                        //考试统计
+                        long time = System.currentTimeMillis() - begin;
+                    }
+                });
+            } else {
+                System.err.println("[" + msg.getToUserId() + "] 不在线，发送失败!");
+            }
+        });
     }
 
 }
@@ -0,0 +1,71 @@
+package juejin.netty.wechat.server.session;
+
+import io.netty.channel.Channel;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+import juejin.netty.wechat.common.session.Session;
+import juejin.netty.wechat.utils.SessionUtil;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 群组，成员按用户 id 保存。
+ * <p>
+ * 只能在群组所在的 EventLoop 中访问（{@link SessionRegistry#findGroup} 的回调中），成员可以在任意的 EventLoop 上。
+ * 成员断开或者登出之后不会立即移除，在下一次访问成员时移除。
+ */
+public final class Group {
+
+    private final String mId;
+    private final LongObjectHashMap<Channel> mMembers = new LongObjectHashMap<>();
+
+    Group(String id) {
+        mId = id;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * 添加已登录的连接
+     */
+    public void add(Channel channel) {
+        Session session = SessionUtil.getSession(channel);
+        if (session != null) {
+            mMembers.put(SessionRegistry.parseId(session.getUserId()), channel);
+        }
+    }
+
+    public void remove(Channel channel) {
+        Session session = SessionUtil.getSession(channel);
+        if (session != null) {
+            long userId = SessionRegistry.parseId(session.getUserId());
+            if (mMembers.get(userId) == channel) {
+                mMembers.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * 在线的成员，同时移除已经断开或者登出的成员
+     */
+    public List<Channel> channels() {
+        List<Channel> channels = new ArrayList<>(mMembers.size());
+        Iterator<LongObjectMap.PrimitiveEntry<Channel>> iterator = mMembers.entries().iterator();
+        while (iterator.hasNext()) {
+            LongObjectMap.PrimitiveEntry<Channel> entry = iterator.next();
+            Channel channel = entry.value();
+            Session session = SessionUtil.getSession(channel);
+            if (!channel.isActive() || session == null || SessionRegistry.parseId(session.getUserId()) != entry.key()) {
+                iterator.remove();
+            } else {
+                channels.add(channel);
+            }
+        }
+        return channels;
+    }
+
+}
@@ -0,0 +1,251 @@
+package juejin.netty.wechat.server.session;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import juejin.netty.wechat.common.session.Session;
+import juejin.netty.wechat.utils.SessionUtil;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * 服务端的会话与群组注册表。
+ * <p>
+ * 按 worker 的 EventLoop 分片，每个 EventLoop 一个 {@link Shard}，用户与群组保存在创建它们的连接所在的分片中。
+ * 分片中的数据只在分片所在的 EventLoop 中访问，因此不需要加锁，也不会有跨线程的竞争：
+ * <ul>
+ *     <li>登录、登出、建群在连接所在的 EventLoop 中执行，直接访问本地的分片；</li>
+ *     <li>查找用户或者群组时，回调在它们所在分片的 EventLoop 中执行，同一个 EventLoop 上的直接执行，否则提交一个任务。
+ *     写出数据时，目标连接也在这个 EventLoop 中，写出不需要再切换线程。</li>
+ * </ul>
+ * 用户与群组的 id 是数字：高位是分片内的序号，低 {@link #SHARD_BITS} 位是分片的序号，通过 id 即可找到所在的分片，
+ * 序号在分片内递增，生成 id 不需要同步。协议中 id 仍然是字符串，为 id 的十进制表示。
+ */
+public final class SessionRegistry {
+
+    static final int SHARD_BITS = 10;
+    private static final int MAX_SHARDS = 1 << SHARD_BITS;
+    private static final long SHARD_MASK = MAX_SHARDS - 1;
+
+    private static volatile SessionRegistry sInstance;
+
+    /**
+     * 使用服务端的 worker EventLoopGroup 初始化，在服务端启动时调用
+     */
+    public static void init(EventLoopGroup workerGroup) {
+        sInstance = new SessionRegistry(workerGroup);
+    }
+
+    public static SessionRegistry get() {
+        SessionRegistry registry = sInstance;
+        if (registry == null) {
+            throw new IllegalStateException("SessionRegistry has not been initialized.");
+        }
+        return registry;
+    }
+
+    private final Shard[] mShards;
+    // 构建之后不再修改，可以在任意线程读取
+    private final Map<EventExecutor, Shard> mShardsByEventLoop = new IdentityHashMap<>();
+
+    private SessionRegistry(EventLoopGroup workerGroup) {
+        List<Shard> shards = new ArrayList<>();
+        for (EventExecutor executor : workerGroup) {
+            if (shards.size() == MAX_SHARDS) {
+                throw new IllegalArgumentException("Too many event loops, at most " + MAX_SHARDS);
+            }
+            Shard shard = new Shard(shards.size(), (EventLoop) executor);
+            shards.add(shard);
+            mShardsByEventLoop.put(executor, shard);
+        }
+        mShards = shards.toArray(new Shard[0]);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 用户
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 登录，分配用户 id 并绑定会话，连接关闭时自动登出。需要在连接所在的 EventLoop 中调用。
+     */
+    public Session login(Channel channel, String userName) {
+        Shard shard = localShard(channel);
+        long userId = shard.newUserId();
+        Session session = new Session(Long.toString(userId), userName);
+        shard.putUser(userId, channel);
+        SessionUtil.bindSession(session, channel);
+        channel.closeFuture().addListener(future -> logout(channel));
+        return session;
+    }
+
+    /**
+     * 登出，需要在连接所在的 EventLoop 中调用
+     */
+    public void logout(Channel channel) {
+        Session session = SessionUtil.getSession(channel);
+        if (session == null) {
+            return;
+        }
+        localShard(channel).removeUser(parseId(session.getUserId()), channel);
+        SessionUtil.unbindSession(channel);
+    }
+
+    /**
+     * 查找在线用户的连接，可以在任意线程调用
+     *
+     * @param callback 在用户所在的 EventLoop 中回调，用户不存在或者不在线时为 null
+     */
+    public void findUser(String userId, Consumer<Channel> callback) {
+        long id = parseId(userId);
+        Shard shard = shardOf(id);
+        if (shard == null) {
+            callback.accept(null);
+            return;
+        }
+        execute(shard, () -> callback.accept(shard.getUser(id)), () -> callback.accept(null));
+    }
+
+    /**
+     * 批量查找在线用户的连接，每个分片只提交一次任务，可以在任意线程调用
+     *
+     * @param executor 执行回调的线程，一般为调用者连接的 EventLoop
+     * @param callback 在线用户的连接，不存在或者不在线的用户被忽略
+     */
+    public void findUsers(List<String> userIds, EventExecutor executor, Consumer<List<Channel>> callback) {
+        // 按分片分组
+        Map<Shard, List<Long>> idsByShard = new IdentityHashMap<>();
+        for (String userId : userIds) {
+            long id = parseId(userId);
+            Shard shard = shardOf(id);
+            if (shard != null) {
+                idsByShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(id);
+            }
+        }
+        if (idsByShard.isEmpty()) {
+            executor.execute(() -> callback.accept(new ArrayList<>()));
+            return;
+        }
+
+        // 各分片的结果回到 executor 中汇总，只在 executor 中访问
+        List<Channel> result = new ArrayList<>();
+        int[] pending = {idsByShard.size()};
+        Consumer<List<Channel>> collector = channels -> {
+            result.addAll(channels);
+            if (--pending[0] == 0) {
+                callback.accept(result);
+            }
+        };
+        for (Map.Entry<Shard, List<Long>> entry : idsByShard.entrySet()) {
+            Shard shard = entry.getKey();
+            List<Long> ids = entry.getValue();
+            execute(shard, () -> {
+                List<Channel> channels = new ArrayList<>(ids.size());
+                for (long id : ids) {
+                    Channel channel = shard.getUser(id);
+                    if (channel != null) {
+                        channels.add(channel);
+                    }
+                }
+                executor.execute(() -> collector.accept(channels));
+            }, () -> executor.execute(() -> collector.accept(new ArrayList<>())));
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 群组
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 创建群组，群组保存在创建者连接所在的分片中，需要在创建者连接所在的 EventLoop 中调用
+     */
+    public Group createGroup(Channel creator) {
+        Shard shard = localShard(creator);
+        long groupId = shard.newGroupId();
+        Group group = new Group(Long.toString(groupId));
+        shard.putGroup(groupId, group);
+        return group;
+    }
+
+    /**
+     * 查找群组，可以在任意线程调用
+     *
+     * @param callback 在群组所在的 EventLoop 中回调，群组不存在时为 null
+     */
+    public void findGroup(String groupId, Consumer<Group> callback) {
+        long id = parseId(groupId);
+        Shard shard = shardOf(id);
+        if (shard == null) {
+            callback.accept(null);
+            return;
+        }
+        execute(shard, () -> callback.accept(shard.getGroup(id)), () -> callback.accept(null));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 分片
+    ///////////////////////////////////////////////////////////////////////////
+
+    private Shard localShard(Channel channel) {
+        Shard shard = mShardsByEventLoop.get(channel.eventLoop());
+        if (shard == null) {
+            throw new IllegalStateException("Channel is not registered to the worker group: " + channel);
+        }
+        if (!shard.mEventLoop.inEventLoop()) {
+            throw new IllegalStateException("Must be called in the event loop of " + channel);
+        }
+        return shard;
+    }
+
+    private Shard shardOf(long id) {
+        if (id <= 0) {
+            return null;
+        }
+        int index = shardIndexOf(id);
+        return index < mShards.length ? mShards[index] : null;
+    }
+
+    private static void execute(Shard shard, Runnable task, Runnable onRejected) {
+        if (shard.mEventLoop.inEventLoop()) {
+            task.run();
+            return;
+        }
+        try {
+            shard.mEventLoop.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 服务端正在关闭
+            onRejected.run();
+        }
+    }
+
+    static int shardIndexOf(long id) {
+        return (int) (id & SHARD_MASK);
+    }
+
+    /**
+     * @return 不是合法的 id 时返回 -1
+     */
+    static long parseId(String id) {
+        if (id == null || id.isEmpty() || id.length() > 19) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            if (value < 0) {
+                return -1;
+            }
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,61 @@
+package juejin.netty.wechat.server.session;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.collection.LongObjectHashMap;
+
+/**
+ * {@link SessionRegistry} 的一个分片，只在 {@link #mEventLoop} 中访问，没有同步。
+ * <p>
+ * 使用以 long 为键的 {@link LongObjectHashMap}，键不需要装箱，也不需要为每个用户保存一个 id 字符串。
+ */
+final class Shard {
+
+    final int mIndex;
+    final EventLoop mEventLoop;
+
+    private final LongObjectHashMap<Channel> mUsers = new LongObjectHashMap<>();
+    private final LongObjectHashMap<Group> mGroups = new LongObjectHashMap<>();
+
+    private long mUserSequence;
+    private long mGroupSequence;
+
+    Shard(int index, EventLoop eventLoop) {
+        mIndex = index;
+        mEventLoop = eventLoop;
+    }
+
+    long newUserId() {
+        return ++mUserSequence << SessionRegistry.SHARD_BITS | mIndex;
+    }
+
+    long newGroupId() {
+        return ++mGroupSequence << SessionRegistry.SHARD_BITS | mIndex;
+    }
+
+    void putUser(long userId, Channel channel) {
+        mUsers.put(userId, channel);
+    }
+
+    Channel getUser(long userId) {
+        return mUsers.get(userId);
+    }
+
+    /**
+     * 只有 userId 仍然对应 channel 时才移除
+     */
+    void removeUser(long userId, Channel channel) {
+        if (mUsers.get(userId) == channel) {
+            mUsers.remove(userId);
+        }
+    }
+
+    void putGroup(long groupId, Group group) {
+        mGroups.put(groupId, group);
+    }
+
+    Group getGroup(long groupId) {
+        return mGroups.get(groupId);
+    }
+
+}
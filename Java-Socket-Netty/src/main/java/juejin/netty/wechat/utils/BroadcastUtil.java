@@ -0,0 +1,97 @@
+package juejin.netty.wechat.utils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.ReferenceCountUtil;
+import juejin.netty.wechat.common.protocol.Packet;
+import juejin.netty.wechat.common.protocol.PacketCodec;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 把同一个数据包发送给多个连接（比如群里的所有成员）。
+ * <p>
+ * 直接通过 ChannelGroup 写出 Packet 时，每个连接的编码器都会把同一个 Packet 序列化一次，群越大浪费越多。这里先把 Packet 编码成 ByteBuf，
+ * 每种序列化方式只编码一次，然后把 ByteBuf 的 retainedDuplicate() 写到各个连接，共享同一块内存，编码器不处理 ByteBuf，直接透传。
+ * <p>
+ * 连接按所在的 EventLoop 分组，每个 EventLoop 只提交一个任务，在任务中写出该 EventLoop 上的所有连接后再逐个 flush，
+ * 而不是每个连接的 writeAndFlush 都向 EventLoop 提交一次任务。
+ */
+public class BroadcastUtil {
+
+    private BroadcastUtil() {
+    }
+
+    /**
+     * @param channels  接收的连接
+     * @param packet    发送的数据包
+     * @param allocator 用于分配编码的 ByteBuf
+     */
+    public static void broadcast(Iterable<Channel> channels, Packet packet, ByteBufAllocator allocator) {
+        PacketCodec codec = PacketCodec.get();
+        // 按序列化方式编码，下标为序列化方式，最多只有几种
+        ByteBuf[] encoded = new ByteBuf[256];
+        Map<EventLoop, List<Object>> writes = new IdentityHashMap<>();
+
+        try {
+            for (Channel channel : channels) {
+                if (!channel.isActive()) {
+                    continue;
+                }
+                int algorithm = codec.getSerializationAlgorithm(channel) & 0xFF;
+                ByteBuf byteBuf = encoded[algorithm];
+                if (byteBuf == null) {
+                    byteBuf = encoded[algorithm] = allocator.ioBuffer();
+                    codec.encode(byteBuf, packet, (byte) algorithm);
+                }
+                // 连接与要写出的数据交替存放，全部编码完成之后再增加引用，编码失败时不需要逐个释放
+                List<Object> loopWrites = writes.computeIfAbsent(channel.eventLoop(), loop -> new ArrayList<>());
+                loopWrites.add(channel);
+                loopWrites.add(byteBuf);
+            }
+
+            for (Map.Entry<EventLoop, List<Object>> entry : writes.entrySet()) {
+                EventLoop eventLoop = entry.getKey();
+                List<Object> loopWrites = entry.getValue();
+                for (int i = 1; i < loopWrites.size(); i += 2) {
+                    loopWrites.set(i, ((ByteBuf) loopWrites.get(i)).retainedDuplicate());
+                }
+                if (eventLoop.inEventLoop()) {
+                    writeAndFlush(loopWrites);
+                    continue;
+                }
+                try {
+                    eventLoop.execute(() -> writeAndFlush(loopWrites));
+                } catch (RejectedExecutionException e) {
+                    // EventLoop 已经关闭
+                    for (int i = 1; i < loopWrites.size(); i += 2) {
+                        ReferenceCountUtil.release(loopWrites.get(i));
+                    }
+                }
+            }
+        } finally {
+            // 每个连接持有自己的引用，这里释放编码时的引用
+            for (ByteBuf byteBuf : encoded) {
+                if (byteBuf != null) {
+                    byteBuf.release();
+                }
+            }
+        }
+    }
+
+    private static void writeAndFlush(List<Object> loopWrites) {
+        for (int i = 0; i < loopWrites.size(); i += 2) {
+            ((Channel) loopWrites.get(i)).write(loopWrites.get(i + 1));
+        }
+        for (int i = 0; i < loopWrites.size(); i += 2) {
+            ((Channel) loopWrites.get(i)).flush();
+        }
+    }
+
+}
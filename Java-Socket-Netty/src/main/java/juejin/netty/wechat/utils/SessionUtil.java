@@ -1,26 +1,19 @@
 package juejin.netty.wechat.utils;
 
 import io.netty.channel.Channel;
-import io.netty.channel.group.ChannelGroup;
 import juejin.netty.wechat.common.attribute.Attributes;
 import juejin.netty.wechat.common.protocol.request.LoginRequestPacket;
 import juejin.netty.wechat.common.session.Session;
-import org.jetbrains.annotations.Nullable;
-
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 连接上的会话。服务端在线用户与群组的查找见 {@link juejin.netty.wechat.server.session.SessionRegistry}。
+ */
 public class SessionUtil {
 
-    private static final Map<String, Channel> loginUsers = new ConcurrentHashMap<>();
-
-    private static final Map<String, ChannelGroup> groups = new ConcurrentHashMap<>();
-
     /**
      * 设置该 channel 对应的的用户已经登录
      */
     public static void bindSession(Session session, Channel channel) {
-        loginUsers.put(session.getUserId(), channel);
         channel.attr(Attributes.SESSION).set(session);
     }
 
@@ -28,10 +21,8 @@ public class SessionUtil {
      * 移除该 channel 对应的用户的登录状态
      */
     public static void unbindSession(Channel channel) {
-        if (hasLogin(channel)) {
-            Session session = getSession(channel);
-            loginUsers.remove(session.getUserId());
-            channel.attr(Attributes.SESSION).set(null);
+        Session session = channel.attr(Attributes.SESSION).getAndSet(null);
+        if (session != null) {
             System.out.println(session + " 退出登录!");
         }
     }
@@ -44,24 +35,6 @@ public class SessionUtil {
         return channel.attr(Attributes.SESSION).get();
     }
 
-    @Nullable
-    public static Channel getChannel(Session session) {
-        return loginUsers.get(session.getUserId());
-    }
-
-    @Nullable
-    public static Channel getChannel(String userId) {
-        return loginUsers.get(userId);
-    }
-
-    public static void bindChannelGroup(String groupId, ChannelGroup group) {
-        groups.put(groupId, group);
-    }
-
-    public static ChannelGroup getChannelGroup(String groupId) {
-        return groups.get(groupId);
-    }
-
     /**
      * 验证登录请求
      */
@@ -69,4 +42,4 @@ public class SessionUtil {
         return true;
     }
 
-}
\ No newline at end of file
+}